@@ -1,13 +1,27 @@
 package com.costwise;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.util.Arrays;
+
 @SpringBootApplication
 @EnableScheduling
 public class CostwiseApplication {
     public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--batch")) {
+            // Headless one-shot run: no web server, and beans are created only when first needed
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(CostwiseApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .lazyInitialization(true)
+                    .profiles("batch")
+                    .run(args);
+            System.exit(SpringApplication.exit(context));
+        }
         SpringApplication.run(CostwiseApplication.class, args);
     }
-} 
\ No newline at end of file
+}
@@ -2,53 +2,114 @@ package com.costwise.controller;
 
 import com.costwise.model.AwsAccount;
 import com.costwise.model.CostAnalysisRun;
-import com.costwise.repository.AwsAccountRepository;
+import com.costwise.model.RunSummary;
+import com.costwise.model.TraceSpan;
 import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.service.AnalysisCoalescer;
+import com.costwise.service.AnalysisEventBroadcaster;
 import com.costwise.service.AwsCostAnalysisService;
-import com.costwise.service.AwsResourceAnalyzer;
+import com.costwise.service.EntityCache;
 import com.costwise.service.ExcelReportService;
+import com.costwise.service.FindingDiff;
+import com.costwise.service.FindingDiffService;
+import com.costwise.service.ResourceAnalysisService;
+import com.costwise.service.RunRetentionService;
+import com.costwise.service.RunTraceService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/analyze")
 @RequiredArgsConstructor
 public class CostAnalysisController {
     private final AwsCostAnalysisService costAnalysisService;
-    private final AwsResourceAnalyzer resourceAnalyzer;
+    private final ResourceAnalysisService resourceAnalysisService;
+    private final AnalysisEventBroadcaster eventBroadcaster;
     private final ExcelReportService excelReportService;
-    private final AwsAccountRepository awsAccountRepository;
+    private final FindingDiffService findingDiffService;
     private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final EntityCache entityCache;
+    private final RunRetentionService runRetentionService;
+    private final AnalysisCoalescer analysisCoalescer;
+    private final RunTraceService runTraceService;
 
     @PostMapping("/{accountId}")
     public ResponseEntity<CostAnalysisRun> analyzeCosts(
             @PathVariable Long accountId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "false") boolean force) {
         
-        AwsAccount account = awsAccountRepository.findById(accountId)
-                .orElseThrow(() -> new RuntimeException("AWS Account not found"));
+        AwsAccount account = entityCache.account(accountId);
         
-        CostAnalysisRun analysisRun = costAnalysisService.analyzeCosts(account, startDate, endDate);
+        // Identical requests in flight share one run; force skips reusing a recent one
+        CostAnalysisRun analysisRun = analysisCoalescer.analyze(account, "COST", startDate.toLocalDate(), endDate.toLocalDate(),
+                !force, () -> costAnalysisService.analyzeCosts(account, startDate, endDate));
+        return ResponseEntity.ok(analysisRun);
+    }
+
+    @PostMapping("/{accountId}/cur")
+    public ResponseEntity<CostAnalysisRun> analyzeCurReports(
+            @PathVariable Long accountId,
+            @RequestParam(defaultValue = "false") boolean force) {
+        AwsAccount account = entityCache.account(accountId);
+        
+        CostAnalysisRun analysisRun = analysisCoalescer.analyze(account, "CUR", null, null,
+                !force, () -> costAnalysisService.analyzeCurReports(account));
         return ResponseEntity.ok(analysisRun);
     }
 
     @GetMapping("/{runId}")
     public ResponseEntity<CostAnalysisRun> getAnalysisRun(@PathVariable Long runId) {
-        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
-                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        CostAnalysisRun analysisRun = entityCache.run(runId);
         return ResponseEntity.ok(analysisRun);
     }
 
+    /** Finding counts, cost and savings per check, or per resource type with {@code by=type}. */
+    @GetMapping("/{runId}/summary")
+    public ResponseEntity<List<RunSummary>> getRunSummary(
+            @PathVariable Long runId,
+            @RequestParam(defaultValue = "check") String by) {
+        return ResponseEntity.ok("type".equalsIgnoreCase(by)
+                ? runRetentionService.summariesByResourceType(runId)
+                : runRetentionService.summaries(runId));
+    }
+
+    @PostMapping("/{runId}/restore")
+    public ResponseEntity<CostAnalysisRun> restoreAnalysisRun(@PathVariable Long runId) throws IOException {
+        return ResponseEntity.ok(runRetentionService.restore(runId));
+    }
+
+    @GetMapping("/{runId}/diff")
+    public ResponseEntity<FindingDiff> diffAnalysisRuns(@PathVariable Long runId, @RequestParam Long baseRunId) {
+        return ResponseEntity.ok(findingDiffService.diff(baseRunId, runId));
+    }
+
+    @GetMapping("/{runId}/trace")
+    public ResponseEntity<TraceSpan> getTrace(@PathVariable Long runId) {
+        return ResponseEntity.ok(runTraceService.trace(runId));
+    }
+
+    /** The trace as folded stacks with self time in microseconds, for flame graph tools. */
+    @GetMapping(path = "/{runId}/trace/folded", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getFoldedTrace(@PathVariable Long runId) {
+        return ResponseEntity.ok(runTraceService.folded(runId));
+    }
+
     @GetMapping("/{runId}/report")
     public ResponseEntity<byte[]> generateReport(@PathVariable Long runId) {
-        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+        // The report reads rollups and pages findings itself, so the run's findings are not loaded here
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findWithAwsAccountById(runId)
                 .orElseThrow(() -> new RuntimeException("Analysis run not found"));
         
         byte[] reportBytes = excelReportService.generateReport(analysisRun);
@@ -60,19 +121,45 @@ public class CostAnalysisController {
     }
 
     @PostMapping("/{accountId}/resources")
-    public ResponseEntity<CostAnalysisRun> analyzeResources(@PathVariable Long accountId) {
-        AwsAccount account = awsAccountRepository.findById(accountId)
-                .orElseThrow(() -> new RuntimeException("AWS Account not found"));
-        
-        CostAnalysisRun analysisRun = new CostAnalysisRun();
-        analysisRun.setAwsAccount(account);
-        analysisRun.setStartDate(LocalDateTime.now());
-        analysisRun.setEndDate(LocalDateTime.now());
-        analysisRun.setStatus("COMPLETED");
-        
-        // Add resource analysis results
-        analysisRun.setOptimizationResults(resourceAnalyzer.analyzeResources(account));
+    public ResponseEntity<CostAnalysisRun> analyzeResources(
+            @PathVariable Long accountId,
+            @RequestParam(required = false) Long timeoutMinutes,
+            @RequestParam(defaultValue = "false") boolean force) {
+        AwsAccount account = entityCache.account(accountId);
         
-        return ResponseEntity.ok(analysisRun);
+        // The run continues in the background; follow it on /analyze/{runId}/events
+        CostAnalysisRun analysisRun = resourceAnalysisService.startResourceAnalysis(account, timeoutMinutes, !force);
+        return ResponseEntity.accepted().body(analysisRun);
+    }
+
+    @PostMapping("/{runId}/cancel")
+    public ResponseEntity<CostAnalysisRun> cancelAnalysis(@PathVariable Long runId) {
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        if (!resourceAnalysisService.cancel(runId)) {
+            throw new RuntimeException("Analysis run is not running");
+        }
+        // The run stops after the resource in flight; its final status arrives on the event stream
+        return ResponseEntity.accepted().body(analysisRun);
+    }
+
+    @GetMapping(path = "/{runId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @PathVariable Long runId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) throws IOException {
+        SseEmitter emitter = eventBroadcaster.subscribe(runId, lastEventId);
+        if (emitter != null) {
+            return emitter;
+        }
+
+        // No live event log for this run: report its persisted outcome and close the stream
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        SseEmitter finished = new SseEmitter();
+        finished.send(SseEmitter.event()
+                .name(AnalysisEventBroadcaster.COMPLETE)
+                .data(Map.of("status", analysisRun.getStatus())));
+        finished.complete();
+        return finished;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package com.costwise.controller;
+
+import com.costwise.service.CommitmentOptimizer;
+import com.costwise.service.CommitmentRecommendation;
+import com.costwise.service.CostTrend;
+import com.costwise.service.CostTrendService;
+import com.costwise.service.EntityCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/costs")
+@RequiredArgsConstructor
+public class CostTrendController {
+    private final CostTrendService costTrendService;
+    private final EntityCache entityCache;
+    private final CommitmentOptimizer commitmentOptimizer;
+
+    @GetMapping("/{accountId}/trend")
+    public ResponseEntity<CostTrend> getTrend(
+            @PathVariable Long accountId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "service", required = false) List<String> services,
+            @RequestParam(defaultValue = CostTrendService.DAILY) String granularity,
+            @RequestParam(defaultValue = "500") int points,
+            @RequestParam(defaultValue = CostTrendService.LTTB) String downsampling) {
+        entityCache.account(accountId);
+        return ResponseEntity.ok(costTrendService.trend(accountId, from, to, services,
+                granularity.toUpperCase(), points, downsampling.toUpperCase()));
+    }
+
+    @GetMapping("/commitments")
+    public ResponseEntity<List<CommitmentRecommendation>> getCommitments(
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        return ResponseEntity.ok(commitmentOptimizer.recommendations(refresh));
+    }
+}
@@ -0,0 +1,36 @@
+package com.costwise.controller;
+
+import com.costwise.model.SuppressionRule;
+import com.costwise.service.EntityCache;
+import com.costwise.service.SuppressionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/suppressions")
+@RequiredArgsConstructor
+public class SuppressionController {
+    private final SuppressionService suppressionService;
+    private final EntityCache entityCache;
+
+    @GetMapping("/{accountId}")
+    public ResponseEntity<List<SuppressionRule>> getRules(@PathVariable Long accountId) {
+        entityCache.account(accountId);
+        return ResponseEntity.ok(suppressionService.rules(accountId));
+    }
+
+    @PostMapping("/{accountId}")
+    public ResponseEntity<SuppressionRule> addRule(@PathVariable Long accountId, @RequestBody SuppressionRule rule) {
+        entityCache.account(accountId);
+        return ResponseEntity.ok(suppressionService.add(accountId, rule));
+    }
+
+    @DeleteMapping("/{accountId}/{ruleId}")
+    public ResponseEntity<Void> deleteRule(@PathVariable Long accountId, @PathVariable Long ruleId) {
+        suppressionService.delete(accountId, ruleId);
+        return ResponseEntity.noContent().build();
+    }
+}
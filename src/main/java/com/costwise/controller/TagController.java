@@ -0,0 +1,42 @@
+package com.costwise.controller;
+
+import com.costwise.service.EntityCache;
+import com.costwise.service.TagAllocation;
+import com.costwise.service.TagIndexService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/tags")
+@RequiredArgsConstructor
+public class TagController {
+    private final TagIndexService tagIndexService;
+    private final EntityCache entityCache;
+
+    @GetMapping("/{accountId}")
+    public ResponseEntity<Map<String, Map<String, Integer>>> getTags(@PathVariable Long accountId) {
+        entityCache.account(accountId);
+        return ResponseEntity.ok(tagIndexService.index(accountId).counts());
+    }
+
+    @GetMapping("/{accountId}/resources")
+    public ResponseEntity<List<String>> getResources(
+            @PathVariable Long accountId,
+            @RequestParam(name = "tag", required = false) List<String> filters,
+            @RequestParam(defaultValue = "1000") int limit) {
+        entityCache.account(accountId);
+        return ResponseEntity.ok(tagIndexService.resources(accountId, filters, limit));
+    }
+
+    @GetMapping("/runs/{runId}/allocation")
+    public ResponseEntity<TagAllocation> getAllocation(
+            @PathVariable Long runId,
+            @RequestParam(name = "tag", required = false) List<String> filters,
+            @RequestParam(required = false) String groupBy) {
+        return ResponseEntity.ok(tagIndexService.allocation(runId, filters, groupBy));
+    }
+}
@@ -0,0 +1,42 @@
+package com.costwise.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Execution trace of one part of an analysis run, as {@link TraceSpan} JSON. A run that was
+ * resumed, or whose work units ran on several nodes, has one row per part; they are merged
+ * when the run's trace is read.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "analysis_traces", indexes = @Index(name = "idx_analysis_traces_run", columnList = "analysis_run_id"))
+public class AnalysisTrace {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "analysis_run_id", nullable = false)
+    private Long analysisRunId;
+
+    @Column(nullable = false, length = 128)
+    private String segment; // What produced this part, e.g. "EC2 in us-east-1"
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "mediumtext")
+    private String trace;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public AnalysisTrace(Long analysisRunId, String segment, String trace) {
+        this.analysisRunId = analysisRunId;
+        this.segment = segment;
+        this.trace = trace;
+    }
+}
@@ -1,5 +1,6 @@
 package com.costwise.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.Data;
 import org.hibernate.annotations.CreationTimestamp;
@@ -23,9 +24,11 @@ public class AwsAccount {
     @Column(nullable = false)
     private String accountId;
 
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY) // Decrypted once loaded; never serialized
     @Column(nullable = false)
     private String accessKey;
 
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @Column(nullable = false)
     private String secretKey;
 
@@ -35,6 +38,9 @@ public class AwsAccount {
     @Column(nullable = false)
     private boolean active = true;
 
+    @Column
+    private Integer schedulingWeight; // Share of analysis slots relative to other accounts; null counts as 1
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
@@ -0,0 +1,30 @@
+package com.costwise.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Checkpoint marker for a resource whose checks have finished and whose findings are saved,
+ * so a resumed run can skip it. Rows are removed once the run finishes.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "completed_resources", indexes = @Index(name = "idx_completed_resources_run", columnList = "analysis_run_id"))
+public class CompletedResource {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "analysis_run_id", nullable = false)
+    private Long analysisRunId;
+
+    @Column(nullable = false)
+    private String resourceKey; // <service>:<resource id>
+
+    public CompletedResource(Long analysisRunId, String resourceKey) {
+        this.analysisRunId = analysisRunId;
+        this.resourceKey = resourceKey;
+    }
+}
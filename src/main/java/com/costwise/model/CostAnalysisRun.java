@@ -10,7 +10,7 @@ import java.util.List;
 
 @Data
 @Entity
-@Table(name = "cost_analysis_runs")
+@Table(name = "cost_analysis_runs", indexes = @Index(name = "idx_cost_analysis_runs_created_at", columnList = "createdAt"))
 public class CostAnalysisRun {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -26,12 +26,36 @@ public class CostAnalysisRun {
     @Column(nullable = false)
     private LocalDateTime endDate;
 
+    @Column(length = 16)
+    private String analysisType; // COST, CUR, RESOURCE
+
     @Column(nullable = false)
-    private String status; // PENDING, RUNNING, COMPLETED, FAILED
+    private String status; // PENDING, RUNNING, COMPLETED, FAILED, CANCELLED, TIMED_OUT
 
     @Column
     private String errorMessage;
 
+    @Column
+    private LocalDateTime deadline;
+
+    @Column
+    private LocalDateTime checkpointedAt;
+
+    @Column
+    private LocalDateTime heartbeatAt; // Renewed by the node running a CUR run, so other nodes can tell it is alive
+
+    @Column
+    private LocalDateTime archivedAt; // Findings moved to archivePath; only run_summaries remain
+
+    @Column
+    private String archivePath;
+
+    @Column(nullable = false, columnDefinition = "int default 0")
+    private int archiveFailures; // Failed archiving attempts; retention gives up on the run after a few
+
+    @Column
+    private LocalDateTime restoredAt;
+
     @Column(nullable = false)
     private double totalCost;
 
@@ -0,0 +1,43 @@
+package com.costwise.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Unblended cost of one service on one day for an account, kept from every Cost Explorer
+ * analysis so cost trends can be charted without calling Cost Explorer again. CUR analyses are
+ * not recorded, see {@link com.costwise.service.CostTrendService}.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "daily_service_costs",
+        uniqueConstraints = @UniqueConstraint(name = "uk_daily_service_costs_account_date_service",
+                columnNames = {"aws_account_id", "usage_date", "service"}))
+public class DailyServiceCost {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "aws_account_id", nullable = false)
+    private Long awsAccountId;
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @Column(nullable = false)
+    private String service;
+
+    @Column(nullable = false)
+    private double cost;
+
+    public DailyServiceCost(Long awsAccountId, LocalDate usageDate, String service, double cost) {
+        this.awsAccountId = awsAccountId;
+        this.usageDate = usageDate;
+        this.service = service;
+        this.cost = cost;
+    }
+}
@@ -0,0 +1,255 @@
+package com.costwise.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Catalog of the checks that produce findings.
+ * <p>
+ * A finding stores only its check's code and the variable parts of its text; the resource type,
+ * default severity and the current-state and suggested-action texts live here. Templates refer
+ * to a finding's parameters as {@code {0}}, {@code {1}}, ... and are only filled in when a
+ * finding is rendered. Codes are persisted, so they must never be reused or renumbered.
+ */
+public enum FindingCheck {
+    EC2_IDLE(1, "EC2", "HIGH",
+            "Idle instance (CPU < 10%, low network I/O)",
+            "Consider stopping or terminating the instance"),
+    EC2_OVERPROVISIONED(2, "EC2", "MEDIUM",
+            "Overprovisioned instance (low resource utilization)",
+            "Consider downsizing to a smaller instance type"),
+    EC2_OLD_GENERATION(3, "EC2", "MEDIUM",
+            "Using older generation instance type: {0}",
+            "Consider migrating to {1} family"),
+    EC2_ALWAYS_ON_DEMAND(4, "EC2", "HIGH",
+            "On-Demand instance running 24/7",
+            "Consider using Reserved Instances or Savings Plans"),
+    EC2_REGION_PRICING(5, "EC2", "MEDIUM",
+            "Instance running in {0}",
+            "Consider moving to a lower-cost region"),
+    EC2_STOPPED_WITH_EBS(6, "EC2", "MEDIUM",
+            "Stopped instance with attached EBS volumes",
+            "Consider creating snapshots and removing unused volumes"),
+    EC2_IDLE_ELASTIC_IP(7, "EC2", "MEDIUM",
+            "Stopped instance with associated Elastic IP",
+            "Consider releasing the Elastic IP"),
+    EC2_NO_AUTO_SCALING(8, "EC2", "MEDIUM",
+            "Instance not part of an Auto Scaling Group",
+            "Consider adding to an Auto Scaling Group for better scalability"),
+    EC2_SPOT_CANDIDATE(9, "EC2", "MEDIUM",
+            "Using On-Demand instance",
+            "Consider using Spot Instances for non-critical workloads"),
+    EC2_UNUSED_RESERVATION(10, "EC2", "MEDIUM",
+            "Instance type has available Reserved Instance capacity",
+            "Consider purchasing Reserved Instances for long-term cost savings"),
+    EC2_NO_LIFECYCLE_POLICY(11, "EC2", "MEDIUM",
+            "Non-production instance without lifecycle policies",
+            "Implement automated shutdown/start schedules"),
+    EC2_HIGH_NETWORK_TRANSFER(12, "EC2", "MEDIUM",
+            "High network transfer costs",
+            "Consider using S3 Transfer Acceleration or CDN"),
+    ASG_OVERPROVISIONED(13, "AutoScaling", "MEDIUM",
+            "Overprovisioned Auto Scaling group (low utilization across instances)",
+            "Consider a smaller instance type or lower desired capacity for the group"),
+    RDS_SINGLE_AZ(20, "RDS", "HIGH",
+            "Single-AZ deployment",
+            "Consider enabling Multi-AZ for high availability"),
+    RDS_NO_MINOR_UPGRADE(21, "RDS", "MEDIUM",
+            "Auto minor version upgrade disabled",
+            "Enable auto minor version upgrade for better maintenance"),
+    ELASTICACHE_SINGLE_NODE(30, "ElastiCache", "HIGH",
+            "Single-node Redis deployment",
+            "Consider using Redis cluster mode for high availability"),
+    ELB_PUBLIC(40, "LoadBalancer", "MEDIUM",
+            "Public load balancer",
+            "Consider using internal load balancer if external access is not needed"),
+    LAMBDA_LOW_MEMORY(50, "Lambda", "MEDIUM",
+            "Low memory allocation",
+            "Consider increasing memory for better performance"),
+    S3_VERSIONING_DISABLED(60, "S3", "HIGH",
+            "Versioning disabled",
+            "Enable versioning for data protection"),
+    S3_LIFECYCLE_TRANSITION(61, "S3", "MEDIUM",
+            "{0} GB in STANDARD older than 30 days, no transition rules",
+            "Add lifecycle transitions to STANDARD_IA after 30 days and Glacier Instant Retrieval after 90 days"),
+    S3_NONCURRENT_VERSIONS(62, "S3", "MEDIUM",
+            "{0} GB of noncurrent versions kept indefinitely",
+            "Add a lifecycle rule expiring noncurrent versions"),
+    S3_NO_MULTIPART_ABORT(63, "S3", "LOW",
+            "Incomplete multipart uploads are never cleaned up",
+            "Add a lifecycle rule aborting incomplete multipart uploads after 7 days"),
+    COST_SPIKE(70, "Cost", "MEDIUM",
+            "Cost spike on {0}: ${1} vs expected ${2}",
+            "Investigate the usage change behind this cost spike"),
+    COST_CREEP(71, "Cost", "MEDIUM",
+            "Sustained cost increase as of {0}: ${1}/day vs long-term ${2}/day",
+            "Review recent growth in usage for this service"),
+    COST_HIGH(72, "Cost", "HIGH",
+            "High cost detected",
+            "Review usage patterns and consider reserved instances"),
+    // Findings stored before the catalog whose texts match no other check, kept verbatim; must stay last
+    LEGACY(127, "Legacy", "MEDIUM",
+            "{0}",
+            "{1}");
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\d)}");
+    private static final FindingCheck[] BY_CODE = new FindingCheck[128];
+
+    static {
+        for (FindingCheck check : values()) {
+            if (BY_CODE[check.code] != null) {
+                throw new IllegalStateException("Duplicate finding check code " + check.code);
+            }
+            BY_CODE[check.code] = check;
+        }
+    }
+
+    private final short code;
+    private final String resourceType;
+    private final String severity;
+    private final String currentState;
+    private final String suggestedAction;
+    private volatile Template[] parsers;
+
+    FindingCheck(int code, String resourceType, String severity, String currentState, String suggestedAction) {
+        this.code = (short) code;
+        this.resourceType = resourceType;
+        this.severity = severity;
+        this.currentState = currentState;
+        this.suggestedAction = suggestedAction;
+    }
+
+    public static FindingCheck fromCode(short code) {
+        FindingCheck check = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (check == null) {
+            throw new RuntimeException("Unknown finding check code " + code);
+        }
+        return check;
+    }
+
+    public short getCode() {
+        return code;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public String getSeverity() {
+        return severity;
+    }
+
+    public String currentState(List<String> params) {
+        return render(currentState, params);
+    }
+
+    public String suggestedAction(List<String> params) {
+        return render(suggestedAction, params);
+    }
+
+    /**
+     * Recovers the parameters of a finding stored before the catalog existed from its rendered
+     * texts. Returns null if the texts were not produced by this check.
+     */
+    public List<String> parse(String renderedState, String renderedAction) {
+        Template[] templates = parsers;
+        if (templates == null) {
+            templates = new Template[]{new Template(currentState), new Template(suggestedAction)};
+            parsers = templates;
+        }
+        String[] params = new String[10];
+        if (!templates[0].extract(renderedState, params) || !templates[1].extract(renderedAction, params)) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        for (String param : params) {
+            if (param == null) {
+                break;
+            }
+            values.add(param);
+        }
+        return values;
+    }
+
+    /**
+     * The check of a finding stored without a check id, recognized by its texts; {@link #LEGACY}
+     * if no other check matches, null only without texts.
+     */
+    public static FindingCheck match(String renderedState, String renderedAction) {
+        for (FindingCheck check : values()) {
+            if (check.parse(renderedState, renderedAction) != null) {
+                return check;
+            }
+        }
+        return null;
+    }
+
+    private static String render(String template, List<String> params) {
+        if (template.indexOf('{') < 0) {
+            return template;
+        }
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        StringBuilder rendered = new StringBuilder(template.length() + 32);
+        while (matcher.find()) {
+            int index = matcher.group(1).charAt(0) - '0';
+            matcher.appendReplacement(rendered, "");
+            rendered.append(index < params.size() ? params.get(index) : "?");
+        }
+        matcher.appendTail(rendered);
+        return rendered.toString();
+    }
+
+    /** A template compiled into a regex that captures its placeholders. */
+    private static final class Template {
+        final Pattern pattern;
+        final int[] indexes;
+
+        Template(String template) {
+            Matcher placeholders = PLACEHOLDER.matcher(template);
+            StringBuilder regex = new StringBuilder();
+            List<Integer> found = new ArrayList<>();
+            int last = 0;
+            while (placeholders.find()) {
+                regex.append(Pattern.quote(template.substring(last, placeholders.start()))).append("(.*?)");
+                found.add(placeholders.group(1).charAt(0) - '0');
+                last = placeholders.end();
+            }
+            regex.append(Pattern.quote(template.substring(last)));
+            pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+            indexes = found.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        boolean extract(String rendered, String[] params) {
+            if (rendered == null) {
+                return false;
+            }
+            Matcher matcher = pattern.matcher(rendered);
+            if (!matcher.matches()) {
+                return false;
+            }
+            for (int i = 0; i < indexes.length; i++) {
+                params[indexes[i]] = matcher.group(i + 1);
+            }
+            return true;
+        }
+    }
+
+    /** Persists a check as its code. */
+    @Converter
+    public static class CodeConverter implements AttributeConverter<FindingCheck, Short> {
+        @Override
+        public Short convertToDatabaseColumn(FindingCheck check) {
+            return check == null ? null : check.code;
+        }
+
+        @Override
+        public FindingCheck convertToEntityAttribute(Short code) {
+            return code == null ? null : fromCode(code);
+        }
+    }
+}
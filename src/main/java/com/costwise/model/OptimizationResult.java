@@ -1,34 +1,60 @@
 package com.costwise.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.google.common.hash.Hashing;
 import jakarta.persistence.*;
 import lombok.Data;
-import org.hibernate.annotations.CreationTimestamp;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * One finding of an analysis run. The texts shown for a finding come from its {@link FindingCheck};
+ * a row holds only the check's code, the variable parts of its texts and the severity when it
+ * differs from the check's, and the texts are rendered on read.
+ */
 @Data
 @Entity
-@Table(name = "optimization_results")
+@JsonIgnoreProperties(ignoreUnknown = true)
+@Table(name = "optimization_results", indexes = {
+        @Index(name = "idx_optimization_results_run_fingerprint", columnList = "analysis_run_id, fingerprint"),
+        // Covers the per-check summaries, which then never read the findings' rows
+        @Index(name = "idx_optimization_results_run_check", columnList = "analysis_run_id, check_code, currentCost, potentialSavings")
+})
 public class OptimizationResult {
+    public static final String PARAM_SEPARATOR = "\u001F";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "analysis_run_id", nullable = false)
     private CostAnalysisRun analysisRun;
 
-    @Column(nullable = false)
-    private String resourceType; // EC2, RDS, EBS, etc.
-
     @Column(nullable = false)
     private String resourceId;
 
-    @Column(nullable = false)
-    private String currentState;
+    @JsonIgnore
+    @Convert(converter = FindingCheck.CodeConverter.class)
+    @Column(name = "check_code", nullable = false, columnDefinition = "smallint default 0") // 0: not migrated yet
+    private FindingCheck check;
 
-    @Column(nullable = false)
-    private String suggestedAction;
+    @JsonIgnore
+    @Column(length = 512)
+    private String checkParams; // Variable parts of the check's texts, separated by PARAM_SEPARATOR
+
+    @Column
+    private Long fingerprint; // Stable across runs: same resource and check, same fingerprint
 
     @Column(nullable = false)
     private double currentCost;
@@ -36,12 +62,120 @@ public class OptimizationResult {
     @Column(nullable = false)
     private double potentialSavings;
 
-    @Column(nullable = false)
-    private String severity; // HIGH, MEDIUM, LOW
+    @JsonIgnore
+    @Column(name = "resource_type")
+    private String legacyResourceType; // Only set for LEGACY findings, whose check has no real resource type
+
+    @JsonIgnore
+    @Column(length = 8)
+    private String severityOverride; // Only set when it differs from the check's severity
 
     @Column
     private String additionalDetails;
 
-    @CreationTimestamp
-    private LocalDateTime createdAt;
-} 
\ No newline at end of file
+    private LocalDateTime createdAt; // Set on first insert; restored findings keep their original one
+
+    // Texts of findings archived before the check catalog, resolved against it when restored
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String legacyCurrentState;
+
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String legacySuggestedAction;
+
+    public void setCheck(FindingCheck check, String... params) {
+        this.check = check;
+        setParams(Arrays.asList(params));
+    }
+
+    public String getCheckId() {
+        return check == null ? null : check.name();
+    }
+
+    public void setCheckId(String checkId) {
+        check = checkId == null ? null : FindingCheck.valueOf(checkId);
+    }
+
+    public String getResourceType() {
+        if (check == FindingCheck.LEGACY && legacyResourceType != null) {
+            return legacyResourceType;
+        }
+        return check == null ? null : check.getResourceType();
+    }
+
+    @JsonSetter("resourceType")
+    void restoreResourceType(String resourceType) {
+        legacyResourceType = resourceType;
+    }
+
+    public String getSeverity() {
+        return severityOverride != null || check == null ? severityOverride : check.getSeverity();
+    }
+
+    public void setSeverity(String severity) {
+        severityOverride = severity;
+    }
+
+    public String getCurrentState() {
+        return check == null ? legacyCurrentState : check.currentState(getParams());
+    }
+
+    @JsonSetter("currentState")
+    void restoreCurrentState(String currentState) {
+        legacyCurrentState = currentState;
+    }
+
+    public String getSuggestedAction() {
+        return check == null ? legacySuggestedAction : check.suggestedAction(getParams());
+    }
+
+    @JsonSetter("suggestedAction")
+    void restoreSuggestedAction(String suggestedAction) {
+        legacySuggestedAction = suggestedAction;
+    }
+
+    public List<String> getParams() {
+        return checkParams == null ? List.of() : Arrays.asList(checkParams.split(PARAM_SEPARATOR, -1));
+    }
+
+    public void setParams(List<String> params) {
+        checkParams = params == null || params.isEmpty() ? null : String.join(PARAM_SEPARATOR, params);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void normalize() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        if (check == null) {
+            check = FindingCheck.match(legacyCurrentState, legacySuggestedAction);
+            if (check == null) {
+                throw new RuntimeException("Finding has neither a check nor texts: " + resourceId);
+            }
+        }
+        if (checkParams == null && legacyCurrentState != null) {
+            setParams(check.parse(legacyCurrentState, legacySuggestedAction));
+        }
+        if (check.getSeverity().equals(severityOverride)) {
+            severityOverride = null;
+        }
+        if (check != FindingCheck.LEGACY || check.getResourceType().equals(legacyResourceType)) {
+            legacyResourceType = null;
+        }
+        fingerprint = fingerprint(check.getResourceType(), resourceId, check.name());
+    }
+
+    public static long fingerprint(String resourceType, String resourceId, String checkId) {
+        return Hashing.farmHashFingerprint64().newHasher()
+                .putString(resourceType, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(resourceId, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(checkId, StandardCharsets.UTF_8)
+                .hash().asLong();
+    }
+}
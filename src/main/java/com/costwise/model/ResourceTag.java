@@ -0,0 +1,49 @@
+package com.costwise.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One tag of one AWS resource, as last seen by a resource analysis. Resources are identified
+ * like findings, by resource type and id, so findings can be joined to their tags.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "resource_tags", indexes = @Index(name = "idx_resource_tags_account_resource",
+        columnList = "aws_account_id, resourceType, resourceId"))
+public class ResourceTag {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "aws_account_id", nullable = false)
+    private Long awsAccountId;
+
+    @Column(nullable = false)
+    private String resourceType;
+
+    @Column(nullable = false)
+    private String resourceId;
+
+    @Column(nullable = false, length = 128)
+    private String tagKey;
+
+    @Column(nullable = false, length = 256) // AWS allows 256 characters
+    private String tagValue;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    public ResourceTag(Long awsAccountId, String resourceType, String resourceId, String tagKey, String tagValue) {
+        this.awsAccountId = awsAccountId;
+        this.resourceType = resourceType;
+        this.resourceId = resourceId;
+        this.tagKey = tagKey;
+        this.tagValue = tagValue;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,35 @@
+package com.costwise.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Per-run rollup of findings by resource type and check, kept after the run's raw findings
+ * have been archived.
+ */
+@Data
+@Entity
+@Table(name = "run_summaries", indexes = @Index(name = "idx_run_summaries_run", columnList = "analysis_run_id"))
+public class RunSummary {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "analysis_run_id", nullable = false)
+    private Long analysisRunId;
+
+    @Column(nullable = false)
+    private String resourceType;
+
+    @Column(length = 64)
+    private String checkId;
+
+    @Column(nullable = false)
+    private long findingCount;
+
+    @Column(nullable = false)
+    private double currentCost;
+
+    @Column(nullable = false)
+    private double potentialSavings;
+}
@@ -0,0 +1,57 @@
+package com.costwise.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A rule keeping matching findings of an account out of its analyses, e.g. for resources that
+ * are accepted as they are. Every condition that is set must match; an unset condition matches
+ * anything. Resource patterns are matched against a finding's resource id or ARN, with {@code *}
+ * matching any run of characters and {@code ?} any single character.
+ */
+@Data
+@Entity
+@Table(name = "suppression_rules", indexes = @Index(name = "idx_suppression_rules_account", columnList = "aws_account_id"))
+public class SuppressionRule {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "aws_account_id", nullable = false)
+    private Long awsAccountId;
+
+    @Column(length = 512)
+    private String resourcePattern;
+
+    @Column
+    private String resourceType;
+
+    @JsonIgnore
+    @Convert(converter = FindingCheck.CodeConverter.class)
+    @Column(name = "check_code")
+    private FindingCheck check;
+
+    @Column(length = 128)
+    private String tagKey;
+
+    @Column
+    private String tagValue; // Only checked when tagKey is set; null matches any value
+
+    @Column
+    private String reason;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public String getCheckId() {
+        return check == null ? null : check.name();
+    }
+
+    public void setCheckId(String checkId) {
+        check = checkId == null ? null : FindingCheck.valueOf(checkId);
+    }
+}
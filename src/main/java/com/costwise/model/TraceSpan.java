@@ -0,0 +1,81 @@
+package com.costwise.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One node of a run's execution trace: a region, service, check or AWS operation. Call, retry,
+ * throttle, error and byte counts include those of the node's children; for an AWS operation
+ * {@code count} and {@code calls} are both the number of calls made.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+public class TraceSpan {
+    private String name;
+    private long count;
+    private long wallMicros;
+    private long calls;
+    private long retries;
+    private long throttles;
+    private long errors;
+    private long bytesSent;
+    private long bytesReceived;
+    private List<TraceSpan> children = new ArrayList<>();
+
+    /** Adds a child and rolls its call counters up into this span. */
+    public void addChild(TraceSpan child) {
+        children.add(child);
+        addCalls(child);
+    }
+
+    /** Adds another trace of the same span, e.g. from another node or an earlier attempt of the run. */
+    public void merge(TraceSpan other) {
+        count += other.count;
+        wallMicros += other.wallMicros;
+        addCalls(other);
+        for (TraceSpan otherChild : other.children) {
+            TraceSpan child = children.stream().filter(c -> c.name.equals(otherChild.name)).findFirst().orElse(null);
+            if (child == null) {
+                children.add(otherChild);
+            } else {
+                child.merge(otherChild);
+            }
+        }
+    }
+
+    /**
+     * Appends the span in folded-stack format, one {@code root;child;grandchild self-micros} line
+     * per span, as read by flame graph tools. Self time is wall time not spent in children, which
+     * is zero for spans whose children ran in parallel.
+     */
+    public void fold(String prefix, StringBuilder out) {
+        String path = prefix.isEmpty() ? frame(name) : prefix + ";" + frame(name);
+        long childMicros = 0;
+        for (TraceSpan child : children) {
+            childMicros += child.wallMicros;
+        }
+        long self = Math.max(wallMicros - childMicros, 0);
+        if (self > 0) {
+            out.append(path).append(' ').append(self).append('\n');
+        }
+        for (TraceSpan child : children) {
+            child.fold(path, out);
+        }
+    }
+
+    private void addCalls(TraceSpan other) {
+        calls += other.calls;
+        retries += other.retries;
+        throttles += other.throttles;
+        errors += other.errors;
+        bytesSent += other.bytesSent;
+        bytesReceived += other.bytesReceived;
+    }
+
+    private static String frame(String name) {
+        return name.replace(';', '_').replace(' ', '_');
+    }
+}
@@ -0,0 +1,62 @@
+package com.costwise.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One service of one region of a resource analysis, queued for distributed workers. A worker
+ * leases the unit for a limited time and renews the lease while it works; a unit whose lease
+ * expires, because its worker died, is leased again by another node.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "work_units", indexes = {
+        @Index(name = "idx_work_units_status_lease", columnList = "status, leaseExpiresAt"),
+        @Index(name = "idx_work_units_run", columnList = "analysis_run_id")})
+public class WorkUnit {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "analysis_run_id", nullable = false)
+    private Long analysisRunId;
+
+    @Column(nullable = false)
+    private String region;
+
+    @Column(nullable = false)
+    private String service;
+
+    @Column(nullable = false)
+    private String status; // PENDING, LEASED, COMPLETED, FAILED, CANCELLED, TIMED_OUT
+
+    @Column
+    private String leaseOwner;
+
+    @Column
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false)
+    private boolean cancelRequested;
+
+    @Column(length = 1000)
+    private String errorMessage;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public WorkUnit(Long analysisRunId, String region, String service) {
+        this.analysisRunId = analysisRunId;
+        this.region = region;
+        this.service = service;
+        this.status = "PENDING";
+    }
+}
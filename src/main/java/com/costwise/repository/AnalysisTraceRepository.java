@@ -0,0 +1,21 @@
+package com.costwise.repository;
+
+import com.costwise.model.AnalysisTrace;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface AnalysisTraceRepository extends JpaRepository<AnalysisTrace, Long> {
+    List<AnalysisTrace> findByAnalysisRunIdOrderByIdAsc(Long analysisRunId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from AnalysisTrace t where t.analysisRunId = :runId")
+    int deleteByAnalysisRunId(@Param("runId") Long runId);
+}
@@ -0,0 +1,20 @@
+package com.costwise.repository;
+
+import com.costwise.model.CompletedResource;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CompletedResourceRepository extends JpaRepository<CompletedResource, Long> {
+    @Query("select c.resourceKey from CompletedResource c where c.analysisRunId = :runId")
+    List<String> findResourceKeysByAnalysisRunId(@Param("runId") Long runId);
+
+    @Modifying
+    @Query("delete from CompletedResource c where c.analysisRunId = :runId")
+    int deleteByAnalysisRunId(@Param("runId") Long runId);
+}
@@ -1,13 +1,74 @@
 package com.costwise.repository;
 
 import com.costwise.model.CostAnalysisRun;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface CostAnalysisRunRepository extends JpaRepository<CostAnalysisRun, Long> {
     List<CostAnalysisRun> findByAwsAccountIdOrderByCreatedAtDesc(Long awsAccountId);
     List<CostAnalysisRun> findByStatus(String status);
-} 
\ No newline at end of file
+    List<CostAnalysisRun> findByAwsAccountIdAndAnalysisTypeAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(
+            Long awsAccountId, String analysisType, String status, LocalDateTime createdAfter);
+    Optional<CostAnalysisRun> findFirstByAwsAccountIdAndAnalysisTypeAndStatusOrderByCreatedAtDesc(
+            Long awsAccountId, String analysisType, String status);
+
+    @EntityGraph(attributePaths = "awsAccount")
+    List<CostAnalysisRun> findWithAwsAccountByStatus(String status);
+
+    @EntityGraph(attributePaths = {"awsAccount", "optimizationResults"})
+    Optional<CostAnalysisRun> findWithResultsById(Long id);
+
+    @EntityGraph(attributePaths = "awsAccount")
+    Optional<CostAnalysisRun> findWithAwsAccountById(Long id);
+
+    /**
+     * Finished, unarchived runs created before {@code cutoff} that were not restored after it, in
+     * id order after {@code afterId}, leaving out runs that failed to archive {@code maxFailures}
+     * times.
+     */
+    @Query("select r from CostAnalysisRun r where r.createdAt < :cutoff and r.archivedAt is null "
+            + "and r.status <> 'RUNNING' and (r.restoredAt is null or r.restoredAt < :cutoff) "
+            + "and r.archiveFailures < :maxFailures and r.id > :afterId order by r.id")
+    List<CostAnalysisRun> findArchivableRuns(@Param("cutoff") LocalDateTime cutoff, @Param("maxFailures") int maxFailures,
+                                             @Param("afterId") Long afterId, Pageable pageable);
+
+    /** Archived runs that still have findings or traces, left behind by an interrupted archiving. */
+    @Query("select r from CostAnalysisRun r where r.archivedAt is not null "
+            + "and (exists (select o.id from OptimizationResult o where o.analysisRun = r) "
+            + "or exists (select t.id from AnalysisTrace t where t.analysisRunId = r.id)) "
+            + "and r.archiveFailures < :maxFailures and r.id > :afterId order by r.id")
+    List<CostAnalysisRun> findPartlyArchivedRuns(@Param("maxFailures") int maxFailures, @Param("afterId") Long afterId,
+                                                 Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("update CostAnalysisRun r set r.archiveFailures = r.archiveFailures + 1 where r.id = :id")
+    int recordArchiveFailure(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("update CostAnalysisRun r set r.heartbeatAt = :now where r.id in :ids and r.status = 'RUNNING'")
+    int renewHeartbeats(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    /** RUNNING cost and CUR runs whose node has not renewed their heartbeat since {@code staleBefore}. */
+    @Query("select r from CostAnalysisRun r where r.status = 'RUNNING' and r.analysisType <> 'RESOURCE' "
+            + "and coalesce(r.heartbeatAt, r.createdAt) < :staleBefore")
+    List<CostAnalysisRun> findStaleCostRuns(@Param("staleBefore") LocalDateTime staleBefore);
+
+    /** Moves a run out of RUNNING; returns 0 if another caller already did. */
+    @Modifying
+    @Query("update CostAnalysisRun r set r.status = :status where r.id = :id and r.status = 'RUNNING'")
+    int updateStatusIfRunning(@Param("id") Long id, @Param("status") String status);
+}
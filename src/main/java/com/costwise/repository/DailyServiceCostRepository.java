@@ -0,0 +1,34 @@
+package com.costwise.repository;
+
+import com.costwise.model.DailyServiceCost;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DailyServiceCostRepository extends JpaRepository<DailyServiceCost, Long> {
+    /** (service, usageDate, cost) rows of an account in [from, to], ordered by service and date. */
+    @Query("select c.service, c.usageDate, c.cost from DailyServiceCost c where c.awsAccountId = :accountId "
+            + "and c.usageDate between :from and :to order by c.service, c.usageDate")
+    List<Object[]> findCostRows(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                @Param("to") LocalDate to);
+
+    @Query("select c.service, c.usageDate, c.cost from DailyServiceCost c where c.awsAccountId = :accountId "
+            + "and c.usageDate between :from and :to and c.service in :services order by c.service, c.usageDate")
+    List<Object[]> findCostRows(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                @Param("to") LocalDate to, @Param("services") Collection<String> services);
+
+    /** Earliest and latest stored usage date of an account, both null if it has none. */
+    @Query("select min(c.usageDate), max(c.usageDate) from DailyServiceCost c where c.awsAccountId = :accountId")
+    List<Object[]> findUsageDateRange(@Param("accountId") Long accountId);
+
+    @Modifying
+    @Query("delete from DailyServiceCost c where c.awsAccountId = :accountId and c.usageDate in :dates")
+    int deleteByAwsAccountIdAndUsageDates(@Param("accountId") Long accountId, @Param("dates") Collection<LocalDate> dates);
+}
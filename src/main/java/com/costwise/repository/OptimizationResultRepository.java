@@ -1,14 +1,64 @@
 package com.costwise.repository;
 
+import com.costwise.model.FindingCheck;
 import com.costwise.model.OptimizationResult;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface OptimizationResultRepository extends JpaRepository<OptimizationResult, Long> {
     List<OptimizationResult> findByAnalysisRunId(Long analysisRunId);
-    List<OptimizationResult> findByAnalysisRunIdAndSeverity(Long analysisRunId, String severity);
-    List<OptimizationResult> findByAnalysisRunIdAndResourceType(Long analysisRunId, String resourceType);
-} 
\ No newline at end of file
+    List<OptimizationResult> findByAnalysisRunIdAndCheckIn(Long analysisRunId, Collection<FindingCheck> checks);
+    long countByAnalysisRunId(Long analysisRunId);
+
+    @Query("select coalesce(sum(r.potentialSavings), 0) from OptimizationResult r where r.analysisRun.id = :runId")
+    double sumPotentialSavingsByAnalysisRunId(@Param("runId") Long runId);
+
+    /** Fingerprint, id and savings of every finding in a run, ordered by fingerprint; rows are Object[]. */
+    @Query("select r.fingerprint, r.id, r.potentialSavings from OptimizationResult r "
+            + "where r.analysisRun.id = :runId and r.fingerprint is not null order by r.fingerprint, r.id")
+    List<Object[]> findFingerprintsByAnalysisRunId(@Param("runId") Long runId);
+
+    List<OptimizationResult> findByAnalysisRunIdAndIdGreaterThanOrderByIdAsc(Long analysisRunId, Long id, Pageable pageable);
+
+    List<OptimizationResult> findByAnalysisRunIdAndCheckInAndIdGreaterThanOrderByIdAsc(
+            Long analysisRunId, Collection<FindingCheck> checks, Long id, Pageable pageable);
+
+    /** LEGACY findings of a run with the given resource type, or without one if null. */
+    List<OptimizationResult> findByAnalysisRunIdAndCheckAndLegacyResourceTypeAndIdGreaterThanOrderByIdAsc(
+            Long analysisRunId, FindingCheck check, String legacyResourceType, Long id, Pageable pageable);
+
+    /** Check, finding count, current cost and savings per check; rows are Object[]. */
+    @Query("select r.check, count(r), sum(r.currentCost), sum(r.potentialSavings) "
+            + "from OptimizationResult r where r.analysisRun.id = :runId group by r.check")
+    List<Object[]> summarizeByAnalysisRunId(@Param("runId") Long runId);
+
+    /** Resource type, finding count, current cost and savings of a run's LEGACY findings per resource type. */
+    @Query("select r.legacyResourceType, count(r), sum(r.currentCost), sum(r.potentialSavings) "
+            + "from OptimizationResult r where r.analysisRun.id = :runId and r.check = com.costwise.model.FindingCheck.LEGACY "
+            + "group by r.legacyResourceType")
+    List<Object[]> summarizeLegacyByAnalysisRunId(@Param("runId") Long runId);
+
+    /**
+     * Check, resource id, finding count, current cost, savings and resource type of LEGACY
+     * findings per resource and check; rows are Object[]. A resource with findings from several
+     * checks has a row for each.
+     */
+    @Query("select r.check, r.resourceId, count(r), max(r.currentCost), sum(r.potentialSavings), r.legacyResourceType "
+            + "from OptimizationResult r where r.analysisRun.id = :runId group by r.check, r.resourceId, r.legacyResourceType")
+    List<Object[]> summarizeResourcesByAnalysisRunId(@Param("runId") Long runId);
+
+    /** Deletes up to {@code limit} findings of a run in its own short transaction. */
+    @Transactional
+    @Modifying
+    @Query(value = "delete from optimization_results where analysis_run_id = :runId limit :limit", nativeQuery = true)
+    int deleteBatchByAnalysisRunId(@Param("runId") Long runId, @Param("limit") int limit);
+}
@@ -0,0 +1,25 @@
+package com.costwise.repository;
+
+import com.costwise.model.ResourceTag;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ResourceTagRepository extends JpaRepository<ResourceTag, Long> {
+    /** (resourceType, resourceId, tagKey, tagValue) rows of an account, grouped by resource. */
+    @Query("select t.resourceType, t.resourceId, t.tagKey, t.tagValue from ResourceTag t "
+            + "where t.awsAccountId = :accountId order by t.resourceType, t.resourceId")
+    List<Object[]> findTagRowsByAwsAccountId(@Param("accountId") Long accountId);
+
+    @Modifying
+    @Query("delete from ResourceTag t where t.awsAccountId = :accountId "
+            + "and t.resourceType = :resourceType and t.resourceId in :resourceIds")
+    int deleteByResources(@Param("accountId") Long accountId, @Param("resourceType") String resourceType,
+                          @Param("resourceIds") Collection<String> resourceIds);
+}
@@ -0,0 +1,13 @@
+package com.costwise.repository;
+
+import com.costwise.model.RunSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RunSummaryRepository extends JpaRepository<RunSummary, Long> {
+    List<RunSummary> findByAnalysisRunId(Long analysisRunId);
+    boolean existsByAnalysisRunId(Long analysisRunId);
+}
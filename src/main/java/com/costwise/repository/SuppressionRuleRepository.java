@@ -0,0 +1,12 @@
+package com.costwise.repository;
+
+import com.costwise.model.SuppressionRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SuppressionRuleRepository extends JpaRepository<SuppressionRule, Long> {
+    List<SuppressionRule> findByAwsAccountId(Long awsAccountId);
+}
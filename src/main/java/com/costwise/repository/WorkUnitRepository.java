@@ -0,0 +1,64 @@
+package com.costwise.repository;
+
+import com.costwise.model.WorkUnit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface WorkUnitRepository extends JpaRepository<WorkUnit, Long> {
+    /**
+     * Locks up to {@code limit} pending or lease-expired units. Rows locked by another node's
+     * lease transaction are skipped rather than waited for, so nodes never contend for a unit.
+     */
+    @Query(value = "select * from work_units where status = 'PENDING' or (status = 'LEASED' and lease_expires_at < :now) "
+            + "order by id limit :limit for update skip locked", nativeQuery = true)
+    List<WorkUnit> lockLeasable(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("update WorkUnit u set u.leaseExpiresAt = :expiresAt "
+            + "where u.id in :ids and u.leaseOwner = :owner and u.status = 'LEASED'")
+    int renewLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner,
+                    @Param("expiresAt") LocalDateTime expiresAt);
+
+    /** Ids among {@code ids} still leased by {@code owner}, with their cancellation flag; rows are Object[]. */
+    @Query("select u.id, u.cancelRequested from WorkUnit u "
+            + "where u.id in :ids and u.leaseOwner = :owner and u.status = 'LEASED'")
+    List<Object[]> findHeldLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    /** Ends a lease, only if {@code owner} still holds it. */
+    @Modifying
+    @Query("update WorkUnit u set u.status = :status, u.errorMessage = :errorMessage, u.leaseExpiresAt = null "
+            + "where u.id = :id and u.leaseOwner = :owner and u.status = 'LEASED'")
+    int release(@Param("id") Long id, @Param("owner") String owner, @Param("status") String status,
+                @Param("errorMessage") String errorMessage);
+
+    @Modifying
+    @Query("update WorkUnit u set u.status = 'CANCELLED' where u.analysisRunId = :runId and u.status = 'PENDING'")
+    int cancelPending(@Param("runId") Long runId);
+
+    @Modifying
+    @Query("update WorkUnit u set u.status = 'TIMED_OUT' where u.analysisRunId = :runId and u.status = 'PENDING'")
+    int timeOutPending(@Param("runId") Long runId);
+
+    @Modifying
+    @Query("update WorkUnit u set u.cancelRequested = true where u.analysisRunId = :runId and u.status = 'LEASED'")
+    int requestCancellation(@Param("runId") Long runId);
+
+    /** Status and unit count of a run's units; rows are Object[]. */
+    @Query("select u.status, count(u) from WorkUnit u where u.analysisRunId = :runId group by u.status")
+    List<Object[]> countByStatus(@Param("runId") Long runId);
+
+    @Query("select u.errorMessage from WorkUnit u where u.analysisRunId = :runId and u.errorMessage is not null order by u.id")
+    List<String> findErrorMessages(@Param("runId") Long runId);
+
+    @Modifying
+    @Query("delete from WorkUnit u where u.analysisRunId = :runId")
+    int deleteByAnalysisRunId(@Param("runId") Long runId);
+}
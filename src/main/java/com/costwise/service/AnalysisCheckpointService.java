@@ -0,0 +1,65 @@
+package com.costwise.service;
+
+import com.costwise.model.CompletedResource;
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.model.OptimizationResult;
+import com.costwise.repository.CompletedResourceRepository;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.OptimizationResultRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists the progress of long-running analyses: findings, completed resource keys and the
+ * resources' tags are written together, so after a crash a run resumes exactly after its last
+ * checkpoint.
+ */
+@Service
+@RequiredArgsConstructor
+public class AnalysisCheckpointService {
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+    private final CompletedResourceRepository completedResourceRepository;
+    private final EntityCache entityCache;
+    private final TagIndexService tagIndexService;
+
+    @Transactional
+    public void checkpoint(Long runId, List<OptimizationResult> findings, List<String> resourceKeys,
+                           Map<String, Map<String, String>> resourceTags) {
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        findings.forEach(finding -> finding.setAnalysisRun(analysisRun));
+        optimizationResultRepository.saveAll(findings);
+        completedResourceRepository.saveAll(resourceKeys.stream()
+                .map(key -> new CompletedResource(runId, key))
+                .toList());
+        tagIndexService.replaceTags(analysisRun.getAwsAccount().getId(), resourceTags);
+        analysisRun.setCheckpointedAt(LocalDateTime.now());
+    }
+
+    @Transactional(readOnly = true)
+    public Set<String> completedResources(Long runId) {
+        return new HashSet<>(completedResourceRepository.findResourceKeysByAnalysisRunId(runId));
+    }
+
+    /** Records the final status of a run; its savings total covers every checkpointed finding. */
+    @Transactional
+    public CostAnalysisRun finish(Long runId, String status, String errorMessage) {
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        analysisRun.setStatus(status);
+        analysisRun.setErrorMessage(errorMessage);
+        analysisRun.setEndDate(LocalDateTime.now());
+        analysisRun.setPotentialSavings(optimizationResultRepository.sumPotentialSavingsByAnalysisRunId(runId));
+        completedResourceRepository.deleteByAnalysisRunId(runId);
+        entityCache.evictRun(runId);
+        return analysisRun;
+    }
+}
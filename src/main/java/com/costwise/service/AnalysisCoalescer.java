@@ -0,0 +1,89 @@
+package com.costwise.service;
+
+import com.costwise.model.AwsAccount;
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.repository.CostAnalysisRunRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses identical analysis requests so a burst of them costs one analysis.
+ * <p>
+ * Requests are identified by account, analysis type and date range (by day, since Cost
+ * Explorer works in days). While one is in flight, identical requests wait for it and receive
+ * the same run. Within {@code costwise.analysis.reuse-window-minutes} of a COMPLETED run,
+ * identical requests get that run back instead of starting a new analysis.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnalysisCoalescer {
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final EntityCache entityCache;
+    private final Map<String, CompletableFuture<CostAnalysisRun>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${costwise.analysis.reuse-window-minutes:0}")
+    private long reuseWindowMinutes;
+
+    /**
+     * Returns the run of an identical request in flight, else a recent enough completed run if
+     * {@code allowReuse}, else the run produced by {@code analysis}. Date bounds may be null for
+     * analyses that have no requested range.
+     */
+    public CostAnalysisRun analyze(AwsAccount account, String analysisType, LocalDate startDate, LocalDate endDate,
+                                   boolean allowReuse, Supplier<CostAnalysisRun> analysis) {
+        String key = account.getId() + ":" + analysisType + ":" + startDate + ":" + endDate;
+        CompletableFuture<CostAnalysisRun> flight = new CompletableFuture<>();
+        CompletableFuture<CostAnalysisRun> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            log.debug("Joining in-flight {} analysis of account {}", analysisType, account.getId());
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            CostAnalysisRun analysisRun = allowReuse ? recentRun(account, analysisType, startDate, endDate) : null;
+            if (analysisRun == null) {
+                analysisRun = analysis.get();
+            }
+            flight.complete(analysisRun);
+            return analysisRun;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private CostAnalysisRun recentRun(AwsAccount account, String analysisType, LocalDate startDate, LocalDate endDate) {
+        if (reuseWindowMinutes <= 0) {
+            return null;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(reuseWindowMinutes);
+        for (CostAnalysisRun analysisRun : costAnalysisRunRepository
+                .findByAwsAccountIdAndAnalysisTypeAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(
+                        account.getId(), analysisType, "COMPLETED", cutoff)) {
+            if ((startDate == null || Objects.equals(startDate, analysisRun.getStartDate().toLocalDate()))
+                    && (endDate == null || Objects.equals(endDate, analysisRun.getEndDate().toLocalDate()))) {
+                log.debug("Reusing {} analysis run {} of account {}", analysisType, analysisRun.getId(), account.getId());
+                return entityCache.run(analysisRun.getId());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,278 @@
+package com.costwise.service;
+
+import com.costwise.model.OptimizationResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Progress sink and stop signal handed to the analyzers for one run.
+ * <p>
+ * Analyzers report each resource as soon as its checks finish, together with the findings those
+ * checks produced; the findings are published immediately and the per-service counters are
+ * published as throttled progress events. Findings, completed resource keys and resource tags are
+ * buffered and handed to a {@link CheckpointWriter} in batches, once enough findings have piled up
+ * or the checkpoint interval has passed, and resources completed before a restart are skipped. Every
+ * resource boundary is also where a cancelled or expired run stops, by throwing
+ * {@link AnalysisStoppedException}. Analyzers also open {@link ExecutionTrace} spans through the
+ * context so the run's trace shows where its time went. A run started by the
+ * {@link AnalysisScheduler} may also be paused at a resource boundary for interactive runs.
+ * Findings matched by the account's {@link SuppressionMatcher} are dropped from the analyzer's
+ * list before they are counted, published or stored. {@link #NONE} discards everything and
+ * never stops.
+ */
+@Slf4j
+public class AnalysisContext {
+    public static final AnalysisContext NONE = new AnalysisContext(null, null, null, null, Set.of(), 0, 0, null, SuppressionMatcher.NONE);
+
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+    private static final int PERSIST_QUEUE_BATCHES = 4;
+
+    private final Long runId;
+    private final AnalysisEventBroadcaster broadcaster;
+    private final Instant deadline;
+    private final Set<String> completedResources;
+    private final long checkpointIntervalNanos;
+    private final int persistBatchSize;
+    private final CheckpointWriter writer;
+    private final ExecutionTrace trace;
+    private final SuppressionMatcher suppressions;
+    private final Map<String, ServiceProgress> services = new LinkedHashMap<>();
+    private final List<OptimizationResult> pendingFindings = new ArrayList<>();
+    private final List<String> pendingResources = new ArrayList<>();
+    private final Map<String, Map<String, String>> pendingTags = new LinkedHashMap<>();
+    private volatile AnalysisScheduler.Lease lease;
+    private volatile boolean cancelled;
+    private long lastProgressNanos;
+    private long lastCheckpointNanos = System.nanoTime();
+
+    public AnalysisContext(Long runId, AnalysisEventBroadcaster broadcaster, AnalysisCheckpointService checkpoints,
+                           Instant deadline, Set<String> completedResources, long checkpointIntervalSeconds,
+                           int persistBatchSize, ExecutionTrace trace, SuppressionMatcher suppressions) {
+        this.runId = runId;
+        this.broadcaster = broadcaster;
+        this.deadline = deadline;
+        this.completedResources = completedResources;
+        this.checkpointIntervalNanos = checkpointIntervalSeconds * 1_000_000_000L;
+        this.persistBatchSize = persistBatchSize;
+        this.writer = runId == null || checkpoints == null ? null : new CheckpointWriter(runId, checkpoints, PERSIST_QUEUE_BATCHES);
+        this.trace = trace;
+        this.suppressions = suppressions;
+    }
+
+    public Long getRunId() {
+        return runId;
+    }
+
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
+
+    /** Opens a trace span under the innermost one open on this thread; does nothing if the run is not traced. */
+    public ExecutionTrace.Span span(String name) {
+        return trace == null ? ExecutionTrace.Span.NONE : trace.span(name);
+    }
+
+    /** Opens a trace span under {@code parent}, for work the span's thread handed to another thread. */
+    public ExecutionTrace.Span span(ExecutionTrace.Span parent, String name) {
+        return trace == null ? ExecutionTrace.Span.NONE : trace.span(parent, name);
+    }
+
+    /**
+     * True if findings reported to this context are stored by it, so analyzers need not keep them;
+     * false for {@link #NONE}, whose callers only get the analyzers' returned findings.
+     */
+    public boolean persistsFindings() {
+        return writer != null;
+    }
+
+    /** Makes {@link #checkActive()} a safe point where the scheduler can pause the run for interactive runs. */
+    public void setLease(AnalysisScheduler.Lease lease) {
+        this.lease = lease;
+    }
+
+    /** True if the resource was completed and checkpointed before the run was resumed. */
+    public boolean isCompleted(String service, String resourceId) {
+        return completedResources.contains(service + ":" + resourceId);
+    }
+
+    /**
+     * Records one scanned resource, the number of checks run against it and what they found,
+     * then stops the run if it was cancelled or has passed its deadline. Suppressed findings are
+     * removed from {@code findings}, so analyzers pass the part of their own results list holding
+     * the resource's findings.
+     */
+    public void resourceCompleted(String service, String resourceId, int checks, List<OptimizationResult> findings) {
+        resourceCompleted(service, resourceId, checks, findings, null);
+    }
+
+    /**
+     * As above, also recording the resource's tags for cost allocation. They replace the stored
+     * ones, so an empty map removes tags the resource no longer has; null leaves them as they are.
+     */
+    public void resourceCompleted(String service, String resourceId, int checks, List<OptimizationResult> findings,
+                                  Map<String, String> tags) {
+        if (runId == null) {
+            return;
+        }
+        int suppressed = suppressions.removeSuppressed(findings, tags == null ? Map.of() : tags);
+        boolean batchFull = false;
+        synchronized (this) {
+            ServiceProgress progress = services.computeIfAbsent(service, s -> new ServiceProgress());
+            progress.resourcesScanned++;
+            progress.checksCompleted += checks;
+            progress.findings += findings.size();
+            progress.suppressed += suppressed;
+            if (writer != null) {
+                pendingFindings.addAll(findings);
+                pendingResources.add(service + ":" + resourceId);
+                if (tags != null) {
+                    pendingTags.put(service + ":" + resourceId, tags);
+                }
+                batchFull = pendingFindings.size() >= persistBatchSize;
+            }
+        }
+        if (broadcaster != null) {
+            for (OptimizationResult finding : findings) {
+                broadcaster.publish(runId, AnalysisEventBroadcaster.FINDING, finding);
+            }
+            publishProgress(false);
+        }
+        if (batchFull || System.nanoTime() - lastCheckpointNanos >= checkpointIntervalNanos) {
+            persistPending();
+        }
+        checkActive();
+    }
+
+    public void serviceCompleted(String service) {
+        if (runId == null) {
+            return;
+        }
+        synchronized (this) {
+            services.computeIfAbsent(service, s -> new ServiceProgress()).completed = true;
+        }
+        checkpoint();
+        if (broadcaster != null) {
+            publishProgress(true);
+        }
+        checkActive();
+    }
+
+    /** Persists the findings and resource keys buffered since the last checkpoint, and waits until they are written. */
+    public void checkpoint() {
+        if (writer == null) {
+            return;
+        }
+        persistPending();
+        writer.flush();
+    }
+
+    /**
+     * Like {@link #checkpoint()}, for when a run or work unit ends: a failed write is logged
+     * instead of thrown, so the run is still finished or the unit released. False if it failed.
+     */
+    public boolean checkpointQuietly() {
+        try {
+            checkpoint();
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Could not checkpoint analysis run {}: {}", runId, e.getMessage());
+            return false;
+        }
+    }
+
+    /** Hands the buffered findings and resource keys to the writer without waiting for them. */
+    private void persistPending() {
+        if (writer == null) {
+            return;
+        }
+        List<OptimizationResult> findings;
+        List<String> resources;
+        Map<String, Map<String, String>> tags;
+        synchronized (this) {
+            lastCheckpointNanos = System.nanoTime();
+            if (pendingResources.isEmpty() && pendingFindings.isEmpty()) {
+                return;
+            }
+            findings = new ArrayList<>(pendingFindings);
+            resources = new ArrayList<>(pendingResources);
+            tags = new LinkedHashMap<>(pendingTags);
+            pendingFindings.clear();
+            pendingResources.clear();
+            pendingTags.clear();
+        }
+        writer.submit(findings, resources, tags);
+    }
+
+    /** Asks the run to stop at its next resource boundary, waking it if it is paused for interactive runs. */
+    public void cancel() {
+        cancelled = true;
+        AnalysisScheduler.Lease current = lease;
+        if (current != null) {
+            current.wake();
+        }
+    }
+
+    /** CANCELLED or TIMED_OUT if the run should stop, otherwise null. */
+    public String stopReason() {
+        if (cancelled) {
+            return "CANCELLED";
+        }
+        if (deadline != null && Instant.now().isAfter(deadline)) {
+            return "TIMED_OUT";
+        }
+        return null;
+    }
+
+    /**
+     * Throws {@link AnalysisStoppedException} if the run should stop, otherwise lets the scheduler
+     * pause it. A paused run waits no longer than its deadline and is woken by {@link #cancel()}.
+     */
+    public void checkActive() {
+        throwIfStopped();
+        AnalysisScheduler.Lease current = lease;
+        if (current != null) {
+            current.safePoint(deadline);
+            throwIfStopped();
+        }
+    }
+
+    private void throwIfStopped() {
+        String reason = stopReason();
+        if (reason != null) {
+            throw new AnalysisStoppedException(reason);
+        }
+    }
+
+    private void publishProgress(boolean force) {
+        Map<String, Object> snapshot;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (!force && now - lastProgressNanos < PROGRESS_INTERVAL_NANOS) {
+                return;
+            }
+            lastProgressNanos = now;
+            snapshot = new LinkedHashMap<>();
+            services.forEach((service, progress) -> snapshot.put(service, Map.of(
+                    "resourcesScanned", progress.resourcesScanned,
+                    "checksCompleted", progress.checksCompleted,
+                    "findings", progress.findings,
+                    "suppressed", progress.suppressed,
+                    "completed", progress.completed)));
+        }
+        broadcaster.publish(runId, AnalysisEventBroadcaster.PROGRESS, snapshot);
+    }
+
+    private static class ServiceProgress {
+        int resourcesScanned;
+        int checksCompleted;
+        int findings;
+        int suppressed;
+        boolean completed;
+    }
+}
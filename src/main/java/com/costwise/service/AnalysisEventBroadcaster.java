@@ -0,0 +1,281 @@
+package com.costwise.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans analysis run events out to Server-Sent Events subscribers.
+ * <p>
+ * Every run keeps a bounded log of its events with increasing ids, so a client that reconnects
+ * with {@code Last-Event-ID} is replayed exactly what it missed. Publishing and subscribing are
+ * serialized per run, which keeps replay and live delivery in id order without gaps or
+ * duplicates, but neither writes to a client: each subscriber has a bounded queue that sender
+ * threads drain, so a slow client never holds up the analysis threads that publish. A subscriber
+ * that falls further behind than its queue allows is sent what it already has and completed; it
+ * reconnects and is replayed the rest from the log. The log of a finished run is dropped after a
+ * retention period; clients arriving later read the persisted run instead.
+ */
+@Slf4j
+@Component
+public class AnalysisEventBroadcaster {
+    public static final String PROGRESS = "progress";
+    public static final String FINDING = "finding";
+    public static final String COMPLETE = "complete";
+    public static final String RESET = "reset";
+
+    private final Map<Long, RunEvents> runs = new ConcurrentHashMap<>();
+    private final AtomicInteger senderNumber = new AtomicInteger();
+    // One sender at a time per subscriber, so a stalled client holds at most one thread
+    private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "event-sender-" + senderNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${costwise.analysis.event-buffer-size:10000}")
+    private int bufferSize;
+
+    @Value("${costwise.analysis.subscriber-queue-size:1000}")
+    private int subscriberQueueSize;
+
+    @Value("${costwise.analysis.event-retention-minutes:30}")
+    private long retentionMinutes;
+
+    @Value("${costwise.analysis.stream-timeout-minutes:60}")
+    private long streamTimeoutMinutes;
+
+    public void open(Long runId) {
+        runs.computeIfAbsent(runId, id -> new RunEvents());
+    }
+
+    public boolean isOpen(Long runId) {
+        return runs.containsKey(runId);
+    }
+
+    public void publish(Long runId, String name, Object payload) {
+        RunEvents events = runs.get(runId);
+        if (events != null) {
+            events.publish(name, payload);
+        }
+    }
+
+    /** Publishes the final event of a run and completes every open stream once it is sent. */
+    public void complete(Long runId, Object payload) {
+        RunEvents events = runs.get(runId);
+        if (events != null) {
+            events.complete(payload);
+        }
+    }
+
+    /**
+     * Opens a stream for a run, replaying every retained event after {@code lastEventId}.
+     * Returns null if the run has no event log on this node.
+     */
+    public SseEmitter subscribe(Long runId, Long lastEventId) {
+        RunEvents events = runs.get(runId);
+        if (events == null) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(Duration.ofMinutes(streamTimeoutMinutes).toMillis());
+        events.subscribe(emitter, lastEventId == null ? 0 : lastEventId);
+        return emitter;
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictFinishedRuns() {
+        long cutoff = System.currentTimeMillis() - Duration.ofMinutes(retentionMinutes).toMillis();
+        runs.entrySet().removeIf(entry -> entry.getValue().finishedBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private record Event(long id, String name, Object payload) {
+    }
+
+    private class RunEvents {
+        private final Deque<Event> history = new ArrayDeque<>();
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private long nextId = 1;
+        private long finishedAt;
+
+        synchronized void publish(String name, Object payload) {
+            if (finishedAt != 0) {
+                return;
+            }
+            Event event = new Event(nextId++, name, payload);
+            history.addLast(event);
+            if (history.size() > bufferSize) {
+                history.removeFirst();
+            }
+            subscribers.removeIf(subscriber -> !subscriber.offer(event));
+        }
+
+        synchronized void complete(Object payload) {
+            publish(COMPLETE, payload);
+            finishedAt = System.currentTimeMillis();
+            subscribers.forEach(Subscriber::finish);
+            subscribers.clear();
+        }
+
+        /** Queues the events to replay; the subscriber's sender writes them, not this thread. */
+        synchronized void subscribe(SseEmitter emitter, long lastEventId) {
+            List<Event> backlog = new ArrayList<>();
+            Event oldest = history.peekFirst();
+            if (oldest != null && lastEventId + 1 < oldest.id()) {
+                // Events the client has not seen were already dropped; it must reload the run
+                backlog.add(new Event(oldest.id() - 1, RESET, Map.of("oldestEventId", oldest.id())));
+            }
+            for (Event event : history) {
+                if (event.id() > lastEventId) {
+                    backlog.add(event);
+                }
+            }
+            Subscriber subscriber = new Subscriber(emitter, backlog);
+            if (finishedAt != 0) {
+                subscriber.finish();
+                return;
+            }
+            subscribers.add(subscriber);
+            emitter.onCompletion(() -> remove(subscriber));
+            emitter.onTimeout(() -> remove(subscriber));
+            emitter.onError(e -> remove(subscriber));
+            subscriber.start();
+        }
+
+        synchronized boolean finishedBefore(long cutoff) {
+            return finishedAt != 0 && finishedAt < cutoff;
+        }
+
+        private void remove(Subscriber subscriber) {
+            subscribers.remove(subscriber);
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Events on their way to one client: the replayed backlog, then live events in a queue of
+     * bounded size. Drained by at most one sender at a time, which completes the stream once a
+     * finishing subscriber has nothing left to send.
+     */
+    private class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        private final Iterator<Event> backlog;
+        private final Deque<Event> live = new ArrayDeque<>();
+        private boolean draining;
+        private boolean finishing;
+        private boolean closed;
+
+        Subscriber(SseEmitter emitter, List<Event> backlog) {
+            this.emitter = emitter;
+            this.backlog = backlog.iterator();
+        }
+
+        synchronized void start() {
+            schedule();
+        }
+
+        /** Queues a live event; false once the subscriber no longer takes events. */
+        synchronized boolean offer(Event event) {
+            if (closed || finishing) {
+                return false;
+            }
+            if (live.size() >= subscriberQueueSize) {
+                // Too far behind; it reconnects with the id of the last event it got
+                log.debug("Completing an event stream subscriber that fell {} events behind", live.size());
+                live.clear();
+                finish();
+                return false;
+            }
+            live.addLast(event);
+            schedule();
+            return true;
+        }
+
+        /** Completes the stream once everything queued so far is sent. */
+        synchronized void finish() {
+            finishing = true;
+            schedule();
+        }
+
+        synchronized void close() {
+            closed = true;
+            live.clear();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = closed ? null : backlog.hasNext() ? backlog.next() : live.pollFirst();
+                    if (event == null) {
+                        draining = false;
+                        if (closed || !finishing) {
+                            return;
+                        }
+                        closed = true;
+                    }
+                }
+                if (event == null) {
+                    emitter.complete();
+                    return;
+                }
+                if (!send(emitter, event)) {
+                    synchronized (this) {
+                        draining = false;
+                    }
+                    close();
+                    return;
+                }
+            }
+        }
+
+        private void schedule() {
+            if (draining || closed) {
+                return;
+            }
+            draining = true;
+            try {
+                senders.execute(this);
+            } catch (RejectedExecutionException e) {
+                draining = false; // Shutting down
+            }
+        }
+
+        private boolean send(SseEmitter emitter, Event event) {
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(event.id()))
+                        .name(event.name())
+                        .data(event.payload()));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Dropping event stream subscriber: {}", e.getMessage());
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.costwise.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the resources of one service through a fetch stage and an evaluate stage connected by
+ * bounded queues, each stage on its own threads.
+ * <p>
+ * The caller is the inventory stage: it lists resources and {@link #submit}s them, blocking while
+ * the fetch queue is full, so listing never runs further ahead of the checks than the queues
+ * hold. Fetch threads gather what a resource's checks need from AWS and hand it on; evaluate
+ * threads run the checks and report the resource to the {@link AnalysisContext}, whose
+ * checkpoint writer is the persistence stage. AWS calls, rule evaluation and database writes so
+ * overlap, and memory is bounded by the queue sizes rather than by the size of the account.
+ * <p>
+ * The first exception thrown by a stage, such as the {@link AnalysisStoppedException} of a
+ * cancelled run, stops the pipeline: queued resources are dropped and the exception is rethrown
+ * by {@link #submit} or {@link #close}.
+ */
+public class AnalysisPipeline<R, F> implements AutoCloseable {
+    private static final Object END = new Object();
+
+    private final AnalysisContext context;
+    private final Function<R, F> fetch;
+    private final Consumer<F> evaluate;
+    private final BlockingQueue<Object> fetchQueue;
+    private final BlockingQueue<Object> evaluateQueue;
+    private final int evaluateThreads;
+    private final AtomicInteger fetchersLeft;
+    private final CountDownLatch evaluated;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final ExecutorService threads;
+    private final ExecutionTrace.Span span;
+    private boolean closed;
+
+    public AnalysisPipeline(AnalysisContext context, String name, int fetchThreads, int evaluateThreads, int queueCapacity,
+                            Function<R, F> fetch, Consumer<F> evaluate) {
+        this.context = context;
+        this.fetch = fetch;
+        this.evaluate = evaluate;
+        this.fetchQueue = new ArrayBlockingQueue<>(queueCapacity + fetchThreads);
+        this.evaluateQueue = new ArrayBlockingQueue<>(queueCapacity + evaluateThreads);
+        this.evaluateThreads = evaluateThreads;
+        this.fetchersLeft = new AtomicInteger(fetchThreads);
+        this.evaluated = new CountDownLatch(evaluateThreads);
+        this.span = context.span(name);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.threads = Executors.newFixedThreadPool(fetchThreads + evaluateThreads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-pipeline-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < fetchThreads; i++) {
+            threads.execute(this::fetchLoop);
+        }
+        for (int i = 0; i < evaluateThreads; i++) {
+            threads.execute(this::evaluateLoop);
+        }
+    }
+
+    /** Queues a resource, waiting while the fetch stage is full. */
+    public void submit(R resource) {
+        rethrow();
+        put(fetchQueue, resource);
+    }
+
+    /** Waits until every submitted resource has been evaluated, then rethrows the first failure. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // Counted once: fetch threads decrement the count as they take their END
+            int fetchers = fetchersLeft.get();
+            for (int i = 0; i < fetchers; i++) {
+                put(fetchQueue, END);
+            }
+            evaluated.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(new RuntimeException("Interrupted while waiting for the analysis pipeline", e));
+        } finally {
+            threads.shutdownNow();
+            span.close();
+        }
+        rethrow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetchLoop() {
+        try {
+            while (true) {
+                Object item = fetchQueue.take();
+                if (item == END) {
+                    break;
+                }
+                if (failure.get() != null) {
+                    continue; // Drain so the inventory stage is never left blocked
+                }
+                try (ExecutionTrace.Span fetchSpan = context.span(span, "fetch")) {
+                    put(evaluateQueue, fetch.apply((R) item));
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(new RuntimeException("Analysis pipeline interrupted", e));
+        } finally {
+            if (fetchersLeft.decrementAndGet() == 0) {
+                for (int i = 0; i < evaluateThreads; i++) {
+                    putQuietly(evaluateQueue, END);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void evaluateLoop() {
+        try {
+            while (true) {
+                Object item = evaluateQueue.take();
+                if (item == END) {
+                    break;
+                }
+                if (failure.get() != null) {
+                    continue;
+                }
+                try (ExecutionTrace.Span evaluateSpan = context.span(span, "evaluate")) {
+                    evaluate.accept((F) item);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(new RuntimeException("Analysis pipeline interrupted", e));
+        } finally {
+            evaluated.countDown();
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        failure.compareAndSet(null, e);
+    }
+
+    private void rethrow() {
+        RuntimeException e = failure.get();
+        if (e != null) {
+            close();
+            throw e;
+        }
+    }
+
+    private void put(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing for the analysis pipeline", e);
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.costwise.service;
+
+import com.costwise.model.AwsAccount;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs analyses in a fixed number of slots, {@code costwise.analysis.max-concurrent-runs}, with
+ * two priority lanes: INTERACTIVE for runs someone is waiting on, BATCH for fleet sweeps and
+ * resumed runs.
+ * <p>
+ * Within a lane, accounts share the slots by weighted fair queueing: each queued run is tagged
+ * with the virtual time at which its account's share would have finished it, one run costing the
+ * inverse of the account's {@link AwsAccount#getSchedulingWeight() scheduling weight}, and the
+ * lowest tag runs next. An account that queues many runs therefore only gets its share, and an
+ * account with weight 2 gets twice as many as one with weight 1.
+ * <p>
+ * A free slot always goes to the INTERACTIVE lane first. When interactive runs wait and every
+ * slot is taken, BATCH runs are asked to yield; each does so at its next safe point, the resource
+ * boundary where {@link AnalysisContext#checkActive()} is called, by handing its slot back and
+ * waiting in the BATCH lane ahead of the runs queued after it. So an interactive run waits for
+ * one resource of a sweep rather than for whole accounts. {@code costwise.analysis.min-batch-runs}
+ * BATCH runs are never asked to yield, so a sweep keeps moving.
+ */
+@Slf4j
+@Service
+public class AnalysisScheduler {
+    public enum Lane { INTERACTIVE, BATCH }
+
+    private static final ThreadLocal<Lease> CURRENT = new ThreadLocal<>();
+
+    private final int slots;
+    private final int minBatchRuns;
+    private final ExecutorService threads;
+    private final FairQueue interactive = new FairQueue();
+    private final FairQueue batch = new FairQueue();
+    private final List<Lease> running = new ArrayList<>(); // Leases holding a slot
+    private long sequence;
+
+    public AnalysisScheduler(@Value("${costwise.analysis.max-concurrent-runs:4}") int slots,
+                             @Value("${costwise.analysis.min-batch-runs:1}") int minBatchRuns) {
+        this.slots = slots;
+        this.minBatchRuns = minBatchRuns;
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Runs are bounded by the slots; threads of yielded runs wait without holding one
+        this.threads = Executors.newCachedThreadPool(runnable -> new Thread(runnable, "analysis-" + threadNumber.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        threads.shutdownNow();
+    }
+
+    /** Queues an analysis of the account in the lane; the future completes with its result. */
+    public <T> CompletableFuture<T> submit(Lane lane, AwsAccount account, Supplier<T> analysis) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Lease lease = new Lease(lane, account.getId());
+        List<Ticket> granted;
+        synchronized (this) {
+            queue(lane).add(new Ticket(lease, () -> threads.execute(() -> run(lease, analysis, future))), weight(account));
+            granted = dispatch();
+            if (lane == Lane.INTERACTIVE) {
+                requestYields();
+            }
+        }
+        granted.forEach(Ticket::grant);
+        return future;
+    }
+
+    /** The lease of the analysis running on this thread, or null if it was not started by the scheduler. */
+    public static Lease currentLease() {
+        return CURRENT.get();
+    }
+
+    private <T> void run(Lease lease, Supplier<T> analysis, CompletableFuture<T> future) {
+        CURRENT.set(lease);
+        try {
+            future.complete(analysis.get());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            CURRENT.remove();
+            List<Ticket> granted;
+            synchronized (this) {
+                running.remove(lease);
+                batch.remove(lease); // A run stopped while paused must not be granted its slot back
+                granted = dispatch();
+            }
+            granted.forEach(Ticket::grant);
+        }
+    }
+
+    private void yieldSlot(Lease lease) {
+        List<Ticket> granted;
+        synchronized (this) {
+            running.remove(lease);
+            batch.requeue(new Ticket(lease, lease::resume));
+            granted = dispatch();
+        }
+        granted.forEach(Ticket::grant);
+    }
+
+    /** Fills free slots, interactive runs first. Tickets are granted by the caller after releasing the lock. */
+    private List<Ticket> dispatch() {
+        List<Ticket> granted = new ArrayList<>();
+        while (running.size() < slots) {
+            Ticket next = interactive.poll();
+            if (next == null) {
+                next = batch.poll();
+            }
+            if (next == null) {
+                break;
+            }
+            running.add(next.lease);
+            granted.add(next);
+        }
+        if (interactive.isEmpty()) {
+            running.forEach(lease -> lease.yieldRequested = false);
+        }
+        return granted;
+    }
+
+    /** Asks as many BATCH runs to yield as interactive runs wait, the latest-tagged first. */
+    private void requestYields() {
+        int batchRunning = 0;
+        int yielding = 0;
+        List<Lease> candidates = new ArrayList<>();
+        for (Lease lease : running) {
+            if (lease.lane == Lane.BATCH) {
+                batchRunning++;
+                if (lease.yieldRequested) {
+                    yielding++;
+                } else {
+                    candidates.add(lease);
+                }
+            }
+        }
+        int wanted = Math.min(interactive.size() - yielding, batchRunning - yielding - minBatchRuns);
+        candidates.sort(Comparator.comparingDouble((Lease lease) -> lease.tag).reversed());
+        for (int i = 0; i < wanted && i < candidates.size(); i++) {
+            candidates.get(i).yieldRequested = true;
+        }
+    }
+
+    private FairQueue queue(Lane lane) {
+        return lane == Lane.INTERACTIVE ? interactive : batch;
+    }
+
+    private static int weight(AwsAccount account) {
+        Integer weight = account.getSchedulingWeight();
+        return weight == null || weight < 1 ? 1 : weight;
+    }
+
+    /** One analysis's claim on a slot, from its first grant until it finishes. */
+    public final class Lease {
+        private final Lane lane;
+        private final Long accountId;
+        private double tag;
+        private volatile boolean yieldRequested;
+        private boolean paused;
+        private volatile boolean woken;
+
+        private Lease(Lane lane, Long accountId) {
+            this.lane = lane;
+            this.accountId = accountId;
+        }
+
+        public Lane getLane() {
+            return lane;
+        }
+
+        /**
+         * Called by the analysis at points where it can pause. If it was asked to yield, hands the
+         * slot back and blocks until the scheduler grants it one again, the {@code deadline} (if
+         * not null) passes or the lease is woken; every thread of the analysis that reaches a safe
+         * point meanwhile blocks as well.
+         */
+        public void safePoint(Instant deadline) {
+            if (!yieldRequested || woken) {
+                return;
+            }
+            boolean yieldNow;
+            synchronized (this) {
+                yieldNow = yieldRequested && !paused;
+                if (yieldNow) {
+                    paused = true;
+                }
+            }
+            if (yieldNow) {
+                log.debug("Analysis of account {} yields its slot to interactive runs", accountId);
+                yieldSlot(this);
+            }
+            synchronized (this) {
+                try {
+                    while (paused && !woken) {
+                        if (deadline == null) {
+                            wait();
+                        } else {
+                            long millis = Duration.between(Instant.now(), deadline).toMillis();
+                            if (millis <= 0) {
+                                break;
+                            }
+                            wait(millis);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for an analysis slot", e);
+                }
+            }
+        }
+
+        /** Releases every thread waiting at a safe point for good, so a stopping analysis can end. */
+        public synchronized void wake() {
+            woken = true;
+            notifyAll();
+        }
+
+        private synchronized void resume() {
+            paused = false;
+            yieldRequested = false;
+            notifyAll();
+        }
+    }
+
+    private final class Ticket {
+        final Lease lease;
+        final Runnable onGrant;
+        final long sequence;
+        double tag;
+
+        Ticket(Lease lease, Runnable onGrant) {
+            this.lease = lease;
+            this.onGrant = onGrant;
+            this.sequence = AnalysisScheduler.this.sequence++;
+        }
+
+        void grant() {
+            onGrant.run();
+        }
+    }
+
+    /** Start-time fair queue over accounts: a run's tag is its account's previous tag, or now, plus one over its weight. */
+    private static final class FairQueue {
+        private final PriorityQueue<Ticket> tickets = new PriorityQueue<>(
+                Comparator.comparingDouble((Ticket ticket) -> ticket.tag).thenComparingLong(ticket -> ticket.sequence));
+        private final Map<Long, Double> lastTags = new HashMap<>();
+        private double virtualTime;
+
+        void add(Ticket ticket, int weight) {
+            double start = Math.max(virtualTime, lastTags.getOrDefault(ticket.lease.accountId, 0.0));
+            ticket.tag = start + 1.0 / weight;
+            ticket.lease.tag = ticket.tag;
+            lastTags.put(ticket.lease.accountId, ticket.tag);
+            tickets.add(ticket);
+        }
+
+        /** Queues a yielded run under its original tag, ahead of runs queued after it. */
+        void requeue(Ticket ticket) {
+            ticket.tag = ticket.lease.tag;
+            tickets.add(ticket);
+        }
+
+        /** Drops the yielded run of the lease, if it is queued. */
+        void remove(Lease lease) {
+            tickets.removeIf(ticket -> ticket.lease == lease);
+        }
+
+        Ticket poll() {
+            Ticket ticket = tickets.poll();
+            if (ticket == null) {
+                return null;
+            }
+            virtualTime = Math.max(virtualTime, ticket.tag);
+            if (tickets.isEmpty()) {
+                lastTags.clear(); // Idle lane: past usage no longer counts against anyone
+            }
+            return ticket;
+        }
+
+        boolean isEmpty() {
+            return tickets.isEmpty();
+        }
+
+        int size() {
+            return tickets.size();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.costwise.service;
+
+/**
+ * Thrown at a resource boundary when a run has been cancelled or has passed its deadline.
+ * Analyzers let it propagate so the run ends with the findings checkpointed so far.
+ */
+public class AnalysisStoppedException extends RuntimeException {
+    private final String status;
+
+    public AnalysisStoppedException(String status) {
+        super("Analysis " + status.toLowerCase().replace('_', ' '));
+        this.status = status;
+    }
+
+    /** The run status to record: CANCELLED or TIMED_OUT. */
+    public String getStatus() {
+        return status;
+    }
+}
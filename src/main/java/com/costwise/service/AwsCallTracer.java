@@ -0,0 +1,94 @@
+package com.costwise.service;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.retry.RetryUtils;
+import software.amazon.awssdk.http.SdkHttpResponse;
+
+/**
+ * Records every AWS SDK call made inside an {@link ExecutionTrace} span: its operation, wall time
+ * including retries, attempts, throttled attempts and bytes on the wire.
+ * <p>
+ * Registered for every SDK client through
+ * {@code software/amazon/awssdk/global/handlers/execution.interceptors}. Synchronous clients run
+ * interceptors on the calling thread, which is where the span is looked up; calls made outside
+ * any span cost a thread-local read.
+ */
+public class AwsCallTracer implements ExecutionInterceptor {
+    private static final ExecutionAttribute<Call> CALL = new ExecutionAttribute<>("CostwiseTracedCall");
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        ExecutionTrace.Span span = ExecutionTrace.current();
+        if (span != null) {
+            executionAttributes.putAttribute(CALL, new Call(span));
+        }
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        Call call = executionAttributes.getAttribute(CALL);
+        if (call != null) {
+            call.attempts++;
+            call.bytesSent += context.requestBody().flatMap(body -> body.optionalContentLength()).orElse(0L);
+        }
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        Call call = executionAttributes.getAttribute(CALL);
+        if (call == null) {
+            return;
+        }
+        SdkHttpResponse response = context.httpResponse();
+        call.bytesReceived += response.firstMatchingHeader("Content-Length").map(Long::parseLong).orElse(0L);
+        int status = response.statusCode();
+        if (status == 429 || status == 503
+                || response.firstMatchingHeader("x-amzn-ErrorType").filter(type -> type.startsWith("Throttl")).isPresent()) {
+            call.throttles++;
+        }
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        Call call = executionAttributes.getAttribute(CALL);
+        if (call != null) {
+            call.record(executionAttributes, false);
+        }
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        Call call = executionAttributes.getAttribute(CALL);
+        if (call == null) {
+            return;
+        }
+        if (call.throttles == 0 && context.exception() instanceof SdkException e && RetryUtils.isThrottlingException(e)) {
+            call.throttles = 1;
+        }
+        call.record(executionAttributes, true);
+    }
+
+    private static final class Call {
+        final ExecutionTrace.Span span;
+        final long startNanos = System.nanoTime();
+        int attempts;
+        int throttles;
+        long bytesSent;
+        long bytesReceived;
+
+        Call(ExecutionTrace.Span span) {
+            this.span = span;
+        }
+
+        void record(ExecutionAttributes executionAttributes, boolean failed) {
+            String operation = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME) + "."
+                    + executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+            span.recordCall(operation, System.nanoTime() - startNanos, attempts, throttles, failed, bytesSent, bytesReceived);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.costwise.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Captures the AWS responses analyses see into a local archive, or answers AWS calls from such
+ * an archive without touching the network, so that rule changes can be tried on real data.
+ * <p>
+ * With {@code costwise.aws.capture.mode} set to RECORD or REPLAY, the SDK's HTTP implementation
+ * is replaced by {@link AwsCaptureHttpService}, so every v2 client built afterwards records or
+ * replays, wherever it is built. Requests are matched on method, host, path, query and body with
+ * timestamps masked, so a replay matches a capture taken at another time, and on a hash of the
+ * access key they are signed with, so identical calls made for different accounts are captured
+ * apart. A replay usually signs with a placeholder key, so a capture recorded under a single key
+ * answers every signed request. Identical requests get their captured responses in order, the
+ * last one repeating. Throttled and failed attempts are not captured, so a replay never backs off. The v1 Cost Explorer client has no pluggable
+ * transport; its results are captured through {@link #call}.
+ */
+@Slf4j
+@Component
+@Lazy(false) // Must be in place before any client is built, also in lazily initialized batch runs
+public class AwsCapture {
+    public static final String OFF = "OFF";
+    public static final String RECORD = "RECORD";
+    public static final String REPLAY = "REPLAY";
+
+    /** Signer of unsigned requests and of calls captured through {@link #call}. */
+    static final long UNSIGNED = 0;
+
+    private static final String HTTP_SERVICE_PROPERTY = "software.amazon.awssdk.http.service.impl";
+    // ISO-8601 timestamps, plain or URL-encoded, and epoch-second start and end times in JSON bodies
+    private static final Pattern TIMESTAMPS = Pattern.compile(
+            "\\d{4}-\\d{2}-\\d{2}T\\d{2}(?::|%3A)\\d{2}(?::|%3A)\\d{2}(?:\\.\\d+)?(?:Z|[+-]\\d{2}(?::|%3A)\\d{2})?"
+                    + "|(\"(?:StartTime|EndTime)\"\\s*:\\s*)[0-9.E+]+");
+
+    private static volatile AwsCapture active;
+
+    private final ObjectMapper objectMapper;
+    private final String mode;
+    private final Path file;
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private AwsCaptureArchive.Writer writer;
+    private Map<Long, Replay> responses;
+    private long soleSigner = UNSIGNED;
+
+    public AwsCapture(ObjectMapper objectMapper,
+                      @Value("${costwise.aws.capture.mode:OFF}") String mode,
+                      @Value("${costwise.aws.capture.file:./data/capture/aws-capture.bin.gz}") String file) {
+        this.objectMapper = objectMapper;
+        this.mode = mode.toUpperCase();
+        this.file = Paths.get(file);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        switch (mode) {
+            case OFF:
+                return;
+            case RECORD:
+                writer = AwsCaptureArchive.write(file);
+                log.info("Recording AWS responses to {}", file);
+                break;
+            case REPLAY:
+                responses = new HashMap<>();
+                AwsCaptureArchive.Contents contents = AwsCaptureArchive.read(file);
+                contents.responses().forEach((key, captured) -> responses.put(key, new Replay(captured)));
+                if (contents.signers().size() == 1) {
+                    soleSigner = contents.signers().iterator().next();
+                }
+                // Clients still sign requests; nothing checks the signature
+                if (System.getProperty("aws.accessKeyId") == null) {
+                    System.setProperty("aws.accessKeyId", "replay");
+                    System.setProperty("aws.secretAccessKey", "replay");
+                }
+                log.info("Replaying AWS responses for {} distinct requests from {}", responses.size(), file);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown AWS capture mode " + mode + ", expected OFF, RECORD or REPLAY");
+        }
+        active = this;
+        if (System.getProperty(HTTP_SERVICE_PROPERTY) == null) {
+            System.setProperty(HTTP_SERVICE_PROPERTY, AwsCaptureHttpService.class.getName());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (writer != null) {
+            writer.close();
+            log.info("Recorded {} AWS responses ({} bytes of bodies) to {}", writer.records(), writer.bodyBytes(), file);
+        } else if (responses != null) {
+            log.info("Replayed {} AWS responses, {} requests had no captured response", replayed.get(), missed.get());
+        }
+        active = null;
+    }
+
+    /** The capture in effect, or null when capture is off. */
+    static AwsCapture active() {
+        return active;
+    }
+
+    boolean isReplay() {
+        return responses != null;
+    }
+
+    void record(long signer, long key, AwsCaptureArchive.Response response) {
+        try {
+            writer.append(signer, key, response);
+        } catch (IOException e) {
+            log.warn("Could not record an AWS response: {}", e.getMessage());
+        }
+    }
+
+    /** The next captured response to the request with this signer and key; null if none was captured. */
+    AwsCaptureArchive.Response replay(long signer, long key, String request) {
+        if (signer != UNSIGNED && soleSigner != UNSIGNED) {
+            signer = soleSigner;
+        }
+        Replay replay = responses.get(key(signer, key));
+        if (replay == null) {
+            missed.incrementAndGet();
+            log.warn("No captured AWS response for {}", request);
+            return null;
+        }
+        replayed.incrementAndGet();
+        return replay.next();
+    }
+
+    /**
+     * Runs an AWS call made outside the v2 SDK's HTTP layer. Its result is captured as JSON under
+     * the given request description, which must identify the call.
+     */
+    public <T> T call(String request, Class<T> type, Supplier<T> live) {
+        AwsCapture capture = active;
+        if (capture == null) {
+            return live.get();
+        }
+        long key = key(request);
+        try {
+            if (capture.isReplay()) {
+                AwsCaptureArchive.Response response = capture.replay(UNSIGNED, key, request);
+                if (response == null) {
+                    throw new RuntimeException("No captured AWS response for " + request);
+                }
+                return objectMapper.readValue(response.body(), type);
+            }
+            T result = live.get();
+            capture.record(UNSIGNED, key, new AwsCaptureArchive.Response(200, Map.of(), objectMapper.writeValueAsBytes(result)));
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not " + (capture.isReplay() ? "replay" : "record") + " " + request, e);
+        }
+    }
+
+    /** Hash of a request description with its timestamps masked. */
+    static long key(CharSequence request) {
+        String normalized = TIMESTAMPS.matcher(request).replaceAll("$1*");
+        return Hashing.murmur3_128().hashString(normalized, StandardCharsets.UTF_8).asLong();
+    }
+
+    /** Hash of the access key a request is signed with, so that the key itself is never written. */
+    static long signer(String accessKeyId) {
+        if (accessKeyId.isEmpty()) {
+            return UNSIGNED;
+        }
+        long signer = Hashing.murmur3_128().hashString(accessKeyId, StandardCharsets.UTF_8).asLong();
+        return signer == UNSIGNED ? 1 : signer;
+    }
+
+    /** Key of a request under a signer; the request's own key when unsigned. */
+    static long key(long signer, long key) {
+        if (signer == UNSIGNED) {
+            return key;
+        }
+        return Hashing.murmur3_128().newHasher().putLong(signer).putLong(key).hash().asLong();
+    }
+
+    private static final class Replay {
+        private final List<AwsCaptureArchive.Response> responses;
+        private final AtomicInteger next = new AtomicInteger();
+
+        Replay(List<AwsCaptureArchive.Response> responses) {
+            this.responses = responses;
+        }
+
+        AwsCaptureArchive.Response next() {
+            return responses.get(Math.min(next.getAndIncrement(), responses.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.costwise.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File of captured AWS responses, keyed by a hash of the request they answered and a hash of
+ * the access key it was signed with.
+ * <p>
+ * The file is a gzip stream of a magic string followed by one record per response: signer, key,
+ * status, headers and body. Each record is flushed through the compressor as it is written, so a capture
+ * cut short by a crash is readable up to its last complete record.
+ */
+final class AwsCaptureArchive {
+    private static final String MAGIC = "COSTWISE-AWS-CAPTURE-2";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private AwsCaptureArchive() {
+    }
+
+    record Response(int status, Map<String, List<String>> headers, byte[] body) {
+    }
+
+    /**
+     * Responses of an archive, grouped by {@link AwsCapture#key(long, long) signer and key} in the
+     * order they were captured, and the signers of the signed requests among them.
+     */
+    record Contents(Map<Long, List<Response>> responses, Set<Long> signers) {
+    }
+
+    static Contents read(Path file) throws IOException {
+        Map<Long, List<Response>> responses = new HashMap<>();
+        Set<Long> signers = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE))) {
+            if (!MAGIC.equals(in.readUTF())) {
+                throw new IOException(file + " is not an AWS capture archive");
+            }
+            while (true) {
+                long signer;
+                try {
+                    signer = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    long key = in.readLong();
+                    int status = in.readUnsignedShort();
+                    int headerCount = in.readUnsignedShort();
+                    Map<String, List<String>> headers = new LinkedHashMap<>();
+                    for (int i = 0; i < headerCount; i++) {
+                        headers.computeIfAbsent(in.readUTF(), name -> new ArrayList<>()).add(in.readUTF());
+                    }
+                    byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+                    responses.computeIfAbsent(AwsCapture.key(signer, key), k -> new ArrayList<>())
+                            .add(new Response(status, headers, body));
+                    if (signer != AwsCapture.UNSIGNED) {
+                        signers.add(signer);
+                    }
+                } catch (EOFException e) {
+                    break; // Truncated last record of an interrupted capture
+                }
+            }
+        }
+        return new Contents(responses, signers);
+    }
+
+    static Writer write(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        return new Writer(file);
+    }
+
+    /** Appends responses to a new archive; safe for concurrent use. */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private long records;
+        private long bodyBytes;
+
+        private Writer(Path file) throws IOException {
+            out = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE), BUFFER_SIZE, true));
+            out.writeUTF(MAGIC);
+        }
+
+        synchronized void append(long signer, long key, Response response) throws IOException {
+            out.writeLong(signer);
+            out.writeLong(key);
+            out.writeShort(response.status());
+            int headerCount = 0;
+            for (List<String> values : response.headers().values()) {
+                headerCount += values.size();
+            }
+            out.writeShort(headerCount);
+            for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+                for (String value : header.getValue()) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(value);
+                }
+            }
+            out.writeInt(response.body().length);
+            out.write(response.body());
+            out.flush();
+            records++;
+            bodyBytes += response.body().length;
+        }
+
+        synchronized long records() {
+            return records;
+        }
+
+        synchronized long bodyBytes() {
+            return bodyBytes;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.costwise.service;
+
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpFullResponse;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.http.SdkHttpService;
+import software.amazon.awssdk.utils.AttributeMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/**
+ * HTTP implementation of the AWS SDK that records or replays through {@link AwsCapture}.
+ * <p>
+ * The SDK instantiates it by class name once {@link AwsCapture} has named it in the SDK's HTTP
+ * implementation system property. When recording, requests go through the HTTP implementation
+ * the SDK would otherwise have picked; when replaying, no connection is ever opened.
+ */
+public class AwsCaptureHttpService implements SdkHttpService {
+
+    @Override
+    public SdkHttpClient.Builder createHttpClientBuilder() {
+        return new Builder();
+    }
+
+    private static final class Builder implements SdkHttpClient.Builder<Builder> {
+        @Override
+        public SdkHttpClient buildWithDefaults(AttributeMap serviceDefaults) {
+            AwsCapture capture = AwsCapture.active();
+            SdkHttpClient live = capture != null && capture.isReplay() ? null
+                    : liveService().createHttpClientBuilder().buildWithDefaults(serviceDefaults);
+            return capture == null ? live : new CapturingHttpClient(capture, live);
+        }
+
+        private static SdkHttpService liveService() {
+            for (SdkHttpService service : ServiceLoader.load(SdkHttpService.class)) {
+                if (!(service instanceof AwsCaptureHttpService)) {
+                    return service;
+                }
+            }
+            throw new IllegalStateException("No HTTP implementation on the classpath to record AWS calls with");
+        }
+    }
+
+    static final class CapturingHttpClient implements SdkHttpClient {
+        private final AwsCapture capture;
+        private final SdkHttpClient live;
+
+        CapturingHttpClient(AwsCapture capture, SdkHttpClient live) {
+            this.capture = capture;
+            this.live = live;
+        }
+
+        @Override
+        public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+            SdkHttpRequest httpRequest = request.httpRequest();
+            byte[] body = request.contentStreamProvider().map(CapturingHttpClient::readBody).orElse(null);
+            String description = httpRequest.method() + " " + httpRequest.host() + httpRequest.encodedPath();
+            long signer = AwsCapture.signer(accessKeyId(httpRequest));
+            long key = key(httpRequest, body);
+
+            if (live == null) {
+                return new ExecutableHttpRequest() {
+                    @Override
+                    public HttpExecuteResponse call() {
+                        AwsCaptureArchive.Response response = capture.replay(signer, key, description);
+                        if (response == null) {
+                            // Not an IOException, which the SDK would retry
+                            throw new IllegalStateException("No captured AWS response for " + description);
+                        }
+                        return toExecuteResponse(response);
+                    }
+
+                    @Override
+                    public void abort() {
+                    }
+                };
+            }
+
+            HttpExecuteRequest.Builder forward = HttpExecuteRequest.builder().request(httpRequest);
+            request.metricCollector().ifPresent(forward::metricCollector);
+            if (body != null) {
+                forward.contentStreamProvider(() -> new ByteArrayInputStream(body));
+            }
+            ExecutableHttpRequest call = live.prepareRequest(forward.build());
+            return new ExecutableHttpRequest() {
+                @Override
+                public HttpExecuteResponse call() throws IOException {
+                    HttpExecuteResponse executed = call.call();
+                    byte[] responseBody;
+                    if (executed.responseBody().isPresent()) {
+                        try (InputStream in = executed.responseBody().get()) {
+                            responseBody = in.readAllBytes();
+                        }
+                    } else {
+                        responseBody = new byte[0];
+                    }
+                    SdkHttpResponse response = executed.httpResponse();
+                    AwsCaptureArchive.Response captured = new AwsCaptureArchive.Response(
+                            response.statusCode(), response.headers(), responseBody);
+                    // Throttled and failed attempts are retried; only their outcome is worth replaying
+                    if (response.statusCode() != 429 && response.statusCode() < 500) {
+                        capture.record(signer, key, captured);
+                    }
+                    return toExecuteResponse(captured);
+                }
+
+                @Override
+                public void abort() {
+                    call.abort();
+                }
+            };
+        }
+
+        @Override
+        public String clientName() {
+            return live == null ? "AwsCaptureReplay" : live.clientName();
+        }
+
+        @Override
+        public void close() {
+            if (live != null) {
+                live.close();
+            }
+        }
+
+        private static long key(SdkHttpRequest request, byte[] body) {
+            StringBuilder key = new StringBuilder(256);
+            key.append(request.method()).append(' ').append(request.host()).append(request.encodedPath());
+            new TreeMap<>(request.rawQueryParameters()).forEach((name, values) ->
+                    key.append('&').append(name).append('=').append(String.join(",", values)));
+            if (body != null) {
+                key.append('\n').append(new String(body, StandardCharsets.UTF_8));
+            }
+            return AwsCapture.key(key);
+        }
+
+        /**
+         * The access key the request is signed with, from the SigV4 credential scope of its
+         * Authorization header or presigned query; empty for unsigned requests.
+         */
+        private static String accessKeyId(SdkHttpRequest request) {
+            String credential = request.firstMatchingHeader("Authorization")
+                    .map(authorization -> {
+                        int start = authorization.indexOf("Credential=");
+                        return start < 0 ? null : authorization.substring(start + "Credential=".length());
+                    })
+                    .orElseGet(() -> request.firstMatchingRawQueryParameter("X-Amz-Credential").orElse(null));
+            if (credential == null) {
+                return "";
+            }
+            int end = credential.indexOf('/');
+            if (end < 0) {
+                end = credential.indexOf("%2F"); // Still URL-encoded in a presigned query
+            }
+            return end < 0 ? credential : credential.substring(0, end);
+        }
+
+        private static byte[] readBody(software.amazon.awssdk.http.ContentStreamProvider provider) {
+            try (InputStream in = provider.newStream()) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read an AWS request body", e);
+            }
+        }
+
+        private static HttpExecuteResponse toExecuteResponse(AwsCaptureArchive.Response response) {
+            return HttpExecuteResponse.builder()
+                    .response(SdkHttpFullResponse.builder()
+                            .statusCode(response.status())
+                            .headers(response.headers())
+                            .build())
+                    .responseBody(AbortableInputStream.create(new ByteArrayInputStream(response.body())))
+                    .build();
+        }
+    }
+}
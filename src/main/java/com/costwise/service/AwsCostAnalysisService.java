@@ -4,52 +4,48 @@ import com.costwise.model.AwsAccount;
 import com.costwise.model.CostAnalysisRun;
 import com.costwise.model.OptimizationResult;
 import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.OptimizationResultRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import com.amazonaws.services.costexplorer.AWSCostExplorer;
 import com.amazonaws.services.costexplorer.AWSCostExplorerClientBuilder;
 import com.amazonaws.services.costexplorer.model.*;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AwsCostAnalysisService {
     private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+    private final CurIngestionService curIngestionService;
+    private final CostTrendService costTrendService;
+    private final AwsCapture awsCapture;
+    private final Set<Long> runningCurRuns = ConcurrentHashMap.newKeySet();
 
     @Transactional
     public CostAnalysisRun analyzeCosts(AwsAccount awsAccount, LocalDateTime startDate, LocalDateTime endDate) {
-        CostAnalysisRun analysisRun = new CostAnalysisRun();
-        analysisRun.setAwsAccount(awsAccount);
-        analysisRun.setStartDate(startDate);
-        analysisRun.setEndDate(endDate);
-        analysisRun.setStatus("RUNNING");
-        analysisRun.setTotalCost(0.0);
-        analysisRun.setPotentialSavings(0.0);
+        CostAnalysisRun analysisRun = newRun(awsAccount, "COST", startDate, endDate);
 
         try {
             // Save initial run
             analysisRun = costAnalysisRunRepository.save(analysisRun);
 
             // Get cost data
-            List<OptimizationResult> results = fetchAndAnalyzeCosts(awsAccount, startDate, endDate);
-            
-            // Calculate totals
-            double totalCost = results.stream().mapToDouble(OptimizationResult::getCurrentCost).sum();
-            double potentialSavings = results.stream().mapToDouble(OptimizationResult::getPotentialSavings).sum();
-
-            // Update run with results
-            analysisRun.setTotalCost(totalCost);
-            analysisRun.setPotentialSavings(potentialSavings);
-            analysisRun.setStatus("COMPLETED");
-            analysisRun.setOptimizationResults(results);
-
-            return costAnalysisRunRepository.save(analysisRun);
+            CostCube costCube = fetchCosts(awsAccount, startDate, endDate);
+            return completeRun(analysisRun, costCube);
         } catch (Exception e) {
             log.error("Error analyzing costs for account {}: {}", awsAccount.getAccountId(), e.getMessage());
             analysisRun.setStatus("FAILED");
@@ -58,54 +54,200 @@ public class AwsCostAnalysisService {
         }
     }
 
-    private List<OptimizationResult> fetchAndAnalyzeCosts(AwsAccount account, LocalDateTime startDate, LocalDateTime endDate) {
-        List<OptimizationResult> results = new ArrayList<>();
-        
+    /**
+     * Runs the same cost analysis over the Cost and Usage Report exports on local disk instead of
+     * Cost Explorer, over the line items of the account only. The run's date range is taken from
+     * the ingested line items. Not transactional: ingesting a large export directory must not hold
+     * a connection and transaction open, so the run is saved before and after, and its heartbeat
+     * is renewed in between so that other nodes do not take it for interrupted.
+     */
+    public CostAnalysisRun analyzeCurReports(AwsAccount awsAccount) {
+        LocalDateTime now = LocalDateTime.now();
+        CostAnalysisRun analysisRun = newRun(awsAccount, "CUR", now, now);
+
+        try {
+            analysisRun = costAnalysisRunRepository.save(analysisRun);
+            runningCurRuns.add(analysisRun.getId());
+
+            CostCube costCube = curIngestionService.ingest(awsAccount.getAccountId());
+            int dateDimension = costCube.dimension(CostCube.DATE);
+            for (int code = 0; code < costCube.cardinality(dateDimension); code++) {
+                LocalDateTime day = LocalDate.parse(costCube.label(dateDimension, code)).atStartOfDay();
+                if (code == 0 || day.isBefore(analysisRun.getStartDate())) {
+                    analysisRun.setStartDate(day);
+                }
+                if (code == 0 || day.isAfter(analysisRun.getEndDate())) {
+                    analysisRun.setEndDate(day);
+                }
+            }
+            return completeRun(analysisRun, costCube);
+        } catch (Exception e) {
+            log.error("Error analyzing CUR data for account {}: {}", awsAccount.getAccountId(), e.getMessage());
+            analysisRun.setStatus("FAILED");
+            analysisRun.setErrorMessage(e.getMessage());
+            return costAnalysisRunRepository.save(analysisRun);
+        } finally {
+            runningCurRuns.remove(analysisRun.getId());
+        }
+    }
+
+    /**
+     * Renews the heartbeat of the CUR runs in progress on this node. Cost Explorer runs need none:
+     * they run in one transaction, so no other node ever sees them RUNNING.
+     */
+    @Scheduled(fixedDelayString = "${costwise.work.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        if (!runningCurRuns.isEmpty()) {
+            costAnalysisRunRepository.renewHeartbeats(runningCurRuns, LocalDateTime.now());
+        }
+    }
+
+    private CostAnalysisRun newRun(AwsAccount awsAccount, String analysisType, LocalDateTime startDate, LocalDateTime endDate) {
+        CostAnalysisRun analysisRun = new CostAnalysisRun();
+        analysisRun.setAwsAccount(awsAccount);
+        analysisRun.setAnalysisType(analysisType);
+        analysisRun.setStartDate(startDate);
+        analysisRun.setEndDate(endDate);
+        analysisRun.setStatus("RUNNING");
+        analysisRun.setHeartbeatAt(LocalDateTime.now());
+        analysisRun.setTotalCost(0.0);
+        analysisRun.setPotentialSavings(0.0);
+        return analysisRun;
+    }
+
+    private CostAnalysisRun completeRun(CostAnalysisRun analysisRun, CostCube costCube) {
+        List<OptimizationResult> results = detectAnomalies(costCube);
+        if ("COST".equals(analysisRun.getAnalysisType())) {
+            costTrendService.record(analysisRun.getAwsAccount().getId(), costCube);
+        }
+
+        for (OptimizationResult result : results) {
+            result.setAnalysisRun(analysisRun);
+        }
+
+        // Update run with results; savings are summed by the database, like those of resource runs
+        analysisRun.setTotalCost(costCube.totalCost());
+        analysisRun.setStatus("COMPLETED");
+        analysisRun.setOptimizationResults(results);
+        analysisRun = costAnalysisRunRepository.save(analysisRun);
+        analysisRun.setPotentialSavings(optimizationResultRepository.sumPotentialSavingsByAnalysisRunId(analysisRun.getId()));
+
+        return costAnalysisRunRepository.save(analysisRun);
+    }
+
+    /**
+     * Loads daily unblended cost into a cube keyed by service, usage type, region, linked account
+     * and date. Cost Explorer allows only two group-by keys per request, so region and linked
+     * account are taken from the analyzed account. Pages go through {@link AwsCapture}, which
+     * can record them or serve them from a capture; they are keyed on the window's length rather
+     * than its dates, so a capture replays the same analysis run on another day.
+     */
+    private CostCube fetchCosts(AwsAccount account, LocalDateTime startDate, LocalDateTime endDate) {
+        CostCube costCube = CurIngestionService.newCube();
+        String start = startDate.toLocalDate().toString();
+        String end = endDate.toLocalDate().toString();
+        long days = ChronoUnit.DAYS.between(startDate.toLocalDate(), endDate.toLocalDate());
+
         AWSCostExplorer ceClient = AWSCostExplorerClientBuilder.standard()
                 .withRegion(account.getRegion())
                 .build();
 
+        try {
+            String nextPageToken = null;
+            do {
+                String pageToken = nextPageToken;
+                CostPage page = awsCapture.call(String.format("ce GetCostAndUsage %s %s %dd %s",
+                                account.getAccountId(), account.getRegion(), days, pageToken),
+                        CostPage.class, () -> fetchCostPage(ceClient, start, end, pageToken));
+
+                for (CostRow row : page.rows()) {
+                    costCube.add(row.cost(), 0.0, row.service(), row.usageType(),
+                            account.getRegion(), account.getAccountId(), row.day());
+                }
+                nextPageToken = page.nextPageToken();
+            } while (nextPageToken != null);
+        } finally {
+            ceClient.shutdown();
+        }
+        return costCube;
+    }
+
+    private static CostPage fetchCostPage(AWSCostExplorer ceClient, String start, String end, String nextPageToken) {
         // Get cost and usage data
         GetCostAndUsageRequest request = new GetCostAndUsageRequest()
                 .withTimePeriod(new DateInterval()
-                        .withStart(startDate.toLocalDate().toString())
-                        .withEnd(endDate.toLocalDate().toString()))
+                        .withStart(start)
+                        .withEnd(end))
                 .withGranularity("DAILY")
                 .withMetrics("UnblendedCost")
                 .withGroupBy(new GroupDefinition()
-                        .withType("DIMENSION")
-                        .withKey("SERVICE"));
+                                .withType("DIMENSION")
+                                .withKey("SERVICE"),
+                        new GroupDefinition()
+                                .withType("DIMENSION")
+                                .withKey("USAGE_TYPE"))
+                .withNextPageToken(nextPageToken);
 
         GetCostAndUsageResult response = ceClient.getCostAndUsage(request);
-        
-        // Process results and create optimization suggestions
+
+        List<CostRow> rows = new ArrayList<>();
         for (ResultByTime result : response.getResultsByTime()) {
+            String day = result.getTimePeriod().getStart();
             for (com.amazonaws.services.costexplorer.model.Group group : result.getGroups()) {
-                String service = group.getKeys().get(0);
                 double cost = Double.parseDouble(group.getMetrics().get("UnblendedCost").getAmount());
-                OptimizationResult optimizationResult = createOptimizationResult(service, cost);
-                if (optimizationResult != null) {
-                    results.add(optimizationResult);
-                }
+                rows.add(new CostRow(day, group.getKeys().get(0), group.getKeys().get(1), cost));
             }
         }
-        ceClient.shutdown();
-        return results;
+        return new CostPage(rows, response.getNextPageToken());
+    }
+
+    /** One page of daily cost by service and usage type, as captured and replayed. */
+    record CostPage(List<CostRow> rows, String nextPageToken) {
+    }
+
+    record CostRow(String day, String service, String usageType, double cost) {
     }
 
-    private OptimizationResult createOptimizationResult(String service, double cost) {
-        // This is a simplified example. In a real implementation, you would have more sophisticated
-        // logic to determine optimization suggestions based on service type and cost patterns.
-        if (cost > 1000) {
-            OptimizationResult result = new OptimizationResult();
-            result.setResourceType(service);
-            result.setCurrentCost(cost);
-            result.setPotentialSavings(cost * 0.2); // Example: 20% potential savings
-            result.setSeverity("HIGH");
-            result.setSuggestedAction("Review usage patterns and consider reserved instances");
-            result.setCurrentState("High cost detected");
-            return result;
+    /**
+     * Replays the cube's per-service (and, for consolidated billing data, per linked account)
+     * daily totals through the anomaly detector in date order.
+     */
+    private List<OptimizationResult> detectAnomalies(CostCube costCube) {
+        List<OptimizationResult> results = new ArrayList<>();
+        CostAnomalyDetector anomalyDetector = new CostAnomalyDetector();
+        CostCube daily = costCube.project(CostCube.SERVICE, CostCube.DATE, CostCube.LINKED_ACCOUNT);
+        boolean perAccount = daily.cardinality(2) > 1;
+
+        // ISO dates sort lexicographically, so rank the date dictionary once and sort cells by (rank, cell)
+        int dates = daily.cardinality(1);
+        Integer[] byDate = new Integer[dates];
+        for (int code = 0; code < dates; code++) {
+            byDate[code] = code;
+        }
+        Arrays.sort(byDate, Comparator.comparing(code -> daily.label(1, code)));
+        int[] dateRank = new int[dates];
+        for (int rank = 0; rank < dates; rank++) {
+            dateRank[byDate[rank]] = rank;
+        }
+        long[] order = new long[daily.size()];
+        for (int cell = 0; cell < order.length; cell++) {
+            order[cell] = ((long) dateRank[daily.code(cell, 1)] << 32) | cell;
         }
-        return null;
+        Arrays.sort(order);
+
+        for (long entry : order) {
+            int cell = (int) entry;
+            String service = daily.label(0, daily.code(cell, 0));
+            OptimizationResult optimizationResult = anomalyDetector.observe(
+                    perAccount ? daily.label(2, daily.code(cell, 2)) + " " + service : service,
+                    LocalDate.parse(daily.label(1, daily.code(cell, 1))),
+                    daily.cost(cell));
+            if (optimizationResult != null) {
+                results.add(optimizationResult);
+            }
+        }
+        log.debug("Scanned {} cost series over {} days, {} anomalies",
+                anomalyDetector.seriesCount(), dates, results.size());
+        return results;
     }
-} 
\ No newline at end of file
+}
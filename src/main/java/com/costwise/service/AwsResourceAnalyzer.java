@@ -1,14 +1,14 @@
 package com.costwise.service;
 
 import com.costwise.model.AwsAccount;
+import com.costwise.model.FindingCheck;
 import com.costwise.model.OptimizationResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.rds.RdsClient;
 import software.amazon.awssdk.services.rds.model.*;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.elasticache.ElastiCacheClient;
 import software.amazon.awssdk.services.elasticache.model.*;
 import software.amazon.awssdk.services.elasticloadbalancingv2.ElasticLoadBalancingV2Client;
@@ -17,27 +17,40 @@ import software.amazon.awssdk.services.lambda.LambdaClient;
 import software.amazon.awssdk.services.lambda.model.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AwsResourceAnalyzer {
+    /** Services analyzed by a resource analysis, in order. */
+    public static final List<String> SERVICES = List.of("EC2", "RDS", "S3", "ElastiCache", "LoadBalancer", "Lambda");
+    private static final int ELB_TAG_BATCH = 20; // Most ARNs DescribeTags takes at once
+
     private final Ec2CostOptimizer ec2CostOptimizer;
+    private final S3CostAnalyzer s3CostAnalyzer;
 
     public List<OptimizationResult> analyzeResources(AwsAccount account) {
+        return analyzeResources(account, AnalysisContext.NONE);
+    }
+
+    /**
+     * Runs every resource check, reporting each resource to {@code context} as soon as its
+     * checks have finished.
+     */
+    public List<OptimizationResult> analyzeResources(AwsAccount account, AnalysisContext context) {
         List<OptimizationResult> results = new ArrayList<>();
         
         try {
-            // Use the new Ec2CostOptimizer for EC2 analysis
-            results.addAll(ec2CostOptimizer.analyzeEc2Instances(account.getRegion()));
-            
-            // Continue with other resource analysis
-            results.addAll(analyzeRDSInstances(account));
-            results.addAll(analyzeS3Buckets(account));
-            results.addAll(analyzeElastiCacheClusters(account));
-            results.addAll(analyzeLoadBalancers(account));
-            results.addAll(analyzeLambdaFunctions(account));
+            for (String service : SERVICES) {
+                results.addAll(analyzeService(account.getRegion(), service, context));
+            }
+        } catch (AnalysisStoppedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error analyzing AWS resources: {}", e.getMessage());
         }
@@ -45,147 +58,209 @@ public class AwsResourceAnalyzer {
         return results;
     }
 
-    private List<OptimizationResult> analyzeRDSInstances(AwsAccount account) {
+    /**
+     * Runs the checks of one service in one region and marks the service completed. This is the
+     * unit of work that distributed workers lease.
+     */
+    public List<OptimizationResult> analyzeService(String region, String service, AnalysisContext context) {
+        List<OptimizationResult> results;
+        try (ExecutionTrace.Span regionSpan = context.span(region);
+             ExecutionTrace.Span serviceSpan = context.span(service)) {
+            switch (service) {
+                case "EC2":
+                    // Reports its own service completion
+                    return ec2CostOptimizer.analyzeEc2Instances(region, context);
+                case "RDS":
+                    results = analyzeRDSInstances(region, context);
+                    break;
+                case "S3":
+                    results = s3CostAnalyzer.analyzeBuckets(region, context);
+                    break;
+                case "ElastiCache":
+                    results = analyzeElastiCacheClusters(region, context);
+                    break;
+                case "LoadBalancer":
+                    results = analyzeLoadBalancers(region, context);
+                    break;
+                case "Lambda":
+                    results = analyzeLambdaFunctions(region, context);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown service: " + service);
+            }
+            context.serviceCompleted(service);
+        }
+        return results;
+    }
+
+    private List<OptimizationResult> analyzeRDSInstances(String region, AnalysisContext context) {
         List<OptimizationResult> results = new ArrayList<>();
         
         try (RdsClient rdsClient = RdsClient.builder()
-                .region(software.amazon.awssdk.regions.Region.of(account.getRegion()))
+                .region(software.amazon.awssdk.regions.Region.of(region))
                 .build()) {
 
             DescribeDbInstancesResponse response = rdsClient.describeDBInstances();
             
             for (DBInstance instance : response.dbInstances()) {
+                if (context.isCompleted("RDS", instance.dbInstanceIdentifier())) {
+                    continue;
+                }
+                int firstFinding = results.size();
+
                 // Check for multi-AZ deployment
                 if (!instance.multiAZ()) {
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("RDS");
+                    result.setCheck(FindingCheck.RDS_SINGLE_AZ);
                     result.setResourceId(instance.dbInstanceIdentifier());
-                    result.setCurrentState("Single-AZ deployment");
-                    result.setSuggestedAction("Consider enabling Multi-AZ for high availability");
-                    result.setSeverity("HIGH");
                     results.add(result);
                 }
 
                 // Check for auto minor version upgrade
                 if (!instance.autoMinorVersionUpgrade()) {
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("RDS");
+                    result.setCheck(FindingCheck.RDS_NO_MINOR_UPGRADE);
                     result.setResourceId(instance.dbInstanceIdentifier());
-                    result.setCurrentState("Auto minor version upgrade disabled");
-                    result.setSuggestedAction("Enable auto minor version upgrade for better maintenance");
-                    result.setSeverity("MEDIUM");
                     results.add(result);
                 }
-            }
-        }
-        
-        return results;
-    }
 
-    private List<OptimizationResult> analyzeS3Buckets(AwsAccount account) {
-        List<OptimizationResult> results = new ArrayList<>();
-        
-        try (S3Client s3Client = S3Client.builder()
-                .region(software.amazon.awssdk.regions.Region.of(account.getRegion()))
-                .build()) {
-
-            ListBucketsResponse response = s3Client.listBuckets();
-            
-            for (Bucket bucket : response.buckets()) {
-                // Check for versioning
-                GetBucketVersioningResponse versioningResponse = s3Client.getBucketVersioning(
-                    GetBucketVersioningRequest.builder().bucket(bucket.name()).build());
-                
-                if (versioningResponse.status() != BucketVersioningStatus.ENABLED) {
-                    OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("S3");
-                    result.setResourceId(bucket.name());
-                    result.setCurrentState("Versioning disabled");
-                    result.setSuggestedAction("Enable versioning for data protection");
-                    result.setSeverity("HIGH");
-                    results.add(result);
-                }
+                context.resourceCompleted("RDS", instance.dbInstanceIdentifier(), 2, results.subList(firstFinding, results.size()),
+                    instance.tagList().stream()
+                        .collect(Collectors.toMap(tag -> tag.key(), tag -> tag.value(), (first, second) -> second)));
             }
         }
         
         return results;
     }
 
-    private List<OptimizationResult> analyzeElastiCacheClusters(AwsAccount account) {
+    private List<OptimizationResult> analyzeElastiCacheClusters(String region, AnalysisContext context) {
         List<OptimizationResult> results = new ArrayList<>();
         
         try (ElastiCacheClient elasticacheClient = ElastiCacheClient.builder()
-                .region(software.amazon.awssdk.regions.Region.of(account.getRegion()))
+                .region(software.amazon.awssdk.regions.Region.of(region))
                 .build()) {
 
             DescribeCacheClustersResponse response = elasticacheClient.describeCacheClusters();
             
             for (CacheCluster cluster : response.cacheClusters()) {
+                if (context.isCompleted("ElastiCache", cluster.cacheClusterId())) {
+                    continue;
+                }
+                int firstFinding = results.size();
+
                 // Check for Redis cluster mode
                 if (cluster.engine().equals("redis") && !cluster.engineVersion().contains("cluster")) {
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("ElastiCache");
+                    result.setCheck(FindingCheck.ELASTICACHE_SINGLE_NODE);
                     result.setResourceId(cluster.cacheClusterId());
-                    result.setCurrentState("Single-node Redis deployment");
-                    result.setSuggestedAction("Consider using Redis cluster mode for high availability");
-                    result.setSeverity("HIGH");
                     results.add(result);
                 }
+
+                context.resourceCompleted("ElastiCache", cluster.cacheClusterId(), 1, results.subList(firstFinding, results.size()),
+                    tags("ElastiCache", cluster.cacheClusterId(), () -> elasticacheClient
+                        .listTagsForResource(r -> r.resourceName(cluster.arn())).tagList().stream()
+                        .collect(Collectors.toMap(tag -> tag.key(), tag -> tag.value(), (first, second) -> second))));
             }
         }
         
         return results;
     }
 
-    private List<OptimizationResult> analyzeLoadBalancers(AwsAccount account) {
+    private List<OptimizationResult> analyzeLoadBalancers(String region, AnalysisContext context) {
         List<OptimizationResult> results = new ArrayList<>();
         
         try (ElasticLoadBalancingV2Client elbClient = ElasticLoadBalancingV2Client.builder()
-                .region(software.amazon.awssdk.regions.Region.of(account.getRegion()))
+                .region(software.amazon.awssdk.regions.Region.of(region))
                 .build()) {
 
             DescribeLoadBalancersResponse response = elbClient.describeLoadBalancers();
+            Map<String, Map<String, String>> tagsByArn = loadBalancerTags(elbClient, response.loadBalancers());
             
             for (LoadBalancer lb : response.loadBalancers()) {
+                if (context.isCompleted("LoadBalancer", lb.loadBalancerArn())) {
+                    continue;
+                }
+                int firstFinding = results.size();
+
                 // Check for public load balancers
                 if (lb.state().code() == LoadBalancerStateEnum.ACTIVE && !lb.scheme().equals("internal")) {
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("LoadBalancer");
+                    result.setCheck(FindingCheck.ELB_PUBLIC);
                     result.setResourceId(lb.loadBalancerArn());
-                    result.setCurrentState("Public load balancer");
-                    result.setSuggestedAction("Consider using internal load balancer if external access is not needed");
-                    result.setSeverity("MEDIUM");
                     results.add(result);
                 }
+
+                context.resourceCompleted("LoadBalancer", lb.loadBalancerArn(), 1, results.subList(firstFinding, results.size()),
+                    tagsByArn == null ? null : tagsByArn.getOrDefault(lb.loadBalancerArn(), Map.of()));
             }
         }
         
         return results;
     }
 
-    private List<OptimizationResult> analyzeLambdaFunctions(AwsAccount account) {
+    private List<OptimizationResult> analyzeLambdaFunctions(String region, AnalysisContext context) {
         List<OptimizationResult> results = new ArrayList<>();
         
         try (LambdaClient lambdaClient = LambdaClient.builder()
-                .region(software.amazon.awssdk.regions.Region.of(account.getRegion()))
+                .region(software.amazon.awssdk.regions.Region.of(region))
                 .build()) {
 
             ListFunctionsResponse response = lambdaClient.listFunctions();
             
             for (FunctionConfiguration function : response.functions()) {
+                if (context.isCompleted("Lambda", function.functionName())) {
+                    continue;
+                }
+                int firstFinding = results.size();
+
                 // Check for memory allocation
                 if (function.memorySize() < 256) {
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("Lambda");
+                    result.setCheck(FindingCheck.LAMBDA_LOW_MEMORY);
                     result.setResourceId(function.functionName());
-                    result.setCurrentState("Low memory allocation");
-                    result.setSuggestedAction("Consider increasing memory for better performance");
-                    result.setSeverity("MEDIUM");
                     results.add(result);
                 }
+
+                context.resourceCompleted("Lambda", function.functionName(), 1, results.subList(firstFinding, results.size()),
+                    tags("Lambda", function.functionName(), () -> lambdaClient
+                        .listTags(r -> r.resource(function.functionArn())).tags()));
             }
         }
         
         return results;
     }
+
+    /** Tags of the load balancers by ARN, fetched 20 at a time; null if they could not be read. */
+    private static Map<String, Map<String, String>> loadBalancerTags(ElasticLoadBalancingV2Client elbClient,
+                                                                     List<LoadBalancer> loadBalancers) {
+        Map<String, Map<String, String>> tagsByArn = new HashMap<>();
+        try {
+            for (int from = 0; from < loadBalancers.size(); from += ELB_TAG_BATCH) {
+                List<String> arns = loadBalancers.subList(from, Math.min(from + ELB_TAG_BATCH, loadBalancers.size())).stream()
+                    .map(LoadBalancer::loadBalancerArn)
+                    .collect(Collectors.toList());
+                for (TagDescription description : elbClient.describeTags(r -> r.resourceArns(arns)).tagDescriptions()) {
+                    tagsByArn.put(description.resourceArn(), description.tags().stream()
+                        .collect(Collectors.toMap(tag -> tag.key(), tag -> tag.value(), (first, second) -> second)));
+                }
+            }
+        } catch (SdkException e) {
+            log.warn("Could not read load balancer tags: {}", e.getMessage());
+            return null;
+        }
+        return tagsByArn;
+    }
+
+    /**
+     * A resource's tags; null if they could not be read, so the tags stored from earlier runs are
+     * kept rather than cleared.
+     */
+    private static Map<String, String> tags(String resourceType, String resourceId, Supplier<Map<String, String>> fetch) {
+        try {
+            return fetch.get();
+        } catch (SdkException e) {
+            log.warn("Could not read tags of {} {}: {}", resourceType, resourceId, e.getMessage());
+            return null;
+        }
+    }
 } 
\ No newline at end of file
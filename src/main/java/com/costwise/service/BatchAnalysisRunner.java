@@ -0,0 +1,135 @@
+package com.costwise.service;
+
+import com.costwise.model.AwsAccount;
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.repository.AwsAccountRepository;
+import com.costwise.repository.OptimizationResultRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Command-line entry point used when the application is started with {@code --batch}: runs one
+ * analysis per selected account, writes an Excel report for each run and exits.
+ * <p>
+ * Options: {@code --account=<id>} (repeatable) or {@code --all-accounts},
+ * {@code --analysis=resources|cost|cur} (default resources), {@code --days=<n>} for cost
+ * analyses (default 30), {@code --timeout-minutes=<n>} for resource analyses and
+ * {@code --report-dir=<path>} (default ./reports). The exit code is 0 if every run completed,
+ * 1 if any run did not, and 2 for invalid arguments.
+ */
+@Slf4j
+@Component
+@Profile("batch")
+@RequiredArgsConstructor
+public class BatchAnalysisRunner implements ApplicationRunner, ExitCodeGenerator {
+    private final AwsAccountRepository awsAccountRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+    private final AwsCostAnalysisService costAnalysisService;
+    private final ResourceAnalysisService resourceAnalysisService;
+    private final ExcelReportService excelReportService;
+    private final AnalysisScheduler analysisScheduler;
+
+    private int exitCode;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<AwsAccount> accounts;
+        try {
+            accounts = selectAccounts(args);
+        } catch (RuntimeException e) {
+            log.error("Invalid --account: {}", e.getMessage());
+            exitCode = 2;
+            return;
+        }
+        String analysis = option(args, "analysis", "resources");
+        if (accounts.isEmpty() || !List.of("resources", "cost", "cur").contains(analysis)) {
+            log.error("Usage: --batch (--account=<id>... | --all-accounts) [--analysis=resources|cost|cur] "
+                    + "[--days=<n>] [--timeout-minutes=<n>] [--report-dir=<path>]");
+            exitCode = 2;
+            return;
+        }
+        Path reportDirectory = Paths.get(option(args, "report-dir", "./reports"));
+        Files.createDirectories(reportDirectory);
+
+        // A fleet sweep runs accounts concurrently in the scheduler's BATCH lane, fairly across accounts
+        List<CompletableFuture<CostAnalysisRun>> runs = new ArrayList<>();
+        for (AwsAccount account : accounts) {
+            runs.add(analysisScheduler.submit(AnalysisScheduler.Lane.BATCH, account, () -> analyze(account, analysis, args)));
+        }
+
+        for (int i = 0; i < runs.size(); i++) {
+            AwsAccount account = accounts.get(i);
+            try {
+                CostAnalysisRun analysisRun = runs.get(i).join();
+                writeReport(analysisRun, reportDirectory);
+                log.info("Account {}: run {} {} with {} findings, potential savings ${}", account.getAccountName(),
+                        analysisRun.getId(), analysisRun.getStatus(), optimizationResultRepository.countByAnalysisRunId(analysisRun.getId()),
+                        String.format("%.2f", analysisRun.getPotentialSavings()));
+                if (!"COMPLETED".equals(analysisRun.getStatus())) {
+                    exitCode = 1;
+                }
+            } catch (Exception e) {
+                log.error("Account {}: analysis failed: {}", account.getAccountName(), e.getMessage());
+                exitCode = 1;
+            }
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    private CostAnalysisRun analyze(AwsAccount account, String analysis, ApplicationArguments args) {
+        switch (analysis) {
+            case "cost":
+                LocalDateTime end = LocalDateTime.now();
+                return costAnalysisService.analyzeCosts(account, end.minusDays(Long.parseLong(option(args, "days", "30"))), end);
+            case "cur":
+                return costAnalysisService.analyzeCurReports(account);
+            default:
+                String timeout = option(args, "timeout-minutes", null);
+                return resourceAnalysisService.runResourceAnalysis(account, timeout == null ? null : Long.valueOf(timeout));
+        }
+    }
+
+    private void writeReport(CostAnalysisRun analysisRun, Path reportDirectory) throws IOException {
+        Path report = reportDirectory.resolve("cost-analysis-run-" + analysisRun.getId() + ".xlsx");
+        Files.write(report, excelReportService.generateReport(analysisRun));
+        log.info("Wrote {}", report);
+    }
+
+    private List<AwsAccount> selectAccounts(ApplicationArguments args) {
+        if (args.containsOption("all-accounts")) {
+            return awsAccountRepository.findByActiveTrue();
+        }
+        List<AwsAccount> accounts = new ArrayList<>();
+        List<String> ids = args.getOptionValues("account");
+        if (ids != null) {
+            for (String id : ids) {
+                accounts.add(awsAccountRepository.findById(Long.valueOf(id))
+                        .orElseThrow(() -> new RuntimeException("AWS Account not found: " + id)));
+            }
+        }
+        return accounts;
+    }
+
+    private static String option(ApplicationArguments args, String name, String defaultValue) {
+        List<String> values = args.getOptionValues(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(0);
+    }
+}
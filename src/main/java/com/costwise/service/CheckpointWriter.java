@@ -0,0 +1,90 @@
+package com.costwise.service;
+
+import com.costwise.model.OptimizationResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The persistence stage of a run: writes checkpoint batches on a thread of its own, so analyzers
+ * go on while the database works. At most {@code maxQueued} batches wait; handing over another
+ * blocks until the oldest is written, which slows the analyzers down to the database's pace
+ * instead of buffering findings without bound. After a failed write later batches are dropped,
+ * so their resources are analyzed again on resume, and the failure is rethrown to the next caller.
+ */
+class CheckpointWriter {
+    private final Long runId;
+    private final AnalysisCheckpointService checkpoints;
+    private final Semaphore slots;
+    private final ThreadPoolExecutor writer;
+    private volatile RuntimeException failure;
+    private Future<?> last = CompletableFuture.completedFuture(null);
+
+    CheckpointWriter(Long runId, AnalysisCheckpointService checkpoints, int maxQueued) {
+        this.runId = runId;
+        this.checkpoints = checkpoints;
+        this.slots = new Semaphore(maxQueued + 1); // One being written plus the queued ones
+        this.writer = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer-" + runId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.allowCoreThreadTimeOut(true); // Nothing to shut down when the run ends
+    }
+
+    /** Queues a batch, waiting while the queue is full. */
+    void submit(List<OptimizationResult> findings, List<String> resourceKeys, Map<String, Map<String, String>> resourceTags) {
+        rethrow();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to checkpoint analysis run " + runId, e);
+        }
+        Runnable write = () -> {
+            try {
+                if (failure == null) {
+                    checkpoints.checkpoint(runId, findings, resourceKeys, resourceTags);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                slots.release();
+            }
+        };
+        synchronized (this) {
+            last = writer.submit(write);
+        }
+    }
+
+    /** Waits until every batch queued so far is written, then rethrows the first failed write. */
+    void flush() {
+        Future<?> pending;
+        synchronized (this) {
+            pending = last;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while checkpointing analysis run " + runId, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not checkpoint analysis run " + runId, e.getCause());
+        }
+        rethrow();
+    }
+
+    private void rethrow() {
+        RuntimeException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.costwise.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sizes Savings Plan / Reserved Instance commitments per instance family and region from hourly
+ * On-Demand spend in the CUR exports.
+ * <p>
+ * Committing to cover {@code x} dollars of On-Demand spend per hour at discount {@code d} costs
+ * {@code x * (1 - d)} every hour and saves {@code min(u, x)} in an hour with spend {@code u}, so
+ * net savings over the window are {@code sum(min(u, x)) - hours * x * (1 - d)}. That is concave in
+ * {@code x} and piecewise linear between observed hourly values, so the best level is found by
+ * sorting the hours once and sweeping them with a running sum, for every term at once. Families
+ * are searched in parallel on a fork-join pool.
+ * <p>
+ * Terms are compared on expected savings: the window only shows the past year, and the longer a
+ * term, the more likely the usage it covers shrinks before it ends. Covered spend is scaled by the
+ * share expected to persist on average over the term, with {@code annual-usage-retention} of it
+ * carried into each following year, while the commitment is paid in full. A 3-year term so only
+ * wins where its extra discount outweighs that risk.
+ * <p>
+ * The CUR exports are parsed in the background on first use; analyses meanwhile, and after a
+ * failed parse, see no recommendations. A failed parse is retried on use after a backoff that
+ * doubles with every failure.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CommitmentOptimizer {
+    private static final int SERIES_PER_TASK = 4;
+    private static final int HOURS_PER_MONTH = 730;
+
+    private final CurIngestionService curIngestionService;
+    private final AtomicReference<CompletableFuture<Snapshot>> loading = new AtomicReference<>();
+    private volatile Snapshot latest;
+    private volatile long retryAfterNanos = System.nanoTime();
+    private int failures; // Consecutive failed loads; only touched by the loading thread
+
+    @Value("${costwise.commitments.lookback-hours:8760}")
+    private int lookbackHours;
+
+    @Value("${costwise.commitments.one-year-discount:0.28}")
+    private double oneYearDiscount;
+
+    @Value("${costwise.commitments.three-year-discount:0.46}")
+    private double threeYearDiscount;
+
+    @Value("${costwise.commitments.annual-usage-retention:0.8}")
+    private double annualUsageRetention;
+
+    @Value("${costwise.commitments.retry-min-seconds:30}")
+    private long retryMinSeconds;
+
+    @Value("${costwise.commitments.retry-max-seconds:3600}")
+    private long retryMaxSeconds;
+
+    @Value("${costwise.commitments.parallelism:0}")
+    private int parallelism;
+
+    /** Recommendations by descending monthly savings; waits for the CUR exports to be parsed on first use. */
+    public List<CommitmentRecommendation> recommendations(boolean refresh) {
+        if (refresh) {
+            latest = compute();
+        }
+        Snapshot snapshot = latest;
+        if (snapshot != null) {
+            return snapshot.recommendations;
+        }
+        try {
+            return load().join().recommendations;
+        } catch (CompletionException e) {
+            throw new RuntimeException("Could not compute commitment recommendations", e.getCause());
+        }
+    }
+
+    /** The recommendation for an instance family in a region; null if committing would not pay off. */
+    public CommitmentRecommendation recommendation(String family, String region) {
+        return snapshot().byFamily.get(family + "|" + region);
+    }
+
+    /** Average On-Demand hourly cost of the instance type in the region; null if the CUR has none. */
+    public Double onDemandHourlyRate(String instanceType, String region) {
+        return snapshot().hourlyRates.get(instanceType + "|" + region);
+    }
+
+    @Scheduled(cron = "${costwise.commitments.cron:0 0 4 * * *}")
+    public void refresh() {
+        try {
+            latest = compute();
+        } catch (Exception e) {
+            log.warn("Could not refresh commitment recommendations: {}", e.getMessage());
+        }
+    }
+
+    /** Searches the commitment level of every family and region in parallel. */
+    public List<CommitmentRecommendation> optimize(OnDemandUsage usage) {
+        String[] terms = {"1-year", "3-year"};
+        double[] discounts = {oneYearDiscount, threeYearDiscount};
+        double[] expectedUsage = {expectedUsage(annualUsageRetention, 1), expectedUsage(annualUsageRetention, 3)};
+        CommitmentRecommendation[] found = new CommitmentRecommendation[usage.size()];
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Search(usage, terms, discounts, expectedUsage, found, 0, found.length));
+        } finally {
+            pool.shutdown();
+        }
+
+        List<CommitmentRecommendation> recommendations = new ArrayList<>();
+        for (CommitmentRecommendation recommendation : found) {
+            if (recommendation != null) {
+                recommendations.add(recommendation);
+            }
+        }
+        recommendations.sort(Comparator.comparingDouble(CommitmentRecommendation::getMonthlySavings).reversed());
+        return recommendations;
+    }
+
+    /**
+     * Average share of today's usage left over a term of {@code years}, with {@code retention} of
+     * it carried into each following year.
+     */
+    static double expectedUsage(double retention, int years) {
+        double sum = 0.0;
+        double share = 1.0;
+        for (int year = 0; year < years; year++) {
+            sum += share;
+            share *= retention;
+        }
+        return sum / years;
+    }
+
+    /**
+     * The commitment with the highest expected savings over one hourly spend series across the
+     * given terms, or null if no level saves anything. {@code expectedUsage} scales the covered
+     * spend of each term.
+     */
+    static CommitmentRecommendation optimize(double[] hourly, String[] terms, double[] discounts, double[] expectedUsage) {
+        int hours = hourly.length;
+        double[] sorted = hourly.clone();
+        Arrays.sort(sorted);
+
+        int bestTerm = -1;
+        double bestLevel = 0.0;
+        double bestCovered = 0.0;
+        double bestSavings = 0.0;
+        double below = 0.0; // spend of the hours under the level being tried
+        for (int k = 0; k < hours; k++) {
+            double level = sorted[k];
+            if (level > 0.0 && (k == 0 || level != sorted[k - 1])) {
+                double covered = below + level * (hours - k);
+                for (int term = 0; term < terms.length; term++) {
+                    double savings = covered * expectedUsage[term] - hours * level * (1 - discounts[term]);
+                    if (savings > bestSavings) {
+                        bestTerm = term;
+                        bestLevel = level;
+                        bestCovered = covered;
+                        bestSavings = savings;
+                    }
+                }
+            }
+            below += level;
+        }
+        if (bestTerm < 0) {
+            return null;
+        }
+
+        double total = below;
+        CommitmentRecommendation recommendation = new CommitmentRecommendation();
+        recommendation.setTerm(terms[bestTerm]);
+        recommendation.setDiscount(discounts[bestTerm]);
+        recommendation.setExpectedUsage(expectedUsage[bestTerm]);
+        recommendation.setHours(hours);
+        recommendation.setOnDemandSpend(total);
+        recommendation.setAverageHourlySpend(total / hours);
+        recommendation.setPeakHourlySpend(sorted[hours - 1]);
+        recommendation.setCoveredHourlySpend(bestLevel);
+        recommendation.setHourlyCommitment(bestLevel * (1 - discounts[bestTerm]));
+        recommendation.setUtilization(Math.min(bestCovered / (hours * bestLevel), 1.0));
+        recommendation.setCoverage(Math.min(bestCovered / total, 1.0));
+        recommendation.setNetSavings(bestSavings);
+        recommendation.setMonthlySavings(bestSavings / hours * HOURS_PER_MONTH);
+        recommendation.setSavingsRate(bestSavings / total);
+        return recommendation;
+    }
+
+    /** The latest recommendations, or none while they are first loaded or after a failed load. */
+    private Snapshot snapshot() {
+        Snapshot snapshot = latest;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        if (System.nanoTime() - retryAfterNanos >= 0) {
+            load();
+        }
+        return Snapshot.EMPTY;
+    }
+
+    /** Starts parsing the CUR exports on a thread of its own, unless a load is already running. */
+    private CompletableFuture<Snapshot> load() {
+        CompletableFuture<Snapshot> started = new CompletableFuture<>();
+        CompletableFuture<Snapshot> running = loading.compareAndExchange(null, started);
+        if (running != null) {
+            return running;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                Snapshot snapshot = compute();
+                latest = snapshot;
+                failures = 0;
+                started.complete(snapshot);
+            } catch (Exception e) {
+                failures++;
+                long backoff = Math.min(retryMinSeconds << Math.min(failures - 1, 20), retryMaxSeconds);
+                retryAfterNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(backoff);
+                log.warn("Could not compute commitment recommendations, retrying in {} s: {}", backoff, e.getMessage());
+                started.completeExceptionally(e);
+            } finally {
+                loading.set(null);
+            }
+        }, "commitment-snapshot");
+        thread.setDaemon(true);
+        thread.start();
+        return started;
+    }
+
+    private Snapshot compute() {
+        OnDemandUsage usage = curIngestionService.ingestOnDemandUsage(lookbackHours);
+        long started = System.nanoTime();
+        List<CommitmentRecommendation> recommendations = optimize(usage);
+        log.info("Searched commitments for {} family and region series of {} hours in {} ms, {} worth committing",
+                usage.size(), usage.hours(), (System.nanoTime() - started) / 1_000_000, recommendations.size());
+        return new Snapshot(recommendations, usage.hourlyRates());
+    }
+
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(List.of(), Map.of());
+
+        final List<CommitmentRecommendation> recommendations;
+        final Map<String, CommitmentRecommendation> byFamily = new HashMap<>();
+        final Map<String, Double> hourlyRates;
+
+        Snapshot(List<CommitmentRecommendation> recommendations, Map<String, Double> hourlyRates) {
+            this.recommendations = recommendations;
+            this.hourlyRates = hourlyRates;
+            for (CommitmentRecommendation recommendation : recommendations) {
+                byFamily.put(recommendation.getFamily() + "|" + recommendation.getRegion(), recommendation);
+            }
+        }
+    }
+
+    /** Optimizes a range of series, splitting it in halves until the pieces are small. */
+    private static final class Search extends RecursiveAction {
+        private final OnDemandUsage usage;
+        private final String[] terms;
+        private final double[] discounts;
+        private final double[] expectedUsage;
+        private final CommitmentRecommendation[] found;
+        private final int from;
+        private final int to;
+
+        Search(OnDemandUsage usage, String[] terms, double[] discounts, double[] expectedUsage,
+               CommitmentRecommendation[] found, int from, int to) {
+            this.usage = usage;
+            this.terms = terms;
+            this.discounts = discounts;
+            this.expectedUsage = expectedUsage;
+            this.found = found;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SERIES_PER_TASK) {
+                for (int series = from; series < to; series++) {
+                    CommitmentRecommendation recommendation = optimize(usage.hourly(series), terms, discounts, expectedUsage);
+                    if (recommendation != null) {
+                        recommendation.setFamily(usage.family(series));
+                        recommendation.setRegion(usage.region(series));
+                    }
+                    found[series] = recommendation;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Search(usage, terms, discounts, expectedUsage, found, from, middle),
+                    new Search(usage, terms, discounts, expectedUsage, found, middle, to));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.costwise.service;
+
+import lombok.Data;
+
+/**
+ * Commitment level for one instance family in one region that maximizes expected net savings over the
+ * family's hourly On-Demand spend. Amounts over the whole window are in dollars; hourly amounts
+ * are dollars per hour.
+ */
+@Data
+public class CommitmentRecommendation {
+    private String family;
+    private String region;
+    private String term;
+    private double discount;
+    /** Share of the observed usage expected to persist on average over the term; savings are scaled by it. */
+    private double expectedUsage;
+    private int hours;
+    private double onDemandSpend;
+    private double averageHourlySpend;
+    private double peakHourlySpend;
+    /** On-Demand spend per hour the commitment covers. */
+    private double coveredHourlySpend;
+    /** What the commitment costs per hour, used or not. */
+    private double hourlyCommitment;
+    /** Share of the commitment used, over all hours of the window. */
+    private double utilization;
+    /** Share of the On-Demand spend the commitment covers. */
+    private double coverage;
+    /** Expected net savings over a window's worth of hours. */
+    private double netSavings;
+    private double monthlySavings;
+    /** Net savings as a share of the On-Demand spend. */
+    private double savingsRate;
+
+    public String describe() {
+        return String.format("%s commitment of $%.2f/h for %s in %s: covers %.0f%% of On-Demand spend at %.0f%% utilization, "
+                        + "saves $%.0f/month across the family",
+                term, hourlyCommitment, family, region, coverage * 100, utilization * 100, monthlySavings);
+    }
+}
@@ -0,0 +1,157 @@
+package com.costwise.service;
+
+import com.costwise.model.FindingCheck;
+import com.costwise.model.OptimizationResult;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single-pass anomaly detector for daily cost series.
+ * <p>
+ * Each series (e.g. one service in one account) keeps an EWMA level, an EWMA of the squared
+ * residual and one additive day-of-week seasonal offset per weekday. Spikes are residuals
+ * far outside the seasonal baseline; gradual creep is the fast level drifting above a slow
+ * long-term level, which the fast baseline alone would silently absorb. All state lives in
+ * primitive arrays indexed by series id, so memory is O(number of series) regardless of how
+ * many days are fed in. Observations must arrive in date order per series.
+ */
+public class CostAnomalyDetector {
+    private static final int SEASONS = 7;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final double LEVEL_ALPHA = 0.2;
+    private static final double SLOW_LEVEL_ALPHA = 0.01;
+    private static final double SEASON_GAMMA = 0.1;
+    private static final double VARIANCE_BETA = 0.1;
+    private static final double Z_THRESHOLD = 3.0;
+    private static final double HIGH_SEVERITY_Z = 6.0;
+    private static final double MIN_ABSOLUTE_DEVIATION = 50.0; // dollars per day
+    private static final double RELATIVE_NOISE_FLOOR = 0.05; // of the expected cost
+    private static final int WARMUP_DAYS = 14;
+    private static final int COOLDOWN_DAYS = 7;
+    private static final double CREEP_RATIO = 1.15;
+    private static final int CREEP_WARMUP_DAYS = 60;
+    private static final int CREEP_COOLDOWN_DAYS = 30;
+    private static final int DAYS_PER_MONTH = 30;
+
+    private final Map<String, Integer> seriesIds = new HashMap<>();
+    private double[] level = new double[INITIAL_CAPACITY];
+    private double[] slowLevel = new double[INITIAL_CAPACITY];
+    private double[] variance = new double[INITIAL_CAPACITY];
+    private double[] season = new double[INITIAL_CAPACITY * SEASONS];
+    private int[] observations = new int[INITIAL_CAPACITY];
+    private long[] lastDay = new long[INITIAL_CAPACITY];
+    private long[] lastAnomalyDay = new long[INITIAL_CAPACITY];
+    private long[] lastCreepDay = new long[INITIAL_CAPACITY];
+
+    /**
+     * Feeds one day's cost for a series and returns a finding if it deviates from the
+     * seasonal baseline or the series has crept well above its long-term level, or
+     * {@code null} otherwise.
+     */
+    public OptimizationResult observe(String series, LocalDate day, double cost) {
+        int id = seriesId(series);
+        long epochDay = day.toEpochDay();
+        if (observations[id] > 0 && epochDay <= lastDay[id]) {
+            throw new IllegalArgumentException("Out-of-order observation for " + series + " on " + day);
+        }
+        lastDay[id] = epochDay;
+
+        int seasonIndex = id * SEASONS + day.getDayOfWeek().getValue() - 1;
+        if (observations[id] == 0) {
+            level[id] = cost;
+            slowLevel[id] = cost;
+            observations[id] = 1;
+            return null;
+        }
+
+        double expected = Math.max(0.0, level[id] + season[seasonIndex]);
+        double residual = cost - expected;
+        double stdDev = Math.max(Math.sqrt(variance[id]), RELATIVE_NOISE_FLOOR * expected);
+        double zScore = stdDev > 0 ? residual / stdDev : 0.0;
+
+        OptimizationResult finding = null;
+        if (observations[id] >= WARMUP_DAYS
+                && zScore > Z_THRESHOLD
+                && residual > MIN_ABSOLUTE_DEVIATION
+                && epochDay - lastAnomalyDay[id] > COOLDOWN_DAYS) {
+            lastAnomalyDay[id] = epochDay;
+            finding = createFinding(series, day, cost, expected, zScore);
+        }
+
+        // Winsorize the residual so a single spike does not blow up the variance estimate
+        double bound = stdDev > 0 ? Z_THRESHOLD * stdDev : Math.abs(residual);
+        double clipped = Math.max(-bound, Math.min(bound, residual));
+        double adjusted = expected + clipped;
+        level[id] += LEVEL_ALPHA * (adjusted - season[seasonIndex] - level[id]);
+        season[seasonIndex] += SEASON_GAMMA * (adjusted - level[id] - season[seasonIndex]);
+        variance[id] = (1 - VARIANCE_BETA) * variance[id] + VARIANCE_BETA * clipped * clipped;
+        slowLevel[id] += SLOW_LEVEL_ALPHA * (level[id] - slowLevel[id]);
+        observations[id]++;
+
+        double excess = level[id] - slowLevel[id];
+        if (finding == null
+                && observations[id] >= CREEP_WARMUP_DAYS
+                && level[id] > CREEP_RATIO * slowLevel[id]
+                && excess > MIN_ABSOLUTE_DEVIATION
+                && epochDay - lastCreepDay[id] > CREEP_COOLDOWN_DAYS) {
+            lastCreepDay[id] = epochDay;
+            finding = createCreepFinding(series, day, level[id], slowLevel[id]);
+        }
+        return finding;
+    }
+
+    public int seriesCount() {
+        return seriesIds.size();
+    }
+
+    private int seriesId(String series) {
+        Integer id = seriesIds.get(series);
+        if (id != null) {
+            return id;
+        }
+        int next = seriesIds.size();
+        if (next == level.length) {
+            grow(next * 2);
+        }
+        seriesIds.put(series, next);
+        lastAnomalyDay[next] = Long.MIN_VALUE / 2;
+        lastCreepDay[next] = Long.MIN_VALUE / 2;
+        return next;
+    }
+
+    private void grow(int capacity) {
+        level = Arrays.copyOf(level, capacity);
+        slowLevel = Arrays.copyOf(slowLevel, capacity);
+        variance = Arrays.copyOf(variance, capacity);
+        season = Arrays.copyOf(season, capacity * SEASONS);
+        observations = Arrays.copyOf(observations, capacity);
+        lastDay = Arrays.copyOf(lastDay, capacity);
+        lastAnomalyDay = Arrays.copyOf(lastAnomalyDay, capacity);
+        lastCreepDay = Arrays.copyOf(lastCreepDay, capacity);
+    }
+
+    private OptimizationResult createFinding(String series, LocalDate day, double cost, double expected, double zScore) {
+        OptimizationResult result = new OptimizationResult();
+        result.setCheck(FindingCheck.COST_SPIKE, day.toString(), String.format("%.2f", cost), String.format("%.2f", expected));
+        result.setResourceId(series);
+        result.setCurrentCost(cost);
+        result.setPotentialSavings(cost - expected);
+        result.setSeverity(zScore >= HIGH_SEVERITY_Z ? "HIGH" : "MEDIUM");
+        result.setAdditionalDetails(String.format("z-score %.1f", zScore));
+        return result;
+    }
+
+    private OptimizationResult createCreepFinding(String series, LocalDate day, double currentLevel, double baseline) {
+        OptimizationResult result = new OptimizationResult();
+        result.setCheck(FindingCheck.COST_CREEP, day.toString(),
+                String.format("%.2f", currentLevel), String.format("%.2f", baseline));
+        result.setResourceId(series);
+        result.setCurrentCost(currentLevel * DAYS_PER_MONTH);
+        result.setPotentialSavings((currentLevel - baseline) * DAYS_PER_MONTH);
+        return result;
+    }
+}
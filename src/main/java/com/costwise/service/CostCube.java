@@ -0,0 +1,441 @@
+package com.costwise.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Sparse in-memory cost cube over dictionary-encoded dimensions.
+ * <p>
+ * Every distinct dimension value is mapped to a dense int code, and each populated cell stores
+ * its codes in one flat int array plus cost, savings and line counts in parallel primitive
+ * arrays. Cells are located through an open-addressing hash table, so adding a line item
+ * allocates nothing once the value has been seen. Roll-up, slice and top-K queries are all
+ * answered with a single pass over the populated cells.
+ */
+public class CostCube {
+    public static final String SERVICE = "SERVICE";
+    public static final String USAGE_TYPE = "USAGE_TYPE";
+    public static final String REGION = "REGION";
+    public static final String LINKED_ACCOUNT = "LINKED_ACCOUNT";
+    public static final String DATE = "DATE";
+    public static final String RESOURCE_TYPE = "RESOURCE_TYPE";
+
+    public static final int ANY = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.6;
+
+    private final String[] dimensions;
+    private final Dictionary[] dictionaries;
+    private final int[] scratch;
+
+    private int size;
+    private int[] coordinates;
+    private double[] cost;
+    private double[] savings;
+    private long[] lines;
+    private int[] table;
+
+    public CostCube(String... dimensions) {
+        this.dimensions = dimensions.clone();
+        this.dictionaries = new Dictionary[dimensions.length];
+        for (int i = 0; i < dimensions.length; i++) {
+            dictionaries[i] = new Dictionary();
+        }
+        this.scratch = new int[dimensions.length];
+        this.coordinates = new int[INITIAL_CAPACITY * dimensions.length];
+        this.cost = new double[INITIAL_CAPACITY];
+        this.savings = new double[INITIAL_CAPACITY];
+        this.lines = new long[INITIAL_CAPACITY];
+        this.table = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /** Adds a line item; values are given in dimension order. */
+    public void add(double lineCost, double lineSavings, String... values) {
+        if (values.length != dimensions.length) {
+            throw new IllegalArgumentException("Expected " + dimensions.length + " dimension values, got " + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            scratch[i] = dictionaries[i].encode(values[i]);
+        }
+        addEncoded(scratch, lineCost, lineSavings, 1);
+    }
+
+    /** Adds a line item whose values are already encoded with {@link #encode(int, String)}. */
+    public void addEncoded(int[] codes, double lineCost, double lineSavings, long lineCount) {
+        int cell = findOrInsert(codes);
+        cost[cell] += lineCost;
+        savings[cell] += lineSavings;
+        lines[cell] += lineCount;
+    }
+
+    public int encode(int dimension, String value) {
+        return dictionaries[dimension].encode(value);
+    }
+
+    public int dimension(String name) {
+        for (int i = 0; i < dimensions.length; i++) {
+            if (dimensions[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown dimension: " + name);
+    }
+
+    public int dimensionCount() {
+        return dimensions.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int code(int cell, int dimension) {
+        return coordinates[cell * dimensions.length + dimension];
+    }
+
+    public String label(int dimension, int code) {
+        return dictionaries[dimension].value(code);
+    }
+
+    public int cardinality(int dimension) {
+        return dictionaries[dimension].size();
+    }
+
+    public double cost(int cell) {
+        return cost[cell];
+    }
+
+    public double savings(int cell) {
+        return savings[cell];
+    }
+
+    public long lines(int cell) {
+        return lines[cell];
+    }
+
+    public double totalCost() {
+        double total = 0;
+        for (int cell = 0; cell < size; cell++) {
+            total += cost[cell];
+        }
+        return total;
+    }
+
+    public double totalSavings() {
+        double total = 0;
+        for (int cell = 0; cell < size; cell++) {
+            total += savings[cell];
+        }
+        return total;
+    }
+
+    /** Starts a slice/roll-up query over this cube. */
+    public Query query() {
+        return new Query();
+    }
+
+    /** Returns a new cube holding this cube rolled up onto the given subset of dimensions. */
+    public CostCube project(String... keep) {
+        CostCube projected = new CostCube(keep);
+        int[] source = new int[keep.length];
+        for (int i = 0; i < keep.length; i++) {
+            source[i] = dimension(keep[i]);
+        }
+        // Re-encode each source dictionary once instead of once per cell
+        int[][] recode = new int[keep.length][];
+        for (int i = 0; i < keep.length; i++) {
+            Dictionary dictionary = dictionaries[source[i]];
+            recode[i] = new int[dictionary.size()];
+            for (int code = 0; code < dictionary.size(); code++) {
+                recode[i][code] = projected.encode(i, dictionary.value(code));
+            }
+        }
+        int[] codes = new int[keep.length];
+        for (int cell = 0; cell < size; cell++) {
+            for (int i = 0; i < keep.length; i++) {
+                codes[i] = recode[i][code(cell, source[i])];
+            }
+            projected.addEncoded(codes, cost[cell], savings[cell], lines[cell]);
+        }
+        return projected;
+    }
+
+    /** Adds every cell of another cube with the same dimensions into this one. */
+    public void merge(CostCube other) {
+        if (!Arrays.equals(dimensions, other.dimensions)) {
+            throw new IllegalArgumentException("Cannot merge cubes with different dimensions");
+        }
+        int[][] recode = new int[dimensions.length][];
+        for (int i = 0; i < dimensions.length; i++) {
+            Dictionary dictionary = other.dictionaries[i];
+            recode[i] = new int[dictionary.size()];
+            for (int code = 0; code < dictionary.size(); code++) {
+                recode[i][code] = encode(i, dictionary.value(code));
+            }
+        }
+        int[] codes = new int[dimensions.length];
+        for (int cell = 0; cell < other.size; cell++) {
+            for (int i = 0; i < dimensions.length; i++) {
+                codes[i] = recode[i][other.code(cell, i)];
+            }
+            addEncoded(codes, other.cost[cell], other.savings[cell], other.lines[cell]);
+        }
+    }
+
+    private int findOrInsert(int[] codes) {
+        int dims = dimensions.length;
+        int mask = table.length - 1;
+        int slot = hash(codes) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                break;
+            }
+            int cell = entry - 1;
+            if (matches(cell, codes)) {
+                return cell;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == cost.length) {
+            growCells(size * 2);
+        }
+        int cell = size++;
+        System.arraycopy(codes, 0, coordinates, cell * dims, dims);
+        table[slot] = cell + 1;
+        if (size > table.length * MAX_LOAD) {
+            rehash(table.length * 2);
+        }
+        return cell;
+    }
+
+    private boolean matches(int cell, int[] codes) {
+        int base = cell * dimensions.length;
+        for (int i = 0; i < codes.length; i++) {
+            if (coordinates[base + i] != codes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hashCell(int cell) {
+        int base = cell * dimensions.length;
+        int h = 1;
+        for (int i = 0; i < dimensions.length; i++) {
+            h = 31 * h + coordinates[base + i];
+        }
+        return mix(h);
+    }
+
+    private static int hash(int[] codes) {
+        int h = 1;
+        for (int code : codes) {
+            h = 31 * h + code;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private void growCells(int capacity) {
+        coordinates = Arrays.copyOf(coordinates, capacity * dimensions.length);
+        cost = Arrays.copyOf(cost, capacity);
+        savings = Arrays.copyOf(savings, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int cell = 0; cell < size; cell++) {
+            int slot = hashCell(cell) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = cell + 1;
+        }
+    }
+
+    /**
+     * Slice-and-roll-up query. Any number of dimensions can be pinned to a value with
+     * {@link #where(String, String)}; the matching cells are then summed per value of the
+     * group-by dimension in a single pass.
+     */
+    public class Query {
+        private final int[] filter = new int[dimensions.length];
+        private boolean empty;
+
+        private Query() {
+            Arrays.fill(filter, ANY);
+        }
+
+        public Query where(String dimension, String value) {
+            int dim = dimension(dimension);
+            Integer code = dictionaries[dim].find(value);
+            if (code == null) {
+                // Value never seen: the slice is empty
+                empty = true;
+            } else {
+                filter[dim] = code;
+            }
+            return this;
+        }
+
+        public Rollup groupBy(String dimension) {
+            int dim = dimension(dimension);
+            int cardinality = dictionaries[dim].size();
+            double[] groupCost = new double[cardinality];
+            double[] groupSavings = new double[cardinality];
+            long[] groupLines = new long[cardinality];
+            if (!empty) {
+                for (int cell = 0; cell < size; cell++) {
+                    if (accepts(cell)) {
+                        int code = code(cell, dim);
+                        groupCost[code] += cost[cell];
+                        groupSavings[code] += savings[cell];
+                        groupLines[code] += lines[cell];
+                    }
+                }
+            }
+            return new Rollup(dictionaries[dim], groupCost, groupSavings, groupLines);
+        }
+
+        public double totalCost() {
+            double total = 0;
+            if (!empty) {
+                for (int cell = 0; cell < size; cell++) {
+                    if (accepts(cell)) {
+                        total += cost[cell];
+                    }
+                }
+            }
+            return total;
+        }
+
+        private boolean accepts(int cell) {
+            int base = cell * dimensions.length;
+            for (int i = 0; i < filter.length; i++) {
+                if (filter[i] != ANY && coordinates[base + i] != filter[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Per-value totals of one dimension, indexed by dictionary code. */
+    public static class Rollup {
+        private final Dictionary dictionary;
+        private final double[] cost;
+        private final double[] savings;
+        private final long[] lines;
+
+        private Rollup(Dictionary dictionary, double[] cost, double[] savings, long[] lines) {
+            this.dictionary = dictionary;
+            this.cost = cost;
+            this.savings = savings;
+            this.lines = lines;
+        }
+
+        public int size() {
+            return cost.length;
+        }
+
+        public String label(int code) {
+            return dictionary.value(code);
+        }
+
+        public double cost(int code) {
+            return cost[code];
+        }
+
+        public double savings(int code) {
+            return savings[code];
+        }
+
+        public long lines(int code) {
+            return lines[code];
+        }
+
+        /** Returns the codes of the {@code k} values with the highest cost, highest first. */
+        public int[] topByCost(int k) {
+            return top(cost, k);
+        }
+
+        /** Returns the codes of the {@code k} values with the highest savings, highest first. */
+        public int[] topBySavings(int k) {
+            return top(savings, k);
+        }
+
+        /** Values with at least one line item, as label to cost. */
+        public Map<String, Double> costByLabel() {
+            Map<String, Double> result = new HashMap<>();
+            for (int code = 0; code < cost.length; code++) {
+                if (lines[code] > 0) {
+                    result.put(dictionary.value(code), cost[code]);
+                }
+            }
+            return result;
+        }
+
+        private int[] top(double[] values, int k) {
+            // Min-heap of the best k codes seen so far
+            PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, k), (a, b) -> Double.compare(values[a], values[b]));
+            for (int code = 0; code < values.length; code++) {
+                if (lines[code] == 0) {
+                    continue;
+                }
+                if (heap.size() < k) {
+                    heap.add(code);
+                } else if (k > 0 && values[code] > values[heap.peek()]) {
+                    heap.poll();
+                    heap.add(code);
+                }
+            }
+            int[] result = new int[heap.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = heap.poll();
+            }
+            return result;
+        }
+    }
+
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        Integer find(String value) {
+            return codes.get(value);
+        }
+
+        String value(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
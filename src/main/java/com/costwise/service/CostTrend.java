@@ -0,0 +1,44 @@
+package com.costwise.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost per service over a date range, one series per service, each reduced to at most the
+ * requested number of points. Bucketed points also carry the min and max of their bucket. The
+ * range is the requested one narrowed to the stored days; without stored days there are no series.
+ */
+@Data
+public class CostTrend {
+    private Long accountId;
+    private LocalDate from;
+    private LocalDate to;
+    private String granularity;
+    private String downsampling;
+    private int periods;
+
+    private List<Series> series = new ArrayList<>();
+
+    @Data
+    public static class Series {
+        private String service;
+        private double total;
+        private int rawPoints;
+        private List<Point> points = new ArrayList<>();
+    }
+
+    @Data
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Point {
+        private LocalDate date;
+        private double cost;
+        private Double min;
+        private Double max;
+    }
+}
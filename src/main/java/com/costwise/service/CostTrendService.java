@@ -0,0 +1,176 @@
+package com.costwise.service;
+
+import com.costwise.model.DailyServiceCost;
+import com.costwise.repository.DailyServiceCostRepository;
+import com.google.common.collect.Lists;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores the daily cost per service of every Cost Explorer analysis and serves it back as
+ * chart-ready trends. CUR runs are not recorded: their line items differ from Cost Explorer's in
+ * what a service covers and in when late charges appear, so mixing both would make one series
+ * jump between sources.
+ * <p>
+ * A trend query rolls the stored days up to the requested granularity, filling periods without
+ * cost with zero, and then downsamples each series on the server to the requested point count,
+ * so a multi-year chart costs one small response. The requested range is narrowed to the days
+ * stored for the account, which the returned trend's range reflects.
+ */
+@Service
+@RequiredArgsConstructor
+public class CostTrendService {
+    public static final String DAILY = "DAILY";
+    public static final String WEEKLY = "WEEKLY";
+    public static final String MONTHLY = "MONTHLY";
+    public static final String LTTB = "LTTB";
+    public static final String MINMAX = "MINMAX";
+    public static final String NONE = "NONE";
+
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private final DailyServiceCostRepository dailyServiceCostRepository;
+
+    @Value("${costwise.trends.max-points:2000}")
+    private int maxPoints;
+
+    /** Replaces the stored costs of every day the cube covers with the cube's per-service totals. */
+    @Transactional
+    public void record(Long accountId, CostCube costCube) {
+        CostCube daily = costCube.project(CostCube.SERVICE, CostCube.DATE);
+        Set<LocalDate> dates = new HashSet<>();
+        List<DailyServiceCost> costs = new ArrayList<>(daily.size());
+        for (int cell = 0; cell < daily.size(); cell++) {
+            LocalDate date = LocalDate.parse(daily.label(1, daily.code(cell, 1)));
+            dates.add(date);
+            costs.add(new DailyServiceCost(accountId, date, daily.label(0, daily.code(cell, 0)), daily.cost(cell)));
+        }
+        Lists.partition(new ArrayList<>(dates), DELETE_BATCH_SIZE)
+                .forEach(batch -> dailyServiceCostRepository.deleteByAwsAccountIdAndUsageDates(accountId, batch));
+        dailyServiceCostRepository.saveAll(costs);
+    }
+
+    @Transactional(readOnly = true)
+    public CostTrend trend(Long accountId, LocalDate from, LocalDate to, List<String> services,
+                           String granularity, int points, String downsampling) {
+        if (from.isAfter(to)) {
+            throw new RuntimeException("Invalid date range: " + from + " is after " + to);
+        }
+        if (!List.of(DAILY, WEEKLY, MONTHLY).contains(granularity)) {
+            throw new RuntimeException("Unsupported granularity: " + granularity);
+        }
+        if (!List.of(LTTB, MINMAX, NONE).contains(downsampling)) {
+            throw new RuntimeException("Unsupported downsampling: " + downsampling);
+        }
+        int limit = Math.max(3, Math.min(points, maxPoints));
+
+        // Periods are allocated per service, so the range never reaches past the stored days
+        Object[] stored = dailyServiceCostRepository.findUsageDateRange(accountId).get(0);
+        if (stored[0] != null && from.isBefore((LocalDate) stored[0])) {
+            from = (LocalDate) stored[0];
+        }
+        if (stored[1] != null && to.isAfter((LocalDate) stored[1])) {
+            to = (LocalDate) stored[1];
+        }
+        if (stored[0] == null || from.isAfter(to)) {
+            CostTrend empty = new CostTrend();
+            empty.setAccountId(accountId);
+            empty.setFrom(from);
+            empty.setTo(to);
+            empty.setGranularity(granularity);
+            empty.setDownsampling(NONE);
+            return empty;
+        }
+
+        LocalDate origin = periodStart(from, granularity);
+        int periods = period(origin, to, granularity) + 1;
+        List<Object[]> rows = services == null || services.isEmpty()
+                ? dailyServiceCostRepository.findCostRows(accountId, from, to)
+                : dailyServiceCostRepository.findCostRows(accountId, from, to, services);
+        Map<String, double[]> costsByService = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            double[] costs = costsByService.computeIfAbsent((String) row[0], s -> new double[periods]);
+            costs[period(origin, (LocalDate) row[1], granularity)] += ((Number) row[2]).doubleValue();
+        }
+
+        CostTrend trend = new CostTrend();
+        trend.setAccountId(accountId);
+        trend.setFrom(from);
+        trend.setTo(to);
+        trend.setGranularity(granularity);
+        trend.setDownsampling(periods <= limit ? NONE : downsampling);
+        trend.setPeriods(periods);
+        costsByService.forEach((service, costs) -> {
+            CostTrend.Series series = new CostTrend.Series();
+            series.setService(service);
+            series.setRawPoints(periods);
+            for (double cost : costs) {
+                series.setTotal(series.getTotal() + cost);
+            }
+            if (periods <= limit || downsampling.equals(NONE)) {
+                for (int i = 0; i < periods; i++) {
+                    series.getPoints().add(new CostTrend.Point(periodDate(origin, i, granularity), costs[i], null, null));
+                }
+            } else if (downsampling.equals(LTTB)) {
+                for (int i : Downsampler.lttb(costs, limit)) {
+                    series.getPoints().add(new CostTrend.Point(periodDate(origin, i, granularity), costs[i], null, null));
+                }
+            } else {
+                for (double[] bucket : Downsampler.buckets(costs, limit)) {
+                    series.getPoints().add(new CostTrend.Point(periodDate(origin, (int) bucket[0], granularity),
+                            bucket[3], bucket[1], bucket[2]));
+                }
+            }
+            trend.getSeries().add(series);
+        });
+        trend.getSeries().sort(Comparator.comparingDouble(CostTrend.Series::getTotal).reversed());
+        return trend;
+    }
+
+    private static LocalDate periodStart(LocalDate date, String granularity) {
+        switch (granularity) {
+            case WEEKLY:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTHLY:
+                return date.withDayOfMonth(1);
+            default:
+                return date;
+        }
+    }
+
+    private static int period(LocalDate origin, LocalDate date, String granularity) {
+        switch (granularity) {
+            case WEEKLY:
+                return (int) ChronoUnit.WEEKS.between(origin, date);
+            case MONTHLY:
+                return (int) ChronoUnit.MONTHS.between(origin, date);
+            default:
+                return (int) ChronoUnit.DAYS.between(origin, date);
+        }
+    }
+
+    private static LocalDate periodDate(LocalDate origin, int period, String granularity) {
+        switch (granularity) {
+            case WEEKLY:
+                return origin.plusWeeks(period);
+            case MONTHLY:
+                return origin.plusMonths(period);
+            default:
+                return origin.plusDays(period);
+        }
+    }
+}
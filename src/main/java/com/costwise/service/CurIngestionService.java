@@ -0,0 +1,697 @@
+package com.costwise.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads AWS Cost and Usage Report CSV exports (plain or gzip) from local disk into a {@link CostCube}.
+ * <p>
+ * Each file is read and decompressed sequentially by the calling thread and cut into chunks of whole
+ * records, which are parsed in parallel. Records end at newlines outside quoted fields, so a quoted
+ * value spanning lines stays in one record; the reader carries the quote state from one read to the
+ * next and scans every byte once. Parsers work directly on the byte chunks: fields are located
+ * by offset, dimension values are dictionary-encoded from the raw bytes and costs are parsed without
+ * creating per-row strings. Every worker thread fills its own cube; the cubes are merged at the end.
+ * The same files can also be read into hourly On-Demand instance spend for commitment planning.
+ */
+@Slf4j
+@Service
+public class CurIngestionService {
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final String[][] COLUMN_ALIASES = {
+        {"lineItem/ProductCode", "line_item_product_code"},
+        {"lineItem/UsageType", "line_item_usage_type"},
+        {"product/regionCode", "product_region_code", "product/region", "product_region"},
+        {"lineItem/UsageAccountId", "line_item_usage_account_id"},
+        {"lineItem/UsageStartDate", "line_item_usage_start_date"},
+        {"lineItem/UnblendedCost", "line_item_unblended_cost"},
+        {"lineItem/LineItemType", "line_item_line_item_type"},
+        {"lineItem/UsageAmount", "line_item_usage_amount"},
+        {"product/ProductName", "product_product_name"}
+    };
+    private static final int SERVICE_COLUMN = 0;
+    private static final int USAGE_TYPE_COLUMN = 1;
+    private static final int REGION_COLUMN = 2;
+    private static final int ACCOUNT_COLUMN = 3;
+    private static final int DATE_COLUMN = 4;
+    private static final int COST_COLUMN = 5;
+    private static final int LINE_ITEM_TYPE_COLUMN = 6;
+    private static final int USAGE_AMOUNT_COLUMN = 7;
+    private static final int PRODUCT_NAME_COLUMN = 8;
+    private static final int DATE_LENGTH = 10; // yyyy-MM-dd prefix of the ISO timestamp
+    private static final int HOUR_LENGTH = 13; // yyyy-MM-ddTHH prefix of the ISO timestamp
+    private static final byte[] USAGE_LINE_ITEM = "Usage".getBytes(StandardCharsets.US_ASCII);
+    private static final String BOX_USAGE = "BoxUsage:";
+    // Cost Explorer's SERVICE dimension values by CUR product code, so that CUR and Cost Explorer
+    // runs of an account name services alike; other products keep their CUR product name
+    private static final Map<String, String> COST_EXPLORER_SERVICES = Map.ofEntries(
+        Map.entry("AmazonEC2", "Amazon Elastic Compute Cloud - Compute"),
+        Map.entry("AmazonS3", "Amazon Simple Storage Service"),
+        Map.entry("AmazonRDS", "Amazon Relational Database Service"),
+        Map.entry("AWSLambda", "AWS Lambda"),
+        Map.entry("AmazonDynamoDB", "Amazon DynamoDB"),
+        Map.entry("AmazonCloudWatch", "AmazonCloudWatch"),
+        Map.entry("AmazonElastiCache", "Amazon ElastiCache"),
+        Map.entry("AWSELB", "Amazon Elastic Load Balancing"),
+        Map.entry("AmazonVPC", "Amazon Virtual Private Cloud"),
+        Map.entry("AmazonCloudFront", "Amazon CloudFront"),
+        Map.entry("AmazonRoute53", "Amazon Route 53"),
+        Map.entry("AmazonSNS", "Amazon Simple Notification Service"),
+        Map.entry("AWSQueueService", "Amazon Simple Queue Service"),
+        Map.entry("AmazonECS", "Amazon Elastic Container Service"),
+        Map.entry("AmazonEKS", "Amazon Elastic Container Service for Kubernetes"),
+        Map.entry("AmazonECR", "Amazon EC2 Container Registry (ECR)"),
+        Map.entry("AmazonEFS", "Amazon Elastic File System"),
+        Map.entry("AmazonRedshift", "Amazon Redshift"),
+        Map.entry("AmazonES", "Amazon OpenSearch Service"),
+        Map.entry("AmazonKinesis", "Amazon Kinesis"),
+        Map.entry("AmazonApiGateway", "Amazon API Gateway"),
+        Map.entry("AmazonAthena", "Amazon Athena"),
+        Map.entry("AmazonSageMaker", "Amazon SageMaker"),
+        Map.entry("AWSGlue", "AWS Glue"),
+        Map.entry("AWSDataTransfer", "AWS Data Transfer"),
+        Map.entry("AWSCloudTrail", "AWS CloudTrail"),
+        Map.entry("AWSConfig", "AWS Config"),
+        Map.entry("AWSBackup", "AWS Backup"),
+        Map.entry("AWSSecretsManager", "AWS Secrets Manager"),
+        Map.entry("awskms", "AWS Key Management Service")
+    );
+
+    @Value("${costwise.cur.directory:./cur}")
+    private String curDirectory;
+
+    @Value("${costwise.cur.parallelism:0}")
+    private int parallelism;
+
+    /** Bytes per chunk; tests make it small to put records across chunk boundaries. */
+    int chunkSize = CHUNK_SIZE;
+
+    /**
+     * Ingests the line items of one usage account from every CUR CSV export under the configured
+     * directory. Exports of a payer account hold every linked account's usage, so rows of other
+     * accounts are skipped; a null account keeps them all.
+     */
+    public CostCube ingest(String usageAccountId) {
+        return ingest(Paths.get(curDirectory), usageAccountId);
+    }
+
+    public CostCube ingest(Path directory, String usageAccountId) {
+        long started = System.nanoTime();
+        byte[] account = usageAccountId == null ? null : usageAccountId.getBytes(StandardCharsets.US_ASCII);
+        Parsed<ChunkParser> parsed = parse(directory, () -> new ChunkParser(account));
+        CostCube costCube = newCube();
+        long rows = 0;
+        for (ChunkParser parser : parsed.parsers()) {
+            costCube.merge(parser.costCube);
+            rows += parser.rows;
+        }
+        log.info("Ingested {} CUR line items from {} files into {} cells in {} ms",
+                rows, parsed.files(), costCube.size(), (System.nanoTime() - started) / 1_000_000);
+        return costCube;
+    }
+
+    /**
+     * Hourly On-Demand EC2 instance spend per instance family and region over the last
+     * {@code hours} hours covered by the CUR exports under the configured directory.
+     */
+    public OnDemandUsage ingestOnDemandUsage(int hours) {
+        return ingestOnDemandUsage(Paths.get(curDirectory), hours);
+    }
+
+    public OnDemandUsage ingestOnDemandUsage(Path directory, int hours) {
+        long started = System.nanoTime();
+        Parsed<UsageParser> parsed = parse(directory, UsageParser::new);
+        OnDemandUsage.Builder builder = new OnDemandUsage.Builder();
+        long rows = 0;
+        for (UsageParser parser : parsed.parsers()) {
+            parser.drainTo(builder);
+            rows += parser.rows;
+        }
+        OnDemandUsage usage = builder.build(hours);
+        log.info("Ingested {} On-Demand instance line items from {} files into {} hourly series of {} hours in {} ms",
+                rows, parsed.files(), usage.size(), usage.hours(), (System.nanoTime() - started) / 1_000_000);
+        return usage;
+    }
+
+    /** Parses every CSV export under the directory; each worker thread fills its own parser. */
+    private <P extends LineParser> Parsed<P> parse(Path directory, Supplier<P> newParser) {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list CUR directory " + directory, e);
+        }
+
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ConcurrentLinkedQueue<P> parsers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<P> workerParser = ThreadLocal.withInitial(() -> {
+            P parser = newParser.get();
+            parsers.add(parser);
+            return parser;
+        });
+        // Bounds the number of chunks buffered in memory ahead of the parsers
+        Semaphore inFlight = new Semaphore(threads * 2);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path file : files) {
+                String name = file.getFileName().toString().toLowerCase();
+                if (name.endsWith(".csv") || name.endsWith(".csv.gz")) {
+                    readFile(file, name.endsWith(".gz"), executor, workerParser, inFlight, futures);
+                } else if (name.endsWith(".parquet")) {
+                    log.warn("Skipping Parquet CUR file {}: only CSV exports are supported", file);
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("CUR ingestion interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to parse CUR data: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Parsed<>(new ArrayList<>(parsers), files.size());
+    }
+
+    static CostCube newCube() {
+        return new CostCube(CostCube.SERVICE, CostCube.USAGE_TYPE, CostCube.REGION,
+                CostCube.LINKED_ACCOUNT, CostCube.DATE);
+    }
+
+    private void readFile(Path file, boolean gzip, ExecutorService executor, ThreadLocal<? extends LineParser> workerParser,
+                          Semaphore inFlight, List<Future<?>> futures) throws InterruptedException {
+        try (InputStream raw = Files.newInputStream(file);
+             InputStream in = gzip ? new GZIPInputStream(raw, READ_BUFFER_SIZE) : raw) {
+            byte[] buffer = new byte[chunkSize];
+            int filled = 0;
+            int scanned = 0; // bytes already scanned for record ends
+            boolean quoted = false; // whether the scan stopped inside a quoted field
+            int lastRecordEnd = 0; // just past the newline of the last complete record scanned
+            int[] columns = null;
+            while (true) {
+                if (filled == buffer.length) {
+                    // A single record longer than the chunk: grow rather than split it
+                    if (buffer.length >= MAX_RECORD_SIZE) {
+                        throw new IllegalArgumentException("File " + file + " has a record over "
+                                + MAX_RECORD_SIZE / (1024 * 1024) + " MB; it may have an unbalanced quote");
+                    }
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = in.read(buffer, filled, buffer.length - filled);
+                boolean eof = read < 0;
+                if (!eof) {
+                    filled += read;
+                    if (filled < buffer.length) {
+                        continue;
+                    }
+                }
+
+                for (; scanned < filled; scanned++) {
+                    if (buffer[scanned] == '"') {
+                        quoted = !quoted; // an escaped quote toggles twice
+                    } else if (buffer[scanned] == '\n' && !quoted) {
+                        lastRecordEnd = scanned + 1;
+                    }
+                }
+
+                int start = 0;
+                if (columns == null) {
+                    int headerEnd = recordEnd(buffer, 0, filled);
+                    if (headerEnd < 0) {
+                        if (eof) {
+                            break;
+                        }
+                        continue;
+                    }
+                    columns = resolveColumns(new String(buffer, 0, headerEnd, StandardCharsets.UTF_8), file);
+                    start = headerEnd + 1;
+                }
+
+                int end = eof ? filled : lastRecordEnd;
+                if (end > start) {
+                    byte[] chunk = Arrays.copyOfRange(buffer, start, end);
+                    int[] chunkColumns = columns;
+                    inFlight.acquire();
+                    futures.add(executor.submit(() -> {
+                        try {
+                            workerParser.get().parse(chunk, chunkColumns);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                } else {
+                    end = start;
+                }
+                if (eof) {
+                    break;
+                }
+                System.arraycopy(buffer, end, buffer, 0, filled - end);
+                filled -= end;
+                scanned -= end;
+                lastRecordEnd = 0;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read CUR file " + file, e);
+        }
+    }
+
+    private int[] resolveColumns(String header, Path file) {
+        String[] names = header.trim().split(",");
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            positions.put(names[i].replace("\"", "").trim(), i);
+        }
+        int[] columns = new int[COLUMN_ALIASES.length];
+        for (int column = 0; column < COLUMN_ALIASES.length; column++) {
+            columns[column] = -1;
+            for (String alias : COLUMN_ALIASES[column]) {
+                Integer position = positions.get(alias);
+                if (position != null) {
+                    columns[column] = position;
+                    break;
+                }
+            }
+        }
+        if (columns[DATE_COLUMN] < 0 || columns[COST_COLUMN] < 0
+                || (columns[SERVICE_COLUMN] < 0 && columns[PRODUCT_NAME_COLUMN] < 0)) {
+            throw new IllegalArgumentException("File " + file + " is not a CUR export: missing usage date, cost or product columns");
+        }
+        return columns;
+    }
+
+    /** Index of the first newline outside quotes in a range starting at a record, or -1. */
+    static int recordEnd(byte[] bytes, int from, int to) {
+        boolean quoted = false;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '"') {
+                quoted = !quoted;
+            } else if (bytes[i] == '\n' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private record Parsed<P>(List<P> parsers, int files) {
+    }
+
+    /**
+     * Parses CSV chunks of whole records record by record; a quoted field may span lines. Field boundaries are kept in reusable
+     * offset arrays, so splitting a line allocates nothing.
+     */
+    abstract static class LineParser {
+        protected int[] fieldStart = new int[256];
+        protected int[] fieldEnd = new int[256];
+        protected long rows;
+
+        void parse(byte[] chunk, int[] columns) {
+            int position = 0;
+            while (position < chunk.length) {
+                int lineEnd = recordEnd(chunk, position, chunk.length);
+                if (lineEnd < 0) {
+                    lineEnd = chunk.length;
+                }
+                int end = lineEnd > position && chunk[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                if (end > position) {
+                    parseLine(chunk, position, end, columns);
+                }
+                position = lineEnd + 1;
+            }
+        }
+
+        abstract void parseLine(byte[] line, int from, int to, int[] columns);
+
+        protected int splitFields(byte[] line, int from, int to) {
+            int field = 0;
+            int position = from;
+            while (position <= to) {
+                if (field == fieldStart.length) {
+                    fieldStart = Arrays.copyOf(fieldStart, field * 2);
+                    fieldEnd = Arrays.copyOf(fieldEnd, field * 2);
+                }
+                if (position < to && line[position] == '"') {
+                    int start = position + 1;
+                    int end = start;
+                    while (end < to && !(line[end] == '"' && (end + 1 >= to || line[end + 1] != '"'))) {
+                        end += line[end] == '"' ? 2 : 1;
+                    }
+                    fieldStart[field] = start;
+                    fieldEnd[field] = Math.min(end, to);
+                    position = end + 1;
+                    while (position < to && line[position] != ',') {
+                        position++;
+                    }
+                } else {
+                    int end = position;
+                    while (end < to && line[end] != ',') {
+                        end++;
+                    }
+                    fieldStart[field] = position;
+                    fieldEnd[field] = end;
+                    position = end;
+                }
+                field++;
+                position++; // skip the comma
+            }
+            return field;
+        }
+
+        static double parseDouble(byte[] bytes, int from, int to) {
+            long mantissa = 0;
+            int scale = 0;
+            int digits = 0;
+            boolean negative = false;
+            boolean fraction = false;
+            int i = from;
+            if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+                negative = bytes[i] == '-';
+                i++;
+            }
+            for (; i < to; i++) {
+                byte b = bytes[i];
+                if (b >= '0' && b <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (fraction) {
+                            scale++;
+                        }
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                    } else if (!fraction) {
+                        scale--;
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    // Exponents and anything unusual take the slow path
+                    return to > from ? Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.US_ASCII)) : 0.0;
+                }
+            }
+            double value = scale >= 0 ? mantissa / Math.pow(10, scale) : mantissa * Math.pow(10, -scale);
+            return negative ? -value : value;
+        }
+    }
+
+    /**
+     * Parses CSV chunks into a thread-confined cube. Dimension values are looked up by their raw
+     * bytes, so steady-state parsing allocates nothing per row. Services are named as Cost
+     * Explorer names them.
+     */
+    static class ChunkParser extends LineParser {
+        private final byte[] account; // Only rows of this usage account; null for all
+        private final CostCube costCube = newCube();
+        private final List<Map<ByteSlice, Integer>> dictionaries = new ArrayList<>();
+        private final ByteSlice probe = new ByteSlice();
+        private final int[] codes = new int[5];
+        private static final int SERVICE_NAMES = 5; // Dictionary of rows without a product code, by product name
+
+        ChunkParser(byte[] account) {
+            this.account = account;
+            for (int i = 0; i <= SERVICE_NAMES; i++) {
+                dictionaries.add(new HashMap<>());
+            }
+        }
+
+        @Override
+        void parseLine(byte[] line, int from, int to, int[] columns) {
+            int fields = splitFields(line, from, to);
+            int dateField = columns[DATE_COLUMN];
+            int costField = columns[COST_COLUMN];
+            if (dateField >= fields || costField >= fields) {
+                return;
+            }
+            int accountField = columns[ACCOUNT_COLUMN];
+            if (account != null && (accountField < 0 || accountField >= fields
+                    || !Arrays.equals(line, fieldStart[accountField], fieldEnd[accountField], account, 0, account.length))) {
+                return;
+            }
+            double cost = parseDouble(line, fieldStart[costField], fieldEnd[costField]);
+            if (cost == 0.0) {
+                return;
+            }
+            codes[0] = encodeService(line, columns, fields);
+            codes[1] = encode(1, line, columns[USAGE_TYPE_COLUMN], fields, Integer.MAX_VALUE);
+            codes[2] = encode(2, line, columns[REGION_COLUMN], fields, Integer.MAX_VALUE);
+            codes[3] = encode(3, line, columns[ACCOUNT_COLUMN], fields, Integer.MAX_VALUE);
+            codes[4] = encode(4, line, dateField, fields, DATE_LENGTH);
+            costCube.addEncoded(codes, cost, 0.0, 1);
+            rows++;
+        }
+
+        /** Encodes the row's service by product code, falling back to the product name. */
+        private int encodeService(byte[] line, int[] columns, int fields) {
+            int codeField = columns[SERVICE_COLUMN];
+            int nameField = columns[PRODUCT_NAME_COLUMN];
+            boolean byCode = codeField >= 0 && codeField < fields && fieldEnd[codeField] > fieldStart[codeField];
+            int field = byCode ? codeField : nameField;
+            int start = field >= 0 && field < fields ? fieldStart[field] : 0;
+            int end = field >= 0 && field < fields ? fieldEnd[field] : 0;
+            probe.set(line, start, end - start);
+            Map<ByteSlice, Integer> dictionary = dictionaries.get(byCode ? 0 : SERVICE_NAMES);
+            Integer code = dictionary.get(probe);
+            if (code == null) {
+                String value = new String(line, start, end - start, StandardCharsets.UTF_8);
+                String service = value;
+                if (byCode) {
+                    String productName = nameField >= 0 && nameField < fields && fieldEnd[nameField] > fieldStart[nameField]
+                            ? new String(line, fieldStart[nameField], fieldEnd[nameField] - fieldStart[nameField], StandardCharsets.UTF_8)
+                            : value;
+                    service = COST_EXPLORER_SERVICES.getOrDefault(value, productName);
+                }
+                code = costCube.encode(0, service);
+                dictionary.put(probe.copy(), code);
+            }
+            return code;
+        }
+
+        private int encode(int dimension, byte[] line, int field, int fields, int maxLength) {
+            int start = field >= 0 && field < fields ? fieldStart[field] : 0;
+            int end = field >= 0 && field < fields ? start + Math.min(fieldEnd[field] - start, maxLength) : 0;
+            probe.set(line, start, end - start);
+            Map<ByteSlice, Integer> dictionary = dictionaries.get(dimension);
+            Integer code = dictionary.get(probe);
+            if (code == null) {
+                code = costCube.encode(dimension, new String(line, start, end - start, StandardCharsets.UTF_8));
+                dictionary.put(probe.copy(), code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Collects hourly On-Demand EC2 instance spend per instance family and region: BoxUsage line
+     * items of type Usage. Usage covered by Reserved Instances or Savings Plans has other line item
+     * types, so the series are the spend that is still uncommitted.
+     */
+    static class UsageParser extends LineParser {
+        private final Map<ByteSlice, Integer> usageTypes = new HashMap<>();
+        private final Map<ByteSlice, Integer> regions = new HashMap<>();
+        private final Map<String, Integer> families = new HashMap<>();
+        private final List<String> instanceTypes = new ArrayList<>(); // by usage type code, null if not BoxUsage
+        private final List<String> familyLabels = new ArrayList<>();
+        private final List<String> regionLabels = new ArrayList<>();
+        private final ByteSlice probe = new ByteSlice();
+        private int[] usageFamily = new int[64];
+        private OnDemandUsage.Series[][] series = new OnDemandUsage.Series[0][];
+
+        @Override
+        void parseLine(byte[] line, int from, int to, int[] columns) {
+            int fields = splitFields(line, from, to);
+            int typeField = columns[LINE_ITEM_TYPE_COLUMN];
+            int usageField = columns[USAGE_TYPE_COLUMN];
+            int dateField = columns[DATE_COLUMN];
+            int costField = columns[COST_COLUMN];
+            if (usageField < 0 || usageField >= fields || dateField >= fields || costField >= fields) {
+                return;
+            }
+            if (typeField >= 0 && (typeField >= fields
+                    || !Arrays.equals(line, fieldStart[typeField], fieldEnd[typeField], USAGE_LINE_ITEM, 0, USAGE_LINE_ITEM.length))) {
+                return;
+            }
+            int usageType = usageType(line, fieldStart[usageField], fieldEnd[usageField]);
+            String instanceType = instanceTypes.get(usageType);
+            if (instanceType == null) {
+                return;
+            }
+            long hour = epochHour(line, fieldStart[dateField], fieldEnd[dateField]);
+            double cost = parseDouble(line, fieldStart[costField], fieldEnd[costField]);
+            if (hour < 0 || cost == 0.0) {
+                return;
+            }
+            int amountField = columns[USAGE_AMOUNT_COLUMN];
+            double amount = amountField >= 0 && amountField < fields
+                    ? parseDouble(line, fieldStart[amountField], fieldEnd[amountField]) : 0.0;
+            int regionField = columns[REGION_COLUMN];
+            int region = regionField >= 0 && regionField < fields
+                    ? region(line, fieldStart[regionField], fieldEnd[regionField]) : region(line, 0, 0);
+            series(usageFamily[usageType], region).add(hour, cost, instanceType, amount);
+            rows++;
+        }
+
+        void drainTo(OnDemandUsage.Builder builder) {
+            for (int family = 0; family < series.length; family++) {
+                for (int region = 0; region < series[family].length; region++) {
+                    if (series[family][region] != null) {
+                        builder.add(familyLabels.get(family), regionLabels.get(region), series[family][region]);
+                    }
+                }
+            }
+        }
+
+        private int usageType(byte[] line, int start, int end) {
+            probe.set(line, start, end - start);
+            Integer code = usageTypes.get(probe);
+            if (code == null) {
+                // USE1-BoxUsage:m5.large, or BoxUsage:m5.large in us-east-1
+                String label = new String(line, start, end - start, StandardCharsets.UTF_8);
+                int box = label.indexOf(BOX_USAGE);
+                String instanceType = box < 0 ? null : label.substring(box + BOX_USAGE.length());
+                int dot = instanceType == null ? -1 : instanceType.indexOf('.');
+                code = instanceTypes.size();
+                instanceTypes.add(dot > 0 ? instanceType : null);
+                if (code == usageFamily.length) {
+                    usageFamily = Arrays.copyOf(usageFamily, code * 2);
+                }
+                usageFamily[code] = dot > 0 ? families.computeIfAbsent(instanceType.substring(0, dot), family -> {
+                    familyLabels.add(family);
+                    return familyLabels.size() - 1;
+                }) : -1;
+                usageTypes.put(probe.copy(), code);
+            }
+            return code;
+        }
+
+        private int region(byte[] line, int start, int end) {
+            probe.set(line, start, end - start);
+            Integer code = regions.get(probe);
+            if (code == null) {
+                code = regionLabels.size();
+                regionLabels.add(new String(line, start, end - start, StandardCharsets.UTF_8));
+                regions.put(probe.copy(), code);
+            }
+            return code;
+        }
+
+        private OnDemandUsage.Series series(int family, int region) {
+            if (family >= series.length) {
+                series = Arrays.copyOf(series, Math.max(family + 1, series.length * 2));
+            }
+            OnDemandUsage.Series[] byRegion = series[family];
+            if (byRegion == null || region >= byRegion.length) {
+                byRegion = byRegion == null ? new OnDemandUsage.Series[region + 1] : Arrays.copyOf(byRegion, region + 1);
+                series[family] = byRegion;
+            }
+            if (byRegion[region] == null) {
+                byRegion[region] = new OnDemandUsage.Series();
+            }
+            return byRegion[region];
+        }
+
+        /** Hours since the epoch of a yyyy-MM-ddTHH timestamp prefix; -1 if it is not one. */
+        static long epochHour(byte[] bytes, int from, int to) {
+            if (to - from < HOUR_LENGTH) {
+                return -1;
+            }
+            int year = digits(bytes, from, 4);
+            int month = digits(bytes, from + 5, 2);
+            int day = digits(bytes, from + 8, 2);
+            int hour = digits(bytes, from + 11, 2);
+            if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23) {
+                return -1;
+            }
+            // Days from the civil date, shifted to a March-based year so that leap days come last
+            int y = month <= 2 ? year - 1 : year;
+            int era = y / 400;
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            long epochDay = era * 146097L + dayOfEra - 719468;
+            return epochDay * 24 + hour;
+        }
+
+        private static int digits(byte[] bytes, int from, int count) {
+            int value = 0;
+            for (int i = from; i < from + count; i++) {
+                if (bytes[i] < '0' || bytes[i] > '9') {
+                    return -1;
+                }
+                value = value * 10 + (bytes[i] - '0');
+            }
+            return value;
+        }
+    }
+
+    /** Mutable view over a byte range, used as a hash key without copying on lookup. */
+    static final class ByteSlice {
+        private byte[] bytes;
+        private int offset;
+        private int length;
+        private int hash;
+
+        void set(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            int h = 1;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            this.hash = h;
+        }
+
+        ByteSlice copy() {
+            ByteSlice copy = new ByteSlice();
+            copy.bytes = Arrays.copyOfRange(bytes, offset, offset + length);
+            copy.offset = 0;
+            copy.length = length;
+            copy.hash = hash;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ByteSlice)) {
+                return false;
+            }
+            ByteSlice slice = (ByteSlice) other;
+            return length == slice.length && hash == slice.hash
+                    && Arrays.equals(bytes, offset, offset + length, slice.bytes, slice.offset, slice.offset + slice.length);
+        }
+    }
+}
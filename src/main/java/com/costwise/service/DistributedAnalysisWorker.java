@@ -0,0 +1,192 @@
+package com.costwise.service;
+
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.model.WorkUnit;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.OptimizationResultRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pulls resource analysis work from the shared {@link WorkQueueService} when
+ * {@code costwise.work.distributed} is enabled, so any number of nodes share a fleet scan.
+ * <p>
+ * Each node leases no more units than it has free worker threads and renews its leases on a
+ * heartbeat. A unit whose lease was lost, or whose run was cancelled, is stopped at the next
+ * resource boundary. Findings are checkpointed as usual, so a unit retried on another node
+ * skips the resources that were already completed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "costwise.work.distributed", havingValue = "true")
+public class DistributedAnalysisWorker {
+    private final WorkQueueService workQueueService;
+    private final AwsResourceAnalyzer resourceAnalyzer;
+    private final AnalysisCheckpointService checkpointService;
+    private final AnalysisEventBroadcaster eventBroadcaster;
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+    private final RunTraceService runTraceService;
+    private final SuppressionService suppressionService;
+    private final String nodeId;
+    private final Map<Long, AnalysisContext> activeUnits = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int workerThreads;
+    private final ExecutorService workers;
+
+    @Value("${costwise.work.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${costwise.work.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${costwise.analysis.checkpoint-interval-seconds:30}")
+    private long checkpointIntervalSeconds;
+
+    @Value("${costwise.analysis.persist-batch-size:500}")
+    private int persistBatchSize;
+
+    public DistributedAnalysisWorker(WorkQueueService workQueueService,
+                                     AwsResourceAnalyzer resourceAnalyzer,
+                                     AnalysisCheckpointService checkpointService,
+                                     AnalysisEventBroadcaster eventBroadcaster,
+                                     CostAnalysisRunRepository costAnalysisRunRepository,
+                                     OptimizationResultRepository optimizationResultRepository,
+                                     RunTraceService runTraceService,
+                                     SuppressionService suppressionService,
+                                     @Value("${costwise.work.worker-threads:4}") int workerThreads) {
+        this.workQueueService = workQueueService;
+        this.resourceAnalyzer = resourceAnalyzer;
+        this.checkpointService = checkpointService;
+        this.eventBroadcaster = eventBroadcaster;
+        this.costAnalysisRunRepository = costAnalysisRunRepository;
+        this.optimizationResultRepository = optimizationResultRepository;
+        this.runTraceService = runTraceService;
+        this.suppressionService = suppressionService;
+        this.nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.workerThreads = workerThreads;
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+    }
+
+    @Scheduled(fixedDelayString = "${costwise.work.poll-interval-ms:2000}")
+    public void poll() {
+        completeLocalRuns();
+        int free = workerThreads - inFlight.get();
+        if (free <= 0) {
+            return;
+        }
+        WorkQueueService.Lease lease = workQueueService.lease(nodeId, free, leaseSeconds, maxAttempts);
+        lease.getClosedRunIds().forEach(workQueueService::tryFinish);
+        for (WorkUnit unit : lease.getUnits()) {
+            inFlight.incrementAndGet();
+            workers.execute(() -> {
+                try {
+                    process(unit);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${costwise.work.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        if (activeUnits.isEmpty()) {
+            return;
+        }
+        Map<Long, Boolean> held = workQueueService.renew(nodeId, activeUnits.keySet(), leaseSeconds);
+        activeUnits.forEach((unitId, context) -> {
+            Boolean cancelRequested = held.get(unitId);
+            if (cancelRequested == null || cancelRequested) {
+                log.info("Stopping work unit {}: {}", unitId, cancelRequested == null ? "lease lost" : "run cancelled");
+                context.cancel();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Leases of interrupted units expire and are picked up by the other nodes
+        workers.shutdownNow();
+    }
+
+    private void process(WorkUnit unit) {
+        Long runId = unit.getAnalysisRunId();
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId).orElse(null);
+        if (analysisRun == null || !"RUNNING".equals(analysisRun.getStatus())) {
+            workQueueService.release(unit.getId(), nodeId, "CANCELLED", null);
+            return;
+        }
+
+        AnalysisContext context = new AnalysisContext(runId, eventBroadcaster, checkpointService,
+                analysisRun.getDeadline() == null ? null : analysisRun.getDeadline().atZone(ZoneId.systemDefault()).toInstant(),
+                checkpointService.completedResources(runId), checkpointIntervalSeconds, persistBatchSize, runTraceService.start(runId),
+                suppressionService.matcher(analysisRun.getAwsAccount().getId()));
+        activeUnits.put(unit.getId(), context);
+        String status = "COMPLETED";
+        String errorMessage = null;
+        try {
+            context.checkActive();
+            resourceAnalyzer.analyzeService(unit.getRegion(), unit.getService(), context);
+            context.checkpoint();
+            String stopReason = context.stopReason();
+            if (stopReason != null) {
+                status = stopReason;
+            }
+        } catch (AnalysisStoppedException e) {
+            status = e.getStatus();
+            context.checkpointQuietly();
+        } catch (Exception e) {
+            log.error("Work unit {} ({} in {}) of run {} failed", unit.getId(), unit.getService(), unit.getRegion(), runId, e);
+            // Keep what was completed; a retry resumes after it. The unit is released either way.
+            context.checkpointQuietly();
+            status = unit.getAttempts() < maxAttempts ? "PENDING" : "FAILED";
+            errorMessage = unit.getService() + " in " + unit.getRegion() + ": " + e.getMessage();
+            if (errorMessage.length() > 1000) {
+                errorMessage = errorMessage.substring(0, 1000);
+            }
+        } finally {
+            activeUnits.remove(unit.getId());
+            runTraceService.save(runId, unit.getService() + " in " + unit.getRegion() + " on " + nodeId, context.getTrace());
+        }
+
+        if (workQueueService.release(unit.getId(), nodeId, status, errorMessage)) {
+            workQueueService.tryFinish(runId);
+        }
+    }
+
+    /** Completes the event streams of runs enqueued here once any node has finished them. */
+    private void completeLocalRuns() {
+        for (Long runId : workQueueService.localRuns()) {
+            costAnalysisRunRepository.findById(runId).ifPresentOrElse(analysisRun -> {
+                if (!"RUNNING".equals(analysisRun.getStatus())) {
+                    eventBroadcaster.complete(runId, Map.of("status", analysisRun.getStatus(),
+                            "findings", optimizationResultRepository.countByAnalysisRunId(runId)));
+                    workQueueService.forgetLocalRun(runId);
+                }
+            }, () -> workQueueService.forgetLocalRun(runId));
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.costwise.service;
+
+/**
+ * Reduces an evenly spaced series to a given number of points for charting.
+ * <p>
+ * {@link #lttb} (Largest-Triangle-Three-Buckets) keeps actual points, choosing from each bucket
+ * the one that forms the largest triangle with its neighbours, which preserves peaks and the
+ * visual shape of the line. {@link #buckets} splits the series into equal buckets and keeps
+ * their min, max and average, for charts that draw a band around the average.
+ */
+public final class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /** Indices of the points to keep, always including the first and the last; at least 3 are kept. */
+    public static int[] lttb(double[] values, int threshold) {
+        int length = values.length;
+        threshold = Math.max(threshold, 3);
+        if (threshold >= length) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] selected = new int[threshold];
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int previous = 0;
+        selected[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket is the third vertex of the triangle
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += i;
+                averageY += values[i];
+            }
+            int nextCount = Math.max(nextEnd - nextStart, 1);
+            averageX /= nextCount;
+            averageY /= nextCount;
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previous - averageX) * (values[i] - values[previous])
+                        - (previous - i) * (averageY - values[previous]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            selected[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        selected[threshold - 1] = length - 1;
+        return selected;
+    }
+
+    /**
+     * Splits the series into at most {@code count} equal buckets. Each row is
+     * {start index, min, max, average}.
+     */
+    public static double[][] buckets(double[] values, int count) {
+        int length = values.length;
+        int buckets = Math.max(1, Math.min(count, length));
+        if (length == 0) {
+            return new double[0][];
+        }
+        double[][] result = new double[buckets][];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = (int) ((long) bucket * length / buckets);
+            int end = (int) ((long) (bucket + 1) * length / buckets);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int i = start; i < end; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+                sum += values[i];
+            }
+            result[bucket] = new double[] {start, min, max, sum / (end - start)};
+        }
+        return result;
+    }
+}
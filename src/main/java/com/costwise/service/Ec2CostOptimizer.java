@@ -1,8 +1,10 @@
 package com.costwise.service;
 
+import com.costwise.model.FindingCheck;
 import com.costwise.model.OptimizationResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.*;
@@ -16,8 +18,12 @@ import software.amazon.awssdk.services.autoscaling.model.*;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -26,13 +32,40 @@ public class Ec2CostOptimizer {
     private static final double CPU_UTILIZATION_THRESHOLD = 10.0;
     private static final double NETWORK_IO_THRESHOLD = 1000000; // 1 MB
     private static final int LOOKBACK_DAYS = 30;
-    private static final Map<String, String> OLD_TO_NEW_INSTANCE_TYPES = Map.of(
-        "t2", "t3",
-        "m3", "m6i",
-        "c4", "c7g"
-    );
+    private static final int METRIC_PERIOD_SECONDS = 3600;
+    private static final int MAX_DATAPOINTS_PER_REQUEST = 1440;
+    private static final double IDLE_PERCENTILE = 0.99;
+    private static final double RIGHTSIZING_PERCENTILE = 0.95;
+    private static final double RIGHTSIZING_UTILIZATION_THRESHOLD = 40.0;
+    private static final int CHECKS_PER_INSTANCE = 12;
+    private static final int HOURS_PER_MONTH = 730;
+    private static final String AUTO_SCALING_GROUPS_RESOURCE = "auto-scaling-groups";
+    private static final String AUTO_SCALING_GROUP_TAG = "aws:autoscaling:groupName";
+
+    private final MetricTimeSeriesStore metricStore;
+    private final CommitmentOptimizer commitmentOptimizer;
+    private final InstanceTypeCatalogService instanceTypeCatalogService;
+
+    @Value("${costwise.metrics.utilization-lookback-days:30}")
+    private int utilizationLookbackDays;
+
+    @Value("${costwise.rightsizing.target-utilization:0.7}")
+    private double rightsizingTargetUtilization;
+
+    @Value("${costwise.analysis.fetch-parallelism:8}")
+    private int fetchParallelism;
+
+    @Value("${costwise.analysis.evaluate-parallelism:2}")
+    private int evaluateParallelism;
+
+    @Value("${costwise.analysis.stage-queue-size:64}")
+    private int stageQueueSize;
 
     public List<OptimizationResult> analyzeEc2Instances(String region) {
+        return analyzeEc2Instances(region, AnalysisContext.NONE);
+    }
+
+    public List<OptimizationResult> analyzeEc2Instances(String region, AnalysisContext context) {
         List<OptimizationResult> results = new ArrayList<>();
         
         try (Ec2Client ec2Client = Ec2Client.builder()
@@ -48,102 +81,254 @@ public class Ec2CostOptimizer {
                 .region(software.amazon.awssdk.regions.Region.of(region))
                 .build()) {
 
-            DescribeInstancesResponse response = ec2Client.describeInstances();
-            
-            for (Reservation reservation : response.reservations()) {
-                for (software.amazon.awssdk.services.ec2.model.Instance instance : reservation.instances()) {
-                    // 1. Check for idle/underutilized instances
-                    checkIdleInstances(cloudWatchClient, instance, results);
-                    
-                    // 2. Check for overprovisioned instances
-                    checkOverprovisionedInstances(cloudWatchClient, instance, results);
-                    
-                    // 3. Check for old generation instances
-                    checkOldGenerationInstances(instance, results);
-                    
-                    // 4. Check for On-Demand instances running 24/7
-                    checkOnDemandInstances(cloudWatchClient, instance, results);
-                    
-                    // 5. Check for instances in high-cost regions
-                    checkRegionPricing(pricingClient, instance, region, results);
-                    
-                    // 6. Check for stopped instances with EBS volumes
-                    checkStoppedInstancesWithEbs(ec2Client, instance, results);
-                    
-                    // 7. Check for unused Elastic IPs
-                    checkUnusedElasticIps(ec2Client, instance, results);
-                    
-                    // 8. Check for missing Auto Scaling
-                    checkMissingAutoScaling(autoScalingClient, instance, results);
-                    
-                    // 9. Check for Spot Instance opportunities
-                    checkSpotInstanceOpportunities(instance, results);
-                    
-                    // 10. Check for unused reservations
-                    checkUnusedReservations(ec2Client, instance, results);
-                    
-                    // 11. Check for missing lifecycle policies
-                    checkMissingLifecyclePolicies(instance, results);
-                    
-                    // 12. Check for high network transfer costs
-                    checkNetworkTransferCosts(cloudWatchClient, instance, results);
+            InstanceTypeCatalog catalog = instanceTypeCatalogService.catalog(region);
+            Map<String, QuantileSketch[]> groupUtilization = new ConcurrentHashMap<>();
+            // Reservations and prices are per instance type, so each type is looked up once per run
+            Map<String, Boolean> reservedTypes = new ConcurrentHashMap<>();
+            Map<String, Boolean> pricedTypes = new ConcurrentHashMap<>();
+
+            // Instances are listed page by page while earlier ones are fetched and checked
+            try (AnalysisPipeline<software.amazon.awssdk.services.ec2.model.Instance, InstanceFacts> pipeline = new AnalysisPipeline<>(
+                    context, "instances", fetchParallelism, evaluateParallelism, stageQueueSize,
+                    instance -> fetch(ec2Client, cloudWatchClient, pricingClient, autoScalingClient, instance,
+                        context.isCompleted("EC2", instance.instanceId()), reservedTypes, pricedTypes),
+                    facts -> evaluate(facts, region, catalog, groupUtilization, context, results))) {
+                for (Reservation reservation : ec2Client.describeInstancesPaginator(DescribeInstancesRequest.builder().build())
+                        .reservations()) {
+                    for (software.amazon.awssdk.services.ec2.model.Instance instance : reservation.instances()) {
+                        pipeline.submit(instance);
+                    }
                 }
             }
+
+            // 13. Check Auto Scaling groups whose merged utilization is low across all members
+            if (!context.isCompleted("EC2", AUTO_SCALING_GROUPS_RESOURCE)) {
+                List<OptimizationResult> groupFindings = new ArrayList<>();
+                traced(context, FindingCheck.ASG_OVERPROVISIONED, () ->
+                        checkOverprovisionedAutoScalingGroups(groupUtilization, groupFindings));
+                context.resourceCompleted("EC2", AUTO_SCALING_GROUPS_RESOURCE, groupUtilization.size(), groupFindings);
+                retain(context, groupFindings, results);
+            }
+        } catch (AnalysisStoppedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error analyzing EC2 instances: {}", e.getMessage());
         }
+        context.serviceCompleted("EC2");
         
         return results;
     }
 
-    private void checkIdleInstances(CloudWatchClient cloudWatchClient, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
+    /** What the checks of one instance need from AWS, gathered by the fetch stage. */
+    private static final class InstanceFacts {
+        final software.amazon.awssdk.services.ec2.model.Instance instance;
+        final boolean completed; // Checked before a restart; only its utilization is still needed
+        final long now; // Hour its metric series were brought up to
+        final Map<String, String> tags;
+        // Null where the lookup failed
+        Boolean attachedVolumes;
+        Boolean elasticIp;
+        Boolean autoScaled;
+        Boolean reservedType;
+        Boolean pricedType;
+
+        InstanceFacts(software.amazon.awssdk.services.ec2.model.Instance instance, boolean completed, long now) {
+            this.instance = instance;
+            this.completed = completed;
+            this.now = now;
+            this.tags = instance.tags().stream()
+                .collect(Collectors.toMap(tag -> tag.key(), tag -> tag.value(), (first, second) -> second));
+        }
+    }
+
+    /** Fetch stage: brings the instance's metric series up to date and makes the AWS lookups its checks need. */
+    private InstanceFacts fetch(Ec2Client ec2Client, CloudWatchClient cloudWatchClient, PricingClient pricingClient,
+                                AutoScalingClient autoScalingClient, software.amazon.awssdk.services.ec2.model.Instance instance,
+                                boolean completed, Map<String, Boolean> reservedTypes, Map<String, Boolean> pricedTypes) {
+        long now = Instant.now().truncatedTo(ChronoUnit.HOURS).getEpochSecond();
+        InstanceFacts facts = new InstanceFacts(instance, completed, now);
+        String instanceId = instance.instanceId();
+        refreshMetric(cloudWatchClient, instanceId, "AWS/EC2", "CPUUtilization", Statistic.MAXIMUM, utilizationLookbackDays, now);
+        refreshMetric(cloudWatchClient, instanceId, "System/Linux", "MemoryUtilization", Statistic.MAXIMUM, utilizationLookbackDays, now);
+        if (completed) {
+            return facts;
+        }
+        refreshMetric(cloudWatchClient, instanceId, "AWS/EC2", "CPUUtilization", Statistic.AVERAGE,
+            Math.max(utilizationLookbackDays, LOOKBACK_DAYS), now);
+        refreshMetric(cloudWatchClient, instanceId, "AWS/EC2", "NetworkIn", Statistic.SUM, utilizationLookbackDays, now);
+        refreshMetric(cloudWatchClient, instanceId, "AWS/EC2", "NetworkOut", Statistic.SUM, LOOKBACK_DAYS, now);
+
+        boolean stopped = instance.state().name() == InstanceStateName.STOPPED;
+        if (stopped) {
+            facts.attachedVolumes = lookup("attached volumes", instanceId, () -> !ec2Client.describeVolumes(DescribeVolumesRequest.builder()
+                .filters(ec2Filter("attachment.instance-id", instanceId))
+                .build()).volumes().isEmpty());
+            facts.elasticIp = lookup("Elastic IPs", instanceId, () -> !ec2Client.describeAddresses(DescribeAddressesRequest.builder()
+                .filters(ec2Filter("instance-id", instanceId))
+                .build()).addresses().isEmpty());
+        }
+        facts.autoScaled = lookup("Auto Scaling", instanceId, () -> !autoScalingClient.describeAutoScalingInstances(
+            DescribeAutoScalingInstancesRequest.builder().instanceIds(instanceId).build()).autoScalingInstances().isEmpty());
+
+        String instanceType = instance.instanceType().toString();
+        facts.reservedType = perType(reservedTypes, instanceType, () -> lookup("reservations", instanceType, () ->
+            !ec2Client.describeReservedInstances(DescribeReservedInstancesRequest.builder()
+                .filters(ec2Filter("instance-type", instanceType))
+                .build()).reservedInstances().isEmpty()));
+        facts.pricedType = perType(pricedTypes, instanceType, () -> lookup("region pricing", instanceType, () ->
+            !pricingClient.getProducts(GetProductsRequest.builder()
+                .serviceCode("AmazonEC2")
+                .filters(
+                    software.amazon.awssdk.services.pricing.model.Filter.builder()
+                        .type("TERM_MATCH")
+                        .field("instanceType")
+                        .value(instanceType)
+                        .build()
+                )
+                .build()).priceList().isEmpty()));
+        return facts;
+    }
+
+    /**
+     * Evaluate stage: runs the checks of one instance against the facts and stored metrics, and
+     * reports it. Findings are kept in {@code results} only if the context does not store them.
+     */
+    private void evaluate(InstanceFacts facts, String region, InstanceTypeCatalog catalog,
+                          Map<String, QuantileSketch[]> groupUtilization, AnalysisContext context, List<OptimizationResult> results) {
+        if (facts.completed) {
+            traced(context, FindingCheck.EC2_OVERPROVISIONED, () ->
+                    checkOverprovisionedInstances(facts, catalog, groupUtilization, new ArrayList<>()));
+            return;
+        }
+        List<OptimizationResult> findings = new ArrayList<>();
+
+        // 1. Check for idle/underutilized instances
+        traced(context, FindingCheck.EC2_IDLE, () -> checkIdleInstances(facts, findings));
+        
+        // 2. Check for overprovisioned instances
+        traced(context, FindingCheck.EC2_OVERPROVISIONED, () ->
+                checkOverprovisionedInstances(facts, catalog, groupUtilization, findings));
+        
+        // 3. Check for old generation instances
+        traced(context, FindingCheck.EC2_OLD_GENERATION, () -> checkOldGenerationInstances(facts.instance, catalog, findings));
+        
+        // 4. Check for On-Demand instances running 24/7
+        traced(context, FindingCheck.EC2_ALWAYS_ON_DEMAND, () -> checkOnDemandInstances(facts, region, findings));
+        
+        // 5. Check for instances in high-cost regions
+        traced(context, FindingCheck.EC2_REGION_PRICING, () -> checkRegionPricing(facts, region, findings));
+        
+        // 6. Check for stopped instances with EBS volumes
+        traced(context, FindingCheck.EC2_STOPPED_WITH_EBS, () -> checkStoppedInstancesWithEbs(facts, findings));
+        
+        // 7. Check for unused Elastic IPs
+        traced(context, FindingCheck.EC2_IDLE_ELASTIC_IP, () -> checkUnusedElasticIps(facts, findings));
+        
+        // 8. Check for missing Auto Scaling
+        traced(context, FindingCheck.EC2_NO_AUTO_SCALING, () -> checkMissingAutoScaling(facts, findings));
+        
+        // 9. Check for Spot Instance opportunities
+        traced(context, FindingCheck.EC2_SPOT_CANDIDATE, () -> checkSpotInstanceOpportunities(facts.instance, findings));
+        
+        // 10. Check for unused reservations
+        traced(context, FindingCheck.EC2_UNUSED_RESERVATION, () -> checkUnusedReservations(facts, region, findings));
+        
+        // 11. Check for missing lifecycle policies
+        traced(context, FindingCheck.EC2_NO_LIFECYCLE_POLICY, () -> checkMissingLifecyclePolicies(facts.instance, findings));
+        
+        // 12. Check for high network transfer costs
+        traced(context, FindingCheck.EC2_HIGH_NETWORK_TRANSFER, () -> checkNetworkTransferCosts(facts, findings));
+
+        countOneTypeChange(findings);
+        context.resourceCompleted("EC2", facts.instance.instanceId(), CHECKS_PER_INSTANCE, findings, facts.tags);
+        retain(context, findings, results);
+    }
+
+    /**
+     * Rightsizing and moving to a newer generation both change the instance type, so only one of
+     * them can be done; the smaller of their savings is dropped so a run does not count both.
+     */
+    private static void countOneTypeChange(List<OptimizationResult> findings) {
+        OptimizationResult overprovisioned = null;
+        OptimizationResult oldGeneration = null;
+        for (OptimizationResult finding : findings) {
+            if (finding.getCheck() == FindingCheck.EC2_OVERPROVISIONED) {
+                overprovisioned = finding;
+            } else if (finding.getCheck() == FindingCheck.EC2_OLD_GENERATION) {
+                oldGeneration = finding;
+            }
+        }
+        if (overprovisioned == null || oldGeneration == null
+                || overprovisioned.getPotentialSavings() <= 0 || oldGeneration.getPotentialSavings() <= 0) {
+            return;
+        }
+        boolean rightsize = overprovisioned.getPotentialSavings() >= oldGeneration.getPotentialSavings();
+        OptimizationResult counted = rightsize ? overprovisioned : oldGeneration;
+        OptimizationResult dropped = rightsize ? oldGeneration : overprovisioned;
+        dropped.setPotentialSavings(0.0);
+        dropped.setAdditionalDetails(dropped.getAdditionalDetails() + "; savings counted under " + counted.getCheck().name());
+    }
+
+    /** Keeps findings for the caller when the context does not store them itself. */
+    private static void retain(AnalysisContext context, List<OptimizationResult> findings, List<OptimizationResult> results) {
+        if (!context.persistsFindings()) {
+            synchronized (results) {
+                results.addAll(findings);
+            }
+        }
+    }
+
+    /** Runs one AWS lookup of the fetch stage; a failure is logged and leaves the answer unknown. */
+    private static Boolean lookup(String what, String id, Supplier<Boolean> call) {
         try {
-            Instant endTime = Instant.now();
-            Instant startTime = endTime.minus(LOOKBACK_DAYS, ChronoUnit.DAYS);
-
-            // Get CPU utilization
-            GetMetricStatisticsRequest cpuRequest = GetMetricStatisticsRequest.builder()
-                .namespace("AWS/EC2")
-                .metricName("CPUUtilization")
-                .dimensions(Dimension.builder().name("InstanceId").value(instance.instanceId()).build())
-                .startTime(startTime)
-                .endTime(endTime)
-                .period(3600)
-                .statistics(Statistic.AVERAGE)
-                .build();
+            return call.get();
+        } catch (Exception e) {
+            log.error("Error looking up {} of {}: {}", what, id, e.getMessage());
+            return null;
+        }
+    }
 
-            // Get network I/O
-            GetMetricStatisticsRequest networkRequest = GetMetricStatisticsRequest.builder()
-                .namespace("AWS/EC2")
-                .metricName("NetworkIn")
-                .dimensions(Dimension.builder().name("InstanceId").value(instance.instanceId()).build())
-                .startTime(startTime)
-                .endTime(endTime)
-                .period(3600)
-                .statistics(Statistic.SUM)
-                .build();
+    /** A per-type answer, looked up on first use; failed lookups are not remembered. */
+    private static Boolean perType(Map<String, Boolean> answers, String instanceType, Supplier<Boolean> lookup) {
+        Boolean answer = answers.get(instanceType);
+        if (answer == null) {
+            answer = lookup.get();
+            if (answer != null) {
+                answers.putIfAbsent(instanceType, answer);
+            }
+        }
+        return answer;
+    }
 
-            GetMetricStatisticsResponse cpuResponse = cloudWatchClient.getMetricStatistics(cpuRequest);
-            GetMetricStatisticsResponse networkResponse = cloudWatchClient.getMetricStatistics(networkRequest);
+    private static software.amazon.awssdk.services.ec2.model.Filter ec2Filter(String name, String value) {
+        return software.amazon.awssdk.services.ec2.model.Filter.builder().name(name).values(value).build();
+    }
 
-            if (!cpuResponse.datapoints().isEmpty() && !networkResponse.datapoints().isEmpty()) {
-                double avgCpu = cpuResponse.datapoints().stream()
-                    .mapToDouble(Datapoint::average)
-                    .average()
-                    .orElse(0.0);
+    /** Runs one check inside a trace span named after it. */
+    private static void traced(AnalysisContext context, FindingCheck check, Runnable run) {
+        try (ExecutionTrace.Span span = context.span(check.name())) {
+            run.run();
+        }
+    }
+
+    private void checkIdleInstances(InstanceFacts facts, List<OptimizationResult> results) {
+        software.amazon.awssdk.services.ec2.model.Instance instance = facts.instance;
+        try {
+            // Summarize CPU utilization and network I/O; an instance is idle only if even its busy hours are quiet
+            QuantileSketch cpu = metricSketch(instance.instanceId(),
+                "AWS/EC2", "CPUUtilization", Statistic.AVERAGE, utilizationLookbackDays, facts.now);
+            QuantileSketch network = metricSketch(instance.instanceId(),
+                "AWS/EC2", "NetworkIn", Statistic.SUM, utilizationLookbackDays, facts.now);
 
-                double avgNetwork = networkResponse.datapoints().stream()
-                    .mapToDouble(Datapoint::sum)
-                    .average()
-                    .orElse(0.0);
+            if (!cpu.isEmpty() && !network.isEmpty()) {
+                double busyCpu = cpu.quantile(IDLE_PERCENTILE);
+                double busyNetwork = network.quantile(IDLE_PERCENTILE);
 
-                if (avgCpu < CPU_UTILIZATION_THRESHOLD && avgNetwork < NETWORK_IO_THRESHOLD) {
+                if (busyCpu < CPU_UTILIZATION_THRESHOLD && busyNetwork < NETWORK_IO_THRESHOLD) {
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("EC2");
+                    result.setCheck(FindingCheck.EC2_IDLE);
                     result.setResourceId(instance.instanceId());
-                    result.setCurrentState("Idle instance (CPU < 10%, low network I/O)");
-                    result.setSuggestedAction("Consider stopping or terminating the instance");
-                    result.setSeverity("HIGH");
+                    result.setAdditionalDetails(String.format("p99 CPU %.1f%%, p99 hourly NetworkIn %.0f bytes", busyCpu, busyNetwork));
                     results.add(result);
                 }
             }
@@ -152,53 +337,53 @@ public class Ec2CostOptimizer {
         }
     }
 
-    private void checkOverprovisionedInstances(CloudWatchClient cloudWatchClient, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
+    private void checkOverprovisionedInstances(InstanceFacts facts, InstanceTypeCatalog catalog,
+                                               Map<String, QuantileSketch[]> groupUtilization, List<OptimizationResult> results) {
+        software.amazon.awssdk.services.ec2.model.Instance instance = facts.instance;
         try {
-            Instant endTime = Instant.now();
-            Instant startTime = endTime.minus(LOOKBACK_DAYS, ChronoUnit.DAYS);
-
-            // Get CPU and memory utilization
-            GetMetricStatisticsRequest cpuRequest = GetMetricStatisticsRequest.builder()
-                .namespace("AWS/EC2")
-                .metricName("CPUUtilization")
-                .dimensions(Dimension.builder().name("InstanceId").value(instance.instanceId()).build())
-                .startTime(startTime)
-                .endTime(endTime)
-                .period(3600)
-                .statistics(Statistic.MAXIMUM)
-                .build();
-
-            GetMetricStatisticsRequest memoryRequest = GetMetricStatisticsRequest.builder()
-                .namespace("System/Linux")
-                .metricName("MemoryUtilization")
-                .dimensions(Dimension.builder().name("InstanceId").value(instance.instanceId()).build())
-                .startTime(startTime)
-                .endTime(endTime)
-                .period(3600)
-                .statistics(Statistic.MAXIMUM)
-                .build();
-
-            GetMetricStatisticsResponse cpuResponse = cloudWatchClient.getMetricStatistics(cpuRequest);
-            GetMetricStatisticsResponse memoryResponse = cloudWatchClient.getMetricStatistics(memoryRequest);
-
-            if (!cpuResponse.datapoints().isEmpty() && !memoryResponse.datapoints().isEmpty()) {
-                double maxCpu = cpuResponse.datapoints().stream()
-                    .mapToDouble(Datapoint::maximum)
-                    .max()
-                    .orElse(0.0);
+            // Summarize hourly peak CPU and memory utilization
+            QuantileSketch cpu = metricSketch(instance.instanceId(),
+                "AWS/EC2", "CPUUtilization", Statistic.MAXIMUM, utilizationLookbackDays, facts.now);
+            QuantileSketch memory = metricSketch(instance.instanceId(),
+                "System/Linux", "MemoryUtilization", Statistic.MAXIMUM, utilizationLookbackDays, facts.now);
+
+            instance.tags().stream()
+                .filter(tag -> tag.key().equals(AUTO_SCALING_GROUP_TAG))
+                .findFirst()
+                .ifPresent(tag -> {
+                    QuantileSketch[] group = groupUtilization.computeIfAbsent(tag.value(),
+                        name -> new QuantileSketch[] {new QuantileSketch(), new QuantileSketch()});
+                    synchronized (group) { // Members are evaluated concurrently
+                        group[0].merge(cpu);
+                        group[1].merge(memory);
+                    }
+                });
 
-                double maxMemory = memoryResponse.datapoints().stream()
-                    .mapToDouble(Datapoint::maximum)
-                    .max()
-                    .orElse(0.0);
+            if (!cpu.isEmpty() && !memory.isEmpty()) {
+                // Use a high percentile rather than the maximum, so a single spike does not block a downsize
+                double peakCpu = cpu.quantile(RIGHTSIZING_PERCENTILE);
+                double peakMemory = memory.quantile(RIGHTSIZING_PERCENTILE);
 
-                if (maxCpu < 40.0 && maxMemory < 40.0) {
+                if (peakCpu < RIGHTSIZING_UTILIZATION_THRESHOLD && peakMemory < RIGHTSIZING_UTILIZATION_THRESHOLD) {
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("EC2");
+                    result.setCheck(FindingCheck.EC2_OVERPROVISIONED);
                     result.setResourceId(instance.instanceId());
-                    result.setCurrentState("Overprovisioned instance (low resource utilization)");
-                    result.setSuggestedAction("Consider downsizing to a smaller instance type");
-                    result.setSeverity("MEDIUM");
+                    String details = String.format("p95 CPU %.1f%%, p95 memory %.1f%%", peakCpu, peakMemory);
+                    InstanceTypeCatalog.InstanceType current = catalog.type(instance.instanceType().toString());
+                    if (current != null) {
+                        QuantileSketch network = metricSketch(instance.instanceId(),
+                            "AWS/EC2", "NetworkIn", Statistic.SUM, utilizationLookbackDays, facts.now);
+                        double peakNetworkGbps = network.isEmpty() ? 0.0
+                            : network.quantile(RIGHTSIZING_PERCENTILE) * 8 / METRIC_PERIOD_SECONDS / 1e9;
+                        // Size for the p95 load at the target utilization
+                        InstanceTypeCatalog.InstanceType target = catalog.fit(current,
+                            Math.max(1, (int) Math.ceil(current.vcpus() * peakCpu / 100 / rightsizingTargetUtilization)),
+                            (long) Math.ceil(current.memoryMib() * peakMemory / 100 / rightsizingTargetUtilization),
+                            peakNetworkGbps / rightsizingTargetUtilization,
+                            current.hourlyPrice() > 0 ? current.hourlyPrice() : Double.MAX_VALUE);
+                        details += priceMove(result, current, target);
+                    }
+                    result.setAdditionalDetails(details);
                     results.add(result);
                 }
             }
@@ -207,52 +392,75 @@ public class Ec2CostOptimizer {
         }
     }
 
-    private void checkOldGenerationInstances(software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
+    private void checkOverprovisionedAutoScalingGroups(Map<String, QuantileSketch[]> groupUtilization, List<OptimizationResult> results) {
+        groupUtilization.forEach((groupName, utilization) -> {
+            QuantileSketch cpu = utilization[0];
+            QuantileSketch memory = utilization[1];
+            if (cpu.isEmpty() || memory.isEmpty()) {
+                return;
+            }
+            double peakCpu = cpu.quantile(RIGHTSIZING_PERCENTILE);
+            double peakMemory = memory.quantile(RIGHTSIZING_PERCENTILE);
+            if (peakCpu < RIGHTSIZING_UTILIZATION_THRESHOLD && peakMemory < RIGHTSIZING_UTILIZATION_THRESHOLD) {
+                OptimizationResult result = new OptimizationResult();
+                result.setCheck(FindingCheck.ASG_OVERPROVISIONED);
+                result.setResourceId(groupName);
+                result.setAdditionalDetails(String.format("p95 CPU %.1f%%, p95 memory %.1f%%", peakCpu, peakMemory));
+                results.add(result);
+            }
+        });
+    }
+
+    private void checkOldGenerationInstances(software.amazon.awssdk.services.ec2.model.Instance instance, InstanceTypeCatalog catalog,
+                                             List<OptimizationResult> results) {
         String instanceType = instance.instanceType().toString();
-        String instanceFamily = instanceType.split("\\.")[0];
+        InstanceTypeCatalog.InstanceType current = catalog.type(instanceType);
+        InstanceTypeCatalog.InstanceType successor = current == null ? null : catalog.successor(current);
 
-        if (OLD_TO_NEW_INSTANCE_TYPES.containsKey(instanceFamily)) {
+        if (successor != null) {
             OptimizationResult result = new OptimizationResult();
-            result.setResourceType("EC2");
+            result.setCheck(FindingCheck.EC2_OLD_GENERATION, instanceType, successor.family());
             result.setResourceId(instance.instanceId());
-            result.setCurrentState("Using older generation instance type: " + instanceType);
-            result.setSuggestedAction("Consider migrating to " + OLD_TO_NEW_INSTANCE_TYPES.get(instanceFamily) + " family");
-            result.setSeverity("MEDIUM");
+            result.setAdditionalDetails(priceMove(result, current, successor).substring(2));
             results.add(result);
         }
     }
 
-    private void checkOnDemandInstances(CloudWatchClient cloudWatchClient, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
+    /**
+     * Sets the monthly cost of the current type and the savings of moving to the target, and
+     * returns a {@code "; "}-prefixed description of the move.
+     */
+    private static String priceMove(OptimizationResult result, InstanceTypeCatalog.InstanceType current,
+                                    InstanceTypeCatalog.InstanceType target) {
+        if (target == null) {
+            return "; no cheaper instance type fits";
+        }
+        if (current.hourlyPrice() <= 0) {
+            return String.format("; fits %s ($%.2f/month)", target.name(), target.hourlyPrice() * HOURS_PER_MONTH);
+        }
+        double currentMonthly = current.hourlyPrice() * HOURS_PER_MONTH;
+        double targetMonthly = target.hourlyPrice() * HOURS_PER_MONTH;
+        result.setCurrentCost(currentMonthly);
+        result.setPotentialSavings(Math.max(currentMonthly - targetMonthly, 0.0));
+        return String.format("; %s ($%.2f/month) to %s ($%.2f/month, %d vCPU, %.1f GiB)", current.name(), currentMonthly,
+            target.name(), targetMonthly, target.vcpus(), target.memoryMib() / 1024.0);
+    }
+
+    private void checkOnDemandInstances(InstanceFacts facts, String region, List<OptimizationResult> results) {
+        software.amazon.awssdk.services.ec2.model.Instance instance = facts.instance;
         if (instance.instanceLifecycle() == null) { // On-Demand instance
             try {
-                Instant endTime = Instant.now();
-                Instant startTime = endTime.minus(LOOKBACK_DAYS, ChronoUnit.DAYS);
-
-                GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder()
-                    .namespace("AWS/EC2")
-                    .metricName("CPUUtilization")
-                    .dimensions(Dimension.builder().name("InstanceId").value(instance.instanceId()).build())
-                    .startTime(startTime)
-                    .endTime(endTime)
-                    .period(3600)
-                    .statistics(Statistic.AVERAGE)
-                    .build();
-
-                GetMetricStatisticsResponse response = cloudWatchClient.getMetricStatistics(request);
+                MetricTimeSeriesStore.SeriesView cpu = metricHistory(instance.instanceId(),
+                    "AWS/EC2", "CPUUtilization", Statistic.AVERAGE, LOOKBACK_DAYS, facts.now);
                 
-                if (!response.datapoints().isEmpty()) {
-                    double avgCpu = response.datapoints().stream()
-                        .mapToDouble(Datapoint::average)
-                        .average()
-                        .orElse(0.0);
+                if (!cpu.isEmpty()) {
+                    double avgCpu = cpu.average();
 
                     if (avgCpu > 0) { // Instance is running
                         OptimizationResult result = new OptimizationResult();
-                        result.setResourceType("EC2");
+                        result.setCheck(FindingCheck.EC2_ALWAYS_ON_DEMAND);
                         result.setResourceId(instance.instanceId());
-                        result.setCurrentState("On-Demand instance running 24/7");
-                        result.setSuggestedAction("Consider using Reserved Instances or Savings Plans");
-                        result.setSeverity("HIGH");
+                        priceCommitment(result, instance, region, true);
                         results.add(result);
                     }
                 }
@@ -262,146 +470,87 @@ public class Ec2CostOptimizer {
         }
     }
 
-    private void checkRegionPricing(PricingClient pricingClient, software.amazon.awssdk.services.ec2.model.Instance instance, String currentRegion, List<OptimizationResult> results) {
-        try {
-            GetProductsRequest request = GetProductsRequest.builder()
-                .serviceCode("AmazonEC2")
-                .filters(
-                    software.amazon.awssdk.services.pricing.model.Filter.builder()
-                        .type("TERM_MATCH")
-                        .field("instanceType")
-                        .value(instance.instanceType().toString())
-                        .build()
-                )
-                .build();
-
-            GetProductsResponse response = pricingClient.getProducts(request);
-            
-            // Compare prices across regions and suggest cheaper alternatives
-            // Implementation depends on the pricing API response format
-            // This is a simplified example
-            if (!response.priceList().isEmpty()) {
-                OptimizationResult result = new OptimizationResult();
-                result.setResourceType("EC2");
-                result.setResourceId(instance.instanceId());
-                result.setCurrentState("Instance running in " + currentRegion);
-                result.setSuggestedAction("Consider moving to a lower-cost region");
-                result.setSeverity("MEDIUM");
-                results.add(result);
-            }
-        } catch (Exception e) {
-            log.error("Error checking region pricing: {}", e.getMessage());
+    private void checkRegionPricing(InstanceFacts facts, String currentRegion, List<OptimizationResult> results) {
+        // Compare prices across regions and suggest cheaper alternatives
+        // Implementation depends on the pricing API response format
+        // This is a simplified example
+        if (Boolean.TRUE.equals(facts.pricedType)) {
+            OptimizationResult result = new OptimizationResult();
+            result.setCheck(FindingCheck.EC2_REGION_PRICING, currentRegion);
+            result.setResourceId(facts.instance.instanceId());
+            results.add(result);
         }
     }
 
-    private void checkStoppedInstancesWithEbs(Ec2Client ec2Client, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
-        if (instance.state().name() == InstanceStateName.STOPPED) {
-            try {
-                DescribeVolumesRequest request = DescribeVolumesRequest.builder()
-                    .filters(software.amazon.awssdk.services.ec2.model.Filter.builder()
-                        .name("attachment.instance-id")
-                        .values(instance.instanceId())
-                        .build())
-                    .build();
-
-                DescribeVolumesResponse response = ec2Client.describeVolumes(request);
-                
-                if (!response.volumes().isEmpty()) {
-                    OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("EC2");
-                    result.setResourceId(instance.instanceId());
-                    result.setCurrentState("Stopped instance with attached EBS volumes");
-                    result.setSuggestedAction("Consider creating snapshots and removing unused volumes");
-                    result.setSeverity("MEDIUM");
-                    results.add(result);
-                }
-            } catch (Exception e) {
-                log.error("Error checking stopped instances with EBS: {}", e.getMessage());
-            }
+    private void checkStoppedInstancesWithEbs(InstanceFacts facts, List<OptimizationResult> results) {
+        // Only looked up for stopped instances
+        if (Boolean.TRUE.equals(facts.attachedVolumes)) {
+            OptimizationResult result = new OptimizationResult();
+            result.setCheck(FindingCheck.EC2_STOPPED_WITH_EBS);
+            result.setResourceId(facts.instance.instanceId());
+            results.add(result);
         }
     }
 
-    private void checkUnusedElasticIps(Ec2Client ec2Client, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
-        try {
-            DescribeAddressesRequest request = DescribeAddressesRequest.builder()
-                .filters(software.amazon.awssdk.services.ec2.model.Filter.builder()
-                    .name("instance-id")
-                    .values(instance.instanceId())
-                    .build())
-                .build();
-
-            DescribeAddressesResponse response = ec2Client.describeAddresses(request);
-            
-            if (!response.addresses().isEmpty() && instance.state().name() == InstanceStateName.STOPPED) {
-                OptimizationResult result = new OptimizationResult();
-                result.setResourceType("EC2");
-                result.setResourceId(instance.instanceId());
-                result.setCurrentState("Stopped instance with associated Elastic IP");
-                result.setSuggestedAction("Consider releasing the Elastic IP");
-                result.setSeverity("MEDIUM");
-                results.add(result);
-            }
-        } catch (Exception e) {
-            log.error("Error checking unused Elastic IPs: {}", e.getMessage());
+    private void checkUnusedElasticIps(InstanceFacts facts, List<OptimizationResult> results) {
+        // Only looked up for stopped instances
+        if (Boolean.TRUE.equals(facts.elasticIp)) {
+            OptimizationResult result = new OptimizationResult();
+            result.setCheck(FindingCheck.EC2_IDLE_ELASTIC_IP);
+            result.setResourceId(facts.instance.instanceId());
+            results.add(result);
         }
     }
 
-    private void checkMissingAutoScaling(AutoScalingClient autoScalingClient, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
-        try {
-            DescribeAutoScalingInstancesRequest request = DescribeAutoScalingInstancesRequest.builder()
-                .instanceIds(instance.instanceId())
-                .build();
-
-            DescribeAutoScalingInstancesResponse response = autoScalingClient.describeAutoScalingInstances(request);
-            
-            if (response.autoScalingInstances().isEmpty()) {
-                OptimizationResult result = new OptimizationResult();
-                result.setResourceType("EC2");
-                result.setResourceId(instance.instanceId());
-                result.setCurrentState("Instance not part of an Auto Scaling Group");
-                result.setSuggestedAction("Consider adding to an Auto Scaling Group for better scalability");
-                result.setSeverity("MEDIUM");
-                results.add(result);
-            }
-        } catch (Exception e) {
-            log.error("Error checking Auto Scaling: {}", e.getMessage());
+    private void checkMissingAutoScaling(InstanceFacts facts, List<OptimizationResult> results) {
+        if (Boolean.FALSE.equals(facts.autoScaled)) {
+            OptimizationResult result = new OptimizationResult();
+            result.setCheck(FindingCheck.EC2_NO_AUTO_SCALING);
+            result.setResourceId(facts.instance.instanceId());
+            results.add(result);
         }
     }
 
     private void checkSpotInstanceOpportunities(software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
         if (instance.instanceLifecycle() == null) { // On-Demand instance
             OptimizationResult result = new OptimizationResult();
-            result.setResourceType("EC2");
+            result.setCheck(FindingCheck.EC2_SPOT_CANDIDATE);
             result.setResourceId(instance.instanceId());
-            result.setCurrentState("Using On-Demand instance");
-            result.setSuggestedAction("Consider using Spot Instances for non-critical workloads");
-            result.setSeverity("MEDIUM");
             results.add(result);
         }
     }
 
-    private void checkUnusedReservations(Ec2Client ec2Client, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
-        try {
-            DescribeReservedInstancesRequest request = DescribeReservedInstancesRequest.builder()
-                .filters(software.amazon.awssdk.services.ec2.model.Filter.builder()
-                    .name("instance-type")
-                    .values(instance.instanceType().toString())
-                    .build())
-                .build();
+    private void checkUnusedReservations(InstanceFacts facts, String region, List<OptimizationResult> results) {
+        if (Boolean.TRUE.equals(facts.reservedType)) {
+            OptimizationResult result = new OptimizationResult();
+            result.setCheck(FindingCheck.EC2_UNUSED_RESERVATION);
+            result.setResourceId(facts.instance.instanceId());
+            // The savings are already on the instance's On-Demand finding
+            priceCommitment(result, facts.instance, region, false);
+            results.add(result);
+        }
+    }
 
-            DescribeReservedInstancesResponse response = ec2Client.describeReservedInstances(request);
-            
-            if (!response.reservedInstances().isEmpty()) {
-                OptimizationResult result = new OptimizationResult();
-                result.setResourceType("EC2");
-                result.setResourceId(instance.instanceId());
-                result.setCurrentState("Instance type has available Reserved Instance capacity");
-                result.setSuggestedAction("Consider purchasing Reserved Instances for long-term cost savings");
-                result.setSeverity("MEDIUM");
-                results.add(result);
+    /**
+     * Prices the instance at its On-Demand rate from the CUR and, if a commitment pays off for its
+     * family and region, credits it with the recommendation's savings rate.
+     */
+    private void priceCommitment(OptimizationResult result, software.amazon.awssdk.services.ec2.model.Instance instance,
+                                 String region, boolean withSavings) {
+        String instanceType = instance.instanceType().toString();
+        Double hourlyRate = commitmentOptimizer.onDemandHourlyRate(instanceType, region);
+        if (hourlyRate == null) {
+            return;
+        }
+        result.setCurrentCost(hourlyRate * HOURS_PER_MONTH);
+        int dot = instanceType.indexOf('.');
+        CommitmentRecommendation recommendation = dot < 0 ? null
+            : commitmentOptimizer.recommendation(instanceType.substring(0, dot), region);
+        if (recommendation != null) {
+            if (withSavings) {
+                result.setPotentialSavings(hourlyRate * HOURS_PER_MONTH * recommendation.getSavingsRate());
             }
-        } catch (Exception e) {
-            log.error("Error checking unused reservations: {}", e.getMessage());
+            result.setAdditionalDetails(recommendation.describe());
         }
     }
 
@@ -415,44 +564,25 @@ public class Ec2CostOptimizer {
 
         if (isNonProd) {
             OptimizationResult result = new OptimizationResult();
-            result.setResourceType("EC2");
+            result.setCheck(FindingCheck.EC2_NO_LIFECYCLE_POLICY);
             result.setResourceId(instance.instanceId());
-            result.setCurrentState("Non-production instance without lifecycle policies");
-            result.setSuggestedAction("Implement automated shutdown/start schedules");
-            result.setSeverity("MEDIUM");
             results.add(result);
         }
     }
 
-    private void checkNetworkTransferCosts(CloudWatchClient cloudWatchClient, software.amazon.awssdk.services.ec2.model.Instance instance, List<OptimizationResult> results) {
+    private void checkNetworkTransferCosts(InstanceFacts facts, List<OptimizationResult> results) {
+        software.amazon.awssdk.services.ec2.model.Instance instance = facts.instance;
         try {
-            Instant endTime = Instant.now();
-            Instant startTime = endTime.minus(LOOKBACK_DAYS, ChronoUnit.DAYS);
-
-            GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder()
-                .namespace("AWS/EC2")
-                .metricName("NetworkOut")
-                .dimensions(Dimension.builder().name("InstanceId").value(instance.instanceId()).build())
-                .startTime(startTime)
-                .endTime(endTime)
-                .period(3600)
-                .statistics(Statistic.SUM)
-                .build();
-
-            GetMetricStatisticsResponse response = cloudWatchClient.getMetricStatistics(request);
+            MetricTimeSeriesStore.SeriesView networkOut = metricHistory(instance.instanceId(),
+                "AWS/EC2", "NetworkOut", Statistic.SUM, LOOKBACK_DAYS, facts.now);
             
-            if (!response.datapoints().isEmpty()) {
-                double totalNetworkOut = response.datapoints().stream()
-                    .mapToDouble(Datapoint::sum)
-                    .sum();
+            if (!networkOut.isEmpty()) {
+                double totalNetworkOut = networkOut.sum();
 
                 if (totalNetworkOut > 1000000000) { // 1 GB
                     OptimizationResult result = new OptimizationResult();
-                    result.setResourceType("EC2");
+                    result.setCheck(FindingCheck.EC2_HIGH_NETWORK_TRANSFER);
                     result.setResourceId(instance.instanceId());
-                    result.setCurrentState("High network transfer costs");
-                    result.setSuggestedAction("Consider using S3 Transfer Acceleration or CDN");
-                    result.setSeverity("MEDIUM");
                     results.add(result);
                 }
             }
@@ -460,4 +590,105 @@ public class Ec2CostOptimizer {
             log.error("Error checking network transfer costs: {}", e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    /** Returns the last {@code lookbackDays} of stored hourly datapoints for an instance metric, up to {@code now}. */
+    private MetricTimeSeriesStore.SeriesView metricHistory(String instanceId, String namespace, String metricName,
+                                                          Statistic statistic, int lookbackDays, long now) {
+        return metricStore.read(seriesKey(instanceId, namespace, metricName, statistic), now - lookbackDays * 86400L, now);
+    }
+
+    /** Returns a quantile sketch of the last {@code lookbackDays} of stored hourly datapoints for an instance metric. */
+    private QuantileSketch metricSketch(String instanceId, String namespace, String metricName,
+                                        Statistic statistic, int lookbackDays, long now) {
+        return metricStore.sketch(seriesKey(instanceId, namespace, metricName, statistic), now - lookbackDays * 86400L, now);
+    }
+
+    private static String seriesKey(String instanceId, String namespace, String metricName, Statistic statistic) {
+        return String.join("/", instanceId, namespace, metricName, statistic.toString(), String.valueOf(METRIC_PERIOD_SECONDS));
+    }
+
+    /**
+     * Brings the locally stored series up to {@code now}, fetching from CloudWatch only the hours
+     * completed since the newest stored point, and backfills the hours between the lookback start
+     * and the oldest fetched point when the lookback has grown. A failed fetch is logged; the
+     * checks then see what was stored before.
+     */
+    private void refreshMetric(CloudWatchClient cloudWatchClient, String instanceId, String namespace,
+                               String metricName, Statistic statistic, int lookbackDays, long now) {
+        String series = seriesKey(instanceId, namespace, metricName, statistic);
+        long lookbackStart = now - lookbackDays * 86400L;
+        try {
+            long coveredFrom = metricStore.coveredFrom(series);
+            if (coveredFrom < 0 || coveredFrom > lookbackStart) {
+                long backfillEnd = coveredFrom < 0 ? now : coveredFrom;
+                Datapoints older = fetchDatapoints(cloudWatchClient, instanceId, namespace, metricName,
+                    statistic, lookbackStart, backfillEnd, now);
+                metricStore.prepend(series, lookbackStart, older.timestamps(), older.values(), older.timestamps().length);
+                if (backfillEnd == now) {
+                    return;
+                }
+            }
+
+            long fetchFrom = Math.max(lookbackStart, metricStore.lastTimestamp(series) + METRIC_PERIOD_SECONDS);
+            Datapoints newer = fetchDatapoints(cloudWatchClient, instanceId, namespace, metricName,
+                statistic, fetchFrom, now, now);
+            metricStore.append(series, newer.timestamps(), newer.values(), newer.timestamps().length);
+        } catch (Exception e) {
+            log.error("Error fetching {} {} of {}: {}", metricName, statistic, instanceId, e.getMessage());
+        }
+    }
+
+    private record Datapoints(long[] timestamps, double[] values) {
+    }
+
+    /** Fetches the closed periods in {@code [from, to)}, sorted by timestamp; the current hour is still accumulating. */
+    private Datapoints fetchDatapoints(CloudWatchClient cloudWatchClient, String instanceId, String namespace,
+                                            String metricName, Statistic statistic, long from, long to, long now) {
+        List<Datapoint> datapoints = new ArrayList<>();
+        // CloudWatch returns at most 1440 datapoints per request, so long gaps are fetched in windows
+        long window = (long) MAX_DATAPOINTS_PER_REQUEST * METRIC_PERIOD_SECONDS;
+        for (long windowStart = from; windowStart < to; windowStart += window) {
+            long windowEnd = Math.min(to, windowStart + window);
+            GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder()
+                .namespace(namespace)
+                .metricName(metricName)
+                .dimensions(Dimension.builder().name("InstanceId").value(instanceId).build())
+                .startTime(Instant.ofEpochSecond(windowStart))
+                .endTime(Instant.ofEpochSecond(windowEnd))
+                .period(METRIC_PERIOD_SECONDS)
+                .statistics(statistic)
+                .build();
+            for (Datapoint datapoint : cloudWatchClient.getMetricStatistics(request).datapoints()) {
+                long timestamp = datapoint.timestamp().getEpochSecond();
+                if (timestamp + METRIC_PERIOD_SECONDS <= now && timestamp < to) {
+                    datapoints.add(datapoint);
+                }
+            }
+        }
+        datapoints.sort(Comparator.comparing(Datapoint::timestamp));
+        long[] timestamps = new long[datapoints.size()];
+        double[] values = new double[datapoints.size()];
+        for (int i = 0; i < datapoints.size(); i++) {
+            timestamps[i] = datapoints.get(i).timestamp().getEpochSecond();
+            values[i] = statisticValue(datapoints.get(i), statistic);
+        }
+        return new Datapoints(timestamps, values);
+    }
+
+    private static double statisticValue(Datapoint datapoint, Statistic statistic) {
+        switch (statistic) {
+            case AVERAGE:
+                return datapoint.average();
+            case MAXIMUM:
+                return datapoint.maximum();
+            case MINIMUM:
+                return datapoint.minimum();
+            case SUM:
+                return datapoint.sum();
+            case SAMPLE_COUNT:
+                return datapoint.sampleCount();
+            default:
+                throw new IllegalArgumentException("Unsupported statistic: " + statistic);
+        }
+    }
+}
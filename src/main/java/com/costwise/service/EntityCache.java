@@ -0,0 +1,112 @@
+package com.costwise.service;
+
+import com.costwise.model.AwsAccount;
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.model.OptimizationResult;
+import com.costwise.repository.AwsAccountRepository;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-process read-through cache for AWS accounts and finished analysis runs.
+ * <p>
+ * Accounts are cached already decrypted, bounded by count and expired after a TTL; the
+ * application never writes accounts, so the TTL is what picks up edits made to them in the
+ * database. A run is cached only once it has reached a final status, fully loaded with its
+ * account and findings so it can be served outside a session, and the cache is bounded by the
+ * total number of findings it holds. Every code path that changes a finished run evicts it.
+ * Callers get a copy of a cached account. A cached run is detached from the session once, when it
+ * is cached, and that one instance is then shared by every caller: its findings list is
+ * unmodifiable, and callers only read or serialize it and must not change it.
+ */
+@Service
+public class EntityCache {
+    private static final Set<String> FINAL_STATUSES = Set.of("COMPLETED", "FAILED", "CANCELLED", "TIMED_OUT");
+
+    private final AwsAccountRepository awsAccountRepository;
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final Cache<Long, AwsAccount> accounts;
+    private final Cache<Long, CostAnalysisRun> runs;
+
+    public EntityCache(AwsAccountRepository awsAccountRepository,
+                       CostAnalysisRunRepository costAnalysisRunRepository,
+                       @Value("${costwise.cache.account-max-size:1000}") long accountMaxSize,
+                       @Value("${costwise.cache.account-ttl-minutes:10}") long accountTtlMinutes,
+                       @Value("${costwise.cache.run-max-findings:500000}") long runMaxFindings) {
+        this.awsAccountRepository = awsAccountRepository;
+        this.costAnalysisRunRepository = costAnalysisRunRepository;
+        this.accounts = CacheBuilder.newBuilder()
+                .maximumSize(accountMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(accountTtlMinutes))
+                .build();
+        this.runs = CacheBuilder.newBuilder()
+                .maximumWeight(runMaxFindings)
+                .<Long, CostAnalysisRun>weigher((id, run) -> 1 + run.getOptimizationResults().size())
+                .build();
+    }
+
+    public AwsAccount account(Long accountId) {
+        AwsAccount account = accounts.getIfPresent(accountId);
+        if (account == null) {
+            account = awsAccountRepository.findById(accountId)
+                    .orElseThrow(() -> new RuntimeException("AWS Account not found"));
+            accounts.put(accountId, account);
+        }
+        return copy(account);
+    }
+
+    /**
+     * Returns the run with its findings; served from memory once the run has finished. A finished
+     * run is the shared cached instance, so callers must treat it as read-only.
+     */
+    public CostAnalysisRun run(Long runId) {
+        CostAnalysisRun analysisRun = runs.getIfPresent(runId);
+        if (analysisRun != null) {
+            return analysisRun;
+        }
+        analysisRun = costAnalysisRunRepository.findWithResultsById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        if (!FINAL_STATUSES.contains(analysisRun.getStatus()) || analysisRun.getArchivedAt() != null) {
+            return analysisRun;
+        }
+        CostAnalysisRun snapshot = snapshot(analysisRun);
+        runs.put(runId, snapshot);
+        return snapshot;
+    }
+
+    public void evictRun(Long runId) {
+        runs.invalidate(runId);
+    }
+
+    private static AwsAccount copy(AwsAccount account) {
+        AwsAccount copy = new AwsAccount();
+        BeanUtils.copyProperties(account, copy);
+        return copy;
+    }
+
+    /** Detached copy of a loaded run whose findings list cannot be changed. */
+    private static CostAnalysisRun snapshot(CostAnalysisRun analysisRun) {
+        CostAnalysisRun copy = new CostAnalysisRun();
+        BeanUtils.copyProperties(analysisRun, copy, "awsAccount", "optimizationResults");
+        copy.setAwsAccount(copy(analysisRun.getAwsAccount()));
+        List<OptimizationResult> results = new ArrayList<>(analysisRun.getOptimizationResults().size());
+        for (OptimizationResult result : analysisRun.getOptimizationResults()) {
+            OptimizationResult resultCopy = new OptimizationResult();
+            BeanUtils.copyProperties(result, resultCopy, "analysisRun");
+            resultCopy.setAnalysisRun(copy);
+            results.add(resultCopy);
+        }
+        copy.setOptimizationResults(Collections.unmodifiableList(results));
+        return copy;
+    }
+}
@@ -1,20 +1,23 @@
 package com.costwise.service;
 
 import com.costwise.model.CostAnalysisRun;
+import com.costwise.model.FindingCheck;
 import com.costwise.model.OptimizationResult;
+import com.costwise.model.RunSummary;
+import com.costwise.repository.OptimizationResultRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -22,18 +25,28 @@ import java.util.stream.Collectors;
 public class ExcelReportService {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int PAGE_SIZE = 1000;
 
+    private final RunRetentionService runRetentionService;
+    private final OptimizationResultRepository optimizationResultRepository;
+
+    /**
+     * Builds the report from the run's per-resource-type rollups, then pages each type's findings
+     * into its sheet. An archived run's report has the summary sheet only.
+     */
     public byte[] generateReport(CostAnalysisRun analysisRun) {
         try (Workbook workbook = new XSSFWorkbook()) {
+            List<RunSummary> byType = runRetentionService.summariesByResourceType(analysisRun.getId());
+
             // Create summary sheet
-            createSummarySheet(workbook, analysisRun);
+            createSummarySheet(workbook, analysisRun, byType);
 
             // Create detailed sheets for each resource type
-            Map<String, List<OptimizationResult>> resultsByType = analysisRun.getOptimizationResults().stream()
-                    .collect(Collectors.groupingBy(OptimizationResult::getResourceType));
-
-            resultsByType.forEach((resourceType, results) -> 
-                createResourceTypeSheet(workbook, resourceType, results));
+            if (analysisRun.getArchivedAt() == null) {
+                for (RunSummary summary : byType) {
+                    createResourceTypeSheet(workbook, analysisRun.getId(), summary.getResourceType());
+                }
+            }
 
             // Write to byte array
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -45,7 +58,7 @@ public class ExcelReportService {
         }
     }
 
-    private void createSummarySheet(Workbook workbook, CostAnalysisRun analysisRun) {
+    private void createSummarySheet(Workbook workbook, CostAnalysisRun analysisRun, List<RunSummary> byType) {
         Sheet sheet = workbook.createSheet("Summary");
         AtomicInteger rowNum = new AtomicInteger(0);
 
@@ -65,18 +78,13 @@ public class ExcelReportService {
         rowNum.incrementAndGet();
         createHeaderRow(sheet, rowNum.getAndIncrement(), headerStyle, "Optimization Summary by Resource Type");
         
-        Map<String, List<OptimizationResult>> resultsByType = analysisRun.getOptimizationResults().stream()
-                .collect(Collectors.groupingBy(OptimizationResult::getResourceType));
-
         createHeaderRow(sheet, rowNum.getAndIncrement(), headerStyle, "Resource Type", "Count", "Total Cost", "Potential Savings");
         
-        resultsByType.forEach((type, results) -> {
-            double totalCost = results.stream().mapToDouble(OptimizationResult::getCurrentCost).sum();
-            double totalSavings = results.stream().mapToDouble(OptimizationResult::getPotentialSavings).sum();
-            createDataRow(sheet, rowNum.getAndIncrement(), type, String.valueOf(results.size()),
-                    String.format("$%.2f", totalCost),
-                    String.format("$%.2f", totalSavings));
-        });
+        for (RunSummary summary : byType) {
+            createDataRow(sheet, rowNum.getAndIncrement(), summary.getResourceType(), String.valueOf(summary.getFindingCount()),
+                    String.format("$%.2f", summary.getCurrentCost()),
+                    String.format("$%.2f", summary.getPotentialSavings()));
+        }
 
         // Auto-size columns
         for (int i = 0; i < 4; i++) {
@@ -84,7 +92,22 @@ public class ExcelReportService {
         }
     }
 
-    private void createResourceTypeSheet(Workbook workbook, String resourceType, List<OptimizationResult> results) {
+    /** Adds a row per finding; returns the id of the last one, or {@code lastId} if there are none. */
+    private long createDataRows(Sheet sheet, AtomicInteger rowNum, List<OptimizationResult> page, long lastId) {
+        for (OptimizationResult result : page) {
+            createDataRow(sheet, rowNum.getAndIncrement(),
+                    result.getResourceId(),
+                    result.getCurrentState(),
+                    result.getSuggestedAction(),
+                    String.format("$%.2f", result.getCurrentCost()),
+                    String.format("$%.2f", result.getPotentialSavings()),
+                    result.getSeverity());
+            lastId = result.getId();
+        }
+        return lastId;
+    }
+
+    private void createResourceTypeSheet(Workbook workbook, Long runId, String resourceType) {
         Sheet sheet = workbook.createSheet(resourceType);
         AtomicInteger rowNum = new AtomicInteger(0);
 
@@ -95,16 +118,30 @@ public class ExcelReportService {
         createHeaderRow(sheet, rowNum.getAndIncrement(), headerStyle,
                 "Resource ID", "Current State", "Suggested Action", "Current Cost", "Potential Savings", "Severity");
 
-        // Add data rows
-        for (OptimizationResult result : results) {
-            createDataRow(sheet, rowNum.getAndIncrement(),
-                    result.getResourceId(),
-                    result.getCurrentState(),
-                    result.getSuggestedAction(),
-                    String.format("$%.2f", result.getCurrentCost()),
-                    String.format("$%.2f", result.getPotentialSavings()),
-                    result.getSeverity());
+        // Add data rows, a page of findings at a time
+        EnumSet<FindingCheck> checks = EnumSet.noneOf(FindingCheck.class);
+        for (FindingCheck check : FindingCheck.values()) {
+            if (check != FindingCheck.LEGACY && check.getResourceType().equals(resourceType)) {
+                checks.add(check);
+            }
+        }
+        long lastId = 0;
+        List<OptimizationResult> page;
+        if (!checks.isEmpty()) {
+            do {
+                page = optimizationResultRepository.findByAnalysisRunIdAndCheckInAndIdGreaterThanOrderByIdAsc(
+                        runId, checks, lastId, PageRequest.of(0, PAGE_SIZE));
+                lastId = createDataRows(sheet, rowNum, page, lastId);
+            } while (page.size() == PAGE_SIZE);
         }
+        // Findings from before the catalog are listed under the resource type they were stored with
+        String legacyResourceType = FindingCheck.LEGACY.getResourceType().equals(resourceType) ? null : resourceType;
+        lastId = 0;
+        do {
+            page = optimizationResultRepository.findByAnalysisRunIdAndCheckAndLegacyResourceTypeAndIdGreaterThanOrderByIdAsc(
+                    runId, FindingCheck.LEGACY, legacyResourceType, lastId, PageRequest.of(0, PAGE_SIZE));
+            lastId = createDataRows(sheet, rowNum, page, lastId);
+        } while (page.size() == PAGE_SIZE);
 
         // Auto-size columns
         for (int i = 0; i < 6; i++) {
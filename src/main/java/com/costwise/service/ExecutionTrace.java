@@ -0,0 +1,158 @@
+package com.costwise.service;
+
+import com.costwise.model.TraceSpan;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution trace of one analysis run, aggregated by span path.
+ * <p>
+ * Spans with the same name under the same parent share one node, so a check run against ten
+ * thousand instances costs one node, not ten thousand. Spans nest per thread: a span opened
+ * while another span of the same trace is open on the thread becomes its child, and every AWS
+ * SDK call made on the thread is recorded under the innermost open span by {@link AwsCallTracer}.
+ * Work handed to another thread opens its spans under an explicit parent.
+ */
+public class ExecutionTrace {
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private final Node root;
+    private final long startNanos = System.nanoTime();
+    private volatile long stopNanos;
+
+    public ExecutionTrace(String name) {
+        this.root = new Node(name);
+    }
+
+    /** Opens a span under the innermost span of this trace open on the calling thread, or the root. */
+    public Span span(String name) {
+        Span current = CURRENT.get();
+        return open(current != null && current.trace == this ? current.node : root, name);
+    }
+
+    /** Opens a span under {@code parent}, typically from a task running on another thread. */
+    public Span span(Span parent, String name) {
+        return open(parent.trace == this ? parent.node : root, name);
+    }
+
+    /** The innermost span open on the calling thread, of any trace; null if there is none. */
+    static Span current() {
+        return CURRENT.get();
+    }
+
+    public void stop() {
+        stopNanos = System.nanoTime();
+    }
+
+    /**
+     * Snapshot of the trace. Call counts, retries, throttles, errors and bytes of a span include
+     * those of its descendants; wall time is what the span itself measured.
+     */
+    public TraceSpan snapshot() {
+        TraceSpan snapshot = root.snapshot();
+        snapshot.setCount(1);
+        snapshot.setWallMicros(((stopNanos != 0 ? stopNanos : System.nanoTime()) - startNanos) / 1000);
+        return snapshot;
+    }
+
+    private Span open(Node parent, String name) {
+        Span span = new Span(this, parent.child(name), CURRENT.get());
+        CURRENT.set(span);
+        return span;
+    }
+
+    /** An open span; closing it adds its wall time to its node and makes its parent current again. */
+    public static class Span implements AutoCloseable {
+        /** Span of no trace, for runs that are not traced; closing it does nothing. */
+        public static final Span NONE = new Span(null, null, null);
+
+        private final ExecutionTrace trace;
+        private final Node node;
+        private final Span previous;
+        private final long startNanos = System.nanoTime();
+
+        private Span(ExecutionTrace trace, Node node, Span previous) {
+            this.trace = trace;
+            this.node = node;
+            this.previous = previous;
+        }
+
+        /** Records one AWS call made while this span was innermost. */
+        void recordCall(String operation, long nanos, int attempts, int throttles, boolean failed,
+                        long bytesSent, long bytesReceived) {
+            Node call = node.child(operation);
+            call.count.incrementAndGet();
+            call.wallNanos.addAndGet(nanos);
+            call.calls.incrementAndGet();
+            call.retries.addAndGet(Math.max(attempts - 1, 0));
+            call.throttles.addAndGet(throttles);
+            if (failed) {
+                call.errors.incrementAndGet();
+            }
+            call.bytesSent.addAndGet(bytesSent);
+            call.bytesReceived.addAndGet(bytesReceived);
+        }
+
+        @Override
+        public void close() {
+            if (trace == null) {
+                return;
+            }
+            node.count.incrementAndGet();
+            node.wallNanos.addAndGet(System.nanoTime() - startNanos);
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    private static final class Node {
+        final String name;
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong wallNanos = new AtomicLong();
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong throttles = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        Node child(String name) {
+            return children.computeIfAbsent(name, Node::new);
+        }
+
+        TraceSpan snapshot() {
+            TraceSpan span = new TraceSpan();
+            span.setName(name);
+            span.setCount(count.get());
+            span.setWallMicros(wallNanos.get() / 1000);
+            span.setCalls(calls.get());
+            span.setRetries(retries.get());
+            span.setThrottles(throttles.get());
+            span.setErrors(errors.get());
+            span.setBytesSent(bytesSent.get());
+            span.setBytesReceived(bytesReceived.get());
+            List<TraceSpan> snapshots = new ArrayList<>();
+            for (Node child : children.values()) {
+                snapshots.add(child.snapshot());
+            }
+            snapshots.sort(Comparator.comparingLong(TraceSpan::getWallMicros).reversed());
+            for (TraceSpan child : snapshots) {
+                span.addChild(child);
+            }
+            return span;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.costwise.service;
+
+import lombok.Data;
+
+/**
+ * Difference between the findings of two runs of the same account. Finding ids of new and
+ * persisting findings refer to the target run, ids of resolved findings to the base run.
+ */
+@Data
+public class FindingDiff {
+    private Long baseRunId;
+    private Long targetRunId;
+
+    private long[] newFindingIds;
+    private long[] resolvedFindingIds;
+    private long[] persistingFindingIds;
+
+    private double newSavings;
+    private double resolvedSavings;
+    private double persistingSavingsBefore;
+    private double persistingSavingsAfter;
+
+    /** Change in total potential savings from the base run to the target run. */
+    public double getSavingsDelta() {
+        return newSavings - resolvedSavings + persistingSavingsAfter - persistingSavingsBefore;
+    }
+}
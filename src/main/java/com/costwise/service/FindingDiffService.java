@@ -0,0 +1,146 @@
+package com.costwise.service;
+
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.OptimizationResultRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares two runs by finding fingerprint.
+ * <p>
+ * Each run is loaded as three parallel arrays (fingerprint, id, savings) already sorted by the
+ * (run, fingerprint) index, and the two are merged in one linear pass; no entities are loaded.
+ * A fingerprint that occurs several times in one run (e.g. repeated cost anomalies of one
+ * series) is treated as one finding whose savings are summed.
+ */
+@Service
+@RequiredArgsConstructor
+public class FindingDiffService {
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+
+    @Transactional(readOnly = true)
+    public FindingDiff diff(Long baseRunId, Long targetRunId) {
+        CostAnalysisRun baseRun = costAnalysisRunRepository.findById(baseRunId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        CostAnalysisRun targetRun = costAnalysisRunRepository.findById(targetRunId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        if (!baseRun.getAwsAccount().getId().equals(targetRun.getAwsAccount().getId())) {
+            throw new RuntimeException("Analysis runs belong to different AWS accounts");
+        }
+        if (baseRun.getArchivedAt() != null || targetRun.getArchivedAt() != null) {
+            throw new RuntimeException("Analysis run is archived; restore it before comparing");
+        }
+
+        Fingerprints base = load(baseRunId);
+        Fingerprints target = load(targetRunId);
+
+        FindingDiff diff = new FindingDiff();
+        diff.setBaseRunId(baseRunId);
+        diff.setTargetRunId(targetRunId);
+        IdList added = new IdList(target.size);
+        IdList resolved = new IdList(base.size);
+        IdList persisting = new IdList(target.size);
+        int i = 0;
+        int j = 0;
+        while (i < base.size || j < target.size) {
+            int cmp = i == base.size ? 1 : j == target.size ? -1 : Long.compare(base.fingerprints[i], target.fingerprints[j]);
+            if (cmp < 0) {
+                int end = base.groupEnd(i);
+                diff.setResolvedSavings(diff.getResolvedSavings() + base.savings(i, end));
+                resolved.add(base.ids, i, end);
+                i = end;
+            } else if (cmp > 0) {
+                int end = target.groupEnd(j);
+                diff.setNewSavings(diff.getNewSavings() + target.savings(j, end));
+                added.add(target.ids, j, end);
+                j = end;
+            } else {
+                int baseEnd = base.groupEnd(i);
+                int targetEnd = target.groupEnd(j);
+                diff.setPersistingSavingsBefore(diff.getPersistingSavingsBefore() + base.savings(i, baseEnd));
+                diff.setPersistingSavingsAfter(diff.getPersistingSavingsAfter() + target.savings(j, targetEnd));
+                persisting.add(target.ids, j, targetEnd);
+                i = baseEnd;
+                j = targetEnd;
+            }
+        }
+        diff.setNewFindingIds(added.toArray());
+        diff.setResolvedFindingIds(resolved.toArray());
+        diff.setPersistingFindingIds(persisting.toArray());
+        return diff;
+    }
+
+    private Fingerprints load(Long runId) {
+        List<Object[]> rows = optimizationResultRepository.findFingerprintsByAnalysisRunId(runId);
+        Fingerprints fingerprints = new Fingerprints(rows.size());
+        for (Object[] row : rows) {
+            fingerprints.add((Long) row[0], (Long) row[1], ((Number) row[2]).doubleValue());
+        }
+        return fingerprints;
+    }
+
+    private static class Fingerprints {
+        final long[] fingerprints;
+        final long[] ids;
+        final double[] savings;
+        int size;
+
+        Fingerprints(int capacity) {
+            fingerprints = new long[capacity];
+            ids = new long[capacity];
+            savings = new double[capacity];
+        }
+
+        void add(long fingerprint, long id, double findingSavings) {
+            fingerprints[size] = fingerprint;
+            ids[size] = id;
+            savings[size] = findingSavings;
+            size++;
+        }
+
+        /** Index just past the run of entries sharing the fingerprint at {@code start}. */
+        int groupEnd(int start) {
+            int end = start + 1;
+            while (end < size && fingerprints[end] == fingerprints[start]) {
+                end++;
+            }
+            return end;
+        }
+
+        double savings(int start, int end) {
+            double total = 0;
+            for (int k = start; k < end; k++) {
+                total += savings[k];
+            }
+            return total;
+        }
+    }
+
+    private static class IdList {
+        private long[] values;
+        private int size;
+
+        IdList(int capacity) {
+            values = new long[Math.max(capacity, 1)];
+        }
+
+        void add(long[] source, int start, int end) {
+            int count = end - start;
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + count));
+            }
+            System.arraycopy(source, start, values, size, count);
+            size += count;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
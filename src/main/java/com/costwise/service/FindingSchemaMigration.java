@@ -0,0 +1,118 @@
+package com.costwise.service;
+
+import com.costwise.model.FindingCheck;
+import com.costwise.model.OptimizationResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Moves findings stored with full texts onto the {@link FindingCheck} catalog.
+ * <p>
+ * Schema updates only add columns, so a database from before the catalog still has the
+ * resource type, check id, text and severity columns, all NOT NULL, which new findings would
+ * violate. On startup, after Hibernate has added the check code column, every old row gets its
+ * code, the parameters recovered from its texts and its severity if it differs from the
+ * check's. Rows that match no check, such as the cost findings of the first releases, are kept
+ * under {@link FindingCheck#LEGACY} with their texts as parameters and keep their resource type,
+ * which LEGACY cannot supply; the resource type column stays for them and is made nullable.
+ * Then the other old columns are dropped.
+ * <p>
+ * Databases upgraded straight from the first releases never had the check id column, so the
+ * columns read and dropped are the ones actually present.
+ */
+@Slf4j
+@Component
+@Lazy(false) // Batch runs are lazily initialized but write findings too
+public class FindingSchemaMigration {
+    private static final int BATCH_SIZE = 1000;
+    private static final List<String> LEGACY_COLUMNS = List.of(
+            "check_id", "current_state", "suggested_action", "severity");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // The entity manager factory is only a dependency so that this runs after the schema update
+    public FindingSchemaMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        List<String> present = jdbcTemplate.queryForList("select column_name from information_schema.columns "
+                + "where table_schema = database() and table_name = 'optimization_results'", String.class)
+                .stream().map(column -> column.toLowerCase(Locale.ROOT)).toList();
+        if (!present.contains("current_state")) {
+            return;
+        }
+        List<String> legacyColumns = LEGACY_COLUMNS.stream().filter(present::contains).toList();
+        String checkIdColumn = present.contains("check_id") ? "check_id" : "null";
+        String resourceTypeColumn = present.contains("resource_type") ? "resource_type" : "null";
+
+        // Before the updates, which clear the resource type of every finding but the legacy ones
+        if (present.contains("resource_type")) {
+            jdbcTemplate.execute("alter table optimization_results modify resource_type varchar(255) null");
+        }
+
+        long migrated = 0;
+        long legacyRows = 0;
+        long lastId = 0;
+        List<Row> page;
+        do {
+            page = jdbcTemplate.query("select id, resource_id, " + checkIdColumn + ", current_state, suggested_action, "
+                            + "severity, " + resourceTypeColumn + " from optimization_results "
+                            + "where check_code = 0 and id > ? order by id limit ?",
+                    (rs, rowNum) -> new Row(rs.getLong(1), rs.getString(2), rs.getString(3),
+                            rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7)),
+                    lastId, BATCH_SIZE);
+            List<Object[]> updates = new ArrayList<>();
+            for (Row row : page) {
+                lastId = row.id;
+                FindingCheck check = check(row);
+                if (check == null) {
+                    check = FindingCheck.LEGACY;
+                }
+                if (check == FindingCheck.LEGACY) {
+                    legacyRows++;
+                }
+                List<String> params = check.parse(row.currentState, row.suggestedAction);
+                updates.add(new Object[]{
+                        check.getCode(),
+                        params == null || params.isEmpty() ? null : String.join(OptimizationResult.PARAM_SEPARATOR, params),
+                        check.getSeverity().equals(row.severity) ? null : row.severity,
+                        OptimizationResult.fingerprint(check.getResourceType(), row.resourceId, check.name()),
+                        check == FindingCheck.LEGACY ? row.resourceType : null,
+                        row.id});
+            }
+            jdbcTemplate.batchUpdate("update optimization_results set check_code = ?, check_params = ?, "
+                    + "severity_override = ?, fingerprint = ?, resource_type = ? where id = ?", updates);
+            migrated += updates.size();
+        } while (page.size() == BATCH_SIZE);
+
+        jdbcTemplate.execute("alter table optimization_results drop column "
+                + String.join(", drop column ", legacyColumns));
+        log.info("Moved {} findings onto the check catalog, {} of them matching no check kept as legacy findings",
+                migrated, legacyRows);
+    }
+
+    private static FindingCheck check(Row row) {
+        if (row.checkId != null) {
+            try {
+                return FindingCheck.valueOf(row.checkId);
+            } catch (IllegalArgumentException e) {
+                // Fall back to recognizing the texts
+            }
+        }
+        return FindingCheck.match(row.currentState, row.suggestedAction);
+    }
+
+    private record Row(long id, String resourceId, String checkId, String currentState, String suggestedAction,
+                       String severity, String resourceType) {
+    }
+}
@@ -0,0 +1,228 @@
+package com.costwise.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The EC2 instance types of one region with their resources and On-Demand Linux price, indexed
+ * for finding the cheapest type that still fits a workload.
+ * <p>
+ * Only current-generation types with a price are targets. Targets are split into compatibility
+ * classes an instance can move within without changing its AMI or losing hardware: same
+ * architecture, burstable or not, with or without instance storage, and for GPU, FPGA and
+ * inference instances the same family. Each class keeps a grid over its distinct vCPU counts and
+ * memory sizes whose cell holds the cheapest target with at least that many vCPUs and that much
+ * memory, so a fit is two binary searches and a lookup.
+ */
+public class InstanceTypeCatalog {
+    public static final InstanceTypeCatalog EMPTY = new InstanceTypeCatalog(List.of());
+
+    private static final Pattern FAMILY = Pattern.compile("([a-z]+)(\\d+)[a-z0-9-]*");
+
+    private final Map<String, InstanceType> byName = new HashMap<>();
+    private final InstanceType[] targets; // By ascending price
+    private final String[] targetClasses; // Compatibility of each target
+    private final String[] targetSeries; // Family letters of each target, e.g. "m" for m6i; null if unparsable
+    private final int[] targetGenerations;
+    private final Map<String, FitGrid> grids = new HashMap<>();
+    private final Map<String, Optional<InstanceType>> successors = new ConcurrentHashMap<>();
+
+    public InstanceTypeCatalog(Collection<InstanceType> types) {
+        List<InstanceType> priced = new ArrayList<>();
+        for (InstanceType type : types) {
+            byName.put(type.name(), type);
+            if (type.currentGeneration() && type.hourlyPrice() > 0) {
+                priced.add(type);
+            }
+        }
+        priced.sort(Comparator.comparingDouble(InstanceType::hourlyPrice).thenComparing(InstanceType::name));
+        targets = priced.toArray(new InstanceType[0]);
+        targetClasses = new String[targets.length];
+        targetSeries = new String[targets.length];
+        targetGenerations = new int[targets.length];
+
+        Map<String, List<Integer>> byClass = new HashMap<>();
+        for (int i = 0; i < targets.length; i++) {
+            // Interned through the map, so classes compare by identity
+            List<Integer> members = byClass.computeIfAbsent(targets[i].compatibility(), c -> new ArrayList<>());
+            members.add(i);
+            Matcher family = FAMILY.matcher(targets[i].family());
+            if (family.matches()) {
+                targetSeries[i] = family.group(1);
+                targetGenerations[i] = Integer.parseInt(family.group(2));
+            }
+        }
+        byClass.forEach((compatibility, members) -> {
+            members.forEach(i -> targetClasses[i] = compatibility);
+            grids.put(compatibility, new FitGrid(targets, members));
+        });
+    }
+
+    /**
+     * An instance type with its default vCPUs, memory, network bandwidth in Gbit/s (the burst
+     * figure for "up to" types) and hourly On-Demand Linux price; the price is 0 when unknown.
+     */
+    public record InstanceType(String name, int vcpus, long memoryMib, String architecture, double networkGbps,
+                               boolean currentGeneration, boolean burstable, boolean instanceStorage,
+                               boolean accelerated, double hourlyPrice) {
+
+        public String family() {
+            int dot = name.indexOf('.');
+            return dot < 0 ? name : name.substring(0, dot);
+        }
+
+        public String size() {
+            int dot = name.indexOf('.');
+            return dot < 0 ? "" : name.substring(dot + 1);
+        }
+
+        /** Types an instance can move between without a new AMI or losing hardware share this key. */
+        String compatibility() {
+            return architecture + (burstable ? "|burstable" : "") + (instanceStorage ? "|storage" : "")
+                    + (accelerated ? "|" + family() : "");
+        }
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    public boolean isEmpty() {
+        return byName.isEmpty();
+    }
+
+    public InstanceType type(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * The cheapest current-generation type compatible with {@code current} that has at least the
+     * given vCPUs, memory and network bandwidth and costs less than {@code maxHourlyPrice}; null if
+     * there is none.
+     */
+    public InstanceType fit(InstanceType current, int vcpus, long memoryMib, double networkGbps, double maxHourlyPrice) {
+        FitGrid grid = grids.get(current.compatibility());
+        if (grid == null) {
+            return null;
+        }
+        int cheapest = grid.cheapest(vcpus, memoryMib);
+        if (cheapest < 0) {
+            return null;
+        }
+        // Every cheaper target lacks vCPUs or memory; the first that also has the bandwidth wins
+        String compatibility = targetClasses[cheapest];
+        for (int i = cheapest; i < targets.length && targets[i].hourlyPrice() < maxHourlyPrice; i++) {
+            InstanceType candidate = targets[i];
+            if (targetClasses[i] == compatibility && candidate.vcpus() >= vcpus && candidate.memoryMib() >= memoryMib
+                    && candidate.networkGbps() >= networkGbps) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The cheapest same-size type of a newer generation of the same series (m5 to m6i, m6a or m7g,
+     * within the type's compatibility class) that has at least its resources and costs no more;
+     * for a previous-generation type without one, the cheapest compatible current type with at
+     * least its resources. Null if the type is current and nothing newer is as cheap.
+     */
+    public InstanceType successor(InstanceType type) {
+        return successors.computeIfAbsent(type.name(), name -> Optional.ofNullable(findSuccessor(type))).orElse(null);
+    }
+
+    private InstanceType findSuccessor(InstanceType type) {
+        Matcher family = FAMILY.matcher(type.family());
+        if (family.matches()) {
+            String series = family.group(1);
+            int generation = Integer.parseInt(family.group(2));
+            String compatibility = type.compatibility();
+            for (int i = 0; i < targets.length; i++) {
+                InstanceType candidate = targets[i];
+                if (type.hourlyPrice() > 0 && candidate.hourlyPrice() > type.hourlyPrice()) {
+                    break;
+                }
+                if (series.equals(targetSeries[i]) && targetGenerations[i] > generation
+                        && candidate.size().equals(type.size())
+                        && candidate.vcpus() >= type.vcpus() && candidate.memoryMib() >= type.memoryMib()
+                        && targetClasses[i].equals(compatibility)) {
+                    return candidate;
+                }
+            }
+        }
+        if (!type.currentGeneration()) {
+            return fit(type, type.vcpus(), type.memoryMib(), type.networkGbps(), Double.MAX_VALUE);
+        }
+        return null;
+    }
+
+    /** Cheapest target per (at least vCPUs, at least memory) cell of one compatibility class. */
+    private static final class FitGrid {
+        final int[] vcpus;
+        final long[] memory;
+        final int[] cheapest; // Target index per cell, row-major by vCPUs; -1 for none
+
+        FitGrid(InstanceType[] targets, List<Integer> members) {
+            TreeSet<Integer> distinctVcpus = new TreeSet<>();
+            TreeSet<Long> distinctMemory = new TreeSet<>();
+            for (int member : members) {
+                distinctVcpus.add(targets[member].vcpus());
+                distinctMemory.add(targets[member].memoryMib());
+            }
+            vcpus = distinctVcpus.stream().mapToInt(Integer::intValue).toArray();
+            memory = distinctMemory.stream().mapToLong(Long::longValue).toArray();
+            int columns = memory.length;
+            cheapest = new int[vcpus.length * columns];
+            Arrays.fill(cheapest, -1);
+            for (int member : members) { // In price order, so the first in a cell is its cheapest
+                int cell = Arrays.binarySearch(vcpus, targets[member].vcpus()) * columns
+                        + Arrays.binarySearch(memory, targets[member].memoryMib());
+                if (cheapest[cell] < 0) {
+                    cheapest[cell] = member;
+                }
+            }
+            // A cell also covers every type with more vCPUs or more memory
+            for (int v = vcpus.length - 1; v >= 0; v--) {
+                for (int m = columns - 1; m >= 0; m--) {
+                    int cell = v * columns + m;
+                    if (v + 1 < vcpus.length) {
+                        cheapest[cell] = cheaper(cheapest[cell], cheapest[cell + columns]);
+                    }
+                    if (m + 1 < columns) {
+                        cheapest[cell] = cheaper(cheapest[cell], cheapest[cell + 1]);
+                    }
+                }
+            }
+        }
+
+        int cheapest(int minVcpus, long minMemory) {
+            int v = lowerBound(vcpus, minVcpus);
+            int m = lowerBound(memory, minMemory);
+            return v < vcpus.length && m < memory.length ? cheapest[v * memory.length + m] : -1;
+        }
+
+        private static int cheaper(int a, int b) {
+            return a < 0 ? b : b < 0 ? a : Math.min(a, b);
+        }
+
+        private static int lowerBound(int[] values, int key) {
+            int i = Arrays.binarySearch(values, key);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        private static int lowerBound(long[] values, long key) {
+            int i = Arrays.binarySearch(values, key);
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.costwise.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeInstanceTypesRequest;
+import software.amazon.awssdk.services.ec2.model.InstanceTypeInfo;
+import software.amazon.awssdk.services.pricing.PricingClient;
+import software.amazon.awssdk.services.pricing.model.Filter;
+import software.amazon.awssdk.services.pricing.model.GetProductsRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-region {@link InstanceTypeCatalog}s, loaded from DescribeInstanceTypes and the Pricing API
+ * on first use and reloaded on a schedule. A region whose catalog cannot be loaded gets an empty
+ * one, so analyses go on without rightsizing targets; the load is retried on a later use after a
+ * backoff that doubles with every failure. The first caller for a region loads it while later
+ * callers for that region wait on its future; other regions are not held up.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InstanceTypeCatalogService {
+    private static final Pattern BANDWIDTH = Pattern.compile("(?:(\\d+)x )?([\\d.]+) (Gigabit|Megabit)");
+    // Bandwidth of the older named network performance levels, in Gbit/s
+    private static final Map<String, Double> NAMED_BANDWIDTH = Map.of(
+        "Very Low", 0.05,
+        "Low", 0.3,
+        "Low to Moderate", 0.3,
+        "Moderate", 0.5,
+        "High", 1.0
+    );
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, CompletableFuture<InstanceTypeCatalog>> catalogs = new ConcurrentHashMap<>();
+    private final Map<String, Backoff> backoffs = new ConcurrentHashMap<>();
+
+    @Value("${costwise.instance-types.retry-min-seconds:60}")
+    private long retryMinSeconds;
+
+    @Value("${costwise.instance-types.retry-max-seconds:3600}")
+    private long retryMaxSeconds;
+
+    public InstanceTypeCatalog catalog(String region) {
+        CompletableFuture<InstanceTypeCatalog> catalog = catalogs.get(region);
+        if (catalog == null) {
+            Backoff backoff = backoffs.get(region);
+            if (backoff != null && System.nanoTime() - backoff.retryAtNanos() < 0) {
+                return InstanceTypeCatalog.EMPTY;
+            }
+            // Loaded outside the map's locks, which computeIfAbsent would hold for the whole load
+            CompletableFuture<InstanceTypeCatalog> loading = new CompletableFuture<>();
+            catalog = catalogs.putIfAbsent(region, loading);
+            if (catalog == null) {
+                catalog = loading;
+                InstanceTypeCatalog result = null;
+                try {
+                    result = loadOrNull(region);
+                } finally {
+                    if (result == null) {
+                        // A failed load maps to nothing, so the region is tried again once its backoff is over
+                        catalogs.remove(region, loading);
+                    }
+                    loading.complete(result);
+                }
+            }
+        }
+        InstanceTypeCatalog loaded = catalog.join();
+        return loaded == null ? InstanceTypeCatalog.EMPTY : loaded;
+    }
+
+    @Scheduled(cron = "${costwise.instance-types.cron:0 0 3 * * *}")
+    public void refresh() {
+        for (Map.Entry<String, CompletableFuture<InstanceTypeCatalog>> entry : catalogs.entrySet()) {
+            if (!entry.getValue().isDone()) {
+                continue; // Its first load is still running
+            }
+            String region = entry.getKey();
+            try {
+                catalogs.put(region, CompletableFuture.completedFuture(load(region)));
+            } catch (Exception e) {
+                log.warn("Could not refresh the instance type catalog of {}: {}", region, e.getMessage());
+            }
+        }
+    }
+
+    private InstanceTypeCatalog loadOrNull(String region) {
+        try {
+            InstanceTypeCatalog catalog = load(region);
+            backoffs.remove(region);
+            return catalog;
+        } catch (Exception e) {
+            Backoff previous = backoffs.get(region);
+            int failures = previous == null ? 1 : previous.failures() + 1;
+            long seconds = Math.min(retryMinSeconds << Math.min(failures - 1, 20), retryMaxSeconds);
+            backoffs.put(region, new Backoff(failures, System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds)));
+            log.warn("Could not load the instance type catalog of {}, retrying in {} s: {}", region, seconds, e.getMessage());
+            return null;
+        }
+    }
+
+    private InstanceTypeCatalog load(String region) {
+        long started = System.nanoTime();
+        Map<String, Double> prices = onDemandPrices(region);
+        List<InstanceTypeCatalog.InstanceType> types = new ArrayList<>();
+        try (Ec2Client ec2Client = Ec2Client.builder()
+                .region(software.amazon.awssdk.regions.Region.of(region))
+                .build()) {
+            for (InstanceTypeInfo info : ec2Client.describeInstanceTypesPaginator(DescribeInstanceTypesRequest.builder().build())
+                    .instanceTypes()) {
+                String name = info.instanceTypeAsString();
+                types.add(new InstanceTypeCatalog.InstanceType(
+                    name,
+                    info.vCpuInfo().defaultVCpus(),
+                    info.memoryInfo().sizeInMiB(),
+                    architecture(info.processorInfo().supportedArchitecturesAsStrings()),
+                    bandwidth(info.networkInfo() == null ? null : info.networkInfo().networkPerformance()),
+                    Boolean.TRUE.equals(info.currentGeneration()),
+                    Boolean.TRUE.equals(info.burstablePerformanceSupported()),
+                    Boolean.TRUE.equals(info.instanceStorageSupported()),
+                    info.gpuInfo() != null || info.fpgaInfo() != null || info.inferenceAcceleratorInfo() != null,
+                    prices.getOrDefault(name, 0.0)));
+            }
+        }
+        InstanceTypeCatalog catalog = new InstanceTypeCatalog(types);
+        log.info("Loaded {} instance types of {}, {} with On-Demand prices, in {} ms",
+                catalog.size(), region, prices.size(), (System.nanoTime() - started) / 1_000_000);
+        return catalog;
+    }
+
+    /** Hourly On-Demand price of every instance type in the region, for shared-tenancy Linux. */
+    private Map<String, Double> onDemandPrices(String region) {
+        Map<String, Double> prices = new HashMap<>();
+        GetProductsRequest request = GetProductsRequest.builder()
+            .serviceCode("AmazonEC2")
+            .filters(
+                termMatch("regionCode", region),
+                termMatch("operatingSystem", "Linux"),
+                termMatch("tenancy", "Shared"),
+                termMatch("preInstalledSw", "NA"),
+                termMatch("capacitystatus", "Used"))
+            .build();
+        try (PricingClient pricingClient = PricingClient.builder()
+                .region(software.amazon.awssdk.regions.Region.US_EAST_1) // Pricing API is only available in us-east-1
+                .build()) {
+            for (String product : pricingClient.getProductsPaginator(request).priceList()) {
+                try {
+                    JsonNode item = objectMapper.readTree(product);
+                    String instanceType = item.path("product").path("attributes").path("instanceType").asText(null);
+                    double price = hourlyPrice(item.path("terms").path("OnDemand"));
+                    if (instanceType != null && price > 0) {
+                        prices.merge(instanceType, price, Math::min);
+                    }
+                } catch (Exception e) {
+                    log.debug("Skipping unreadable EC2 price list entry: {}", e.getMessage());
+                }
+            }
+        }
+        return prices;
+    }
+
+    private static Filter termMatch(String field, String value) {
+        return Filter.builder().type("TERM_MATCH").field(field).value(value).build();
+    }
+
+    private static double hourlyPrice(JsonNode onDemandTerms) {
+        for (Iterator<JsonNode> terms = onDemandTerms.elements(); terms.hasNext(); ) {
+            for (Iterator<JsonNode> dimensions = terms.next().path("priceDimensions").elements(); dimensions.hasNext(); ) {
+                JsonNode dimension = dimensions.next();
+                if ("Hrs".equals(dimension.path("unit").asText())) {
+                    return dimension.path("pricePerUnit").path("USD").asDouble(0.0);
+                }
+            }
+        }
+        return 0.0;
+    }
+
+    private static String architecture(List<String> supported) {
+        if (supported == null || supported.isEmpty()) {
+            return "x86_64";
+        }
+        if (supported.contains("x86_64")) {
+            return "x86_64";
+        }
+        return supported.get(0); // arm64, or a Mac architecture
+    }
+
+    /** Network performance such as "Up to 12.5 Gigabit", "4x 100 Gigabit" or "Moderate", in Gbit/s. */
+    static double bandwidth(String performance) {
+        if (performance == null) {
+            return 0.0;
+        }
+        Matcher matcher = BANDWIDTH.matcher(performance);
+        if (matcher.find()) {
+            double bandwidth = Double.parseDouble(matcher.group(2)) * (matcher.group(1) == null ? 1 : Integer.parseInt(matcher.group(1)));
+            return matcher.group(3).equals("Megabit") ? bandwidth / 1000 : bandwidth;
+        }
+        return NAMED_BANDWIDTH.getOrDefault(performance, 0.0);
+    }
+
+    /** Consecutive failed loads of a region and when to try it next. */
+    private record Backoff(int failures, long retryAtNanos) {
+    }
+}
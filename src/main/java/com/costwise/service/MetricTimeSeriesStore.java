@@ -0,0 +1,667 @@
+package com.costwise.service;
+
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Append-only local store for metric datapoints.
+ * <p>
+ * Each series (one resource, metric, statistic and period) is kept as two column files: a
+ * {@code .ts} file of epoch-second longs and a {@code .val} file of doubles, both in ascending
+ * timestamp order. Reads memory-map the files and return buffer views over the requested range,
+ * so history is never copied onto the heap.
+ * <p>
+ * A {@code .qs} sidecar holds one {@link QuantileSketch} per completed UTC day. Quantile queries
+ * over long ranges merge the daily sketches and only touch raw datapoints for partial days at the
+ * edges of the range or for days that have not been summarized yet.
+ * <p>
+ * Older history is added by {@link #prepend}, which rewrites the series into {@code .new} files
+ * and swaps them in once a {@code .swap} marker says both are complete; a swap interrupted by a
+ * crash is finished the next time the series is opened. A {@code .from} file records how far back
+ * the series has been fetched, so ranges without datapoints are not fetched again.
+ * <p>
+ * The files of a series live in a directory per resource, spread over 256 shard directories so
+ * that no directory holds every series. A daily sweep drops datapoints older than
+ * {@code costwise.metrics.max-age-days} and deletes the series of resources with no datapoint in
+ * the last {@code costwise.metrics.idle-days}, such as terminated instances.
+ */
+@Slf4j
+@Service
+public class MetricTimeSeriesStore {
+    private static final String TIMESTAMP_SUFFIX = ".ts";
+    private static final String VALUE_SUFFIX = ".val";
+    private static final String SKETCH_SUFFIX = ".qs";
+    private static final String FROM_SUFFIX = ".from";
+    private static final String NEW_SUFFIX = ".new";
+    private static final String SWAP_SUFFIX = ".swap";
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final int LOCK_STRIPES = 256;
+
+    /** Series hash onto a fixed set of locks, so the locks do not grow with the series. */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Path root;
+    private final int maxAgeDays;
+    private final int idleDays;
+
+    public MetricTimeSeriesStore(@Value("${costwise.metrics.store-directory:./data/metrics}") String storeDirectory,
+                                 @Value("${costwise.metrics.max-age-days:90}") int maxAgeDays,
+                                 @Value("${costwise.metrics.idle-days:14}") int idleDays) {
+        this.root = Paths.get(storeDirectory);
+        this.maxAgeDays = maxAgeDays;
+        this.idleDays = idleDays;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the timestamp of the newest stored datapoint in epoch seconds, or -1 if the
+     * series is empty.
+     */
+    public long lastTimestamp(String series) {
+        Path base = base(series);
+        synchronized (lockFor(base)) {
+            try (FileChannel timestamps = open(base, TIMESTAMP_SUFFIX, StandardOpenOption.READ)) {
+                if (timestamps == null) {
+                    return -1;
+                }
+                long count = committedCount(base, timestamps);
+                if (count == 0) {
+                    return -1;
+                }
+                ByteBuffer last = ByteBuffer.allocate(Long.BYTES);
+                timestamps.read(last, (count - 1) * Long.BYTES);
+                return last.flip().getLong();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read metric series " + series, e);
+            }
+        }
+    }
+
+    /**
+     * Appends datapoints, which must be sorted and newer than {@link #lastTimestamp(String)}.
+     * Points at or before the last stored timestamp are skipped.
+     */
+    public void append(String series, long[] timestamps, double[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        Path base = base(series);
+        synchronized (lockFor(base)) {
+            try {
+                Files.createDirectories(base.getParent());
+                try (FileChannel timestampChannel = open(base, TIMESTAMP_SUFFIX,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     FileChannel valueChannel = open(base, VALUE_SUFFIX,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    // A crash between the two writes can leave one column longer; drop the torn tail
+                    long stored = Math.min(timestampChannel.size() / Long.BYTES, valueChannel.size() / Double.BYTES);
+                    timestampChannel.truncate(stored * Long.BYTES);
+                    valueChannel.truncate(stored * Double.BYTES);
+
+                    long last = -1;
+                    if (stored > 0) {
+                        ByteBuffer lastBuffer = ByteBuffer.allocate(Long.BYTES);
+                        timestampChannel.read(lastBuffer, (stored - 1) * Long.BYTES);
+                        last = lastBuffer.flip().getLong();
+                    }
+
+                    ByteBuffer timestampBuffer = ByteBuffer.allocate(count * Long.BYTES);
+                    ByteBuffer valueBuffer = ByteBuffer.allocate(count * Double.BYTES);
+                    for (int i = 0; i < count; i++) {
+                        if (timestamps[i] <= last) {
+                            continue;
+                        }
+                        timestampBuffer.putLong(timestamps[i]);
+                        valueBuffer.putDouble(values[i]);
+                        last = timestamps[i];
+                    }
+                    timestampBuffer.flip();
+                    valueBuffer.flip();
+                    // Values first, so a torn write never exposes a timestamp without its value
+                    writeFully(valueChannel, valueBuffer, stored * Double.BYTES);
+                    writeFully(timestampChannel, timestampBuffer, stored * Long.BYTES);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to append to metric series " + series, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the oldest range fetched into the series in epoch seconds, which is at
+     * or before its first datapoint, or -1 if the series is empty.
+     */
+    public long coveredFrom(String series) {
+        Path base = base(series);
+        synchronized (lockFor(base)) {
+            try (FileChannel timestamps = open(base, TIMESTAMP_SUFFIX, StandardOpenOption.READ)) {
+                if (timestamps == null || committedCount(base, timestamps) == 0) {
+                    return -1;
+                }
+                ByteBuffer first = ByteBuffer.allocate(Long.BYTES);
+                timestamps.read(first, 0);
+                long firstTimestamp = first.flip().getLong();
+                Path fromFile = file(base, FROM_SUFFIX);
+                if (Files.exists(fromFile)) {
+                    long from = ByteBuffer.wrap(Files.readAllBytes(fromFile)).getLong();
+                    return Math.min(from, firstTimestamp);
+                }
+                return firstTimestamp;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read metric series " + series, e);
+            }
+        }
+    }
+
+    /**
+     * Adds datapoints older than the stored ones, which must be sorted, and records the series as
+     * fetched from {@code from}. Points at or after the first stored timestamp are skipped.
+     */
+    public void prepend(String series, long from, long[] timestamps, double[] values, int count) {
+        Path base = base(series);
+        synchronized (lockFor(base)) {
+            try {
+                Files.createDirectories(base.getParent());
+                long[] storedTimestamps = new long[0];
+                double[] storedValues = new double[0];
+                try (FileChannel timestampChannel = open(base, TIMESTAMP_SUFFIX, StandardOpenOption.READ);
+                     FileChannel valueChannel = open(base, VALUE_SUFFIX, StandardOpenOption.READ)) {
+                    if (timestampChannel != null && valueChannel != null) {
+                        int stored = (int) Math.min(timestampChannel.size() / Long.BYTES, valueChannel.size() / Double.BYTES);
+                        storedTimestamps = new long[stored];
+                        storedValues = new double[stored];
+                        timestampChannel.map(FileChannel.MapMode.READ_ONLY, 0, stored * (long) Long.BYTES)
+                            .asLongBuffer().get(storedTimestamps);
+                        valueChannel.map(FileChannel.MapMode.READ_ONLY, 0, stored * (long) Double.BYTES)
+                            .asDoubleBuffer().get(storedValues);
+                    }
+                }
+                long first = storedTimestamps.length > 0 ? storedTimestamps[0] : Long.MAX_VALUE;
+
+                ByteBuffer timestampBuffer = ByteBuffer.allocate((count + storedTimestamps.length) * Long.BYTES);
+                ByteBuffer valueBuffer = ByteBuffer.allocate((count + storedValues.length) * Double.BYTES);
+                long last = Long.MIN_VALUE;
+                int added = 0;
+                for (int i = 0; i < count; i++) {
+                    if (timestamps[i] >= first || timestamps[i] <= last) {
+                        continue;
+                    }
+                    timestampBuffer.putLong(timestamps[i]);
+                    valueBuffer.putDouble(values[i]);
+                    last = timestamps[i];
+                    added++;
+                }
+                if (added > 0) {
+                    for (int i = 0; i < storedTimestamps.length; i++) {
+                        timestampBuffer.putLong(storedTimestamps[i]);
+                        valueBuffer.putDouble(storedValues[i]);
+                    }
+                    // The first stored day may have been summarized before its earlier hours were known
+                    if (storedTimestamps.length > 0) {
+                        dropDailySketch(base, Math.floorDiv(first, SECONDS_PER_DAY));
+                    }
+                    swap(base, timestampBuffer.flip(), valueBuffer.flip());
+                }
+                Files.write(file(base, FROM_SUFFIX), ByteBuffer.allocate(Long.BYTES).putLong(from).array());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to prepend to metric series " + series, e);
+            }
+        }
+    }
+
+    /**
+     * Maps the datapoints with {@code from <= timestamp < to} (epoch seconds).
+     */
+    public SeriesView read(String series, long from, long to) {
+        Path base = base(series);
+        synchronized (lockFor(base)) {
+            try (FileChannel timestampChannel = open(base, TIMESTAMP_SUFFIX, StandardOpenOption.READ);
+                 FileChannel valueChannel = open(base, VALUE_SUFFIX, StandardOpenOption.READ)) {
+                if (timestampChannel == null || valueChannel == null) {
+                    return SeriesView.EMPTY;
+                }
+                long count = Math.min(timestampChannel.size() / Long.BYTES, valueChannel.size() / Double.BYTES);
+                if (count == 0) {
+                    return SeriesView.EMPTY;
+                }
+                LongBuffer timestamps = timestampChannel.map(FileChannel.MapMode.READ_ONLY, 0, count * Long.BYTES).asLongBuffer();
+                DoubleBuffer values = valueChannel.map(FileChannel.MapMode.READ_ONLY, 0, count * Double.BYTES).asDoubleBuffer();
+                int start = lowerBound(timestamps, from);
+                int end = lowerBound(timestamps, to);
+                return new SeriesView(timestamps.slice(start, end - start), values.slice(start, end - start));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read metric series " + series, e);
+            }
+        }
+    }
+
+    /**
+     * Summarizes the datapoints with {@code from <= timestamp < to} into a quantile sketch.
+     */
+    public QuantileSketch sketch(String series, long from, long to) {
+        Path base = base(series);
+        synchronized (lockFor(base)) {
+            QuantileSketch sketch = new QuantileSketch();
+            long firstDay = Math.floorDiv(from + SECONDS_PER_DAY - 1, SECONDS_PER_DAY);
+            long endDay = Math.floorDiv(to, SECONDS_PER_DAY);
+            if (firstDay >= endDay) {
+                addAll(sketch, read(series, from, to));
+                return sketch;
+            }
+            addAll(sketch, read(series, from, firstDay * SECONDS_PER_DAY));
+            addAll(sketch, read(series, endDay * SECONDS_PER_DAY, to));
+
+            int days = (int) (endDay - firstDay);
+            boolean[] covered = new boolean[days];
+            try {
+                mergeDailySketches(base, firstDay, endDay, covered, sketch);
+
+                // A day is complete once a later datapoint exists; summarize those for next time
+                long last = lastTimestamp(series);
+                ByteArrayOutputStream summarized = new ByteArrayOutputStream();
+                for (int i = 0; i < days; i++) {
+                    if (covered[i]) {
+                        continue;
+                    }
+                    long dayStart = (firstDay + i) * SECONDS_PER_DAY;
+                    QuantileSketch daily = new QuantileSketch();
+                    addAll(daily, read(series, dayStart, dayStart + SECONDS_PER_DAY));
+                    sketch.merge(daily);
+                    if (last >= dayStart + SECONDS_PER_DAY && !daily.isEmpty()) {
+                        byte[] bytes = daily.toBytes();
+                        ByteBuffer record = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + bytes.length);
+                        record.putLong(firstDay + i).putInt(bytes.length).put(bytes);
+                        summarized.write(record.array(), 0, record.capacity());
+                    }
+                }
+                if (summarized.size() > 0) {
+                    try (FileChannel sketches = open(base, SKETCH_SUFFIX,
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                        ByteBuffer buffer = ByteBuffer.wrap(summarized.toByteArray());
+                        while (buffer.hasRemaining()) {
+                            sketches.write(buffer);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to summarize metric series " + series, e);
+            }
+            return sketch;
+        }
+    }
+
+    private void mergeDailySketches(Path base, long firstDay, long endDay, boolean[] covered,
+                                    QuantileSketch into) throws IOException {
+        try (FileChannel sketches = open(base, SKETCH_SUFFIX, StandardOpenOption.READ)) {
+            if (sketches == null || sketches.size() == 0) {
+                return;
+            }
+            ByteBuffer buffer = sketches.map(FileChannel.MapMode.READ_ONLY, 0, sketches.size());
+            while (buffer.remaining() >= Long.BYTES + Integer.BYTES) {
+                long day = buffer.getLong();
+                int length = buffer.getInt();
+                if (length > buffer.remaining()) {
+                    break; // torn tail record
+                }
+                int next = buffer.position() + length;
+                if (day >= firstDay && day < endDay && !covered[(int) (day - firstDay)]) {
+                    covered[(int) (day - firstDay)] = true;
+                    into.merge(QuantileSketch.fromBytes(buffer));
+                }
+                buffer.position(next);
+            }
+        }
+    }
+
+    private void dropDailySketch(Path base, long dropDay) throws IOException {
+        keepDailySketches(base, day -> day != dropDay);
+    }
+
+    private void keepDailySketches(Path base, LongPredicate keep) throws IOException {
+        Path sketchFile = file(base, SKETCH_SUFFIX);
+        if (!Files.exists(sketchFile)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(sketchFile));
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        while (buffer.remaining() >= Long.BYTES + Integer.BYTES) {
+            int start = buffer.position();
+            long day = buffer.getLong();
+            int length = buffer.getInt();
+            if (length > buffer.remaining()) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            if (keep.test(day)) {
+                kept.write(buffer.array(), start, buffer.position() - start);
+            }
+        }
+        Files.write(sketchFile, kept.toByteArray());
+    }
+
+    /** Replaces both column files: writes the {@code .new} files, marks them complete, then moves them in. */
+    private void swap(Path base, ByteBuffer timestamps, ByteBuffer values) throws IOException {
+        try (FileChannel valueChannel = FileChannel.open(file(base, VALUE_SUFFIX + NEW_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel timestampChannel = FileChannel.open(file(base, TIMESTAMP_SUFFIX + NEW_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(valueChannel, values, 0);
+            writeFully(timestampChannel, timestamps, 0);
+        }
+        Files.createFile(file(base, SWAP_SUFFIX));
+        finishSwap(base);
+    }
+
+    private void finishSwap(Path base) throws IOException {
+        for (String suffix : new String[] {VALUE_SUFFIX, TIMESTAMP_SUFFIX}) {
+            Path replacement = file(base, suffix + NEW_SUFFIX);
+            if (Files.exists(replacement)) {
+                Files.move(replacement, file(base, suffix), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        Files.delete(file(base, SWAP_SUFFIX));
+    }
+
+    /**
+     * Finishes a swap interrupted by a crash. Incomplete {@code .new} files without the marker
+     * are harmless, since the next swap truncates them, and are deleted by the sweep.
+     */
+    private void recover(Path base) {
+        try {
+            if (Files.exists(file(base, SWAP_SUFFIX))) {
+                finishSwap(base);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to recover metric series " + base, e);
+        }
+    }
+
+    /** Trims and deletes series as described in the class comment. */
+    @Scheduled(cron = "${costwise.metrics.retention-cron:0 45 4 * * *}")
+    public void purge() {
+        sweep(System.currentTimeMillis() / 1000);
+    }
+
+    /** Sweeps the store as of {@code now} (epoch seconds); returns the number of series deleted. */
+    int sweep(long now) {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        long cutoff = now - maxAgeDays * SECONDS_PER_DAY;
+        long idleCutoff = now - idleDays * SECONDS_PER_DAY;
+        int trimmed = 0;
+        int deleted = 0;
+        int failed = 0;
+        try {
+            for (Path shard : list(root)) {
+                if (!Files.isDirectory(shard)) {
+                    // Left from before series were sharded; the series is fetched again
+                    Files.deleteIfExists(shard);
+                    continue;
+                }
+                for (Path resource : list(shard)) {
+                    for (Path base : seriesIn(resource)) {
+                        try {
+                            synchronized (lockFor(base)) {
+                                switch (expire(base, cutoff, idleCutoff)) {
+                                    case TRIMMED -> trimmed++;
+                                    case DELETED -> deleted++;
+                                    default -> { }
+                                }
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            // One unreadable series must not stop the others from being swept
+                            failed++;
+                            log.warn("Failed to sweep metric series {}: {}", base, e.getMessage());
+                        }
+                    }
+                    // A series being created in the directory right now fails once and is fetched again
+                    deleteIfEmpty(resource);
+                }
+                deleteIfEmpty(shard);
+            }
+        } catch (IOException e) {
+            log.error("Failed to sweep metric store {}: {}", root, e.getMessage());
+        }
+        log.info("Swept metric store: {} series trimmed, {} deleted, {} failed", trimmed, deleted, failed);
+        return deleted;
+    }
+
+    private enum Expiry { KEPT, TRIMMED, DELETED }
+
+    /**
+     * Deletes the series if its newest datapoint is before {@code idleCutoff}, or else drops its
+     * datapoints and daily sketches before {@code cutoff}. The caller holds the series lock.
+     */
+    private Expiry expire(Path base, long cutoff, long idleCutoff) throws IOException {
+        ByteBuffer keptTimestamps = null;
+        ByteBuffer keptValues = null;
+        try (FileChannel timestampChannel = open(base, TIMESTAMP_SUFFIX, StandardOpenOption.READ);
+             FileChannel valueChannel = open(base, VALUE_SUFFIX, StandardOpenOption.READ)) {
+            long count = timestampChannel == null || valueChannel == null ? 0
+                    : Math.min(timestampChannel.size() / Long.BYTES, valueChannel.size() / Double.BYTES);
+            LongBuffer timestamps = count == 0 ? LongBuffer.allocate(0)
+                    : timestampChannel.map(FileChannel.MapMode.READ_ONLY, 0, count * Long.BYTES).asLongBuffer();
+            if (count == 0 || timestamps.get((int) count - 1) < idleCutoff) {
+                for (String suffix : new String[] {TIMESTAMP_SUFFIX, VALUE_SUFFIX, SKETCH_SUFFIX, FROM_SUFFIX,
+                        TIMESTAMP_SUFFIX + NEW_SUFFIX, VALUE_SUFFIX + NEW_SUFFIX}) {
+                    Files.deleteIfExists(file(base, suffix));
+                }
+                return Expiry.DELETED;
+            }
+            Files.deleteIfExists(file(base, TIMESTAMP_SUFFIX + NEW_SUFFIX));
+            Files.deleteIfExists(file(base, VALUE_SUFFIX + NEW_SUFFIX));
+            int start = lowerBound(timestamps, cutoff);
+            if (start == 0) {
+                return Expiry.KEPT;
+            }
+            // Copied onto the heap, since the swap replaces the mapped files
+            keptTimestamps = ByteBuffer.allocate((int) (count - start) * Long.BYTES)
+                    .put(timestampChannel.map(FileChannel.MapMode.READ_ONLY, start * (long) Long.BYTES,
+                            (count - start) * Long.BYTES)).flip();
+            keptValues = ByteBuffer.allocate((int) (count - start) * Double.BYTES)
+                    .put(valueChannel.map(FileChannel.MapMode.READ_ONLY, start * (long) Double.BYTES,
+                            (count - start) * Double.BYTES)).flip();
+        }
+        // Only whole days after the cutoff keep their sketch; the day it falls in is summarized again
+        long firstKeptDay = Math.floorDiv(cutoff + SECONDS_PER_DAY - 1, SECONDS_PER_DAY);
+        keepDailySketches(base, day -> day >= firstKeptDay);
+        swap(base, keptTimestamps, keptValues);
+        Files.write(file(base, FROM_SUFFIX), ByteBuffer.allocate(Long.BYTES).putLong(cutoff).array());
+        return Expiry.TRIMMED;
+    }
+
+    /** The series with any file in a resource directory, by the path of their files without the suffix. */
+    private static List<Path> seriesIn(Path resource) throws IOException {
+        List<Path> series = new ArrayList<>();
+        for (Path file : list(resource)) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(NEW_SUFFIX)) {
+                name = name.substring(0, name.length() - NEW_SUFFIX.length());
+            }
+            for (String suffix : new String[] {TIMESTAMP_SUFFIX, VALUE_SUFFIX, SKETCH_SUFFIX, FROM_SUFFIX, SWAP_SUFFIX}) {
+                if (name.endsWith(suffix)) {
+                    Path base = resource.resolve(name.substring(0, name.length() - suffix.length()));
+                    if (!series.contains(base)) {
+                        series.add(base);
+                    }
+                    break;
+                }
+            }
+        }
+        return series;
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> children = Files.list(directory)) {
+            return children.sorted().toList();
+        }
+    }
+
+    private static void deleteIfEmpty(Path directory) {
+        try {
+            Files.delete(directory);
+        } catch (IOException e) {
+            // Not empty, which is expected
+        }
+    }
+
+    private static void addAll(QuantileSketch sketch, SeriesView view) {
+        for (int i = 0; i < view.size(); i++) {
+            sketch.add(view.value(i));
+        }
+    }
+
+    private long committedCount(Path base, FileChannel timestamps) throws IOException {
+        try (FileChannel values = open(base, VALUE_SUFFIX, StandardOpenOption.READ)) {
+            long valueCount = values == null ? 0 : values.size() / Double.BYTES;
+            return Math.min(timestamps.size() / Long.BYTES, valueCount);
+        }
+    }
+
+    private static int lowerBound(LongBuffer timestamps, long key) {
+        int low = 0;
+        int high = timestamps.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps.get(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.force(false);
+    }
+
+    private FileChannel open(Path base, String suffix, StandardOpenOption... options) throws IOException {
+        Path file = file(base, suffix);
+        if (!Files.exists(file) && !Arrays.asList(options).contains(StandardOpenOption.CREATE)) {
+            return null;
+        }
+        return FileChannel.open(file, options);
+    }
+
+    private static Path file(Path base, String suffix) {
+        return base.resolveSibling(base.getFileName() + suffix);
+    }
+
+    /** The file of a series with the given suffix. */
+    Path file(String series, String suffix) {
+        return file(base(series), suffix);
+    }
+
+    /**
+     * The path of a series' files without their suffix: {@code <shard>/<resource>/<series>}, where
+     * the resource is the series key up to its first slash and the shard comes from its hash.
+     */
+    private Path base(String series) {
+        int slash = series.indexOf('/');
+        String resource = slash < 0 ? series : series.substring(0, slash);
+        int shard = Hashing.murmur3_32_fixed().hashString(resource, StandardCharsets.UTF_8).asInt() & 0xff;
+        return root.resolve(String.format("%02x", shard)).resolve(sanitize(resource)).resolve(fileName(series));
+    }
+
+    /** The lock of the stripe a series hashes to; finishes an interrupted swap of the series while holding it. */
+    private Object lockFor(Path base) {
+        Object lock = locks[Math.floorMod(base.hashCode(), LOCK_STRIPES)];
+        synchronized (lock) {
+            recover(base);
+        }
+        return lock;
+    }
+
+    private static String sanitize(String key) {
+        return key.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Readable file name for a series key, suffixed with a hash so that keys differing only in
+     * characters replaced during sanitizing do not collide.
+     */
+    private static String fileName(String series) {
+        String sanitized = sanitize(series);
+        long hash = 1125899906842597L;
+        for (byte b : series.getBytes(StandardCharsets.UTF_8)) {
+            hash = 31 * hash + b;
+        }
+        return sanitized + "-" + Long.toHexString(hash);
+    }
+
+    /** Zero-copy view over a range of a mapped series. */
+    public static class SeriesView {
+        static final SeriesView EMPTY = new SeriesView(LongBuffer.allocate(0), DoubleBuffer.allocate(0));
+
+        private final LongBuffer timestamps;
+        private final DoubleBuffer values;
+
+        SeriesView(LongBuffer timestamps, DoubleBuffer values) {
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        public int size() {
+            return values.limit();
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        public long timestamp(int index) {
+            return timestamps.get(index);
+        }
+
+        public double value(int index) {
+            return values.get(index);
+        }
+
+        public double sum() {
+            double sum = 0;
+            for (int i = 0; i < values.limit(); i++) {
+                sum += values.get(i);
+            }
+            return sum;
+        }
+
+        public double average() {
+            return isEmpty() ? 0.0 : sum() / size();
+        }
+
+        public double max() {
+            double max = 0.0;
+            for (int i = 0; i < values.limit(); i++) {
+                max = Math.max(max, values.get(i));
+            }
+            return max;
+        }
+    }
+}
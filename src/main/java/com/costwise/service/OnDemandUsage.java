@@ -0,0 +1,180 @@
+package com.costwise.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hourly On-Demand instance spend per instance family and region, all series covering the same
+ * window of consecutive hours, plus the average On-Demand hourly rate of each instance type seen.
+ */
+public class OnDemandUsage {
+    private final List<String> families;
+    private final List<String> regions;
+    private final List<double[]> hourly;
+    private final long firstHour;
+    private final int hours;
+    private final Map<String, Double> hourlyRates;
+
+    private OnDemandUsage(List<String> families, List<String> regions, List<double[]> hourly, long firstHour,
+                          int hours, Map<String, Double> hourlyRates) {
+        this.families = families;
+        this.regions = regions;
+        this.hourly = hourly;
+        this.firstHour = firstHour;
+        this.hours = hours;
+        this.hourlyRates = hourlyRates;
+    }
+
+    /** Number of family and region series. */
+    public int size() {
+        return hourly.size();
+    }
+
+    public String family(int series) {
+        return families.get(series);
+    }
+
+    public String region(int series) {
+        return regions.get(series);
+    }
+
+    /** On-Demand spend of the series in each hour of the window. */
+    public double[] hourly(int series) {
+        return hourly.get(series);
+    }
+
+    public int hours() {
+        return hours;
+    }
+
+    public Instant start() {
+        return Instant.ofEpochSecond(firstHour * 3600);
+    }
+
+    /** Average On-Demand hourly cost by instance type and region, keyed {@code type|region}. */
+    public Map<String, Double> hourlyRates() {
+        return hourlyRates;
+    }
+
+    /** Average On-Demand cost of one hour of the instance type in the region; null if it was not seen. */
+    public Double hourlyRate(String instanceType, String region) {
+        return hourlyRates.get(instanceType + "|" + region);
+    }
+
+    /**
+     * Spend by hour since the epoch, grown in either direction as line items arrive in any order,
+     * plus cost and usage hours per instance type.
+     */
+    static final class Series {
+        private static final long MAX_SPAN_HOURS = 20 * 8766; // ignores timestamps that would blow up the array
+
+        private long firstHour;
+        private int used;
+        private double[] cost = new double[0];
+        private final Map<String, double[]> instanceTypes = new HashMap<>();
+
+        void add(long hour, double value, String instanceType, double usageHours) {
+            addCost(hour, value);
+            double[] totals = instanceTypes.get(instanceType);
+            if (totals == null) {
+                totals = new double[2];
+                instanceTypes.put(instanceType, totals);
+            }
+            totals[0] += value;
+            totals[1] += usageHours;
+        }
+
+        private void addCost(long hour, double value) {
+            if (used > 0 && Math.abs(hour - firstHour) > MAX_SPAN_HOURS) {
+                return;
+            }
+            if (used == 0) {
+                firstHour = hour;
+                cost = new double[Math.max(cost.length, 1024)];
+            } else if (hour < firstHour) {
+                int shift = (int) Math.max(firstHour - hour, cost.length / 2);
+                double[] grown = new double[cost.length + shift];
+                System.arraycopy(cost, 0, grown, shift, used);
+                cost = grown;
+                firstHour -= shift;
+                used += shift;
+            }
+            int index = (int) (hour - firstHour);
+            if (index >= cost.length) {
+                cost = Arrays.copyOf(cost, Math.max(cost.length * 2, index + 1));
+            }
+            cost[index] += value;
+            used = Math.max(used, index + 1);
+        }
+
+        void merge(Series other) {
+            for (int i = 0; i < other.used; i++) {
+                if (other.cost[i] != 0.0) {
+                    addCost(other.firstHour + i, other.cost[i]);
+                }
+            }
+            other.instanceTypes.forEach((instanceType, totals) -> {
+                double[] merged = instanceTypes.computeIfAbsent(instanceType, type -> new double[2]);
+                merged[0] += totals[0];
+                merged[1] += totals[1];
+            });
+        }
+    }
+
+    /** Merges the series of the parsers and cuts them to a common window. */
+    static final class Builder {
+        private final Map<String, String[]> keys = new LinkedHashMap<>();
+        private final Map<String, Series> series = new LinkedHashMap<>();
+
+        void add(String family, String region, Series part) {
+            String key = family + "|" + region;
+            Series merged = series.get(key);
+            if (merged == null) {
+                keys.put(key, new String[]{family, region});
+                series.put(key, part);
+            } else {
+                merged.merge(part);
+            }
+        }
+
+        /** The last {@code maxHours} hours of data, or all of it if the exports cover less. */
+        OnDemandUsage build(int maxHours) {
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            for (Series part : series.values()) {
+                first = Math.min(first, part.firstHour);
+                last = Math.max(last, part.firstHour + part.used - 1);
+            }
+            long start = series.isEmpty() ? 0 : Math.max(first, last - maxHours + 1);
+            int hours = series.isEmpty() ? 0 : (int) (last - start + 1);
+
+            List<String> families = new ArrayList<>();
+            List<String> regions = new ArrayList<>();
+            List<double[]> hourly = new ArrayList<>();
+            Map<String, Double> hourlyRates = new HashMap<>();
+            series.forEach((key, part) -> {
+                double[] window = new double[hours];
+                long from = Math.max(start, part.firstHour);
+                long to = part.firstHour + part.used;
+                if (to > from) {
+                    System.arraycopy(part.cost, (int) (from - part.firstHour), window, (int) (from - start), (int) (to - from));
+                }
+                String[] names = keys.get(key);
+                families.add(names[0]);
+                regions.add(names[1]);
+                hourly.add(window);
+                part.instanceTypes.forEach((instanceType, totals) -> {
+                    if (totals[1] > 0) {
+                        hourlyRates.put(instanceType + "|" + names[1], totals[0] / totals[1]);
+                    }
+                });
+            });
+            return new OnDemandUsage(families, regions, hourly, start, hours, hourlyRates);
+        }
+    }
+}
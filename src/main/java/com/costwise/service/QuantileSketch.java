@@ -0,0 +1,168 @@
+package com.costwise.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Mergeable quantile sketch with bounded relative error (DDSketch-style logarithmic buckets).
+ * <p>
+ * A value {@code v > 0} falls into bucket {@code ceil(log(v) / log(gamma))}, so any quantile is
+ * answered within {@link #RELATIVE_ACCURACY} of the true value. Buckets are a dense long array
+ * over the populated index range; utilization percentages need a few hundred buckets, and the
+ * range is capped by collapsing the lowest buckets, so a sketch stays at a few KB no matter how
+ * many values it has seen. Merging two sketches adds their bucket counts.
+ */
+public class QuantileSketch {
+    public static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_INDEXABLE_VALUE = 1e-6;
+    private static final int MAX_BUCKETS = 2048;
+
+    private long[] counts = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double value) {
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (value < MIN_INDEXABLE_VALUE) {
+            zeroCount++;
+            return;
+        }
+        int index = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+        ensureRange(index, index);
+        counts[Math.max(index, offset) - offset]++;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        zeroCount += other.zeroCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (other.counts.length == 0) {
+            return;
+        }
+        ensureRange(other.offset, other.offset + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                counts[Math.max(other.offset + i, offset) - offset] += other.counts[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the value at quantile {@code q} (0..1), or 0 for an empty sketch.
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return 0.0;
+        }
+        if (q <= 0) {
+            return min;
+        }
+        if (q >= 1) {
+            return max;
+        }
+        long rank = (long) Math.floor(q * (count - 1));
+        if (rank < zeroCount) {
+            return Math.max(min, 0.0);
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                double estimate = 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+                return Math.max(min, Math.min(max, estimate));
+            }
+        }
+        return max;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public double max() {
+        return count == 0 ? 0.0 : max;
+    }
+
+    /**
+     * Serializes the sketch as header fields followed by varint-encoded bucket counts.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + counts.length);
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES * 2 + Double.BYTES * 2 + Integer.BYTES * 2);
+        header.putLong(count).putLong(zeroCount).putDouble(min).putDouble(max).putInt(offset).putInt(counts.length);
+        out.write(header.array(), 0, header.position());
+        for (long bucket : counts) {
+            long value = bucket;
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+        return out.toByteArray();
+    }
+
+    public static QuantileSketch fromBytes(ByteBuffer buffer) {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.count = buffer.getLong();
+        sketch.zeroCount = buffer.getLong();
+        sketch.min = buffer.getDouble();
+        sketch.max = buffer.getDouble();
+        sketch.offset = buffer.getInt();
+        sketch.counts = new long[buffer.getInt()];
+        for (int i = 0; i < sketch.counts.length; i++) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            sketch.counts[i] = value;
+        }
+        return sketch;
+    }
+
+    private void ensureRange(int low, int high) {
+        if (counts.length == 0) {
+            offset = Math.max(low, high - MAX_BUCKETS + 1);
+            counts = new long[high - offset + 1];
+            return;
+        }
+        int currentHigh = offset + counts.length - 1;
+        if (low >= offset && high <= currentHigh) {
+            return;
+        }
+        int newHigh = Math.max(high, currentHigh);
+        int newLow = Math.max(Math.min(low, offset), newHigh - MAX_BUCKETS + 1);
+        long[] resized = new long[newHigh - newLow + 1];
+        for (int i = 0; i < counts.length; i++) {
+            // Buckets below the new range collapse into the lowest bucket
+            resized[Math.max(offset + i, newLow) - newLow] += counts[i];
+        }
+        counts = resized;
+        offset = newLow;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{count=" + count + ", p50=" + quantile(0.5)
+                + ", p95=" + quantile(0.95) + ", p99=" + quantile(0.99) + "}";
+    }
+}
@@ -0,0 +1,263 @@
+package com.costwise.service;
+
+import com.costwise.model.AwsAccount;
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.repository.AwsAccountRepository;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.OptimizationResultRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs resource analyses in the background so callers get the run id straight away and follow
+ * its progress and findings over the run's event stream.
+ * <p>
+ * Runs checkpoint their findings as they go, stop at the next resource boundary when cancelled
+ * or past their deadline, and are resumed from their last checkpoint when the application
+ * restarts while they are still RUNNING. Runs are started by the {@link AnalysisScheduler}: runs
+ * requested through the API in its INTERACTIVE lane, resumed runs and the runs of the scheduled
+ * sweep over all active accounts ({@code costwise.analysis.sweep-cron}, off by default) in its
+ * BATCH lane. With {@code costwise.work.distributed} enabled, runs
+ * are instead queued as work units that every node's {@link DistributedAnalysisWorker} pulls.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResourceAnalysisService {
+    private final AwsResourceAnalyzer resourceAnalyzer;
+    private final AnalysisEventBroadcaster eventBroadcaster;
+    private final AnalysisCheckpointService checkpointService;
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+    private final AnalysisScheduler analysisScheduler;
+    private final EntityCache entityCache;
+    private final WorkQueueService workQueueService;
+    private final AnalysisCoalescer analysisCoalescer;
+    private final RunTraceService runTraceService;
+    private final SuppressionService suppressionService;
+    private final AwsAccountRepository awsAccountRepository;
+    private final Map<Long, AnalysisContext> activeRuns = new ConcurrentHashMap<>();
+
+    @Value("${costwise.analysis.max-run-minutes:120}")
+    private long maxRunMinutes;
+
+    @Value("${costwise.analysis.checkpoint-interval-seconds:30}")
+    private long checkpointIntervalSeconds;
+
+    @Value("${costwise.analysis.persist-batch-size:500}")
+    private int persistBatchSize;
+
+    @Value("${costwise.analysis.resume-interrupted-runs:true}")
+    private boolean resumeInterruptedRuns;
+
+    @Value("${costwise.work.distributed:false}")
+    private boolean distributed;
+
+    @Value("${costwise.work.lease-seconds:60}")
+    private long leaseSeconds;
+
+    public CostAnalysisRun startResourceAnalysis(AwsAccount awsAccount) {
+        return startResourceAnalysis(awsAccount, null);
+    }
+
+    public CostAnalysisRun startResourceAnalysis(AwsAccount awsAccount, Long timeoutMinutes) {
+        return startResourceAnalysis(awsAccount, timeoutMinutes, true);
+    }
+
+    /**
+     * Starts a run that stops after {@code timeoutMinutes}, or the configured maximum if null.
+     * If the account already has a resource analysis RUNNING, that run is returned instead, and
+     * with {@code allowReuse} so is a recently completed one.
+     */
+    public CostAnalysisRun startResourceAnalysis(AwsAccount awsAccount, Long timeoutMinutes, boolean allowReuse) {
+        return startResourceAnalysis(awsAccount, timeoutMinutes, allowReuse, AnalysisScheduler.Lane.INTERACTIVE);
+    }
+
+    /**
+     * Starts a resource analysis of every active account in the scheduler's BATCH lane, so the
+     * sweep gives way to runs requested through the API. Accounts with a run in progress keep it.
+     */
+    @Scheduled(cron = "${costwise.analysis.sweep-cron:-}")
+    public void sweep() {
+        int started = 0;
+        for (AwsAccount account : awsAccountRepository.findByActiveTrue()) {
+            try {
+                startResourceAnalysis(account, null, false, AnalysisScheduler.Lane.BATCH);
+                started++;
+            } catch (Exception e) {
+                log.error("Could not start the sweep's resource analysis of account {}", account.getId(), e);
+            }
+        }
+        log.info("Sweep started resource analyses of {} accounts", started);
+    }
+
+    private CostAnalysisRun startResourceAnalysis(AwsAccount awsAccount, Long timeoutMinutes, boolean allowReuse,
+                                                  AnalysisScheduler.Lane lane) {
+        return analysisCoalescer.analyze(awsAccount, "RESOURCE", null, null, allowReuse, () -> {
+            CostAnalysisRun running = costAnalysisRunRepository
+                    .findFirstByAwsAccountIdAndAnalysisTypeAndStatusOrderByCreatedAtDesc(awsAccount.getId(), "RESOURCE", "RUNNING")
+                    .orElse(null);
+            if (running != null) {
+                return running;
+            }
+            CostAnalysisRun savedRun = createRun(awsAccount, timeoutMinutes);
+            if (distributed) {
+                // Any node's worker may pick up the units; this node only relays events it sees
+                eventBroadcaster.open(savedRun.getId());
+                workQueueService.enqueue(savedRun);
+            } else {
+                launch(savedRun, Set.of(), lane);
+            }
+            return savedRun;
+        });
+    }
+
+    /** Runs a resource analysis on the calling thread and returns the finished run with its findings. */
+    public CostAnalysisRun runResourceAnalysis(AwsAccount awsAccount, Long timeoutMinutes) {
+        CostAnalysisRun savedRun = createRun(awsAccount, timeoutMinutes);
+        AnalysisContext context = newContext(savedRun, Set.of());
+        activeRuns.put(savedRun.getId(), context);
+        runResourceAnalysis(awsAccount, context);
+        return entityCache.run(savedRun.getId());
+    }
+
+    private CostAnalysisRun createRun(AwsAccount awsAccount, Long timeoutMinutes) {
+        LocalDateTime now = LocalDateTime.now();
+        long runMinutes = timeoutMinutes == null ? maxRunMinutes : Math.min(timeoutMinutes, maxRunMinutes);
+        CostAnalysisRun analysisRun = new CostAnalysisRun();
+        analysisRun.setAwsAccount(awsAccount);
+        analysisRun.setAnalysisType("RESOURCE");
+        analysisRun.setStartDate(now);
+        analysisRun.setEndDate(now);
+        analysisRun.setDeadline(now.plusMinutes(runMinutes));
+        analysisRun.setStatus("RUNNING");
+        return costAnalysisRunRepository.save(analysisRun);
+    }
+
+    /**
+     * Asks a running analysis to stop. It finishes the resource in flight, keeps the findings
+     * collected so far and ends as CANCELLED. Returns false if the run is not active here.
+     */
+    public boolean cancel(Long runId) {
+        if (distributed && workQueueService.cancel(runId)) {
+            // Finishes the run now if no unit was in flight; otherwise the last worker does
+            workQueueService.tryFinish(runId);
+            return true;
+        }
+        AnalysisContext context = activeRuns.get(runId);
+        if (context == null) {
+            return false;
+        }
+        context.cancel();
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedRuns() {
+        if (!resumeInterruptedRuns) {
+            return;
+        }
+        for (CostAnalysisRun analysisRun : costAnalysisRunRepository.findWithAwsAccountByStatus("RUNNING")) {
+            if (!"RESOURCE".equals(analysisRun.getAnalysisType())) {
+                if (!distributed) {
+                    checkpointService.finish(analysisRun.getId(), "FAILED", "Interrupted by application restart");
+                }
+                continue; // Other nodes may still be running it; failStaleCostRuns tells
+            }
+            if (distributed) {
+                continue; // Resumed by lease expiry, on whichever node leases its units
+            }
+            Set<String> completed = checkpointService.completedResources(analysisRun.getId());
+            log.info("Resuming resource analysis {} after {} completed resources", analysisRun.getId(), completed.size());
+            launch(analysisRun, completed, AnalysisScheduler.Lane.BATCH);
+        }
+    }
+
+    /**
+     * Fails cost and CUR runs whose node stopped renewing their heartbeat, in distributed mode,
+     * where a RUNNING run may belong to any node that shares the database.
+     */
+    @Scheduled(fixedDelayString = "${costwise.work.heartbeat-interval-ms:10000}")
+    public void failStaleCostRuns() {
+        if (!distributed) {
+            return;
+        }
+        for (CostAnalysisRun analysisRun : costAnalysisRunRepository.findStaleCostRuns(
+                LocalDateTime.now().minusSeconds(leaseSeconds))) {
+            log.warn("Failing {} run {}: its node stopped renewing its heartbeat", analysisRun.getAnalysisType(), analysisRun.getId());
+            checkpointService.finish(analysisRun.getId(), "FAILED", "Interrupted: its node stopped responding");
+        }
+    }
+
+    private void launch(CostAnalysisRun analysisRun, Set<String> completedResources, AnalysisScheduler.Lane lane) {
+        AnalysisContext context = newContext(analysisRun, completedResources);
+        activeRuns.put(analysisRun.getId(), context);
+        eventBroadcaster.open(analysisRun.getId());
+        analysisScheduler.submit(lane, analysisRun.getAwsAccount(), () -> {
+            runResourceAnalysis(analysisRun.getAwsAccount(), context);
+            return null;
+        });
+    }
+
+    private AnalysisContext newContext(CostAnalysisRun analysisRun, Set<String> completedResources) {
+        return new AnalysisContext(analysisRun.getId(), eventBroadcaster, checkpointService,
+                analysisRun.getDeadline() == null ? null : analysisRun.getDeadline().atZone(ZoneId.systemDefault()).toInstant(),
+                completedResources, checkpointIntervalSeconds, persistBatchSize, runTraceService.start(analysisRun.getId()),
+                suppressionService.matcher(analysisRun.getAwsAccount().getId()));
+    }
+
+    private void runResourceAnalysis(AwsAccount awsAccount, AnalysisContext context) {
+        Long runId = context.getRunId();
+        String status = "COMPLETED";
+        String errorMessage = null;
+        // Lets the scheduler pause the run at resource boundaries when it runs in the BATCH lane
+        context.setLease(AnalysisScheduler.currentLease());
+        try {
+            context.checkActive();
+            resourceAnalyzer.analyzeResources(awsAccount, context);
+            context.checkpoint();
+            String stopReason = context.stopReason();
+            if (stopReason != null) {
+                // An analyzer swallowed the stop signal; the run is still incomplete
+                status = stopReason;
+            }
+        } catch (AnalysisStoppedException e) {
+            log.info("Resource analysis {} stopped: {}", runId, e.getStatus());
+            status = e.getStatus();
+            errorMessage = e.getMessage();
+        } catch (Exception e) {
+            log.error("Resource analysis {} failed", runId, e);
+            status = "FAILED";
+            errorMessage = e.getMessage();
+        } finally {
+            activeRuns.remove(runId);
+            runTraceService.save(runId, "local", context.getTrace());
+        }
+
+        // Keep whatever was found before the run stopped; a failed write must not keep the run open
+        if (!"COMPLETED".equals(status) && !context.checkpointQuietly() && !"FAILED".equals(status)) {
+            status = "FAILED";
+            errorMessage = "Could not save the findings of the stopped run";
+        }
+        long findings = 0;
+        try {
+            checkpointService.finish(runId, status, errorMessage);
+            findings = optimizationResultRepository.countByAnalysisRunId(runId);
+        } catch (Exception e) {
+            log.error("Could not save resource analysis {}", runId, e);
+            status = "FAILED";
+        }
+        eventBroadcaster.complete(runId, Map.of("status", status, "findings", findings));
+    }
+}
@@ -0,0 +1,371 @@
+package com.costwise.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints (Roaring-style).
+ * <p>
+ * Values are split by their high 16 bits into chunks. A chunk holding at most 4096 values is a
+ * sorted char array; a denser chunk is a 65536-bit bitmap, so no chunk ever takes more than
+ * 8 KB. Intersections and unions work chunk by chunk and skip chunks that only one side has,
+ * which keeps tag queries over a few hundred thousand resources in the sub-millisecond range.
+ */
+public class ResourceBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys = new char[0];
+    private Chunk[] chunks = new Chunk[0];
+    private int size;
+
+    public static ResourceBitmap of(int... values) {
+        ResourceBitmap bitmap = new ResourceBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public void add(int value) {
+        char key = (char) (value >>> 16);
+        int index = indexOf(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new Chunk());
+        }
+        chunks[index] = chunks[index].add((char) value);
+    }
+
+    public boolean contains(int value) {
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && chunks[index].contains((char) value);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].count;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public ResourceBitmap and(ResourceBitmap other) {
+        ResourceBitmap result = new ResourceBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], chunks[i].and(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public ResourceBitmap or(ResourceBitmap other) {
+        ResourceBitmap result = new ResourceBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], chunks[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.chunks[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], chunks[i].or(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public ResourceBitmap andNot(ResourceBitmap other) {
+        ResourceBitmap result = new ResourceBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], chunks[i].andNot(other.chunks[j]));
+            } else {
+                result.append(keys[i], chunks[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /** Intersects all bitmaps, smallest first so the running result shrinks as fast as possible. */
+    public static ResourceBitmap and(List<ResourceBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return new ResourceBitmap();
+        }
+        ResourceBitmap[] sorted = bitmaps.toArray(new ResourceBitmap[0]);
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        ResourceBitmap result = sorted[0];
+        for (int i = 1; i < sorted.length && !result.isEmpty(); i++) {
+            result = result.and(sorted[i]);
+        }
+        return result == sorted[0] ? result.or(new ResourceBitmap()) : result;
+    }
+
+    public static ResourceBitmap or(List<ResourceBitmap> bitmaps) {
+        ResourceBitmap result = new ResourceBitmap();
+        for (ResourceBitmap bitmap : bitmaps) {
+            result = result.or(bitmap);
+        }
+        return result;
+    }
+
+    /** Visits every value in ascending order. */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            chunks[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] position = {0};
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertChunk(int index, char key, Chunk chunk) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        size++;
+    }
+
+    private void append(char key, Chunk chunk) {
+        if (chunk != null && chunk.count > 0) {
+            insertChunk(size, key, chunk);
+        }
+    }
+
+    /** Values sharing one high 16-bit key, as a sorted array ({@code values}) or a bitmap ({@code words}). */
+    private static final class Chunk {
+        char[] values = new char[4];
+        long[] words;
+        int count;
+
+        Chunk add(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    words[value >>> 6] |= bit;
+                    count++;
+                }
+                return this;
+            }
+            int index = Arrays.binarySearch(values, 0, count, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (count == ARRAY_MAX) {
+                Chunk dense = toWords();
+                return dense.add(value);
+            }
+            index = -index - 1;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, count * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = value;
+            count++;
+            return this;
+        }
+
+        boolean contains(char value) {
+            if (words != null) {
+                return (words[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, count, value) >= 0;
+        }
+
+        Chunk and(Chunk other) {
+            if (words == null && other.words == null) {
+                Chunk result = sparse(Math.min(count, other.count));
+                int i = 0;
+                int j = 0;
+                while (i < count && j < other.count) {
+                    if (values[i] < other.values[j]) {
+                        i++;
+                    } else if (values[i] > other.values[j]) {
+                        j++;
+                    } else {
+                        result.values[result.count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+                return result;
+            }
+            if (words == null || other.words == null) {
+                Chunk array = words == null ? this : other;
+                Chunk bitmap = words == null ? other : this;
+                Chunk result = sparse(array.count);
+                for (int i = 0; i < array.count; i++) {
+                    if (bitmap.contains(array.values[i])) {
+                        result.values[result.count++] = array.values[i];
+                    }
+                }
+                return result;
+            }
+            Chunk result = dense();
+            for (int w = 0; w < WORDS; w++) {
+                result.words[w] = words[w] & other.words[w];
+                result.count += Long.bitCount(result.words[w]);
+            }
+            return result.compact();
+        }
+
+        Chunk or(Chunk other) {
+            if (words == null && other.words == null && count + other.count <= ARRAY_MAX) {
+                Chunk result = sparse(count + other.count);
+                int i = 0;
+                int j = 0;
+                while (i < count || j < other.count) {
+                    char next;
+                    if (j == other.count || (i < count && values[i] < other.values[j])) {
+                        next = values[i++];
+                    } else if (i == count || values[i] > other.values[j]) {
+                        next = other.values[j++];
+                    } else {
+                        next = values[i++];
+                        j++;
+                    }
+                    result.values[result.count++] = next;
+                }
+                return result;
+            }
+            Chunk result = words == null ? toWords() : copy();
+            if (other.words == null) {
+                for (int i = 0; i < other.count; i++) {
+                    result.add(other.values[i]);
+                }
+                return result;
+            }
+            result.count = 0;
+            for (int w = 0; w < WORDS; w++) {
+                result.words[w] |= other.words[w];
+                result.count += Long.bitCount(result.words[w]);
+            }
+            return result;
+        }
+
+        Chunk andNot(Chunk other) {
+            if (words == null) {
+                Chunk result = sparse(count);
+                for (int i = 0; i < count; i++) {
+                    if (!other.contains(values[i])) {
+                        result.values[result.count++] = values[i];
+                    }
+                }
+                return result;
+            }
+            Chunk result = copy();
+            if (other.words == null) {
+                for (int i = 0; i < other.count; i++) {
+                    long bit = 1L << other.values[i];
+                    if ((result.words[other.values[i] >>> 6] & bit) != 0) {
+                        result.words[other.values[i] >>> 6] &= ~bit;
+                        result.count--;
+                    }
+                }
+            } else {
+                result.count = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    result.words[w] &= ~other.words[w];
+                    result.count += Long.bitCount(result.words[w]);
+                }
+            }
+            return result.compact();
+        }
+
+        void forEach(int high, IntConsumer consumer) {
+            if (words == null) {
+                for (int i = 0; i < count; i++) {
+                    consumer.accept(high | values[i]);
+                }
+                return;
+            }
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    consumer.accept(high | (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        Chunk copy() {
+            Chunk copy = new Chunk();
+            copy.count = count;
+            if (words != null) {
+                copy.words = words.clone();
+                copy.values = null;
+            } else {
+                copy.values = Arrays.copyOf(values, Math.max(count, 1));
+            }
+            return copy;
+        }
+
+        private Chunk toWords() {
+            Chunk dense = dense();
+            for (int i = 0; i < count; i++) {
+                dense.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            dense.count = count;
+            return dense;
+        }
+
+        /** Converts a bitmap chunk that has become sparse back to an array. */
+        private Chunk compact() {
+            if (words == null || count > ARRAY_MAX) {
+                return this;
+            }
+            Chunk result = sparse(count);
+            forEach(0, value -> result.values[result.count++] = (char) value);
+            return result;
+        }
+
+        private static Chunk sparse(int capacity) {
+            Chunk chunk = new Chunk();
+            chunk.values = new char[Math.max(capacity, 1)];
+            return chunk;
+        }
+
+        private static Chunk dense() {
+            Chunk chunk = new Chunk();
+            chunk.values = null;
+            chunk.words = new long[WORDS];
+            return chunk;
+        }
+    }
+}
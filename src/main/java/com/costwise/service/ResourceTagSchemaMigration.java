@@ -0,0 +1,34 @@
+package com.costwise.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Widens {@code resource_tags.tag_value} to the 256 characters AWS allows. Schema updates never
+ * change a column's length, so tables created with the default of 255 are altered on startup.
+ */
+@Slf4j
+@Component
+public class ResourceTagSchemaMigration {
+    private final JdbcTemplate jdbcTemplate;
+
+    // The entity manager factory is only a dependency so that this runs after the schema update
+    public ResourceTagSchemaMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Integer length = jdbcTemplate.queryForObject("select max(character_maximum_length) from information_schema.columns "
+                + "where table_schema = database() and table_name = 'resource_tags' and column_name = 'tag_value'",
+                Integer.class);
+        if (length == null || length >= 256) {
+            return;
+        }
+        jdbcTemplate.execute("alter table resource_tags modify tag_value varchar(256) not null");
+        log.info("Widened resource_tags.tag_value from {} to 256 characters", length);
+    }
+}
@@ -0,0 +1,305 @@
+package com.costwise.service;
+
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.model.FindingCheck;
+import com.costwise.model.OptimizationResult;
+import com.costwise.model.RunSummary;
+import com.costwise.repository.AnalysisTraceRepository;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.OptimizationResultRepository;
+import com.costwise.repository.RunSummaryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the live finding table bounded by compacting old runs.
+ * <p>
+ * A run older than the retention age is rolled up into {@link RunSummary} rows per resource type
+ * and check, its findings are streamed into a gzipped JSON-lines archive on local disk, and only
+ * then are the findings deleted, a bounded batch per transaction so the table is never locked
+ * for long. The run's execution traces are deleted with them and are not archived. The run row
+ * itself stays, with its totals. A run is marked archived before its rows are deleted, so
+ * deletions cut short by a crash or an error are finished by the next sweep. A run that fails
+ * does not hold up the others; it is retried by later sweeps until it has failed
+ * {@code costwise.retention.max-failures} times, then left alone. An archived run can be
+ * restored, which re-inserts its findings from the archive.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RunRetentionService {
+    private static final int RUNS_PER_SWEEP = 50;
+
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+    private final RunSummaryRepository runSummaryRepository;
+    private final AnalysisTraceRepository analysisTraceRepository;
+    private final EntityCache entityCache;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+
+    @Value("${costwise.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${costwise.retention.max-age-days:90}")
+    private int maxAgeDays;
+
+    @Value("${costwise.retention.archive-directory:./data/archive}")
+    private String archiveDirectory;
+
+    @Value("${costwise.retention.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${costwise.retention.max-failures:3}")
+    private int maxFailures;
+
+    @Scheduled(cron = "${costwise.retention.cron:0 30 3 * * *}")
+    public void compactOldRuns() {
+        if (!enabled) {
+            return;
+        }
+        List<CostAnalysisRun> runs;
+        long afterId = 0;
+        do {
+            runs = costAnalysisRunRepository.findPartlyArchivedRuns(maxFailures, afterId, PageRequest.of(0, RUNS_PER_SWEEP));
+            for (CostAnalysisRun analysisRun : runs) {
+                afterId = analysisRun.getId();
+                try {
+                    deleteHotRows(analysisRun.getId(), analysisRun.getArchivePath());
+                } catch (Exception e) {
+                    recordFailure(analysisRun, e);
+                }
+            }
+        } while (runs.size() == RUNS_PER_SWEEP);
+
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(maxAgeDays);
+        afterId = 0;
+        do {
+            runs = costAnalysisRunRepository.findArchivableRuns(cutoff, maxFailures, afterId, PageRequest.of(0, RUNS_PER_SWEEP));
+            for (CostAnalysisRun analysisRun : runs) {
+                afterId = analysisRun.getId();
+                try {
+                    archive(analysisRun);
+                } catch (Exception e) {
+                    recordFailure(analysisRun, e);
+                }
+            }
+        } while (runs.size() == RUNS_PER_SWEEP);
+    }
+
+    private void recordFailure(CostAnalysisRun analysisRun, Exception e) {
+        int failures = analysisRun.getArchiveFailures() + 1;
+        log.error("Could not archive analysis run {} (attempt {} of {}{}): {}", analysisRun.getId(), failures, maxFailures,
+                failures >= maxFailures ? ", giving up" : "", e.getMessage());
+        try {
+            costAnalysisRunRepository.recordArchiveFailure(analysisRun.getId());
+        } catch (Exception recordError) {
+            log.error("Could not record the archiving failure of run {}: {}", analysisRun.getId(), recordError.getMessage());
+        }
+    }
+
+    /** Summarizes, archives and deletes the findings of one run. */
+    public void archive(CostAnalysisRun analysisRun) throws IOException {
+        Long runId = analysisRun.getId();
+        if (!runSummaryRepository.existsByAnalysisRunId(runId)) {
+            runSummaryRepository.saveAll(summarize(runId));
+        }
+
+        Path archive = archivePath(analysisRun);
+        long archived = writeArchive(runId, archive);
+        markArchived(runId, archive.toString());
+
+        // The archive is durable and recorded on the run, so the hot rows can go
+        log.info("Archived {} findings of analysis run {} to {}", archived, runId, archive);
+        deleteHotRows(runId, archive.toString());
+    }
+
+    /**
+     * Re-inserts the archived findings of a run, with their original timestamps; it stays hot for
+     * another retention period. Runs in one transaction, so a failed restore leaves the run
+     * archived and can simply be retried; rows left behind by an interrupted restore are deleted
+     * first.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public CostAnalysisRun restore(Long runId) throws IOException {
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        if (analysisRun.getArchivedAt() == null) {
+            return analysisRun;
+        }
+        int deleted;
+        do {
+            deleted = optimizationResultRepository.deleteBatchByAnalysisRunId(runId, batchSize);
+        } while (deleted == batchSize);
+
+        Path archive = Paths.get(analysisRun.getArchivePath());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(archive)), StandardCharsets.UTF_8))) {
+            List<OptimizationResult> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                OptimizationResult result = objectMapper.readValue(line, OptimizationResult.class);
+                result.setId(null);
+                result.setAnalysisRun(analysisRun);
+                batch.add(result);
+                if (batch.size() == batchSize) {
+                    optimizationResultRepository.saveAll(batch);
+                    batch.clear();
+                    entityManager.flush();
+                    entityManager.clear(); // Keep the persistence context to one batch
+                }
+            }
+            optimizationResultRepository.saveAll(batch);
+            entityManager.flush();
+        }
+        return markRestored(runId);
+    }
+
+    /** Stored rollups of an archived run, or rollups computed from the live findings. */
+    public List<RunSummary> summaries(Long runId) {
+        List<RunSummary> stored = runSummaryRepository.findByAnalysisRunId(runId);
+        return stored.isEmpty() ? summarize(runId) : stored;
+    }
+
+    /**
+     * Rollups per resource type, for report summaries and dashboard tiles; the check id is null.
+     * Folds the per-check rollups, of which there are at most a few dozen per run.
+     */
+    public List<RunSummary> summariesByResourceType(Long runId) {
+        Map<String, RunSummary> byType = new TreeMap<>();
+        for (RunSummary summary : summaries(runId)) {
+            RunSummary type = byType.computeIfAbsent(summary.getResourceType(), resourceType -> {
+                RunSummary rollup = new RunSummary();
+                rollup.setAnalysisRunId(runId);
+                rollup.setResourceType(resourceType);
+                return rollup;
+            });
+            type.setFindingCount(type.getFindingCount() + summary.getFindingCount());
+            type.setCurrentCost(type.getCurrentCost() + summary.getCurrentCost());
+            type.setPotentialSavings(type.getPotentialSavings() + summary.getPotentialSavings());
+        }
+        List<RunSummary> summaries = new ArrayList<>(byType.values());
+        summaries.sort(Comparator.comparingDouble(RunSummary::getPotentialSavings).reversed());
+        return summaries;
+    }
+
+    private List<RunSummary> summarize(Long runId) {
+        List<RunSummary> summaries = new ArrayList<>();
+        for (Object[] row : optimizationResultRepository.summarizeByAnalysisRunId(runId)) {
+            FindingCheck check = (FindingCheck) row[0];
+            if (check == FindingCheck.LEGACY) {
+                // Findings from before the catalog keep the resource type they were stored with
+                for (Object[] legacy : optimizationResultRepository.summarizeLegacyByAnalysisRunId(runId)) {
+                    summaries.add(summary(runId, legacy[0] == null ? check.getResourceType() : (String) legacy[0],
+                            check, legacy));
+                }
+                continue;
+            }
+            summaries.add(summary(runId, check.getResourceType(), check, row));
+        }
+        return summaries;
+    }
+
+    private static RunSummary summary(Long runId, String resourceType, FindingCheck check, Object[] row) {
+        RunSummary summary = new RunSummary();
+        summary.setAnalysisRunId(runId);
+        summary.setResourceType(resourceType);
+        summary.setCheckId(check.name());
+        summary.setFindingCount(((Number) row[1]).longValue());
+        summary.setCurrentCost(row[2] == null ? 0.0 : ((Number) row[2]).doubleValue());
+        summary.setPotentialSavings(row[3] == null ? 0.0 : ((Number) row[3]).doubleValue());
+        return summary;
+    }
+
+    /**
+     * Streams the run's findings, one keyset page at a time, into a temporary file that is
+     * synced and then atomically moved into place.
+     */
+    private long writeArchive(Long runId, Path archive) throws IOException {
+        Files.createDirectories(archive.getParent());
+        Path temporary = archive.resolveSibling(archive.getFileName() + ".tmp");
+        long count = 0;
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(temporary)), StandardCharsets.UTF_8))) {
+            long lastId = 0;
+            List<OptimizationResult> page;
+            do {
+                page = optimizationResultRepository.findByAnalysisRunIdAndIdGreaterThanOrderByIdAsc(
+                        runId, lastId, PageRequest.of(0, batchSize));
+                for (OptimizationResult result : page) {
+                    writer.write(objectMapper.writeValueAsString(result));
+                    writer.newLine();
+                    lastId = result.getId();
+                    count++;
+                }
+            } while (page.size() == batchSize);
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    private void deleteHotRows(Long runId, String archivePath) {
+        long deleted = 0;
+        int batch;
+        do {
+            batch = optimizationResultRepository.deleteBatchByAnalysisRunId(runId, batchSize);
+            deleted += batch;
+        } while (batch == batchSize);
+        int traces = analysisTraceRepository.deleteByAnalysisRunId(runId);
+        log.info("Deleted {} rows and {} traces of analysis run {} archived to {}", deleted, traces, runId, archivePath);
+    }
+
+    private void markArchived(Long runId, String archivePath) {
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        analysisRun.setArchivedAt(LocalDateTime.now());
+        analysisRun.setArchivePath(archivePath);
+        costAnalysisRunRepository.save(analysisRun);
+        entityCache.evictRun(runId);
+    }
+
+    private CostAnalysisRun markRestored(Long runId) {
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        analysisRun.setArchivedAt(null);
+        analysisRun.setRestoredAt(LocalDateTime.now());
+        CostAnalysisRun saved = costAnalysisRunRepository.save(analysisRun);
+        entityCache.evictRun(runId);
+        return saved;
+    }
+
+    private Path archivePath(CostAnalysisRun analysisRun) {
+        return Paths.get(archiveDirectory, "run-" + analysisRun.getId() + ".jsonl.gz");
+    }
+}
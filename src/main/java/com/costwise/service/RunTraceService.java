@@ -0,0 +1,84 @@
+package com.costwise.service;
+
+import com.costwise.model.AnalysisTrace;
+import com.costwise.model.TraceSpan;
+import com.costwise.repository.AnalysisTraceRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Execution traces of analysis runs: where a run spent its time and which AWS calls it made.
+ * <p>
+ * A trace is started when this node starts working on a run, or on one work unit of a
+ * distributed run, and saved as one {@link AnalysisTrace} row when that work ends. Reading a
+ * run's trace merges its saved parts with the parts still being recorded on this node.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RunTraceService {
+    private final AnalysisTraceRepository analysisTraceRepository;
+    private final ObjectMapper objectMapper;
+    private final Map<Long, List<ExecutionTrace>> active = new ConcurrentHashMap<>();
+
+    public ExecutionTrace start(Long runId) {
+        ExecutionTrace trace = new ExecutionTrace("run-" + runId);
+        active.computeIfAbsent(runId, id -> new CopyOnWriteArrayList<>()).add(trace);
+        return trace;
+    }
+
+    /** Stops the trace and stores it; a trace that cannot be stored is logged and dropped. */
+    public void save(Long runId, String segment, ExecutionTrace trace) {
+        trace.stop();
+        try {
+            analysisTraceRepository.save(new AnalysisTrace(runId, segment, objectMapper.writeValueAsString(trace.snapshot())));
+        } catch (Exception e) {
+            log.warn("Could not save the execution trace of analysis run {}: {}", runId, e.getMessage());
+        } finally {
+            active.computeIfPresent(runId, (id, traces) -> {
+                traces.remove(trace);
+                return traces.isEmpty() ? null : traces;
+            });
+        }
+    }
+
+    public TraceSpan trace(Long runId) {
+        TraceSpan merged = null;
+        try {
+            for (AnalysisTrace stored : analysisTraceRepository.findByAnalysisRunIdOrderByIdAsc(runId)) {
+                merged = merge(merged, objectMapper.readValue(stored.getTrace(), TraceSpan.class));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the execution trace of analysis run " + runId, e);
+        }
+        for (ExecutionTrace trace : active.getOrDefault(runId, List.of())) {
+            merged = merge(merged, trace.snapshot());
+        }
+        if (merged == null) {
+            throw new RuntimeException("Execution trace not found");
+        }
+        return merged;
+    }
+
+    /** The run's trace in folded-stack format, with self time in microseconds. */
+    public String folded(Long runId) {
+        StringBuilder out = new StringBuilder();
+        trace(runId).fold("", out);
+        return out.toString();
+    }
+
+    private static TraceSpan merge(TraceSpan merged, TraceSpan part) {
+        if (merged == null) {
+            return part;
+        }
+        merged.merge(part);
+        return merged;
+    }
+}
@@ -0,0 +1,282 @@
+package com.costwise.service;
+
+import com.costwise.model.FindingCheck;
+import com.costwise.model.OptimizationResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Datapoint;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsRequest;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.Tag;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Storage cost checks for every S3 bucket of an account.
+ * <p>
+ * Buckets are inspected concurrently. Each bucket's storage mix comes from its S3 Inventory
+ * when one has been synced locally; otherwise a bounded sample of its listing is taken (a few
+ * evenly spread prefixes, one page each) and scaled to the bucket's size as reported by
+ * CloudWatch, so neither time nor memory grows with the number of objects.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class S3CostAnalyzer {
+    static final int CHECKS_PER_BUCKET = 4;
+
+    private static final double GB = 1024.0 * 1024 * 1024;
+    private static final double STANDARD_PRICE_PER_GB = 0.023;
+    private static final double STANDARD_IA_PRICE_PER_GB = 0.0125;
+    private static final double GLACIER_IR_PRICE_PER_GB = 0.004;
+
+    private final S3InventoryReader inventoryReader;
+
+    @Value("${costwise.s3.parallelism:16}")
+    private int parallelism;
+
+    @Value("${costwise.s3.sample-prefixes:16}")
+    private int samplePrefixes;
+
+    @Value("${costwise.s3.sample-page-size:1000}")
+    private int samplePageSize;
+
+    public List<OptimizationResult> analyzeBuckets(String region, AnalysisContext context) {
+        List<OptimizationResult> results = new ArrayList<>();
+        Map<String, CloudWatchClient> cloudWatchClients = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+        try (S3Client s3Client = S3Client.builder()
+                .region(Region.of(region))
+                .crossRegionAccessEnabled(true)
+                .build()) {
+
+            List<String> buckets = s3Client.listBuckets().buckets().stream()
+                    .map(Bucket::name)
+                    .filter(bucket -> !context.isCompleted("S3", bucket))
+                    .collect(Collectors.toList());
+            Map<String, S3StorageProfile> inventories;
+            try (ExecutionTrace.Span span = context.span("inventories")) {
+                inventories = inventoryReader.read(Set.copyOf(buckets));
+            }
+
+            ExecutorCompletionService<BucketResult> completion = new ExecutorCompletionService<>(executor);
+            try (ExecutionTrace.Span bucketsSpan = context.span("buckets")) {
+                for (String bucket : buckets) {
+                    completion.submit(() -> {
+                        try (ExecutionTrace.Span span = context.span(bucketsSpan, "bucket")) {
+                            return analyzeBucket(s3Client, cloudWatchClients, bucket, inventories.get(bucket));
+                        }
+                    });
+                }
+                for (int i = 0; i < buckets.size(); i++) {
+                    BucketResult bucketResult = completion.take().get();
+                    if (bucketResult.failed) {
+                        // Not recorded as completed, so a resumed run analyzes the bucket again
+                        context.checkActive();
+                        continue;
+                    }
+                    context.resourceCompleted("S3", bucketResult.bucket, CHECKS_PER_BUCKET, bucketResult.findings, bucketResult.tags);
+                    if (!context.persistsFindings()) {
+                        results.addAll(bucketResult.findings);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while analyzing S3 buckets", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("S3 bucket analysis failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            cloudWatchClients.values().forEach(CloudWatchClient::close);
+        }
+
+        return results;
+    }
+
+    private BucketResult analyzeBucket(S3Client s3Client, Map<String, CloudWatchClient> cloudWatchClients,
+                                       String bucket, S3StorageProfile inventory) {
+        List<OptimizationResult> findings = new ArrayList<>();
+        Map<String, String> tags = Map.of();
+        try {
+            String region = bucketRegion(s3Client, bucket);
+            tags = bucketTags(s3Client, bucket);
+            boolean versioned = s3Client.getBucketVersioning(b -> b.bucket(bucket)).status() == BucketVersioningStatus.ENABLED;
+            List<LifecycleRule> rules = lifecycleRules(s3Client, bucket);
+
+            if (!versioned) {
+                findings.add(finding(bucket, FindingCheck.S3_VERSIONING_DISABLED));
+            }
+
+            S3StorageProfile profile = inventory;
+            if (profile == null) {
+                profile = sample(s3Client, bucket);
+                CloudWatchClient cloudWatch = cloudWatchClients.computeIfAbsent(region,
+                        r -> CloudWatchClient.builder().region(Region.of(r)).build());
+                profile.extrapolate(measuredStandardBytes(cloudWatch, bucket));
+            }
+
+            boolean transitions = rules.stream().anyMatch(rule -> !rule.transitions().isEmpty());
+            double warmBytes = profile.standardBytes(S3StorageProfile.AGE_30_TO_90_DAYS);
+            double coldBytes = profile.standardBytes(S3StorageProfile.AGE_OVER_90_DAYS);
+            double savings = warmBytes / GB * (STANDARD_PRICE_PER_GB - STANDARD_IA_PRICE_PER_GB)
+                    + coldBytes / GB * (STANDARD_PRICE_PER_GB - GLACIER_IR_PRICE_PER_GB);
+            if (!transitions && savings >= 1.0) {
+                OptimizationResult result = finding(bucket, FindingCheck.S3_LIFECYCLE_TRANSITION,
+                        String.format("%.1f", (warmBytes + coldBytes) / GB));
+                result.setSeverity(savings >= 100 ? "HIGH" : savings >= 10 ? "MEDIUM" : "LOW");
+                result.setCurrentCost(profile.standardBytes() / GB * STANDARD_PRICE_PER_GB);
+                result.setPotentialSavings(savings);
+                result.setAdditionalDetails(describe(profile));
+                findings.add(result);
+            }
+
+            boolean expiresNoncurrent = rules.stream().anyMatch(rule -> rule.noncurrentVersionExpiration() != null);
+            if (versioned && !expiresNoncurrent && !profile.isSampled() && profile.noncurrentBytes() > 0) {
+                double noncurrentCost = profile.noncurrentBytes() / GB * STANDARD_PRICE_PER_GB;
+                OptimizationResult result = finding(bucket, FindingCheck.S3_NONCURRENT_VERSIONS,
+                        String.format("%.1f", profile.noncurrentBytes() / GB));
+                result.setSeverity(noncurrentCost >= 100 ? "HIGH" : "MEDIUM");
+                result.setCurrentCost(noncurrentCost);
+                result.setPotentialSavings(noncurrentCost);
+                findings.add(result);
+            }
+
+            boolean abortsUploads = rules.stream().anyMatch(rule -> rule.abortIncompleteMultipartUpload() != null);
+            if (!abortsUploads) {
+                findings.add(finding(bucket, FindingCheck.S3_NO_MULTIPART_ABORT));
+            }
+        } catch (Exception e) {
+            log.error("Error analyzing S3 bucket {}: {}", bucket, e.getMessage());
+            return new BucketResult(bucket, List.of(), Map.of(), true);
+        }
+        return new BucketResult(bucket, findings, tags, false);
+    }
+
+    private static String bucketRegion(S3Client s3Client, String bucket) {
+        String constraint = s3Client.getBucketLocation(b -> b.bucket(bucket)).locationConstraintAsString();
+        if (constraint == null || constraint.isEmpty()) {
+            return "us-east-1";
+        }
+        return constraint.equals("EU") ? "eu-west-1" : constraint;
+    }
+
+    private static Map<String, String> bucketTags(S3Client s3Client, String bucket) {
+        try {
+            return s3Client.getBucketTagging(b -> b.bucket(bucket)).tagSet().stream()
+                    .collect(Collectors.toMap(Tag::key, Tag::value, (first, second) -> second));
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Map.of();
+            }
+            throw e;
+        }
+    }
+
+    private static List<LifecycleRule> lifecycleRules(S3Client s3Client, String bucket) {
+        try {
+            return s3Client.getBucketLifecycleConfiguration(b -> b.bucket(bucket)).rules().stream()
+                    .filter(rule -> rule.status() == ExpirationStatus.ENABLED)
+                    .collect(Collectors.toList());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return List.of();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the top-level prefixes and reads one page from up to {@code samplePrefixes} of them,
+     * spread evenly across the key space, plus one page of the bucket root.
+     */
+    private S3StorageProfile sample(S3Client s3Client, String bucket) {
+        Instant now = Instant.now();
+        S3StorageProfile profile = new S3StorageProfile();
+        ListObjectsV2Response root = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucket).delimiter("/").maxKeys(samplePageSize).build());
+        addObjects(profile, root.contents(), now);
+
+        List<CommonPrefix> prefixes = root.commonPrefixes();
+        int stride = Math.max(1, (prefixes.size() + samplePrefixes - 1) / samplePrefixes);
+        for (int i = 0; i < prefixes.size(); i += stride) {
+            ListObjectsV2Response page = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucket).prefix(prefixes.get(i).prefix()).maxKeys(samplePageSize).build());
+            addObjects(profile, page.contents(), now);
+        }
+        return profile;
+    }
+
+    private static void addObjects(S3StorageProfile profile, List<S3Object> objects, Instant now) {
+        for (S3Object object : objects) {
+            long ageDays = object.lastModified() == null ? 0 : Duration.between(object.lastModified(), now).toDays();
+            profile.add(object.storageClassAsString(), object.size() == null ? 0 : object.size(), ageDays, true);
+        }
+    }
+
+    /** Latest daily BucketSizeBytes of the STANDARD class, or 0 if CloudWatch has none. */
+    private static double measuredStandardBytes(CloudWatchClient cloudWatch, String bucket) {
+        Instant now = Instant.now();
+        GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder()
+                .namespace("AWS/S3")
+                .metricName("BucketSizeBytes")
+                .dimensions(Dimension.builder().name("BucketName").value(bucket).build(),
+                        Dimension.builder().name("StorageType").value("StandardStorage").build())
+                .startTime(now.minus(Duration.ofDays(3)))
+                .endTime(now)
+                .period(86400)
+                .statistics(Statistic.AVERAGE)
+                .build();
+        return cloudWatch.getMetricStatistics(request).datapoints().stream()
+                .max(Comparator.comparing(Datapoint::timestamp))
+                .map(Datapoint::average)
+                .orElse(0.0);
+    }
+
+    private static String describe(S3StorageProfile profile) {
+        StringBuilder details = new StringBuilder(profile.isSampled()
+                ? String.format("Sampled %d objects, scaled x%.1f;", profile.objects(), profile.scale())
+                : String.format("Inventory of %d objects;", profile.objects()));
+        profile.bytesByClass().forEach((storageClass, bytes) ->
+                details.append(String.format(" %s %.1f GB", storageClass, bytes * profile.scale() / GB)));
+        return details.toString();
+    }
+
+    private static OptimizationResult finding(String bucket, FindingCheck check, String... params) {
+        OptimizationResult result = new OptimizationResult();
+        result.setCheck(check, params);
+        result.setResourceId(bucket);
+        return result;
+    }
+
+    private record BucketResult(String bucket, List<OptimizationResult> findings, Map<String, String> tags, boolean failed) {
+    }
+}
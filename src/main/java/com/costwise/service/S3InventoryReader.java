@@ -0,0 +1,262 @@
+package com.costwise.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads S3 Inventory reports that have been synced to local disk.
+ * <p>
+ * For every bucket the newest {@code manifest.json} is used. Its data files are streamed in
+ * parallel, one task per file, and only the size, storage class, last-modified and version
+ * columns are extracted from each row, so memory stays constant however many objects the
+ * bucket holds. A bucket whose inventory cannot be read completely is left out, and the caller
+ * falls back to sampling it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class S3InventoryReader {
+    private static final String[] COLUMNS = {"Size", "StorageClass", "LastModifiedDate", "IsLatest", "IsDeleteMarker"};
+    private static final int SIZE = 0;
+    private static final int STORAGE_CLASS = 1;
+    private static final int LAST_MODIFIED = 2;
+    private static final int IS_LATEST = 3;
+    private static final int IS_DELETE_MARKER = 4;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${costwise.s3.inventory-directory:./data/s3-inventory}")
+    private String inventoryDirectory;
+
+    @Value("${costwise.s3.parallelism:16}")
+    private int parallelism;
+
+    /** Returns a storage profile for each of the given buckets that has a readable inventory. */
+    public Map<String, S3StorageProfile> read(Set<String> buckets) {
+        Path root = Paths.get(inventoryDirectory);
+        if (!Files.isDirectory(root)) {
+            return Map.of();
+        }
+        Map<String, Manifest> manifests = latestManifests(root, buckets);
+        if (manifests.isEmpty()) {
+            return Map.of();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Map<String, S3StorageProfile> profiles = new HashMap<>();
+        Set<String> failed = new HashSet<>();
+        try {
+            Map<String, List<Future<S3StorageProfile>>> pending = new HashMap<>();
+            for (Manifest manifest : manifests.values()) {
+                for (Path file : manifest.files) {
+                    pending.computeIfAbsent(manifest.bucket, b -> new ArrayList<>())
+                            .add(executor.submit(() -> readFile(manifest, file)));
+                }
+            }
+            for (Map.Entry<String, List<Future<S3StorageProfile>>> entry : pending.entrySet()) {
+                S3StorageProfile profile = new S3StorageProfile();
+                for (Future<S3StorageProfile> future : entry.getValue()) {
+                    try {
+                        profile.merge(future.get());
+                    } catch (ExecutionException e) {
+                        log.warn("Skipping inventory of bucket {}: {}", entry.getKey(), e.getCause().getMessage());
+                        failed.add(entry.getKey());
+                    }
+                }
+                if (!failed.contains(entry.getKey())) {
+                    profiles.put(entry.getKey(), profile);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading S3 inventories", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return profiles;
+    }
+
+    private Map<String, Manifest> latestManifests(Path root, Set<String> buckets) {
+        List<Path> manifestFiles;
+        try (Stream<Path> paths = Files.walk(root)) {
+            manifestFiles = paths.filter(path -> path.getFileName().toString().equals("manifest.json"))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list S3 inventory directory " + root, e);
+        }
+
+        Map<String, Manifest> latest = new HashMap<>();
+        for (Path manifestFile : manifestFiles) {
+            try {
+                Manifest manifest = parseManifest(root, manifestFile);
+                if (manifest == null || !buckets.contains(manifest.bucket)) {
+                    continue;
+                }
+                Manifest current = latest.get(manifest.bucket);
+                if (current == null || manifest.created.isAfter(current.created)) {
+                    latest.put(manifest.bucket, manifest);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Skipping unreadable S3 inventory manifest {}: {}", manifestFile, e.getMessage());
+            }
+        }
+        return latest;
+    }
+
+    private Manifest parseManifest(Path root, Path manifestFile) throws IOException {
+        JsonNode json = objectMapper.readTree(manifestFile.toFile());
+        String format = json.path("fileFormat").asText();
+        if (!format.equalsIgnoreCase("CSV")) {
+            log.warn("Skipping {} S3 inventory {}: only CSV inventories are supported", format, manifestFile);
+            return null;
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.bucket = json.path("sourceBucket").asText();
+        manifest.created = Instant.ofEpochMilli(json.path("creationTimestamp").asLong());
+        String[] schema = json.path("fileSchema").asText().split(",");
+        manifest.columns = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            manifest.columns[i] = -1;
+            for (int j = 0; j < schema.length; j++) {
+                if (schema[j].trim().equals(COLUMNS[i])) {
+                    manifest.columns[i] = j;
+                }
+            }
+        }
+        if (manifest.columns[SIZE] < 0) {
+            log.warn("Skipping S3 inventory {}: it has no Size column", manifestFile);
+            return null;
+        }
+
+        manifest.files = new ArrayList<>();
+        for (JsonNode file : json.path("files")) {
+            // Keys are relative to the destination bucket; look for them under the root, then next to the manifest
+            String key = file.path("key").asText();
+            Path local = root.resolve(key);
+            if (!Files.exists(local)) {
+                local = manifestFile.resolveSibling(Paths.get(key).getFileName());
+            }
+            if (!Files.exists(local)) {
+                throw new IOException("Missing inventory data file " + key);
+            }
+            manifest.files.add(local);
+        }
+        return manifest;
+    }
+
+    private S3StorageProfile readFile(Manifest manifest, Path file) throws IOException {
+        S3StorageProfile profile = new S3StorageProfile();
+        String[] fields = new String[Math.max(maxColumn(manifest.columns) + 1, 1)];
+        try (InputStream raw = Files.newInputStream(file);
+             InputStream in = file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(raw, 1 << 16) : raw;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Interrupted");
+                }
+                splitQuoted(line, fields);
+                if ("true".equalsIgnoreCase(field(fields, manifest.columns[IS_DELETE_MARKER]))) {
+                    continue;
+                }
+                String size = field(fields, manifest.columns[SIZE]);
+                if (size == null || size.isEmpty()) {
+                    continue;
+                }
+                String lastModified = field(fields, manifest.columns[LAST_MODIFIED]);
+                long ageDays = lastModified == null || lastModified.isEmpty()
+                        ? 0 : ChronoUnit.DAYS.between(Instant.parse(lastModified), manifest.created);
+                String latest = field(fields, manifest.columns[IS_LATEST]);
+                profile.add(field(fields, manifest.columns[STORAGE_CLASS]), Long.parseLong(size), ageDays,
+                        latest == null || !latest.equalsIgnoreCase("false"));
+            }
+        }
+        return profile;
+    }
+
+    /** Splits one quoted CSV row into {@code fields}, ignoring columns beyond its length. */
+    static void splitQuoted(String line, String[] fields) {
+        Arrays.fill(fields, null);
+        int column = 0;
+        int i = 0;
+        int length = line.length();
+        while (i <= length && column < fields.length) {
+            if (i < length && line.charAt(i) == '"') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (i < length) {
+                    char c = line.charAt(i);
+                    if (c == '"') {
+                        if (i + 1 < length && line.charAt(i + 1) == '"') {
+                            value.append('"');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    value.append(c);
+                    i++;
+                }
+                fields[column] = value.toString();
+                int comma = line.indexOf(',', i);
+                i = comma < 0 ? length + 1 : comma + 1;
+            } else {
+                int comma = line.indexOf(',', i);
+                int end = comma < 0 ? length : comma;
+                fields[column] = line.substring(i, end);
+                i = end + 1;
+            }
+            column++;
+        }
+    }
+
+    private static String field(String[] fields, int column) {
+        return column < 0 ? null : fields[column];
+    }
+
+    private static int maxColumn(int[] columns) {
+        int max = -1;
+        for (int column : columns) {
+            max = Math.max(max, column);
+        }
+        return max;
+    }
+
+    private static class Manifest {
+        String bucket;
+        Instant created;
+        int[] columns;
+        List<Path> files;
+    }
+}
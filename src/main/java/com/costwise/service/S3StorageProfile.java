@@ -0,0 +1,93 @@
+package com.costwise.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Storage mix of one bucket: bytes and objects per storage class, STANDARD bytes by age and
+ * bytes held by noncurrent versions. Built either from a full S3 Inventory or from a sample of
+ * the bucket's listing, in which case {@link #scale()} extrapolates the sample to the bucket.
+ */
+public class S3StorageProfile {
+    public static final int AGE_BELOW_30_DAYS = 0;
+    public static final int AGE_30_TO_90_DAYS = 1;
+    public static final int AGE_OVER_90_DAYS = 2;
+
+    private final Map<String, long[]> classes = new TreeMap<>(); // storage class -> {bytes, objects}
+    private final long[] standardBytesByAge = new long[3];
+    private long noncurrentBytes;
+    private long objects;
+    private boolean sampled;
+    private double scale = 1.0;
+
+    public void add(String storageClass, long size, long ageDays, boolean latest) {
+        String normalized = storageClass == null || storageClass.isEmpty() ? "STANDARD" : storageClass;
+        long[] totals = classes.computeIfAbsent(normalized, c -> new long[2]);
+        totals[0] += size;
+        totals[1]++;
+        objects++;
+        if (!latest) {
+            noncurrentBytes += size;
+        } else if (normalized.equals("STANDARD")) {
+            standardBytesByAge[ageDays < 30 ? AGE_BELOW_30_DAYS : ageDays < 90 ? AGE_30_TO_90_DAYS : AGE_OVER_90_DAYS] += size;
+        }
+    }
+
+    public void merge(S3StorageProfile other) {
+        other.classes.forEach((storageClass, totals) -> {
+            long[] mine = classes.computeIfAbsent(storageClass, c -> new long[2]);
+            mine[0] += totals[0];
+            mine[1] += totals[1];
+        });
+        for (int i = 0; i < standardBytesByAge.length; i++) {
+            standardBytesByAge[i] += other.standardBytesByAge[i];
+        }
+        noncurrentBytes += other.noncurrentBytes;
+        objects += other.objects;
+    }
+
+    /** Bytes of current STANDARD objects in an age band, extrapolated for sampled profiles. */
+    public double standardBytes(int ageBand) {
+        return standardBytesByAge[ageBand] * scale;
+    }
+
+    public double standardBytes() {
+        long[] totals = classes.get("STANDARD");
+        return totals == null ? 0.0 : totals[0] * scale;
+    }
+
+    public double noncurrentBytes() {
+        return noncurrentBytes * scale;
+    }
+
+    public long objects() {
+        return objects;
+    }
+
+    /** Raw (not extrapolated) bytes per storage class. */
+    public Map<String, Long> bytesByClass() {
+        Map<String, Long> bytes = new TreeMap<>();
+        classes.forEach((storageClass, totals) -> bytes.put(storageClass, totals[0]));
+        return bytes;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * Marks the profile as a sample and scales it so that its STANDARD bytes match the bucket's
+     * measured STANDARD size, when that size is known and larger than the sample.
+     */
+    public void extrapolate(double measuredStandardBytes) {
+        sampled = true;
+        long[] totals = classes.get("STANDARD");
+        if (totals != null && totals[0] > 0 && measuredStandardBytes > totals[0]) {
+            scale = measuredStandardBytes / totals[0];
+        }
+    }
+
+    public double scale() {
+        return scale;
+    }
+}
@@ -0,0 +1,380 @@
+package com.costwise.service;
+
+import com.costwise.model.FindingCheck;
+import com.costwise.model.OptimizationResult;
+import com.costwise.model.SuppressionRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * An account's suppression rules compiled for matching findings while they are produced.
+ * <p>
+ * Each rule is reduced to the set of checks it suppresses, a bitmask over the check catalog, and
+ * indexed by what else it requires. Rules with a resource pattern hang off a character trie at the
+ * literal part before the pattern's first wildcard; patterns that are only a literal suffix after a
+ * leading {@code *} go into a second trie built from the reversed suffixes. Rules with only a tag
+ * condition are looked up by tag key and value, and rules with neither are folded into one mask.
+ * Matching a resource is then one walk down each trie along its id plus one lookup per tag, and
+ * rules that cannot match it are never looked at. Only patterns with wildcards in the middle, or
+ * rules combining a pattern with a tag, are tried one by one at their trie node.
+ */
+public class SuppressionMatcher {
+    public static final SuppressionMatcher NONE = new SuppressionMatcher(List.of());
+
+    private static final FindingCheck[] CHECKS = FindingCheck.values();
+    private static final long ALL_CHECKS;
+
+    static {
+        if (CHECKS.length > Long.SIZE) {
+            throw new IllegalStateException("Suppression masks hold at most " + Long.SIZE + " checks");
+        }
+        ALL_CHECKS = CHECKS.length == Long.SIZE ? -1L : (1L << CHECKS.length) - 1;
+    }
+
+    private final Node prefixes = new Node();
+    private final Node suffixes = new Node();
+    private final Map<String, TagRules> tagRules = new HashMap<>();
+    private long anyResource;
+    private int size;
+
+    public SuppressionMatcher(Collection<SuppressionRule> rules) {
+        for (SuppressionRule rule : rules) {
+            add(rule);
+        }
+        prefixes.compact();
+        suffixes.compact();
+    }
+
+    /** Number of rules compiled; rules whose check and resource type contradict are left out. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** The checks whose findings on this resource are suppressed, as a bitmask by check ordinal. */
+    public long suppressedChecks(String resourceId, Map<String, String> tags) {
+        long suppressed = anyResource;
+        if (!tagRules.isEmpty()) {
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                TagRules rules = tagRules.get(tag.getKey());
+                if (rules != null) {
+                    suppressed |= rules.anyValue | rules.byValue.getOrDefault(tag.getValue(), 0L);
+                }
+            }
+        }
+        if (resourceId != null && suppressed != ALL_CHECKS) {
+            suppressed |= prefixes.match(resourceId, tags) | suffixes.matchReversed(resourceId);
+        }
+        return suppressed;
+    }
+
+    public boolean matches(FindingCheck check, String resourceId, Map<String, String> tags) {
+        return (suppressedChecks(resourceId, tags) & bit(check)) != 0;
+    }
+
+    /**
+     * Removes the suppressed findings from the list, which holds the findings of one resource with
+     * the given tags. Returns the number removed.
+     */
+    public int removeSuppressed(List<OptimizationResult> findings, Map<String, String> tags) {
+        if (size == 0 || findings.isEmpty()) {
+            return 0;
+        }
+        int before = findings.size();
+        findings.removeIf(new Suppressed(tags));
+        return before - findings.size();
+    }
+
+    static long bit(FindingCheck check) {
+        return 1L << check.ordinal();
+    }
+
+    /** The checks a rule applies to, from its check and resource type; 0 if they contradict. */
+    static long checks(SuppressionRule rule) {
+        FindingCheck check = rule.getCheck();
+        String resourceType = rule.getResourceType();
+        if (check != null) {
+            return resourceType == null || resourceType.equals(check.getResourceType()) ? bit(check) : 0;
+        }
+        if (resourceType == null) {
+            return ALL_CHECKS;
+        }
+        long checks = 0;
+        for (FindingCheck candidate : CHECKS) {
+            if (resourceType.equals(candidate.getResourceType())) {
+                checks |= bit(candidate);
+            }
+        }
+        return checks;
+    }
+
+    /** Matches {@code text} from {@code from} on against a pattern of literals, {@code *} and {@code ?}. */
+    static boolean glob(String pattern, String text, int from) {
+        int p = 0;
+        int t = from;
+        int star = -1;
+        int resume = 0;
+        while (t < text.length()) {
+            // A '*' is always a wildcard, even where the text has a '*' too
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                resume = t;
+            } else if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++resume;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private void add(SuppressionRule rule) {
+        long checks = checks(rule);
+        if (checks == 0) {
+            return;
+        }
+        size++;
+        String pattern = rule.getResourcePattern();
+        String tagKey = rule.getTagKey();
+        String tagValue = rule.getTagValue();
+        if (pattern == null || pattern.equals("*")) {
+            if (tagKey == null) {
+                anyResource |= checks;
+            } else {
+                TagRules rules = tagRules.computeIfAbsent(tagKey, k -> new TagRules());
+                if (tagValue == null) {
+                    rules.anyValue |= checks;
+                } else {
+                    rules.byValue.merge(tagValue, checks, (a, b) -> a | b);
+                }
+            }
+            return;
+        }
+
+        int wildcard = firstWildcard(pattern, 0);
+        String literal = pattern.substring(0, wildcard);
+        String rest = pattern.substring(wildcard);
+        if (tagKey == null && literal.isEmpty() && rest.startsWith("*") && firstWildcard(rest, 1) == rest.length()) {
+            // "*suffix": a prefix of the reversed id
+            suffixes.descend(new StringBuilder(rest.substring(1)).reverse()).anyRest |= checks;
+            return;
+        }
+        Node node = prefixes.descend(literal);
+        if (tagKey == null && rest.isEmpty()) {
+            node.exact |= checks;
+        } else if (tagKey == null && rest.equals("*")) {
+            node.anyRest |= checks;
+        } else {
+            if (node.rules == null) {
+                node.rules = new ArrayList<>();
+            }
+            node.rules.add(new Rule(rest, checks, tagKey, tagValue));
+        }
+    }
+
+    private static int firstWildcard(String pattern, int from) {
+        for (int i = from; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                return i;
+            }
+        }
+        return pattern.length();
+    }
+
+    /**
+     * Trie node; children are kept in arrays sorted by character. Once built, chains of nodes with
+     * one child and nothing else are collapsed into the {@code segment} of the node they lead to.
+     */
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        String segment; // Characters after this node's key, in walking order, that must follow to reach it
+        long exact;   // Patterns that end here
+        long anyRest; // Patterns that end here with a "*"
+        List<Rule> rules; // Patterns that go on with wildcards, or that also need a tag
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node descend(CharSequence literal) {
+            Node node = this;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                int index = Arrays.binarySearch(node.keys, c);
+                if (index < 0) {
+                    index = -index - 1;
+                    node.keys = insert(node.keys, index, c);
+                    node.children = insert(node.children, index, new Node());
+                }
+                node = node.children[index];
+            }
+            return node;
+        }
+
+        void compact() {
+            for (int k = 0; k < children.length; k++) {
+                Node child = children[k];
+                StringBuilder segment = null;
+                while (child.keys.length == 1 && child.exact == 0 && child.anyRest == 0 && child.rules == null) {
+                    if (segment == null) {
+                        segment = new StringBuilder();
+                    }
+                    segment.append(child.keys[0]);
+                    child = child.children[0];
+                }
+                if (segment != null) {
+                    child.segment = segment.toString();
+                    children[k] = child;
+                }
+                child.compact();
+            }
+        }
+
+        long match(String id, Map<String, String> tags) {
+            long suppressed = 0;
+            Node node = this;
+            int i = 0;
+            while (true) {
+                suppressed |= node.anyRest;
+                if (node.rules != null) {
+                    for (Rule rule : node.rules) {
+                        if ((suppressed & rule.checks) != rule.checks && rule.matches(id, i, tags)) {
+                            suppressed |= rule.checks;
+                        }
+                    }
+                }
+                if (i == id.length()) {
+                    return suppressed | node.exact;
+                }
+                node = node.child(id.charAt(i++));
+                if (node == null) {
+                    return suppressed;
+                }
+                if (node.segment != null) {
+                    if (!id.startsWith(node.segment, i)) {
+                        return suppressed;
+                    }
+                    i += node.segment.length();
+                }
+            }
+        }
+
+        long matchReversed(String id) {
+            long suppressed = 0;
+            Node node = this;
+            int i = id.length();
+            while (true) {
+                suppressed |= node.anyRest;
+                if (i == 0) {
+                    return suppressed;
+                }
+                node = node.child(id.charAt(--i));
+                if (node == null) {
+                    return suppressed;
+                }
+                if (node.segment != null) {
+                    String segment = node.segment;
+                    if (segment.length() > i) {
+                        return suppressed;
+                    }
+                    for (int k = 0; k < segment.length(); k++) {
+                        if (id.charAt(--i) != segment.charAt(k)) {
+                            return suppressed;
+                        }
+                    }
+                }
+            }
+        }
+
+        private static char[] insert(char[] array, int index, char value) {
+            char[] grown = new char[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, index);
+            grown[index] = value;
+            System.arraycopy(array, index, grown, index + 1, array.length - index);
+            return grown;
+        }
+
+        private static Node[] insert(Node[] array, int index, Node value) {
+            Node[] grown = new Node[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, index);
+            grown[index] = value;
+            System.arraycopy(array, index, grown, index + 1, array.length - index);
+            return grown;
+        }
+    }
+
+    /** A rule tried against the rest of the id after its trie node. */
+    private static final class Rule {
+        final String rest;
+        final long checks;
+        final String tagKey;
+        final String tagValue;
+
+        Rule(String rest, long checks, String tagKey, String tagValue) {
+            this.rest = rest;
+            this.checks = checks;
+            this.tagKey = tagKey;
+            this.tagValue = tagValue;
+        }
+
+        boolean matches(String id, int from, Map<String, String> tags) {
+            if (tagKey != null) {
+                String value = tags.get(tagKey);
+                if (value == null || (tagValue != null && !tagValue.equals(value))) {
+                    return false;
+                }
+            }
+            return glob(rest, id, from);
+        }
+    }
+
+    private static final class TagRules {
+        long anyValue;
+        final Map<String, Long> byValue = new HashMap<>();
+    }
+
+    /** Tests findings in list order, matching each resource id once for the run of findings that share it. */
+    private final class Suppressed implements Predicate<OptimizationResult> {
+        private final Map<String, String> tags;
+        private String resourceId;
+        private long suppressed;
+        private boolean matched;
+
+        Suppressed(Map<String, String> tags) {
+            this.tags = tags;
+        }
+
+        @Override
+        public boolean test(OptimizationResult finding) {
+            if (finding.getCheck() == null) {
+                return false;
+            }
+            if (!matched || !Objects.equals(resourceId, finding.getResourceId())) {
+                resourceId = finding.getResourceId();
+                suppressed = suppressedChecks(resourceId, tags);
+                matched = true;
+            }
+            return (suppressed & bit(finding.getCheck())) != 0;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.costwise.service;
+
+import com.costwise.model.SuppressionRule;
+import com.costwise.repository.SuppressionRuleRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Per-account suppression rules and their compiled {@link SuppressionMatcher}s.
+ * <p>
+ * A matcher is compiled on first use and dropped when this node changes the account's rules;
+ * matchers also expire after a while so rule changes made through other nodes are picked up.
+ * Analyses take the matcher when they start, so rule changes apply from the next run on.
+ */
+@Service
+public class SuppressionService {
+    private final SuppressionRuleRepository suppressionRuleRepository;
+    private final Cache<Long, SuppressionMatcher> matchers;
+
+    public SuppressionService(SuppressionRuleRepository suppressionRuleRepository,
+                              @Value("${costwise.suppressions.cache-ttl-seconds:60}") long cacheTtlSeconds) {
+        this.suppressionRuleRepository = suppressionRuleRepository;
+        this.matchers = CacheBuilder.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .build();
+    }
+
+    public SuppressionMatcher matcher(Long accountId) {
+        try {
+            return matchers.get(accountId, () -> new SuppressionMatcher(suppressionRuleRepository.findByAwsAccountId(accountId)));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not load the suppression rules of account " + accountId, e.getCause());
+        }
+    }
+
+    public List<SuppressionRule> rules(Long accountId) {
+        return suppressionRuleRepository.findByAwsAccountId(accountId);
+    }
+
+    public SuppressionRule add(Long accountId, SuppressionRule rule) {
+        rule.setId(null);
+        rule.setAwsAccountId(accountId);
+        rule.setResourcePattern(blankToNull(rule.getResourcePattern()));
+        rule.setResourceType(blankToNull(rule.getResourceType()));
+        rule.setTagKey(blankToNull(rule.getTagKey()));
+        rule.setTagValue(rule.getTagKey() == null ? null : rule.getTagValue());
+        if (rule.getResourcePattern() == null && rule.getResourceType() == null && rule.getCheck() == null
+                && rule.getTagKey() == null) {
+            throw new RuntimeException("A suppression rule needs a resource pattern, resource type, check or tag");
+        }
+        if (SuppressionMatcher.checks(rule) == 0) {
+            throw new RuntimeException(rule.getCheck() == null
+                    ? "Unknown resource type " + rule.getResourceType()
+                    : "Check " + rule.getCheckId() + " is not a " + rule.getResourceType() + " check");
+        }
+        SuppressionRule saved = suppressionRuleRepository.save(rule);
+        matchers.invalidate(accountId);
+        return saved;
+    }
+
+    public void delete(Long accountId, Long ruleId) {
+        SuppressionRule rule = suppressionRuleRepository.findById(ruleId)
+                .filter(r -> r.getAwsAccountId().equals(accountId))
+                .orElseThrow(() -> new RuntimeException("Suppression rule not found"));
+        suppressionRuleRepository.delete(rule);
+        matchers.invalidate(accountId);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
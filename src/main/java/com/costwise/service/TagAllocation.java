@@ -0,0 +1,36 @@
+package com.costwise.service;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost and savings of the resources matching a tag filter in one run, optionally broken down
+ * by the values of one tag key. Resources without that key are grouped under
+ * {@link #UNTAGGED}; with no filter this group also holds resources that have no tags at all.
+ */
+@Data
+public class TagAllocation {
+    public static final String UNTAGGED = "(untagged)";
+
+    private Long analysisRunId;
+    private List<String> filters;
+    private String groupBy;
+
+    private long resourceCount;
+    private long findingCount;
+    private double currentCost;
+    private double potentialSavings;
+
+    private List<Group> groups = new ArrayList<>();
+
+    @Data
+    public static class Group {
+        private String value;
+        private long resourceCount;
+        private long findingCount;
+        private double currentCost;
+        private double potentialSavings;
+    }
+}
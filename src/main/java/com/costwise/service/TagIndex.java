@@ -0,0 +1,103 @@
+package com.costwise.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable inverted index from tag key and value to the resources of one account carrying it.
+ * <p>
+ * Every tagged resource gets a dense ordinal and each (key, value) pair maps to a
+ * {@link ResourceBitmap} of ordinals. A filter takes the union of the accepted values per key
+ * and intersects across keys, so its cost depends on the size of the posting lists rather than
+ * on the number of resources or findings.
+ */
+public class TagIndex {
+    private final List<String> resources = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<String, Map<String, ResourceBitmap>> postings = new TreeMap<>();
+    private final Map<String, ResourceBitmap> keys = new HashMap<>();
+    private final ResourceBitmap all = new ResourceBitmap();
+
+    /** Builds the index from (resourceType, resourceId, tagKey, tagValue) rows. */
+    public static TagIndex build(List<Object[]> rows) {
+        TagIndex index = new TagIndex();
+        for (Object[] row : rows) {
+            String resource = row[0] + ":" + row[1];
+            int ordinal = index.ordinals.computeIfAbsent(resource, r -> {
+                index.resources.add(r);
+                return index.resources.size() - 1;
+            });
+            String key = (String) row[2];
+            index.postings.computeIfAbsent(key, k -> new TreeMap<>())
+                    .computeIfAbsent((String) row[3], v -> new ResourceBitmap())
+                    .add(ordinal);
+            index.keys.computeIfAbsent(key, k -> new ResourceBitmap()).add(ordinal);
+            index.all.add(ordinal);
+        }
+        return index;
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    /** Ordinal of a {@code <resourceType>:<resourceId>} key, or -1 if the resource has no tags. */
+    public int ordinal(String resourceKey) {
+        Integer ordinal = ordinals.get(resourceKey);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public String resource(int ordinal) {
+        return resources.get(ordinal);
+    }
+
+    /**
+     * Resources matching every key of {@code filters} with one of its values; an empty value set
+     * only requires the key to be present. No filters match every tagged resource.
+     */
+    public ResourceBitmap match(Map<String, Set<String>> filters) {
+        if (filters.isEmpty()) {
+            return all;
+        }
+        List<ResourceBitmap> perKey = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> filter : filters.entrySet()) {
+            perKey.add(filter.getValue().isEmpty() ? withKey(filter.getKey()) : withAnyValue(filter.getKey(), filter.getValue()));
+        }
+        return ResourceBitmap.and(perKey);
+    }
+
+    public ResourceBitmap withKey(String key) {
+        return keys.getOrDefault(key, new ResourceBitmap());
+    }
+
+    public ResourceBitmap withValue(String key, String value) {
+        return postings.getOrDefault(key, Map.of()).getOrDefault(value, new ResourceBitmap());
+    }
+
+    public Set<String> values(String key) {
+        return postings.getOrDefault(key, Map.of()).keySet();
+    }
+
+    /** Number of resources per value of every tag key. */
+    public Map<String, Map<String, Integer>> counts() {
+        Map<String, Map<String, Integer>> counts = new TreeMap<>();
+        postings.forEach((key, values) -> {
+            Map<String, Integer> valueCounts = new TreeMap<>();
+            values.forEach((value, bitmap) -> valueCounts.put(value, bitmap.cardinality()));
+            counts.put(key, valueCounts);
+        });
+        return counts;
+    }
+
+    private ResourceBitmap withAnyValue(String key, Set<String> values) {
+        List<ResourceBitmap> bitmaps = new ArrayList<>();
+        for (String value : values) {
+            bitmaps.add(withValue(key, value));
+        }
+        return ResourceBitmap.or(bitmaps);
+    }
+}
@@ -0,0 +1,260 @@
+package com.costwise.service;
+
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.model.FindingCheck;
+import com.costwise.model.ResourceTag;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.OptimizationResultRepository;
+import com.costwise.repository.ResourceTagRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tag-based cost allocation: which resources carry a set of tags, and what they cost and could
+ * save in a run.
+ * <p>
+ * Each account's tags are held as a {@link TagIndex} built from the resource_tags table on first
+ * use and dropped when an analysis writes new tags. A finished run's findings are rolled up once
+ * per resource into arrays indexed by the same ordinals, so an allocation query is a few bitmap
+ * operations plus a pass over the matching ordinals, never a scan of the findings table.
+ */
+@Service
+public class TagIndexService {
+    private static final Set<String> FINAL_STATUSES = Set.of("COMPLETED", "FAILED", "CANCELLED", "TIMED_OUT");
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final ResourceTagRepository resourceTagRepository;
+    private final OptimizationResultRepository optimizationResultRepository;
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final Map<Long, TagIndex> indexes = new HashMap<>();
+    private final Map<Long, Long> generations = new HashMap<>();
+    private final Cache<Long, RunResources> runs;
+
+    public TagIndexService(ResourceTagRepository resourceTagRepository,
+                           OptimizationResultRepository optimizationResultRepository,
+                           CostAnalysisRunRepository costAnalysisRunRepository,
+                           @Value("${costwise.tags.run-cache-size:32}") long runCacheSize) {
+        this.resourceTagRepository = resourceTagRepository;
+        this.optimizationResultRepository = optimizationResultRepository;
+        this.costAnalysisRunRepository = costAnalysisRunRepository;
+        this.runs = CacheBuilder.newBuilder().maximumSize(runCacheSize).build();
+    }
+
+    /**
+     * Replaces the stored tags of the given resources, keyed {@code <resourceType>:<resourceId>}.
+     * The account's index is rebuilt on its next use after the transaction commits.
+     */
+    @Transactional
+    public void replaceTags(Long accountId, Map<String, Map<String, String>> tagsByResource) {
+        if (tagsByResource.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> idsByType = new HashMap<>();
+        List<ResourceTag> tags = new ArrayList<>();
+        tagsByResource.forEach((resource, resourceTags) -> {
+            int separator = resource.indexOf(':');
+            String type = resource.substring(0, separator);
+            String id = resource.substring(separator + 1);
+            idsByType.computeIfAbsent(type, t -> new ArrayList<>()).add(id);
+            resourceTags.forEach((key, value) -> tags.add(new ResourceTag(accountId, type, id, key, value)));
+        });
+        idsByType.forEach((type, ids) -> Lists.partition(ids, DELETE_BATCH_SIZE)
+                .forEach(batch -> resourceTagRepository.deleteByResources(accountId, type, batch)));
+        resourceTagRepository.saveAll(tags);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(accountId);
+                }
+            });
+        } else {
+            invalidate(accountId);
+        }
+    }
+
+    public TagIndex index(Long accountId) {
+        long generation;
+        synchronized (this) {
+            TagIndex index = indexes.get(accountId);
+            if (index != null) {
+                return index;
+            }
+            generation = generations.getOrDefault(accountId, 0L);
+        }
+        TagIndex index = TagIndex.build(resourceTagRepository.findTagRowsByAwsAccountId(accountId));
+        synchronized (this) {
+            // Tags written while the index was being built make it stale; use it once but don't keep it
+            if (generations.getOrDefault(accountId, 0L) == generation) {
+                indexes.put(accountId, index);
+            }
+        }
+        return index;
+    }
+
+    /** Tagged resources of an account matching every filter, as {@code <resourceType>:<resourceId>} keys. */
+    public List<String> resources(Long accountId, List<String> filters, int limit) {
+        TagIndex index = index(accountId);
+        List<String> resources = new ArrayList<>();
+        int[] ordinals = index.match(parseFilters(filters)).toArray();
+        for (int i = 0; i < ordinals.length && i < limit; i++) {
+            resources.add(index.resource(ordinals[i]));
+        }
+        return resources;
+    }
+
+    /**
+     * Cost and savings of the resources of a run that match every filter, optionally grouped by
+     * the values of the {@code groupBy} tag key. Filters are {@code key=value}, or just
+     * {@code key} to require the tag; several values of one key match any of them.
+     */
+    @Transactional(readOnly = true)
+    public TagAllocation allocation(Long runId, List<String> filters, String groupBy) {
+        CostAnalysisRun analysisRun = costAnalysisRunRepository.findById(runId)
+                .orElseThrow(() -> new RuntimeException("Analysis run not found"));
+        if (analysisRun.getArchivedAt() != null) {
+            throw new RuntimeException("Analysis run is archived; restore it before allocating costs");
+        }
+        Map<String, Set<String>> parsed = parseFilters(filters);
+        TagIndex index = index(analysisRun.getAwsAccount().getId());
+        RunResources resources = runResources(analysisRun, index);
+        ResourceBitmap matched = index.match(parsed).and(resources.withFindings);
+
+        TagAllocation allocation = new TagAllocation();
+        allocation.setAnalysisRunId(runId);
+        allocation.setFilters(filters);
+        allocation.setGroupBy(groupBy);
+        TagAllocation.Group total = resources.sum(matched, parsed.isEmpty());
+        allocation.setResourceCount(total.getResourceCount());
+        allocation.setFindingCount(total.getFindingCount());
+        allocation.setCurrentCost(total.getCurrentCost());
+        allocation.setPotentialSavings(total.getPotentialSavings());
+
+        if (groupBy != null && !groupBy.isEmpty()) {
+            for (String value : index.values(groupBy)) {
+                ResourceBitmap group = matched.and(index.withValue(groupBy, value));
+                if (!group.isEmpty()) {
+                    TagAllocation.Group sum = resources.sum(group, false);
+                    sum.setValue(value);
+                    allocation.getGroups().add(sum);
+                }
+            }
+            TagAllocation.Group untagged = resources.sum(matched.andNot(index.withKey(groupBy)), parsed.isEmpty());
+            if (untagged.getResourceCount() > 0) {
+                untagged.setValue(TagAllocation.UNTAGGED);
+                allocation.getGroups().add(untagged);
+            }
+            allocation.getGroups().sort(Comparator.comparingDouble(TagAllocation.Group::getPotentialSavings).reversed());
+        }
+        return allocation;
+    }
+
+    private synchronized void invalidate(Long accountId) {
+        indexes.remove(accountId);
+        generations.merge(accountId, 1L, Long::sum);
+    }
+
+    private RunResources runResources(CostAnalysisRun analysisRun, TagIndex index) {
+        RunResources resources = runs.getIfPresent(analysisRun.getId());
+        if (resources != null && resources.index == index) {
+            return resources;
+        }
+        resources = new RunResources(index, optimizationResultRepository.summarizeResourcesByAnalysisRunId(analysisRun.getId()));
+        if (FINAL_STATUSES.contains(analysisRun.getStatus())) {
+            runs.put(analysisRun.getId(), resources);
+        }
+        return resources;
+    }
+
+    static Map<String, Set<String>> parseFilters(List<String> filters) {
+        Map<String, Set<String>> parsed = new LinkedHashMap<>();
+        if (filters == null) {
+            return parsed;
+        }
+        for (String filter : filters) {
+            int separator = filter.indexOf('=');
+            String key = separator < 0 ? filter : filter.substring(0, separator);
+            if (key.isEmpty()) {
+                throw new RuntimeException("Invalid tag filter: " + filter);
+            }
+            Set<String> values = parsed.computeIfAbsent(key, k -> new LinkedHashSet<>());
+            if (separator >= 0) {
+                values.add(filter.substring(separator + 1));
+            }
+        }
+        return parsed;
+    }
+
+    /** Per-resource finding rollup of one run, indexed by the ordinals of one {@link TagIndex}. */
+    private static class RunResources {
+        final TagIndex index;
+        final ResourceBitmap withFindings = new ResourceBitmap();
+        final long[] findings;
+        final double[] costs;
+        final double[] savings;
+        final TagAllocation.Group untagged = new TagAllocation.Group();
+
+        RunResources(TagIndex index, List<Object[]> rows) {
+            this.index = index;
+            this.findings = new long[index.size()];
+            this.costs = new double[index.size()];
+            this.savings = new double[index.size()];
+            Map<String, Double> untaggedCosts = new HashMap<>();
+            for (Object[] row : rows) {
+                String resourceType = row[5] != null ? (String) row[5] : ((FindingCheck) row[0]).getResourceType();
+                String resource = resourceType + ":" + row[1];
+                long count = ((Number) row[2]).longValue();
+                double cost = row[3] == null ? 0.0 : ((Number) row[3]).doubleValue();
+                double saving = row[4] == null ? 0.0 : ((Number) row[4]).doubleValue();
+                // Rows are per check, so a resource's cost is the largest any of its checks reported
+                int ordinal = index.ordinal(resource);
+                if (ordinal < 0) {
+                    untaggedCosts.merge(resource, cost, Math::max);
+                    untagged.setFindingCount(untagged.getFindingCount() + count);
+                    untagged.setPotentialSavings(untagged.getPotentialSavings() + saving);
+                    continue;
+                }
+                withFindings.add(ordinal);
+                findings[ordinal] += count;
+                costs[ordinal] = Math.max(costs[ordinal], cost);
+                savings[ordinal] += saving;
+            }
+            untagged.setResourceCount(untaggedCosts.size());
+            untagged.setCurrentCost(untaggedCosts.values().stream().mapToDouble(Double::doubleValue).sum());
+        }
+
+        /** Sums the given ordinals, plus the resources that have no tags at all if asked to. */
+        TagAllocation.Group sum(ResourceBitmap ordinals, boolean includeUntagged) {
+            long[] counts = new long[2];
+            double[] totals = new double[2];
+            ordinals.forEach(ordinal -> {
+                counts[0]++;
+                counts[1] += findings[ordinal];
+                totals[0] += costs[ordinal];
+                totals[1] += savings[ordinal];
+            });
+            TagAllocation.Group group = new TagAllocation.Group();
+            group.setResourceCount(counts[0] + (includeUntagged ? untagged.getResourceCount() : 0));
+            group.setFindingCount(counts[1] + (includeUntagged ? untagged.getFindingCount() : 0));
+            group.setCurrentCost(totals[0] + (includeUntagged ? untagged.getCurrentCost() : 0));
+            group.setPotentialSavings(totals[1] + (includeUntagged ? untagged.getPotentialSavings() : 0));
+            return group;
+        }
+    }
+}
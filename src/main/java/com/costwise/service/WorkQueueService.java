@@ -0,0 +1,194 @@
+package com.costwise.service;
+
+import com.costwise.model.CostAnalysisRun;
+import com.costwise.model.WorkUnit;
+import com.costwise.repository.CostAnalysisRunRepository;
+import com.costwise.repository.WorkUnitRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Database-backed queue of analysis work shared by every node.
+ * <p>
+ * A distributed resource analysis is split into one {@link WorkUnit} per service and region.
+ * Nodes lease units with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so concurrent pollers take
+ * disjoint units without waiting on each other, and renew their leases while they work. The
+ * unit that leaves the run with nothing pending or leased finishes the run exactly once.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WorkQueueService {
+    private static final int MAX_RUN_ERROR_LENGTH = 255;
+    private static final List<String> STATUS_PRECEDENCE = List.of("CANCELLED", "TIMED_OUT", "FAILED");
+
+    private final WorkUnitRepository workUnitRepository;
+    private final CostAnalysisRunRepository costAnalysisRunRepository;
+    private final AnalysisCheckpointService checkpointService;
+    private final Set<Long> localRuns = ConcurrentHashMap.newKeySet();
+
+    /** Queues one unit per analyzed service in the account's region. */
+    @Transactional
+    public void enqueue(CostAnalysisRun analysisRun) {
+        List<WorkUnit> units = new ArrayList<>();
+        for (String service : AwsResourceAnalyzer.SERVICES) {
+            units.add(new WorkUnit(analysisRun.getId(), analysisRun.getAwsAccount().getRegion(), service));
+        }
+        workUnitRepository.saveAll(units);
+        localRuns.add(analysisRun.getId());
+    }
+
+    /** Runs enqueued by this node that may still have subscribers waiting for their completion. */
+    public Set<Long> localRuns() {
+        return localRuns;
+    }
+
+    public void forgetLocalRun(Long runId) {
+        localRuns.remove(runId);
+    }
+
+    /**
+     * Leases up to {@code limit} units for {@code owner}. Units whose run was cancelled or has
+     * passed its deadline, or that were already leased {@code maxAttempts} times, are closed
+     * instead of leased; their runs are returned so the caller can try to finish them.
+     */
+    @Transactional
+    public Lease lease(String owner, int limit, long leaseSeconds, int maxAttempts) {
+        LocalDateTime now = LocalDateTime.now();
+        Lease lease = new Lease();
+        Map<Long, Optional<LocalDateTime>> deadlines = new HashMap<>();
+        for (WorkUnit unit : workUnitRepository.lockLeasable(now, limit)) {
+            Optional<LocalDateTime> deadline = deadlines.computeIfAbsent(unit.getAnalysisRunId(),
+                    runId -> costAnalysisRunRepository.findById(runId).map(CostAnalysisRun::getDeadline));
+            if (unit.isCancelRequested()) {
+                unit.setStatus("CANCELLED");
+                lease.closedRunIds.add(unit.getAnalysisRunId());
+            } else if (deadline.isPresent() && now.isAfter(deadline.get())) {
+                unit.setStatus("TIMED_OUT");
+                lease.closedRunIds.add(unit.getAnalysisRunId());
+            } else if (unit.getAttempts() >= maxAttempts) {
+                unit.setStatus("FAILED");
+                if (unit.getErrorMessage() == null) {
+                    unit.setErrorMessage(unit.getService() + " in " + unit.getRegion() + ": lease expired "
+                            + unit.getAttempts() + " times");
+                }
+                lease.closedRunIds.add(unit.getAnalysisRunId());
+            } else {
+                unit.setStatus("LEASED");
+                unit.setLeaseOwner(owner);
+                unit.setLeaseExpiresAt(now.plusSeconds(leaseSeconds));
+                unit.setAttempts(unit.getAttempts() + 1);
+                lease.units.add(unit);
+            }
+        }
+        return lease;
+    }
+
+    /**
+     * Extends the leases {@code owner} still holds among {@code unitIds}. Returns the held units
+     * mapped to whether their run has been cancelled; units missing from the result were lost.
+     */
+    @Transactional
+    public Map<Long, Boolean> renew(String owner, Collection<Long> unitIds, long leaseSeconds) {
+        Map<Long, Boolean> held = new HashMap<>();
+        if (unitIds.isEmpty()) {
+            return held;
+        }
+        workUnitRepository.renewLeases(unitIds, owner, LocalDateTime.now().plusSeconds(leaseSeconds));
+        for (Object[] row : workUnitRepository.findHeldLeases(unitIds, owner)) {
+            held.put((Long) row[0], (Boolean) row[1]);
+        }
+        return held;
+    }
+
+    /** Ends a lease with {@code status}; PENDING puts the unit back for a retry. False if the lease was lost. */
+    @Transactional
+    public boolean release(Long unitId, String owner, String status, String errorMessage) {
+        return workUnitRepository.release(unitId, owner, status, errorMessage) > 0;
+    }
+
+    /**
+     * Cancels a distributed run: pending units are closed, and leased units are flagged so their
+     * workers stop at the next resource boundary. False if the run has no units.
+     */
+    @Transactional
+    public boolean cancel(Long runId) {
+        int pending = workUnitRepository.cancelPending(runId);
+        int leased = workUnitRepository.requestCancellation(runId);
+        return pending + leased > 0;
+    }
+
+    /**
+     * Finishes the run if none of its units is pending or leased; pending units of a run past its
+     * deadline are closed as TIMED_OUT first. The run's status is the most severe unit status:
+     * CANCELLED, then TIMED_OUT, then FAILED, otherwise COMPLETED. Returns the status if this
+     * call finished the run, null otherwise.
+     */
+    @Transactional
+    public String tryFinish(Long runId) {
+        Map<String, Long> counts = countByStatus(runId);
+        if (counts.containsKey("PENDING") && costAnalysisRunRepository.findById(runId)
+                .map(CostAnalysisRun::getDeadline)
+                .filter(deadline -> LocalDateTime.now().isAfter(deadline))
+                .isPresent()) {
+            workUnitRepository.timeOutPending(runId);
+            counts = countByStatus(runId);
+        }
+        if (counts.isEmpty() || counts.containsKey("PENDING") || counts.containsKey("LEASED")) {
+            return null;
+        }
+        String status = "COMPLETED";
+        for (String candidate : STATUS_PRECEDENCE) {
+            if (counts.containsKey(candidate)) {
+                status = candidate;
+                break;
+            }
+        }
+        if (costAnalysisRunRepository.updateStatusIfRunning(runId, status) == 0) {
+            return null;
+        }
+        Set<String> errors = new LinkedHashSet<>(workUnitRepository.findErrorMessages(runId));
+        String errorMessage = errors.isEmpty() ? null : String.join("; ", errors);
+        if (errorMessage != null && errorMessage.length() > MAX_RUN_ERROR_LENGTH) {
+            errorMessage = errorMessage.substring(0, MAX_RUN_ERROR_LENGTH);
+        }
+        checkpointService.finish(runId, status, errorMessage);
+        workUnitRepository.deleteByAnalysisRunId(runId);
+        log.info("Distributed resource analysis {} finished: {}", runId, status);
+        return status;
+    }
+
+    private Map<String, Long> countByStatus(Long runId) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : workUnitRepository.countByStatus(runId)) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    public static class Lease {
+        private final List<WorkUnit> units = new ArrayList<>();
+        private final Set<Long> closedRunIds = new LinkedHashSet<>();
+
+        public List<WorkUnit> getUnits() {
+            return units;
+        }
+
+        public Set<Long> getClosedRunIds() {
+            return closedRunIds;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisPipelineTest {
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int RESOURCES = 1000;
+
+    @Test
+    void failingEvaluateStageStopsWithoutDeadlock() throws Exception {
+        RuntimeException failure = new IllegalStateException("evaluate failed");
+        AtomicInteger evaluated = new AtomicInteger();
+
+        RuntimeException thrown = runAll(new AnalysisPipeline<Integer, Integer>(AnalysisContext.NONE, "test", 2, 2, 1,
+                resource -> resource,
+                resource -> {
+                    if (resource == 5) {
+                        throw failure;
+                    }
+                    evaluated.incrementAndGet();
+                }));
+
+        assertSame(failure, thrown);
+        assertTrue(evaluated.get() < RESOURCES - 1, "queued resources are dropped after a failure");
+    }
+
+    @Test
+    void failingFetchStageStillEndsTheEvaluateStage() throws Exception {
+        RuntimeException failure = new IllegalStateException("fetch failed");
+
+        RuntimeException thrown = runAll(new AnalysisPipeline<Integer, Integer>(AnalysisContext.NONE, "test", 3, 2, 2,
+                resource -> {
+                    if (resource == 3) {
+                        throw failure;
+                    }
+                    return resource;
+                },
+                resource -> { }));
+
+        // close() returning at all means every evaluate thread saw the END the fetch stage sends
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    void queueCapacityBoundsTheResourcesInFlight() throws Exception {
+        int fetchThreads = 2;
+        int evaluateThreads = 2;
+        int capacity = 4;
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger evaluated = new AtomicInteger();
+        AnalysisPipeline<Integer, Integer> pipeline = new AnalysisPipeline<>(AnalysisContext.NONE, "test",
+                fetchThreads, evaluateThreads, capacity,
+                resource -> resource,
+                resource -> {
+                    await(gate);
+                    evaluated.incrementAndGet();
+                });
+        AtomicInteger accepted = new AtomicInteger();
+        CompletableFuture<Void> inventory = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < RESOURCES; i++) {
+                pipeline.submit(i);
+                accepted.incrementAndGet();
+            }
+            pipeline.close();
+        });
+
+        int settled = -1;
+        while (settled != accepted.get()) {
+            settled = accepted.get();
+            Thread.sleep(200);
+        }
+
+        // Both queues full, plus one resource held by each fetch thread and each evaluate thread
+        int bound = (capacity + fetchThreads) + fetchThreads + (capacity + evaluateThreads) + evaluateThreads;
+        assertEquals(bound, settled);
+        gate.countDown();
+        inventory.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(RESOURCES, evaluated.get());
+    }
+
+    /** Submits every resource and closes the pipeline; returns what submit or close threw. */
+    private static RuntimeException runAll(AnalysisPipeline<Integer, Integer> pipeline) throws Exception {
+        CompletableFuture<Void> inventory = CompletableFuture.runAsync(() -> {
+            try (pipeline) {
+                for (int i = 0; i < RESOURCES; i++) {
+                    pipeline.submit(i);
+                }
+            }
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> inventory.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return (RuntimeException) e.getCause();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalysisStoppedException("interrupted");
+        }
+    }
+}
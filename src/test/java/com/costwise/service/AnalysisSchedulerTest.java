@@ -0,0 +1,183 @@
+package com.costwise.service;
+
+import com.costwise.model.AwsAccount;
+import com.costwise.service.AnalysisScheduler.Lane;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisSchedulerTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private AnalysisScheduler scheduler;
+
+    @AfterEach
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void sharesSlotsInProportionToWeight() throws Exception {
+        scheduler = new AnalysisScheduler(1, 1);
+        AwsAccount heavy = account(1L, 2);
+        AwsAccount light = account(2L, null);
+        CountDownLatch gate = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = scheduler.submit(Lane.BATCH, account(3L, null), () -> await(gate));
+        List<Long> started = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Long>> runs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            runs.add(scheduler.submit(Lane.BATCH, heavy, () -> record(started, heavy)));
+        }
+        for (int i = 0; i < 6; i++) {
+            runs.add(scheduler.submit(Lane.BATCH, light, () -> record(started, light)));
+        }
+
+        gate.countDown();
+        blocker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        for (CompletableFuture<Long> run : runs) {
+            run.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        // Weight 2 gets two runs for every one of weight 1 while both have runs queued
+        assertEquals(List.of(1L, 1L, 2L, 1L, 1L, 2L, 1L, 1L, 2L), started.subList(0, 9));
+        assertEquals(List.of(2L, 2L, 2L), started.subList(9, 12));
+    }
+
+    @Test
+    void interactiveRunPreemptsABatchRunAtItsNextSafePoint() throws Exception {
+        scheduler = new AnalysisScheduler(1, 0);
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        AtomicBoolean interactiveDone = new AtomicBoolean();
+        AtomicBoolean yielded = new AtomicBoolean();
+        CompletableFuture<Integer> batch = scheduler.submit(Lane.BATCH, account(1L, null), () -> {
+            batchStarted.countDown();
+            int resources = 0;
+            while (!interactiveDone.get()) {
+                AnalysisScheduler.currentLease().safePoint(null);
+                // Past the safe point with the interactive run finished: the slot was handed back and regained
+                yielded.compareAndSet(false, interactiveDone.get());
+                resources++;
+            }
+            return resources;
+        });
+        assertTrue(batchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> interactive = scheduler.submit(Lane.INTERACTIVE, account(2L, null), () -> {
+            boolean batchRunning = !batch.isDone();
+            interactiveDone.set(true);
+            return batchRunning;
+        });
+
+        assertTrue(interactive.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(batch.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) > 0);
+        assertTrue(yielded.get());
+    }
+
+    @Test
+    void minBatchRunsAreNeverAskedToYield() throws Exception {
+        scheduler = new AnalysisScheduler(1, 1);
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        AtomicBoolean finish = new AtomicBoolean();
+        CompletableFuture<Object> batch = scheduler.submit(Lane.BATCH, account(1L, null), () -> {
+            batchStarted.countDown();
+            while (!finish.get()) {
+                AnalysisScheduler.currentLease().safePoint(null);
+                Thread.onSpinWait();
+            }
+            return null;
+        });
+        assertTrue(batchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> interactive = scheduler.submit(Lane.INTERACTIVE, account(2L, null), () -> batch.isDone());
+
+        // The only batch run keeps its slot through its safe points
+        assertThrows(TimeoutException.class, () -> interactive.get(300, TimeUnit.MILLISECONDS));
+        finish.set(true);
+        assertTrue(interactive.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledPausedRunReleasesItsSlotWithoutBeingGrantedAgain() throws Exception {
+        scheduler = new AnalysisScheduler(1, 0);
+        AtomicReference<AnalysisScheduler.Lease> pausedLease = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        CompletableFuture<Boolean> paused = scheduler.submit(Lane.BATCH, account(1L, null), () -> {
+            pausedLease.set(AnalysisScheduler.currentLease());
+            batchStarted.countDown();
+            while (!cancelled.get()) {
+                AnalysisScheduler.currentLease().safePoint(null);
+                Thread.onSpinWait();
+            }
+            return true;
+        });
+        assertTrue(batchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        AtomicBoolean nextRan = new AtomicBoolean();
+        CompletableFuture<Object> next = scheduler.submit(Lane.BATCH, account(2L, null), () -> {
+            nextRan.set(true);
+            return null;
+        });
+        CountDownLatch interactiveStarted = new CountDownLatch(1);
+        CountDownLatch interactiveRelease = new CountDownLatch(1);
+        CompletableFuture<Object> interactive = scheduler.submit(Lane.INTERACTIVE, account(3L, null), () -> {
+            interactiveStarted.countDown();
+            return await(interactiveRelease);
+        });
+
+        // The interactive run only starts once the batch run has yielded and is paused
+        assertTrue(interactiveStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        cancelled.set(true);
+        pausedLease.get().wake();
+        assertTrue(paused.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(nextRan.get());
+
+        interactiveRelease.countDown();
+        interactive.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // Had the cancelled run's ticket stayed queued, it would win the slot ahead of the next run and never free it
+        next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(nextRan.get());
+        CompletableFuture<Object> later = scheduler.submit(Lane.BATCH, account(2L, null), () -> null);
+        later.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static AwsAccount account(Long id, Integer weight) {
+        AwsAccount account = new AwsAccount();
+        account.setId(id);
+        account.setSchedulingWeight(weight);
+        return account;
+    }
+
+    private static Long record(List<Long> started, AwsAccount account) {
+        started.add(account.getId());
+        return account.getId();
+    }
+
+    private static Object await(CountDownLatch latch) {
+        try {
+            if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,128 @@
+package com.costwise.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpFullResponse;
+import software.amazon.awssdk.http.SdkHttpMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AwsCaptureTest {
+    private static final String BODY = "Action=DescribeInstances&Version=2016-11-15";
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty("software.amazon.awssdk.http.service.impl");
+        System.clearProperty("aws.accessKeyId");
+        System.clearProperty("aws.secretAccessKey");
+    }
+
+    @Test
+    void replaysACaptureRecordedUnderOneKeyWithAnyCredentials() throws IOException {
+        Path file = dir.resolve("capture.bin.gz");
+        record(file, "AKIAEXAMPLE", "reservations");
+
+        AwsCapture replay = start(file, AwsCapture.REPLAY);
+        SdkHttpClient client = new AwsCaptureHttpService.CapturingHttpClient(replay, null);
+        assertEquals("reservations", call(client, "replay"));
+        assertEquals("reservations", call(client, "AKIAOTHER"));
+        replay.stop();
+    }
+
+    @Test
+    void keepsTheResponsesOfSeveralKeysApart() throws IOException {
+        Path file = dir.resolve("capture.bin.gz");
+        AwsCapture recorder = start(file, AwsCapture.RECORD);
+        SdkHttpClient recording = new AwsCaptureHttpService.CapturingHttpClient(recorder, new FixedClient("first"));
+        call(recording, "AKIAFIRST");
+        recording = new AwsCaptureHttpService.CapturingHttpClient(recorder, new FixedClient("second"));
+        call(recording, "AKIASECOND");
+        recorder.stop();
+
+        AwsCapture replay = start(file, AwsCapture.REPLAY);
+        SdkHttpClient client = new AwsCaptureHttpService.CapturingHttpClient(replay, null);
+        assertEquals("first", call(client, "AKIAFIRST"));
+        assertEquals("second", call(client, "AKIASECOND"));
+        assertThrows(IllegalStateException.class, () -> call(client, "replay"));
+        replay.stop();
+    }
+
+    private void record(Path file, String accessKeyId, String response) throws IOException {
+        AwsCapture recorder = start(file, AwsCapture.RECORD);
+        call(new AwsCaptureHttpService.CapturingHttpClient(recorder, new FixedClient(response)), accessKeyId);
+        recorder.stop();
+    }
+
+    private static AwsCapture start(Path file, String mode) throws IOException {
+        AwsCapture capture = new AwsCapture(new ObjectMapper(), mode, file.toString());
+        capture.start();
+        return capture;
+    }
+
+    private static String call(SdkHttpClient client, String accessKeyId) throws IOException {
+        SdkHttpFullRequest request = SdkHttpFullRequest.builder()
+                .method(SdkHttpMethod.POST)
+                .protocol("https")
+                .host("ec2.us-east-1.amazonaws.com")
+                .encodedPath("/")
+                .putHeader("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKeyId
+                        + "/20261019/us-east-1/ec2/aws4_request, SignedHeaders=host, Signature=0")
+                .build();
+        HttpExecuteResponse response = client.prepareRequest(HttpExecuteRequest.builder()
+                .request(request)
+                .contentStreamProvider(() -> new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8)))
+                .build()).call();
+        try (InputStream in = response.responseBody().orElseThrow()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Stands in for the live HTTP implementation, answering every request with the same body. */
+    private static final class FixedClient implements SdkHttpClient {
+        private final String body;
+
+        FixedClient(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+            return new ExecutableHttpRequest() {
+                @Override
+                public HttpExecuteResponse call() {
+                    return HttpExecuteResponse.builder()
+                            .response(SdkHttpFullResponse.builder().statusCode(200).build())
+                            .responseBody(AbortableInputStream.create(
+                                    new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))))
+                            .build();
+                }
+
+                @Override
+                public void abort() {
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CommitmentOptimizerTest {
+    private static final String[] TERMS = {"1-year", "3-year"};
+    private static final double[] DISCOUNTS = {0.28, 0.46};
+
+    @Test
+    void coversSteadyUsageWithTheDeepestDiscountWhenUsageIsCertain() {
+        double[] hourly = new double[100];
+        Arrays.fill(hourly, 10.0);
+
+        CommitmentRecommendation recommendation = CommitmentOptimizer.optimize(hourly, TERMS, DISCOUNTS, new double[]{1.0, 1.0});
+
+        assertEquals("3-year", recommendation.getTerm());
+        assertEquals(10.0, recommendation.getCoveredHourlySpend(), 1e-9);
+        assertEquals(5.4, recommendation.getHourlyCommitment(), 1e-9);
+        assertEquals(460.0, recommendation.getNetSavings(), 1e-9);
+        assertEquals(1.0, recommendation.getUtilization(), 1e-9);
+        assertEquals(1.0, recommendation.getCoverage(), 1e-9);
+    }
+
+    @Test
+    void prefersTheShorterTermWhenUsageMayShrink() {
+        double[] hourly = new double[100];
+        Arrays.fill(hourly, 10.0);
+        double[] expectedUsage = {CommitmentOptimizer.expectedUsage(0.8, 1), CommitmentOptimizer.expectedUsage(0.8, 3)};
+
+        CommitmentRecommendation recommendation = CommitmentOptimizer.optimize(hourly, TERMS, DISCOUNTS, expectedUsage);
+
+        // 3 years keep (1 + 0.8 + 0.64) / 3 of the usage, which the extra 18% discount does not make up for
+        assertEquals("1-year", recommendation.getTerm());
+        assertEquals(1.0, recommendation.getExpectedUsage(), 1e-9);
+        assertEquals(280.0, recommendation.getNetSavings(), 1e-9);
+    }
+
+    @Test
+    void expectedUsageAveragesTheRetainedShareOverTheTerm() {
+        assertEquals(1.0, CommitmentOptimizer.expectedUsage(0.8, 1), 1e-12);
+        assertEquals(2.44 / 3, CommitmentOptimizer.expectedUsage(0.8, 3), 1e-12);
+        assertEquals(1.0, CommitmentOptimizer.expectedUsage(1.0, 3), 1e-12);
+    }
+
+    @Test
+    void commitsToTheLevelThatMaximizesSavings() {
+        double[] hourly = new double[200];
+        Arrays.fill(hourly, 0, 100, 10.0);
+        Arrays.fill(hourly, 100, 200, 20.0);
+
+        CommitmentRecommendation recommendation = CommitmentOptimizer.optimize(hourly, new String[]{"1-year"},
+                new double[]{0.28}, new double[]{1.0});
+
+        // Covering 10/h saves 2000 - 1440; covering 20/h would save 3000 - 2880
+        assertEquals(10.0, recommendation.getCoveredHourlySpend(), 1e-9);
+        assertEquals(560.0, recommendation.getNetSavings(), 1e-9);
+        assertEquals(2000.0 / 3000.0, recommendation.getCoverage(), 1e-9);
+        assertEquals(560.0 / 200 * 730, recommendation.getMonthlySavings(), 1e-9);
+    }
+
+    @Test
+    void recommendsNothingForSpikyUsage() {
+        double[] hourly = new double[100];
+        Arrays.fill(hourly, 90, 100, 10.0);
+
+        assertNull(CommitmentOptimizer.optimize(hourly, TERMS, DISCOUNTS, new double[]{1.0, 1.0}));
+        assertNull(CommitmentOptimizer.optimize(new double[100], TERMS, DISCOUNTS, new double[]{1.0, 1.0}));
+    }
+}
@@ -0,0 +1,99 @@
+package com.costwise.service;
+
+import com.costwise.model.FindingCheck;
+import com.costwise.model.OptimizationResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CostAnomalyDetectorTest {
+    private static final LocalDate MONDAY = LocalDate.of(2024, 1, 1);
+    private static final String SERIES = "123456789012/Amazon Elastic Compute Cloud - Compute";
+
+    @Test
+    void staysQuietDuringWarmUp() {
+        Map<Integer, Double> spikes = Map.of(5, 5000.0, 13, 5000.0, 14, 5000.0);
+
+        List<Integer> flagged = flaggedDays(new CostAnomalyDetector(), 30, 1000.0, spikes);
+
+        // Day 14 is the first with two weeks of history
+        assertEquals(List.of(14), flagged);
+    }
+
+    @Test
+    void learnsWeeklySeasonalityButFlagsAWeekdaySpike() {
+        CostAnomalyDetector detector = new CostAnomalyDetector();
+        int thursday = 101;
+        assertEquals(DayOfWeek.THURSDAY, MONDAY.plusDays(thursday).getDayOfWeek());
+
+        List<Integer> flagged = flaggedDays(detector, 150, 1500.0, Map.of(thursday, 1500.0));
+
+        // Once the weekend offsets are learned, only a weekday at the weekend level stands out
+        assertEquals(List.of(thursday), flagged.stream().filter(day -> day >= 28).toList());
+    }
+
+    @Test
+    void winsorizesAnOutlierSoTheBaselineSurvives() {
+        CostAnomalyDetector detector = new CostAnomalyDetector();
+        for (int day = 0; day < 20; day++) {
+            assertNull(detector.observe(SERIES, MONDAY.plusDays(day), 1000.0));
+        }
+        OptimizationResult outlier = detector.observe(SERIES, MONDAY.plusDays(20), 20000.0);
+        assertEquals(FindingCheck.COST_SPIKE.name(), outlier.getCheckId());
+        assertEquals("HIGH", outlier.getSeverity());
+        for (int day = 21; day < 30; day++) {
+            assertNull(detector.observe(SERIES, MONDAY.plusDays(day), 1000.0));
+        }
+
+        // A modest spike after the cooldown is still caught against an unpoisoned baseline
+        OptimizationResult spike = detector.observe(SERIES, MONDAY.plusDays(30), 1300.0);
+
+        assertEquals(FindingCheck.COST_SPIKE.name(), spike.getCheckId());
+        assertEquals(1000.0, Double.parseDouble(spike.getParams().get(2)), 10.0);
+    }
+
+    @Test
+    void cooldownSuppressesRepeatAlerts() {
+        Map<Integer, Double> spikes = Map.of(20, 2000.0, 21, 2000.0, 22, 2000.0, 27, 2000.0, 28, 2000.0);
+
+        List<Integer> flagged = flaggedDays(new CostAnomalyDetector(), 35, 1000.0, spikes);
+
+        assertEquals(List.of(20, 28), flagged);
+    }
+
+    @Test
+    void rejectsOutOfOrderDays() {
+        CostAnomalyDetector detector = new CostAnomalyDetector();
+        detector.observe(SERIES, MONDAY.plusDays(1), 1000.0);
+
+        assertThrows(IllegalArgumentException.class, () -> detector.observe(SERIES, MONDAY, 1000.0));
+        assertNull(detector.observe("other", MONDAY, 1000.0));
+        assertEquals(2, detector.seriesCount());
+    }
+
+    /**
+     * Feeds {@code days} of 1000 on weekdays and {@code weekend} on weekends, with the given
+     * costs on some days instead, and returns the days that raised a spike.
+     */
+    private static List<Integer> flaggedDays(CostAnomalyDetector detector, int days, double weekend,
+                                             Map<Integer, Double> overrides) {
+        List<Integer> flagged = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            LocalDate date = MONDAY.plusDays(day);
+            double cost = date.getDayOfWeek().getValue() >= 6 ? weekend : 1000.0;
+            OptimizationResult result = detector.observe(SERIES, date, overrides.getOrDefault(day, cost));
+            if (result != null && FindingCheck.COST_SPIKE.name().equals(result.getCheckId())) {
+                flagged.add(day);
+            }
+        }
+        return flagged;
+    }
+}
@@ -0,0 +1,102 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CostCubeTest {
+
+    private static CostCube sample() {
+        CostCube cube = new CostCube(CostCube.SERVICE, CostCube.REGION);
+        cube.add(10.0, 1.0, "EC2", "us-east-1");
+        cube.add(5.0, 0.0, "EC2", "eu-west-1");
+        cube.add(3.0, 2.0, "S3", "us-east-1");
+        cube.add(2.0, 0.5, "EC2", "us-east-1");
+        return cube;
+    }
+
+    @Test
+    void sumsLineItemsPerCell() {
+        CostCube cube = sample();
+
+        assertEquals(3, cube.size());
+        assertEquals(20.0, cube.totalCost(), 1e-9);
+        assertEquals(3.5, cube.totalSavings(), 1e-9);
+        assertEquals(2, cube.cardinality(cube.dimension(CostCube.SERVICE)));
+    }
+
+    @Test
+    void rollsUpASlice() {
+        CostCube cube = sample();
+
+        CostCube.Rollup byService = cube.query().where(CostCube.REGION, "us-east-1").groupBy(CostCube.SERVICE);
+
+        assertEquals(Map.of("EC2", 12.0, "S3", 3.0), byService.costByLabel());
+        assertEquals(15.0, cube.query().where(CostCube.REGION, "us-east-1").totalCost(), 1e-9);
+        assertEquals(0.0, cube.query().where(CostCube.REGION, "ap-south-1").totalCost(), 1e-9);
+        assertEquals(Map.of(), cube.query().where(CostCube.REGION, "ap-south-1").groupBy(CostCube.SERVICE).costByLabel());
+    }
+
+    @Test
+    void ranksValuesByCostAndSavings() {
+        CostCube cube = new CostCube(CostCube.SERVICE);
+        cube.add(1.0, 4.0, "A");
+        cube.add(3.0, 1.0, "B");
+        cube.add(2.0, 3.0, "C");
+        CostCube.Rollup rollup = cube.query().groupBy(CostCube.SERVICE);
+
+        assertArrayEquals(new String[]{"B", "C"}, labels(rollup, rollup.topByCost(2)));
+        assertArrayEquals(new String[]{"A", "C", "B"}, labels(rollup, rollup.topBySavings(5)));
+        assertEquals(0, rollup.topByCost(0).length);
+    }
+
+    @Test
+    void projectsAndMerges() {
+        CostCube cube = sample();
+
+        CostCube byRegion = cube.project(CostCube.REGION);
+        assertEquals(Map.of("us-east-1", 15.0, "eu-west-1", 5.0), byRegion.query().groupBy(CostCube.REGION).costByLabel());
+
+        CostCube other = new CostCube(CostCube.SERVICE, CostCube.REGION);
+        other.add(4.0, 0.0, "S3", "us-east-1");
+        other.add(1.0, 0.0, "Lambda", "eu-west-1");
+        cube.merge(other);
+        assertEquals(4, cube.size());
+        assertEquals(Map.of("EC2", 17.0, "S3", 7.0, "Lambda", 1.0), cube.query().groupBy(CostCube.SERVICE).costByLabel());
+
+        assertThrows(IllegalArgumentException.class, () -> cube.merge(byRegion));
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        CostCube cube = new CostCube(CostCube.RESOURCE_TYPE, CostCube.DATE);
+        for (int i = 0; i < 5000; i++) {
+            cube.add(1.0, 0.0, "type-" + (i % 50), "day-" + (i / 50));
+            cube.add(1.0, 0.0, "type-" + (i % 50), "day-" + (i / 50));
+        }
+
+        assertEquals(5000, cube.size());
+        assertEquals(10000.0, cube.totalCost(), 1e-9);
+        assertEquals(200.0, cube.query().where(CostCube.RESOURCE_TYPE, "type-7").totalCost(), 1e-9);
+    }
+
+    @Test
+    void rejectsTheWrongNumberOfValues() {
+        CostCube cube = new CostCube(CostCube.SERVICE, CostCube.REGION);
+
+        assertThrows(IllegalArgumentException.class, () -> cube.add(1.0, 0.0, "EC2"));
+        assertThrows(IllegalArgumentException.class, () -> cube.dimension(CostCube.DATE));
+    }
+
+    private static String[] labels(CostCube.Rollup rollup, int[] codes) {
+        String[] labels = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            labels[i] = rollup.label(codes[i]);
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,109 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CurIngestionServiceTest {
+    private static final String HEADER = "lineItem/UsageAccountId,lineItem/LineItemType,lineItem/UsageStartDate,"
+            + "lineItem/ProductCode,lineItem/UsageType,product/ProductName,product/regionCode,lineItem/UnblendedCost\n";
+    // A Marketplace product name with a comma, escaped quotes and a line break inside its quoted field
+    private static final String MARKETPLACE = "Acme \"\"Widgets\"\", Inc.\nPremium";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsQuotedFieldsWithLineBreaksInOneRecord() throws IOException {
+        Files.writeString(dir.resolve("cur.csv"), HEADER
+                + "111111111111,Usage,2024-03-01T00:00:00Z,AmazonEC2,BoxUsage:m5.large,\"Amazon Elastic Compute Cloud\",us-east-1,1.5\r\n"
+                + "111111111111,Usage,2024-03-01T01:00:00Z,,Subscription,\"" + MARKETPLACE + "\",us-east-1,2.25\r\n"
+                + "222222222222,Usage,2024-03-02T00:00:00Z,AmazonS3,TimedStorage,\"Amazon Simple Storage Service\",eu-west-1,0.75");
+
+        CostCube cube = service(1024).ingest(dir, null);
+
+        assertEquals(4.5, cube.totalCost(), 1e-9);
+        assertEquals(Map.of("Amazon Elastic Compute Cloud - Compute", 1.5,
+                        MARKETPLACE, 2.25,
+                        "Amazon Simple Storage Service", 0.75),
+                cube.query().groupBy(CostCube.SERVICE).costByLabel());
+        assertEquals(2.25, cube.query().where(CostCube.USAGE_TYPE, "Subscription").totalCost(), 1e-9);
+    }
+
+    @Test
+    void cutsChunksOnlyBetweenRecords() throws IOException {
+        String csv = sample(200);
+        Files.writeString(dir.resolve("cur.csv"), csv);
+
+        CostCube whole = service(1024 * 1024).ingest(dir, null);
+        // Chunks smaller than a record, and sizes putting every boundary inside and outside the quotes
+        for (int chunkSize : new int[]{16, 61, 97, 128, 1000}) {
+            CostCube chunked = service(chunkSize).ingest(dir, null);
+
+            assertEquals(whole.totalCost(), chunked.totalCost(), 1e-9);
+            assertEquals(whole.query().groupBy(CostCube.SERVICE).costByLabel(),
+                    chunked.query().groupBy(CostCube.SERVICE).costByLabel());
+        }
+        assertEquals(200 * 1.0 + 100 * 2.0, whole.totalCost(), 1e-9);
+        assertEquals(100 * 2.0, whole.query().where(CostCube.SERVICE, MARKETPLACE).totalCost(), 1e-9);
+    }
+
+    @Test
+    void readsGzippedExportsLikePlainOnes() throws IOException {
+        String csv = sample(100);
+        Path plain = Files.createDirectory(dir.resolve("plain"));
+        Files.writeString(plain.resolve("cur.csv"), csv);
+        Path gzipped = Files.createDirectory(dir.resolve("gzipped"));
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped.resolve("cur.csv.gz")))) {
+            out.write(csv.getBytes(StandardCharsets.UTF_8));
+        }
+
+        CostCube expected = service(1024 * 1024).ingest(plain, null);
+        for (int chunkSize : new int[]{53, 1024 * 1024}) {
+            CostCube cube = service(chunkSize).ingest(gzipped, null);
+
+            assertEquals(expected.totalCost(), cube.totalCost(), 1e-9);
+            assertEquals(expected.query().groupBy(CostCube.SERVICE).costByLabel(),
+                    cube.query().groupBy(CostCube.SERVICE).costByLabel());
+        }
+        assertEquals(100 * 1.0 + 50 * 2.0, expected.totalCost(), 1e-9);
+    }
+
+    @Test
+    void findsTheRecordEndOutsideQuotes() {
+        byte[] bytes = "a,\"x\ny\",\"\"\"\n\"\nb,c\n".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(13, CurIngestionService.recordEnd(bytes, 0, bytes.length));
+        assertEquals(17, CurIngestionService.recordEnd(bytes, 14, bytes.length));
+        assertEquals(-1, CurIngestionService.recordEnd(bytes, 0, 13));
+    }
+
+    private static CurIngestionService service(int chunkSize) {
+        CurIngestionService service = new CurIngestionService();
+        service.chunkSize = chunkSize;
+        return service;
+    }
+
+    /** Rows of 1.0, every other one followed by a Marketplace row of 2.0 with a line break in its name. */
+    private static String sample(int rows) {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < rows; i++) {
+            csv.append("111111111111,Usage,2024-03-").append(String.format("%02d", i % 28 + 1))
+                    .append("T00:00:00Z,AmazonEC2,BoxUsage:m5.large,Amazon Elastic Compute Cloud,us-east-1,1.0\n");
+            if (i % 2 == 0) {
+                csv.append("111111111111,Usage,2024-03-01T00:00:00Z,,Subscription,\"").append(MARKETPLACE)
+                        .append("\",us-east-1,2.0\n");
+            }
+        }
+        return csv.toString();
+    }
+}
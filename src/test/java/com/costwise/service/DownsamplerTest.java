@@ -0,0 +1,55 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownsamplerTest {
+
+    @Test
+    void keepsEveryPointOfAShortSeries() {
+        assertArrayEquals(new int[]{0, 1, 2, 3}, Downsampler.lttb(new double[]{1, 2, 3, 4}, 10));
+        assertArrayEquals(new int[]{0, 1, 2}, Downsampler.lttb(new double[]{1, 2, 3}, 1));
+    }
+
+    @Test
+    void keepsTheEndsAndThePeaks() {
+        double[] values = new double[1000];
+        values[417] = 100.0;
+        values[800] = -50.0;
+
+        int[] kept = Downsampler.lttb(values, 50);
+
+        assertEquals(50, kept.length);
+        assertEquals(0, kept[0]);
+        assertEquals(999, kept[49]);
+        assertTrue(contains(kept, 417));
+        assertTrue(contains(kept, 800));
+        for (int i = 1; i < kept.length; i++) {
+            assertTrue(kept[i] > kept[i - 1]);
+        }
+    }
+
+    @Test
+    void summarizesEqualBuckets() {
+        double[][] buckets = Downsampler.buckets(new double[]{1, 5, 3, 2, 8, 2}, 3);
+
+        assertEquals(3, buckets.length);
+        assertArrayEquals(new double[]{0, 1, 5, 3}, buckets[0]);
+        assertArrayEquals(new double[]{2, 2, 3, 2.5}, buckets[1]);
+        assertArrayEquals(new double[]{4, 2, 8, 5}, buckets[2]);
+        assertEquals(2, Downsampler.buckets(new double[]{1, 2}, 5).length);
+        assertEquals(0, Downsampler.buckets(new double[0], 5).length);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package com.costwise.service;
+
+import com.costwise.service.InstanceTypeCatalog.InstanceType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class InstanceTypeCatalogTest {
+    private static final InstanceType M4_XLARGE = type("m4.xlarge", 4, 16384, "x86_64", 0.75, false, false, 0.20);
+    private static final InstanceType M5_XLARGE = type("m5.xlarge", 4, 16384, "x86_64", 10, true, false, 0.192);
+    private static final InstanceType M6I_XLARGE = type("m6i.xlarge", 4, 16384, "x86_64", 12.5, true, false, 0.192);
+    private static final InstanceType M5_LARGE = type("m5.large", 2, 8192, "x86_64", 10, true, false, 0.096);
+    private static final InstanceType C5_LARGE = type("c5.large", 2, 4096, "x86_64", 10, true, false, 0.085);
+    private static final InstanceType C5N_LARGE = type("c5n.large", 2, 5376, "x86_64", 25, true, false, 0.108);
+    private static final InstanceType T3_LARGE = type("t3.large", 2, 8192, "x86_64", 5, true, true, 0.0832);
+    private static final InstanceType M6G_LARGE = type("m6g.large", 2, 8192, "arm64", 10, true, false, 0.077);
+    private static final InstanceType M1_SMALL = type("m1.small", 1, 1740, "x86_64", 0.5, false, false, 0.044);
+
+    private static final InstanceTypeCatalog CATALOG = new InstanceTypeCatalog(List.of(
+            M4_XLARGE, M5_XLARGE, M6I_XLARGE, M5_LARGE, C5_LARGE, C5N_LARGE, T3_LARGE, M6G_LARGE, M1_SMALL));
+
+    @Test
+    void fitsTheCheapestCompatibleType() {
+        // t3 is burstable and m6g is arm64, so neither is a target for an m5
+        assertEquals(C5_LARGE, CATALOG.fit(M5_XLARGE, 2, 4096, 0, M5_XLARGE.hourlyPrice()));
+        assertEquals(M5_LARGE, CATALOG.fit(M5_XLARGE, 2, 6144, 0, M5_XLARGE.hourlyPrice()));
+        assertEquals(M6G_LARGE, CATALOG.fit(M6G_LARGE, 1, 1024, 0, 1.0));
+    }
+
+    @Test
+    void fitsNetworkBandwidth() {
+        assertEquals(C5N_LARGE, CATALOG.fit(M5_XLARGE, 2, 4096, 20, M5_XLARGE.hourlyPrice()));
+        assertNull(CATALOG.fit(M5_XLARGE, 2, 4096, 50, M5_XLARGE.hourlyPrice()));
+    }
+
+    @Test
+    void fitsNothingAtOrAboveTheCurrentPrice() {
+        assertNull(CATALOG.fit(M5_XLARGE, 4, 16384, 0, M5_XLARGE.hourlyPrice()));
+        assertNull(CATALOG.fit(M5_XLARGE, 64, 4096, 0, Double.MAX_VALUE));
+        assertNull(InstanceTypeCatalog.EMPTY.fit(M5_XLARGE, 2, 4096, 0, 1.0));
+    }
+
+    @Test
+    void findsNewerGenerations() {
+        assertEquals(M6I_XLARGE, CATALOG.successor(M5_XLARGE));
+        assertEquals(M5_XLARGE, CATALOG.successor(M4_XLARGE));
+        assertEquals(C5_LARGE, CATALOG.successor(M1_SMALL));
+        assertNull(CATALOG.successor(M6I_XLARGE));
+    }
+
+    private static InstanceType type(String name, int vcpus, long memoryMib, String architecture, double networkGbps,
+                                     boolean currentGeneration, boolean burstable, double hourlyPrice) {
+        return new InstanceType(name, vcpus, memoryMib, architecture, networkGbps, currentGeneration, burstable,
+                false, false, hourlyPrice);
+    }
+}
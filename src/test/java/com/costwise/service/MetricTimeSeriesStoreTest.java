@@ -0,0 +1,177 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricTimeSeriesStoreTest {
+    private static final String SERIES = "i-0abc/AWS/EC2/CPUUtilization/Maximum/3600";
+    private static final long DAY = 86400;
+    private static final long HOUR = 3600;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void dropsATornTailBeforeAppending() throws IOException {
+        MetricTimeSeriesStore store = store();
+        store.append(SERIES, new long[]{HOUR, 2 * HOUR}, new double[]{1.0, 2.0}, 2);
+        // A crash after the value write but before the timestamp write leaves a value without its timestamp
+        Files.write(store.file(SERIES, ".val"), ByteBuffer.allocate(Double.BYTES).putDouble(99.0).array(),
+                StandardOpenOption.APPEND);
+
+        assertEquals(2 * HOUR, store.lastTimestamp(SERIES));
+        assertEquals(2, store.read(SERIES, 0, DAY).size());
+
+        store.append(SERIES, new long[]{3 * HOUR}, new double[]{3.0}, 1);
+
+        MetricTimeSeriesStore.SeriesView view = store.read(SERIES, 0, DAY);
+        assertEquals(3, view.size());
+        assertEquals(3 * HOUR, view.timestamp(2));
+        assertEquals(3.0, view.value(2), 0.0);
+        assertEquals(3 * Double.BYTES, Files.size(store.file(SERIES, ".val")));
+    }
+
+    @Test
+    void finishesAPrependInterruptedAfterItsSwapMarker() throws IOException {
+        MetricTimeSeriesStore store = store();
+        store.append(SERIES, new long[]{10 * HOUR}, new double[]{10.0}, 1);
+        // The crash hit after both replacement files and the marker were written, before they were moved in
+        Files.write(store.file(SERIES, ".ts.new"), ByteBuffer.allocate(2 * Long.BYTES)
+                .putLong(HOUR).putLong(10 * HOUR).array());
+        Files.write(store.file(SERIES, ".val.new"), ByteBuffer.allocate(2 * Double.BYTES)
+                .putDouble(1.0).putDouble(10.0).array());
+        Files.createFile(store.file(SERIES, ".swap"));
+
+        MetricTimeSeriesStore restarted = store();
+        MetricTimeSeriesStore.SeriesView view = restarted.read(SERIES, 0, DAY);
+
+        assertEquals(2, view.size());
+        assertEquals(HOUR, view.timestamp(0));
+        assertEquals(1.0, view.value(0), 0.0);
+        assertFalse(Files.exists(restarted.file(SERIES, ".swap")));
+        assertFalse(Files.exists(restarted.file(SERIES, ".ts.new")));
+    }
+
+    @Test
+    void ignoresAPrependInterruptedBeforeItsSwapMarker() throws IOException {
+        MetricTimeSeriesStore store = store();
+        store.append(SERIES, new long[]{10 * HOUR}, new double[]{10.0}, 1);
+        // Only part of the replacement got written, so the old files still hold the series
+        Files.write(store.file(SERIES, ".ts.new"), ByteBuffer.allocate(Long.BYTES).putLong(HOUR).array());
+
+        MetricTimeSeriesStore restarted = store();
+        assertEquals(1, restarted.read(SERIES, 0, DAY).size());
+
+        restarted.prepend(SERIES, 0, new long[]{2 * HOUR}, new double[]{2.0}, 1);
+
+        MetricTimeSeriesStore.SeriesView view = restarted.read(SERIES, 0, DAY);
+        assertEquals(2, view.size());
+        assertEquals(2 * HOUR, view.timestamp(0));
+        assertEquals(0, restarted.coveredFrom(SERIES));
+    }
+
+    @Test
+    void summarizesCompletedDaysIntoTheSketchSidecar() throws IOException {
+        MetricTimeSeriesStore store = store();
+        appendHours(store, 0, 3 * 24); // days 0 to 2; day 2 is still open until a later point exists
+
+        QuantileSketch first = store.sketch(SERIES, 0, 3 * DAY);
+
+        assertEquals(72, first.count());
+        assertEquals(2, sketchDays(store));
+
+        QuantileSketch second = store.sketch(SERIES, 0, 3 * DAY);
+        assertEquals(72, second.count());
+        assertEquals(first.quantile(0.95), second.quantile(0.95), 0.0);
+        assertEquals(2, sketchDays(store));
+
+        appendHours(store, 3 * 24, 3 * 24 + 1);
+        store.sketch(SERIES, 0, 3 * DAY);
+        assertEquals(3, sketchDays(store));
+    }
+
+    @Test
+    void dropsTheSketchOfADayThatGainsEarlierDatapoints() throws IOException {
+        MetricTimeSeriesStore store = store();
+        store.append(SERIES, new long[]{DAY + 12 * HOUR, 2 * DAY}, new double[]{5.0, 6.0}, 2);
+        store.sketch(SERIES, DAY, 2 * DAY);
+        assertEquals(1, sketchDays(store));
+
+        store.prepend(SERIES, 0, new long[]{DAY + HOUR}, new double[]{1.0}, 1);
+
+        assertEquals(0, sketchDays(store));
+        assertEquals(2, store.sketch(SERIES, DAY, 2 * DAY).count());
+    }
+
+    @Test
+    void trimsOldDatapointsAndDeletesIdleSeries() throws IOException {
+        MetricTimeSeriesStore store = new MetricTimeSeriesStore(dir.toString(), 2, 1);
+        appendHours(store, 0, 4 * 24);
+        String idle = "i-0def/AWS/EC2/CPUUtilization/Maximum/3600";
+        store.append(idle, new long[]{HOUR}, new double[]{1.0}, 1);
+        store.sketch(SERIES, 0, 4 * DAY);
+
+        assertEquals(1, store.sweep(4 * DAY));
+
+        MetricTimeSeriesStore.SeriesView view = store.read(SERIES, 0, 4 * DAY);
+        assertEquals(48, view.size());
+        assertEquals(2 * DAY, view.timestamp(0));
+        assertEquals(2 * DAY, store.coveredFrom(SERIES));
+        assertEquals(1, sketchDays(store)); // day 2; day 3 has no later point yet
+        assertEquals(-1, store.lastTimestamp(idle));
+        assertFalse(Files.exists(store.file(idle, ".ts").getParent()));
+    }
+
+    @Test
+    void spreadsSeriesOverResourceDirectories() {
+        MetricTimeSeriesStore store = store();
+        Path cpu = store.file(SERIES, ".ts");
+        Path network = store.file("i-0abc/AWS/EC2/NetworkOut/Sum/3600", ".ts");
+
+        assertEquals(cpu.getParent(), network.getParent());
+        assertEquals("i-0abc", cpu.getParent().getFileName().toString());
+        assertEquals(dir, cpu.getParent().getParent().getParent());
+        assertTrue(cpu.getParent().getParent().getFileName().toString().matches("[0-9a-f]{2}"));
+    }
+
+    private MetricTimeSeriesStore store() {
+        return new MetricTimeSeriesStore(dir.toString(), 90, 14);
+    }
+
+    private static void appendHours(MetricTimeSeriesStore store, int fromHour, int toHour) {
+        int count = toHour - fromHour;
+        long[] timestamps = new long[count];
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = (fromHour + i) * HOUR;
+            values[i] = (fromHour + i) % 24;
+        }
+        store.append(SERIES, timestamps, values, count);
+    }
+
+    private static int sketchDays(MetricTimeSeriesStore store) throws IOException {
+        Path file = store.file(SERIES, ".qs");
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        int days = 0;
+        while (buffer.remaining() >= Long.BYTES + Integer.BYTES) {
+            buffer.getLong();
+            int length = buffer.getInt();
+            buffer.position(buffer.position() + length);
+            days++;
+        }
+        return days;
+    }
+}
@@ -0,0 +1,89 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    @Test
+    void answersQuantilesWithinTheRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 1; i <= 10000; i++) {
+            sketch.add(i / 100.0);
+        }
+
+        assertEquals(10000, sketch.count());
+        assertWithinAccuracy(50.0, sketch.quantile(0.5));
+        assertWithinAccuracy(95.0, sketch.quantile(0.95));
+        assertWithinAccuracy(99.0, sketch.quantile(0.99));
+        assertEquals(0.01, sketch.quantile(0.0), 0.0);
+        assertEquals(100.0, sketch.quantile(1.0), 0.0);
+        assertEquals(100.0, sketch.max(), 0.0);
+    }
+
+    @Test
+    void countsZerosBelowEveryBucket() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < 90; i++) {
+            sketch.add(0.0);
+        }
+        for (int i = 0; i < 10; i++) {
+            sketch.add(40.0);
+        }
+
+        assertEquals(0.0, sketch.quantile(0.5), 0.0);
+        assertWithinAccuracy(40.0, sketch.quantile(0.95));
+    }
+
+    @Test
+    void isEmptyUntilAValueIsAdded() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        assertTrue(sketch.isEmpty());
+        assertEquals(0.0, sketch.quantile(0.5), 0.0);
+        assertEquals(0.0, sketch.max(), 0.0);
+    }
+
+    @Test
+    void mergesLikeOneSketch() {
+        QuantileSketch low = new QuantileSketch();
+        QuantileSketch high = new QuantileSketch();
+        QuantileSketch all = new QuantileSketch();
+        for (int i = 1; i <= 1000; i++) {
+            (i <= 500 ? low : high).add(i);
+            all.add(i);
+        }
+
+        low.merge(high);
+        low.merge(new QuantileSketch());
+
+        assertEquals(all.count(), low.count());
+        for (double q : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            assertEquals(all.quantile(q), low.quantile(q), 0.0);
+        }
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < 5000; i++) {
+            sketch.add(i % 7 == 0 ? 0.0 : Math.sqrt(i));
+        }
+
+        QuantileSketch copy = QuantileSketch.fromBytes(ByteBuffer.wrap(sketch.toBytes()));
+
+        assertEquals(sketch.count(), copy.count());
+        assertEquals(sketch.max(), copy.max(), 0.0);
+        for (double q : new double[]{0.0, 0.25, 0.5, 0.75, 0.99, 1.0}) {
+            assertEquals(sketch.quantile(q), copy.quantile(q), 0.0);
+        }
+    }
+
+    private static void assertWithinAccuracy(double expected, double actual) {
+        assertEquals(expected, actual, expected * QuantileSketch.RELATIVE_ACCURACY + 0.01);
+    }
+}
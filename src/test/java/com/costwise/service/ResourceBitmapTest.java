@@ -0,0 +1,75 @@
+package com.costwise.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceBitmapTest {
+
+    @Test
+    void holdsSparseValuesAcrossChunks() {
+        ResourceBitmap bitmap = ResourceBitmap.of(5, 70000, 3, 5, 1 << 20);
+
+        assertEquals(4, bitmap.cardinality());
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(4));
+        assertArrayEquals(new int[]{3, 5, 70000, 1 << 20}, bitmap.toArray());
+        assertTrue(new ResourceBitmap().isEmpty());
+    }
+
+    @Test
+    void combinesLikeSets() {
+        // Dense chunks switch to bitmaps; check every pairing against sorted sets
+        Random random = new Random(42);
+        TreeSet<Integer> dense = new TreeSet<>();
+        TreeSet<Integer> sparse = new TreeSet<>();
+        ResourceBitmap left = new ResourceBitmap();
+        ResourceBitmap right = new ResourceBitmap();
+        for (int i = 0; i < 20000; i++) {
+            int value = random.nextInt(3 * 65536);
+            dense.add(value);
+            left.add(value);
+        }
+        for (int i = 0; i < 3000; i++) {
+            int value = random.nextInt(4 * 65536);
+            sparse.add(value);
+            right.add(value);
+        }
+
+        TreeSet<Integer> and = new TreeSet<>(dense);
+        and.retainAll(sparse);
+        TreeSet<Integer> or = new TreeSet<>(dense);
+        or.addAll(sparse);
+        TreeSet<Integer> andNot = new TreeSet<>(dense);
+        andNot.removeAll(sparse);
+
+        assertEquals(dense.size(), left.cardinality());
+        assertArrayEquals(toArray(and), left.and(right).toArray());
+        assertArrayEquals(toArray(and), right.and(left).toArray());
+        assertArrayEquals(toArray(or), left.or(right).toArray());
+        assertArrayEquals(toArray(andNot), left.andNot(right).toArray());
+        assertArrayEquals(toArray(and), ResourceBitmap.and(List.of(left, right)).toArray());
+        assertArrayEquals(toArray(or), ResourceBitmap.or(List.of(left, right)).toArray());
+    }
+
+    @Test
+    void visitsValuesInOrder() {
+        ResourceBitmap bitmap = ResourceBitmap.of(9, 1, 65536, 2);
+        StringBuilder visited = new StringBuilder();
+
+        bitmap.forEach(value -> visited.append(value).append(' '));
+
+        assertEquals("1 2 9 65536 ", visited.toString());
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
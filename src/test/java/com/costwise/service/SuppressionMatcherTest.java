@@ -0,0 +1,104 @@
+package com.costwise.service;
+
+import com.costwise.model.FindingCheck;
+import com.costwise.model.OptimizationResult;
+import com.costwise.model.SuppressionRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuppressionMatcherTest {
+    private static final Map<String, String> NO_TAGS = Map.of();
+
+    @Test
+    void matchesResourcePatterns() {
+        SuppressionMatcher matcher = new SuppressionMatcher(List.of(
+                rule("i-0abc", null, null, null, null),
+                rule("i-0def*", null, null, null, null),
+                rule("*-prod", null, null, null, null),
+                rule("db-*-0?", null, null, null, null)));
+
+        assertTrue(matcher.matches(FindingCheck.EC2_IDLE, "i-0abc", NO_TAGS));
+        assertFalse(matcher.matches(FindingCheck.EC2_IDLE, "i-0abcd", NO_TAGS));
+        assertTrue(matcher.matches(FindingCheck.EC2_IDLE, "i-0def123", NO_TAGS));
+        assertTrue(matcher.matches(FindingCheck.RDS_SINGLE_AZ, "orders-prod", NO_TAGS));
+        assertFalse(matcher.matches(FindingCheck.RDS_SINGLE_AZ, "orders-prod-2", NO_TAGS));
+        assertTrue(matcher.matches(FindingCheck.RDS_SINGLE_AZ, "db-orders-01", NO_TAGS));
+        assertFalse(matcher.matches(FindingCheck.RDS_SINGLE_AZ, "db-orders-1", NO_TAGS));
+        assertFalse(matcher.matches(FindingCheck.EC2_IDLE, "i-0123", NO_TAGS));
+    }
+
+    @Test
+    void limitsRulesToTheirCheckOrResourceType() {
+        SuppressionMatcher matcher = new SuppressionMatcher(List.of(
+                rule("i-*", null, FindingCheck.EC2_IDLE, null, null),
+                rule("db-*", "RDS", null, null, null),
+                rule("*", "S3", FindingCheck.EC2_IDLE, null, null)));
+
+        assertEquals(2, matcher.size());
+        assertTrue(matcher.matches(FindingCheck.EC2_IDLE, "i-1", NO_TAGS));
+        assertFalse(matcher.matches(FindingCheck.EC2_OVERPROVISIONED, "i-1", NO_TAGS));
+        assertTrue(matcher.matches(FindingCheck.RDS_NO_MINOR_UPGRADE, "db-1", NO_TAGS));
+        assertFalse(matcher.matches(FindingCheck.S3_VERSIONING_DISABLED, "db-1", NO_TAGS));
+    }
+
+    @Test
+    void matchesTags() {
+        SuppressionMatcher matcher = new SuppressionMatcher(List.of(
+                rule(null, null, null, "env", "sandbox"),
+                rule(null, null, null, "keep", null),
+                rule("i-*", null, null, "team", "data")));
+
+        assertTrue(matcher.matches(FindingCheck.EC2_IDLE, "i-1", Map.of("env", "sandbox")));
+        assertFalse(matcher.matches(FindingCheck.EC2_IDLE, "i-1", Map.of("env", "prod")));
+        assertTrue(matcher.matches(FindingCheck.S3_VERSIONING_DISABLED, "bucket", Map.of("keep", "yes")));
+        assertTrue(matcher.matches(FindingCheck.EC2_IDLE, "i-1", Map.of("team", "data")));
+        assertFalse(matcher.matches(FindingCheck.RDS_SINGLE_AZ, "db-1", Map.of("team", "data")));
+        assertFalse(matcher.matches(FindingCheck.EC2_IDLE, "i-1", NO_TAGS));
+    }
+
+    @Test
+    void removesSuppressedFindings() {
+        SuppressionMatcher matcher = new SuppressionMatcher(List.of(rule("i-1", null, FindingCheck.EC2_IDLE, null, null)));
+        List<OptimizationResult> findings = new ArrayList<>(List.of(finding(FindingCheck.EC2_IDLE), finding(FindingCheck.EC2_OLD_GENERATION)));
+
+        assertEquals(1, matcher.removeSuppressed(findings, NO_TAGS));
+        assertEquals(FindingCheck.EC2_OLD_GENERATION, findings.get(0).getCheck());
+        assertEquals(0, SuppressionMatcher.NONE.removeSuppressed(findings, NO_TAGS));
+    }
+
+    @Test
+    void globsWildcards() {
+        assertTrue(SuppressionMatcher.glob("a?c", "abc", 0));
+        assertTrue(SuppressionMatcher.glob("*x*", "abxcd", 0));
+        assertTrue(SuppressionMatcher.glob("b*d", "abcd", 1));
+        assertTrue(SuppressionMatcher.glob("a**", "a", 0));
+        assertTrue(SuppressionMatcher.glob("a*", "a*b", 0));
+        assertTrue(SuppressionMatcher.glob("*b", "a*b", 0));
+        assertFalse(SuppressionMatcher.glob("a*c", "abcd", 0));
+        assertFalse(SuppressionMatcher.glob("?", "", 0));
+    }
+
+    private static SuppressionRule rule(String pattern, String resourceType, FindingCheck check, String tagKey, String tagValue) {
+        SuppressionRule rule = new SuppressionRule();
+        rule.setResourcePattern(pattern);
+        rule.setResourceType(resourceType);
+        rule.setCheck(check);
+        rule.setTagKey(tagKey);
+        rule.setTagValue(tagValue);
+        return rule;
+    }
+
+    private static OptimizationResult finding(FindingCheck check) {
+        OptimizationResult finding = new OptimizationResult();
+        finding.setResourceId("i-1");
+        finding.setCheck(check);
+        return finding;
+    }
+}